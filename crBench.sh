@@ -0,0 +1,4 @@
+find -name  "*.class" -exec rm {} +
+find src -name "*.java" > javafiles.txt
+javac.exe @javafiles.txt
+java.exe -Xmx2g -cp "src" benchmarks.RenderBenchmarks "$@"
\ No newline at end of file
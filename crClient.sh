@@ -1,3 +1,3 @@
-find -name "*.java" > javafiles.txt
+find src -name "*.java" > javafiles.txt
 javac.exe @javafiles.txt
 java.exe -cp "src" src/client/MPGameClient.java
\ No newline at end of file
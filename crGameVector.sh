@@ -0,0 +1,4 @@
+find -name  "*.class" -exec rm {} +
+find src src-vector -name "*.java" > javafiles.txt
+javac.exe --add-modules jdk.incubator.vector @javafiles.txt
+java.exe --add-modules jdk.incubator.vector -cp "src;src-vector" src/GFrame.java
\ No newline at end of file
@@ -0,0 +1,4 @@
+find -name  "*.class" -exec rm {} +
+find src -name "*.java" > javafiles.txt
+javac.exe @javafiles.txt
+java.exe -cp "src" core.HeadlessRenderer "$@"
\ No newline at end of file
@@ -0,0 +1,121 @@
+package core;
+
+import colours.ShadeTable;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+import maths.Mat4;
+
+/**
+ * The VectorKernels class runs the vertex kernels with the incubating Vector API, on as many float lanes as the
+ * processor's widest vectors hold: 8 with AVX2 and 16 with AVX-512. The arithmetic is done in the same order as the
+ * scalar loops and never fused, so the results match them exactly. Elements left over after the last full vector
+ * go through the scalar loops.
+ * This class is only compiled and run with --add-modules jdk.incubator.vector, VertexKernels loads it by name.
+ */
+public class VectorKernels extends VertexKernels {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+    private static final int LANES = FLOATS.length();
+    private static final int MIN_LANES = 8; //Narrower vectors are not worth it over the scalar loops
+
+    //One byte per float lane, for storing the clip flags
+    private static final VectorSpecies<Byte> BYTES = LANES >= MIN_LANES ? VectorSpecies.of(byte.class, VectorShape.forBitSize(LANES * 8)) : null;
+
+    /**
+     * Constructs the backend, failing if the processor's vectors hold too few floats to be worth it.
+     */
+    public VectorKernels() {
+        if (LANES < MIN_LANES) {
+            throw new UnsupportedOperationException("Only " + LANES + " float lanes available");
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector x" + LANES;
+    }
+
+    @Override
+    public void transform(Mat4 m, float[] x, float[] y, float[] z, float[] outX, float[] outY, float[] outZ, int from, int to) {
+        int end = from + FLOATS.loopBound(to - from);
+        int v = from;
+        for (; v < end; v += LANES) {
+            FloatVector vx = FloatVector.fromArray(FLOATS, x, v);
+            FloatVector vy = FloatVector.fromArray(FLOATS, y, v);
+            FloatVector vz = FloatVector.fromArray(FLOATS, z, v);
+            vx.mul(m.m00).add(vy.mul(m.m01)).add(vz.mul(m.m02)).add(m.m03).intoArray(outX, v);
+            vx.mul(m.m10).add(vy.mul(m.m11)).add(vz.mul(m.m12)).add(m.m13).intoArray(outY, v);
+            vx.mul(m.m20).add(vy.mul(m.m21)).add(vz.mul(m.m22)).add(m.m23).intoArray(outZ, v);
+        }
+        super.transform(m, x, y, z, outX, outY, outZ, v, to);
+    }
+
+    @Override
+    public void project(Mat4 m, float[] x, float[] y, float[] z, float[] clipX, float[] clipY,
+            float[] projectedX, float[] projectedY, float[] projectedZ, byte[] clipFlags, int from, int to,
+            float halfWidth, float halfHeight, float guardHalfWidth, float guardHalfHeight, float nearPlane, float farPlane) {
+        IntVector noFlags = IntVector.zero(INTS);
+        int end = from + FLOATS.loopBound(to - from);
+        int v = from;
+        for (; v < end; v += LANES) {
+            FloatVector vx = FloatVector.fromArray(FLOATS, x, v);
+            FloatVector vy = FloatVector.fromArray(FLOATS, y, v);
+            FloatVector vz = FloatVector.fromArray(FLOATS, z, v);
+            FloatVector cx = vx.mul(m.m00).add(vy.mul(m.m01)).add(vz.mul(m.m02)).add(m.m03);
+            FloatVector cy = vx.mul(m.m10).add(vy.mul(m.m11)).add(vz.mul(m.m12)).add(m.m13);
+            FloatVector dZ = vx.mul(m.m30).add(vy.mul(m.m31)).add(vz.mul(m.m32)).add(m.m33);
+            cx.intoArray(clipX, v);
+            cy.intoArray(clipY, v);
+            dZ.intoArray(projectedZ, v);
+
+            //Each flag is a lane mask, merged into one int per lane and narrowed to bytes
+            VectorMask<Float> near = dZ.compare(VectorOperators.LE, nearPlane);
+            VectorMask<Float> guard = cx.lt(dZ.mul(-guardHalfWidth)).or(cx.compare(VectorOperators.GT, dZ.mul(guardHalfWidth)))
+                    .or(cy.lt(dZ.mul(-guardHalfHeight))).or(cy.compare(VectorOperators.GT, dZ.mul(guardHalfHeight)));
+            IntVector flags = noFlags
+                    .lanewise(VectorOperators.OR, Scene.CLIP_LEFT, cx.lt(dZ.mul(-halfWidth)).cast(INTS))
+                    .lanewise(VectorOperators.OR, Scene.CLIP_RIGHT, cx.compare(VectorOperators.GT, dZ.mul(halfWidth)).cast(INTS))
+                    .lanewise(VectorOperators.OR, Scene.CLIP_BOTTOM, cy.lt(dZ.mul(-halfHeight)).cast(INTS))
+                    .lanewise(VectorOperators.OR, Scene.CLIP_TOP, cy.compare(VectorOperators.GT, dZ.mul(halfHeight)).cast(INTS))
+                    .lanewise(VectorOperators.OR, Scene.CLIP_NEAR, near.cast(INTS))
+                    .lanewise(VectorOperators.OR, Scene.CLIP_FAR, dZ.compare(VectorOperators.GT, farPlane).cast(INTS))
+                    .lanewise(VectorOperators.OR, Scene.CLIP_GUARD, guard.cast(INTS));
+            ((ByteVector) flags.convertShape(VectorOperators.I2B, BYTES, 0)).intoArray(clipFlags, v);
+
+            //Perspective divide for the lanes in front of the near plane. Masked stores are several times slower than
+            //whole ones, so the lanes behind it are blended back to what the arrays held and every lane is stored
+            VectorMask<Float> projectable = near.not();
+            FloatVector.fromArray(FLOATS, projectedX, v).blend(cx.div(dZ), projectable).intoArray(projectedX, v);
+            FloatVector.fromArray(FLOATS, projectedY, v).blend(cy.div(dZ), projectable).intoArray(projectedY, v);
+        }
+        super.project(m, x, y, z, clipX, clipY, projectedX, projectedY, projectedZ, clipFlags, v, to,
+                halfWidth, halfHeight, guardHalfWidth, guardHalfHeight, nearPlane, farPlane);
+    }
+
+    @Override
+    public void shadeByDistance(float[] x, float[] y, float[] z, int from, int to, float px, float py, float pz,
+            ShadeTable table, int[] into) {
+        int end = from + FLOATS.loopBound(to - from);
+        int i = from;
+        for (; i < end; i += LANES) {
+            FloatVector dx = FloatVector.fromArray(FLOATS, x, i).sub(px);
+            FloatVector dy = FloatVector.fromArray(FLOATS, y, i).sub(py);
+            FloatVector dz = FloatVector.fromArray(FLOATS, z, i).sub(pz);
+            FloatVector distance = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz)).sqrt();
+
+            //Gathering from the table is slower than scalar loads, so the distances are parked in the output
+            //and looked up lane by lane
+            distance.reinterpretAsInts().intoArray(into, i);
+            for (int lane = i; lane < i + LANES; lane++) {
+                into[lane] = table.shade(Float.intBitsToFloat(into[lane]));
+            }
+        }
+        super.shadeByDistance(x, y, z, i, to, px, py, pz, table, into);
+    }
+}
@@ -3,14 +3,35 @@ import javax.swing.JFrame;
 public class GFrame extends JFrame {
     /**
      * Main method to start the application.
-     * Creates a new GFrame instance and continuously updates the frame.
+     * Creates a new GFrame instance and draws it on a render loop thread, or by repainting it from this thread
+     * when started with "-passive".
      * 
-     * @param args Command line arguments (not used).
+     * @param args Command line arguments: "-fps N" sets the target frame rate, with 0 meaning uncapped,
+     *             and "-passive" uses Swing's repaints instead of the render loop.
      * @throws InterruptedException if the thread sleep is interrupted.
      */
     public static void main(String[] args) throws InterruptedException {
+        int targetFps = DEFAULT_TARGET_FPS;
+        boolean passive = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-passive")) {
+                passive = true;
+            } else if (args[i].equals("-fps") && i + 1 < args.length) {
+                targetFps = Integer.parseInt(args[++i]);
+            } else {
+                System.out.println("Usage: GFrame [-fps N] [-passive]");
+                return;
+            }
+        }
+
         GFrame frame = new GFrame(); //Create a new instance of the frame
 
+        if (!passive) {
+            //Render on a dedicated thread, leaving the event dispatch thread for input
+            frame.startRenderLoop(targetFps);
+            return;
+        }
+
         //Infinite loop to continuously update the frame
         while (true) {
             Thread.sleep(50);  //Control frame rate to approximately 20 frames per second (50 ms delay)
@@ -18,6 +39,9 @@ public class GFrame extends JFrame {
         }
     }
 
+    //Frame rate the render loop aims for unless told otherwise
+    private static final int DEFAULT_TARGET_FPS = 60;
+
     //Screen width and height for the window
     private final int SCREEN_WIDTH = 960;
     private final int SCREEN_HEIGHT = 540;
@@ -25,6 +49,9 @@ public class GFrame extends JFrame {
     //Custom JPanel where all game graphics will be rendered
     private GPanel demoPanel;
 
+    //Loop that draws the panel on its own thread, null while Swing repaints it
+    private RenderLoop renderLoop;
+
     /**
      * Constructor to set up the frame and its components.
      * Initializes the game panel, sets up the frame's size, title, and visibility.
@@ -54,4 +81,20 @@ public class GFrame extends JFrame {
         //Repaint the frame, which internally calls the paintComponent() method of the panel
         repaint();
     }
+
+    /**
+     * Starts drawing the frame on a dedicated render loop thread with a double buffered swap chain.
+     * Swing's repaints are ignored from then on.
+     * @param targetFps The frames per second to aim for, or 0 to draw frames as fast as possible.
+     */
+    public void startRenderLoop(int targetFps) {
+        if (renderLoop == null) {
+            renderLoop = new RenderLoop(this, demoPanel, targetFps);
+            renderLoop.start(2);
+        }
+    }
+
+    public RenderLoop getRenderLoop() {
+        return renderLoop;
+    }
 }
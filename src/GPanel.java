@@ -1,12 +1,15 @@
 import javax.swing.JPanel;
 
+import core.FrameProfiler;
+import core.FrameRenderer;
 import core.RenderObject;
 import core.Scene;
 import events.LinearCameraEvent;
 
-import objects.*;
-
 import java.awt.Graphics;
+import java.awt.event.ActionEvent;
+import javax.swing.AbstractAction;
+import javax.swing.KeyStroke;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.awt.Color;
@@ -20,12 +23,13 @@ public class GPanel extends JPanel{
 
     //Graphics ratio determines the size of the dodecahedron on the screen
     private float graphicsRatio = 0.5f; //Ratio that the dodecahedron takes up on the screen
-    private float verticalGraphicsRatio = graphicsRatio * -1; //Inverts the dodecahedron vertically for correct orientation
 
     //Scene containing objects to be rendered
     private Scene scene;
-    //Outline color for all objects (drawn with Swing)
+    //Outline color for all objects (drawn by the rasterizer)
     private Color outline = Color.BLACK;
+    //Draws the scene into a framebuffer image through the same path as the headless renderer
+    private FrameRenderer renderer;
 
     //Font used for rendering text
     private Font font = new Font( "SansSerif", Font.PLAIN, 23 );
@@ -33,6 +37,13 @@ public class GPanel extends JPanel{
     //Game instance to handle game logic
     private Game game;
 
+    //Frame profiler stats drawn over the scene, toggled with F3
+    private ProfilerOverlay profilerOverlay = new ProfilerOverlay(font.deriveFont(14f));
+    private volatile boolean showProfiler = false;
+
+    //True while a render loop draws the panel instead of Swing
+    private volatile boolean activeRendering = false;
+
     /**
      * Constructor to initialize the game panel with given dimensions.
      * Initializes the scene and sets up the game for rendering.
@@ -44,21 +55,35 @@ public class GPanel extends JPanel{
         SCREEN_HEIGHT = h;
         //Initializes an empty scene with no renderable objects
         scene = new Scene(new ArrayList<RenderObject> (Arrays.asList()));
+
+        //Initializes the renderer with a framebuffer the size of the panel
+        renderer = new FrameRenderer(scene, SCREEN_WIDTH, SCREEN_HEIGHT, graphicsRatio);
+        renderer.setBackground(Color.BLACK.getRGB());
+        renderer.getRasterizer().setOutlineColour(outline.getRGB());
         
         //Initializes the game logic with the current scene and this GPanel instance
         game = new Game(scene, this);
+
+        //F3 shows and hides the profiler overlay
+        getInputMap().put(KeyStroke.getKeyStroke("F3"), "toggleProfiler");
+        getActionMap().put("toggleProfiler", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                setShowProfiler(!showProfiler);
+            }
+        });
     }
 
     /**
      * Called every "frame" by the GFrame class when it refreshes and repaints.
      * It handles updating the game state and rendering the new scene.
+     * When a render loop draws the panel instead, Swing's repaints are ignored.
      * @param g The Graphics object used for drawing.
      */
     @Override
     protected void paintComponent(Graphics g) {
-        //Fills background with black
-        g.setColor(Color.BLACK);
-        g.fillRect(0, 0, SCREEN_WIDTH, SCREEN_HEIGHT);
+        if (activeRendering) {
+            return;
+        }
 
         //Updates the game state (e.g., physics, logic)
         game.tick();
@@ -69,96 +94,73 @@ public class GPanel extends JPanel{
 
     /**
      * Performs all projection calculations and draws the scene to the screen.
-     * Projects 3D objects to 2D and displays the rendered triangles.
+     * Projects 3D objects to 2D, rasterizes the triangles into the framebuffer and shows it with a single blit.
      * @param g The Graphics object used for drawing.
      */
     private void drawSceneToScreen(Graphics g) {
-        //Set the font for rendering text
-        g.setFont(font);
-        
-        //Renders the scene with the current camera view and objects' state
-        scene.renderScene(); 
-        
-        //Get the triangles, colors, and names of objects to display
-        Triangle2D[] trianglesToDisplay = scene.getRenderedTriangles();
-        Color[] colours = scene.getColours();
-        String[] names = scene.getNames();
-
-        //Loop through each triangle and draw it on the screen
-        for (int index = 0; index < scene.getCount(); index++) {
-            if (trianglesToDisplay[index] != null) {
-                //Draw the outline of the triangle
-                outlineTriangle(trianglesToDisplay[index], outline, g);
-                //Fill the triangle with the appropriate color
-                fillTriangle(trianglesToDisplay[index], colours[index], g);
-            }
-        }
+        renderFrame();
+        drawFrame(g, 0, 0);
     }
 
     /**
-     * Draws an outline of the given Triangle2D, scaled to the screen size.
-     * @param triangle2d The triangle to outline.
-     * @param colour The color of the outline.
-     * @param g The Graphics object used for drawing.
+     * Projects the scene and rasterizes it into the framebuffer, without touching the screen.
+     * The render loop calls this from its own thread, so only one of it and paintComponent may be drawing.
      */
-    private void outlineTriangle(Triangle2D triangle2d, Color colour, Graphics g) {
-        //Get the x and y coordinates of the triangle vertices
-        float[] xPoints = triangle2d.xValues();
-        float[] yPoints = triangle2d.yValues();
-
-        //Set the outline color and draw the triangle
-        g.setColor(colour);
-        g.drawPolygon(fitAxisToScreen(xPoints, false), fitAxisToScreen(yPoints, true), 3);
+    public void renderFrame() {
+        renderer.render();
     }
 
     /**
-     * Fills the given Triangle2D with the specified color, scaled to the screen size.
-     * @param triangle2d The triangle to fill.
-     * @param colour The fill color.
+     * Copies the last rendered frame onto a graphics context.
      * @param g The Graphics object used for drawing.
+     * @param x The x-coordinate the frame's top left corner is drawn at.
+     * @param y The y-coordinate the frame's top left corner is drawn at.
      */
-    private void fillTriangle(Triangle2D triangle2d, Color colour, Graphics g) {
-        //Get the x and y coordinates of the triangle vertices
-        float[] xPoints = triangle2d.xValues();
-        float[] yPoints = triangle2d.yValues();
-
-        //Set the fill color and draw the triangle
-        g.setColor(colour);
-        g.fillPolygon(fitAxisToScreen(xPoints, false), fitAxisToScreen(yPoints, true), 3);
+    public void drawFrame(Graphics g, int x, int y) {
+        FrameProfiler profiler = scene.getProfiler();
+        profiler.resume();
+
+        //Set the font for rendering text
+        g.setFont(font);
+
+        //Copy the finished frame to the screen
+        g.drawImage(renderer.getImage(), x, y, null);
+
+        //Draw the stats of the frames before this one on top
+        if (showProfiler) {
+            profilerOverlay.draw(g, profiler, x + 10, y + 10);
+        }
+        profiler.mark(FrameProfiler.PRESENTATION);
     }
 
     /**
-     * Scales the given array of axis values to fit within the screen dimensions.
-     * Converts the 3D coordinates to 2D screen coordinates.
-     * @param axisVal The array of values to scale.
-     * @param vertical True if scaling for the vertical axis, false for horizontal.
-     * @return An array of screen coordinates.
+     * Shows or hides the frame profiler's stats on top of the scene.
+     * @param showProfiler True to show the overlay.
      */
-    private int[] fitAxisToScreen(float[] axisVal, boolean vertical) {
-        //Create an array for the scaled axis values
-        int[] fittedAxisVal = new int[3];
-        for (int i = 0; i < 3; i++) {
-            //Scale each value to fit the screen
-            fittedAxisVal[i] = valFromOneToScreen(axisVal[i], vertical);
-        }
-        return fittedAxisVal;
+    public void setShowProfiler(boolean showProfiler) {
+        this.showProfiler = showProfiler;
+        repaint();
+    }
+
+    public boolean getShowProfiler() {
+        return showProfiler;
     }
 
     /**
-     * Scales a single value between 0 and 1 to fit within the screen dimensions.
-     * @param value The value to scale.
-     * @param vertical True if scaling for the vertical axis, false for horizontal.
-     * @return The corresponding screen coordinate.
+     * Switches between being repainted by Swing and being drawn by a render loop.
+     * While active rendering is on, the panel ignores repaints and paintComponent draws nothing.
+     * @param activeRendering True if a render loop draws the panel.
      */
-    private int valFromOneToScreen(float value, boolean vertical) {
-        //Get the larger dimension (width or height) for scaling
-        int bigAxis = Math.max(SCREEN_WIDTH, SCREEN_HEIGHT);
-
-        //If scaling vertically, apply verticalGraphicsRatio, else use graphicsRatio
-        if (vertical) {
-            return (int) ((value / 2) * verticalGraphicsRatio * bigAxis + (SCREEN_HEIGHT / 2));
-        } else {
-            return (int) ((value / 2) * graphicsRatio * bigAxis + (SCREEN_WIDTH / 2));
-        }
+    public void setActiveRendering(boolean activeRendering) {
+        this.activeRendering = activeRendering;
+        setIgnoreRepaint(activeRendering);
+    }
+
+    public boolean isActiveRendering() {
+        return activeRendering;
+    }
+
+    public Game getGame() {
+        return game;
     }
 }
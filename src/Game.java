@@ -23,19 +23,23 @@ public class Game {
     private RenderObject plane; //Plane object in the game (likely the ground or platform)
     private Vertex playerPosition = new Vertex(0, 2, -10); //Player's initial position in 3D space
     private Vertex playerRotation = new Vertex(0, 0, 0); //Player's rotation (pitch, yaw, roll)
+    private Vertex previousPosition = new Vertex(0, 2, -10); //Player's position before the last fixed update
+    private Vertex previousRotation = new Vertex(0, 0, 0); //Player's rotation before the last fixed update
+    private Vertex cameraPosition = new Vertex(0, 2, -10); //Camera position interpolated between the last two updates
+    private Vertex cameraRotation = new Vertex(0, 0, 0); //Camera rotation interpolated between the last two updates
     
-    private Vertex moveDir = new Vertex(0, 0, 0); //Movement direction for the player
-    private Vertex2D mousePosition = new Vertex2D(0, 0); //Mouse position in 2D (normalized)
+    private volatile Vertex2D mousePosition = new Vertex2D(0, 0); //Mouse position in 2D (normalized), written by the EDT
 
     private float moveSpeed = 8.0f; //Player movement speed
     private float rotationSpeed = 80.0f; //Player rotation speed
     private double lastFrameTime; //Timestamp of the last frame in nanoseconds
     private double timeSinceLast; //Time since the last frame
 
-    private boolean isWDown = false; //State if 'W' is pressed
-    private boolean isADown = false; //State if 'A' is pressed        
-    private boolean isSDown = false; //State if 'S' is pressed
-    private boolean isDDown = false; //State if 'D' is pressed
+    //Key states, written by the EDT and read once per update by the render loop, which works out the movement from them
+    private volatile boolean isWDown = false; //State if 'W' is pressed
+    private volatile boolean isADown = false; //State if 'A' is pressed        
+    private volatile boolean isSDown = false; //State if 'S' is pressed
+    private volatile boolean isDDown = false; //State if 'D' is pressed
 
     private Action wDown; //Action for pressing 'W'
     private Action wUp; //Action for releasing 'W'
@@ -93,6 +97,12 @@ public class Game {
         float planeScale = 3;
         plane.setScale(new Vertex(planeScale, planeScale, planeScale));
 
+        //The plane is an open mesh that can be seen from both sides
+        plane.setBackFaceCulling(false);
+
+        //The plane never moves, so its transform is baked into its mesh once
+        plane.bakeTransform();
+
         //Add enemy and plane objects to the scene
         scene.addObject(enemy);
         scene.addObject(plane);
@@ -106,81 +116,82 @@ public class Game {
         //'W' key press moves the player forward (positive z-axis)
         wDown = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (!isWDown) {
-                    moveDir.z += 1;
-                    isWDown = true;
-                }
+                isWDown = true;
             } };
     
         //'W' key release stops the forward movement
         wUp = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (isWDown) {
-                    moveDir.z -= 1;
-                    isWDown = false;
-                }
+                isWDown = false;
             } };
 
         //'A' key press moves the player left (negative x-axis)
         aDown = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (!isADown) {
-                    moveDir.x -= 1;
-                    isADown = true;
-                }
+                isADown = true;
             } };
 
         //'A' key release stops the leftward movement
         aUp = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (isADown) {
-                    moveDir.x += 1;
-                    isADown = false;
-                }
+                isADown = false;
             } };
 
         //'S' key press moves the player backward (negative z-axis)
         sDown = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (!isSDown) {
-                    moveDir.z -= 1;
-                    isSDown = true;
-                }
+                isSDown = true;
             } };
 
         //'S' key release stops the backward movement
         sUp = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (isSDown) {
-                    moveDir.z += 1;
-                    isSDown = false;
-                }
+                isSDown = false;
             } };
 
         //'D' key press moves the player right (positive x-axis)
         dDown = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (!isDDown) {
-                    moveDir.x += 1;
-                    isDDown = true;
-                }
+                isDDown = true;
             } };
 
         //'D' key release stops the rightward movement
         dUp = new AbstractAction() {
             public void actionPerformed(ActionEvent e) {
-                if (isDDown) {
-                    moveDir.x -= 1;
-                    isDDown = false;
-                }
+                isDDown = false;
             } };
     }
 
-    //Main game loop that updates every frame
+    //Main game loop that updates every frame, used when the panel is repainted by Swing
     public void tick() {
         //Calculate time elapsed since the last frame
         timeSinceLast = ( (double) System.nanoTime() - lastFrameTime)/ (1000000000.0);
 
+        //Step by however long the frame took and show the result straight away
+        update(timeSinceLast);
+        interpolate(1);
+
+        //Update the last frame time
+        lastFrameTime = System.nanoTime();
+    }
+
+    /**
+     * Advances the game by a fixed amount of time.
+     * The render loop calls this at a constant rate however fast frames are drawn, so movement does not
+     * depend on the frame rate. The camera is not moved here, see interpolate.
+     * @param dt The time to advance by in seconds.
+     */
+    public void update(double dt) {
+        timeSinceLast = dt;
+
+        //Remember where the player was so frames drawn between updates can blend from it
+        previousPosition.x = playerPosition.x;
+        previousPosition.y = playerPosition.y;
+        previousPosition.z = playerPosition.z;
+        previousRotation.x = playerRotation.x;
+        previousRotation.y = playerRotation.y;
+        previousRotation.z = playerRotation.z;
+
         //Update player rotation and position
         setRotation();
         setPosition();
@@ -189,23 +200,34 @@ public class Game {
         //enemy.alterPosition(Vertex.multiply(new Vertex(0f, 0,0.5f), new Vertex((float) timeSinceLast,(float) timeSinceLast,(float) timeSinceLast)) );
         //enemy.alterRotation(Vertex.multiply(new Vertex(0f, 3f,0f), new Vertex((float) timeSinceLast,(float) timeSinceLast,(float) timeSinceLast)) );
         //enemy.alterScale(Vertex.multiply(new Vertex(0.5f, 0.5f,0.5f), new Vertex((float) timeSinceLast,(float) timeSinceLast,(float) timeSinceLast)) );
-        
-        //Update the camera position and rotation in the scene
-        scene.setCamRot(playerRotation);
-        scene.setCamPos(playerPosition);
 
         //Send player position and rotation to the multiplayer client
         client.setPlayerPosition(playerPosition);
         client.setPlayerRotation(playerRotation);
+    }
 
-        //Update the last frame time
-        lastFrameTime = System.nanoTime();
+    /**
+     * Places the camera between the player's last two updated states, ready for a frame to be drawn.
+     * @param alpha How far through the current update step the frame is, from 0 (the previous state) to 1 (the latest).
+     */
+    public void interpolate(float alpha) {
+        cameraPosition.x = previousPosition.x + (playerPosition.x - previousPosition.x) * alpha;
+        cameraPosition.y = previousPosition.y + (playerPosition.y - previousPosition.y) * alpha;
+        cameraPosition.z = previousPosition.z + (playerPosition.z - previousPosition.z) * alpha;
+        cameraRotation.x = previousRotation.x + (playerRotation.x - previousRotation.x) * alpha;
+        cameraRotation.y = previousRotation.y + (playerRotation.y - previousRotation.y) * alpha;
+        cameraRotation.z = previousRotation.z + (playerRotation.z - previousRotation.z) * alpha;
+
+        //Update the camera position and rotation in the scene
+        scene.setCamRot(cameraRotation);
+        scene.setCamPos(cameraPosition);
     }
 
     //Updates the player rotation based on mouse movement
     private void setRotation() {
-        playerRotation.y = mousePosition.x * rotationSpeed * 0.1f; //Yaw rotation
-        playerRotation.x = mousePosition.y * rotationSpeed * 0.1f; //Pitch rotation
+        Vertex2D mouse = mousePosition; //Read once, the EDT may replace it at any time
+        playerRotation.y = mouse.x * rotationSpeed * 0.1f; //Yaw rotation
+        playerRotation.x = mouse.y * rotationSpeed * 0.1f; //Pitch rotation
 
         //Clamp pitch rotation to avoid flipping over
         if (playerRotation.x > Math.PI/2) {
@@ -217,6 +239,9 @@ public class Game {
 
     //Updates the player position based on movement direction and time elapsed
     private void setPosition() {
+        //Read every key once, so the direction is worked out from one consistent set of key states
+        boolean w = isWDown, a = isADown, s = isSDown, d = isDDown;
+        Vertex moveDir = new Vertex((d ? 1 : 0) - (a ? 1 : 0), 0, (w ? 1 : 0) - (s ? 1 : 0)); //Movement direction for the player
         float moveDirMagnitude = moveDir.magnitude(); //Calculate the magnitude of movement direction
         Vertex moveDirNormalized = null;
 
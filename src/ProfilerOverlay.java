@@ -0,0 +1,146 @@
+import core.FrameProfiler;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+
+/**
+ * The ProfilerOverlay class draws a frame profiler's stats on top of the game.
+ * It shows the time of the last frame and of each of its stages, the triangle counters, a graph of the recent frames
+ * with each frame's stages stacked in their own colours, and a histogram of the recent frame times.
+ */
+public class ProfilerOverlay {
+
+    //Colour of each stage in the legend and the graph
+    private static final Color[] STAGE_COLOURS = {
+            new Color(150, 150, 150), new Color(255, 220, 80), new Color(80, 200, 255), new Color(90, 120, 255),
+            new Color(255, 120, 200), new Color(200, 120, 255), new Color(255, 160, 60), new Color(90, 230, 120),
+            new Color(230, 70, 70)};
+    private static final Color BACKGROUND = new Color(0, 0, 0, 170);
+    private static final Color GUIDE = new Color(255, 255, 255, 90);
+
+    private static final int GRAPH_HEIGHT = 90; //Height of the frame graph and the histogram in pixels
+    private static final double GRAPH_MAX_MS = 50; //Frame time at the top of the graph
+    private static final int HISTOGRAM_BINS = 25; //Number of bars in the histogram
+    private static final long HISTOGRAM_BIN_NANOS = 2000000; //Frame time each bar covers
+
+    private final Font font; //Font the text is drawn in
+    private final int[] histogram = new int[HISTOGRAM_BINS]; //Reused each time the histogram is drawn
+
+    /**
+     * Constructs an overlay drawing its text in the given font.
+     *
+     * @param font The font of the text.
+     */
+    public ProfilerOverlay(Font font) {
+        this.font = font;
+    }
+
+    /**
+     * Draws the overlay with its top left corner at the given position.
+     *
+     * @param g The Graphics object used for drawing.
+     * @param profiler The profiler whose stats are shown.
+     * @param x The x-coordinate of the top left corner.
+     * @param y The y-coordinate of the top left corner.
+     */
+    public void draw(Graphics g, FrameProfiler profiler, int x, int y) {
+        g.setFont(font);
+        FontMetrics metrics = g.getFontMetrics();
+        int lineHeight = metrics.getHeight();
+        int graphWidth = FrameProfiler.HISTORY_LENGTH;
+        int nameWidth = metrics.stringWidth("Rasterization") + 30; //Where the stage times start
+        int timeWidth = metrics.stringWidth("000.00 ms") + 20; //Where the stage means start
+        int firstLine = y + 10 + metrics.getAscent();
+        int graphTop = firstLine + (FrameProfiler.STAGE_COUNT + 1) * lineHeight + metrics.getDescent() + 10;
+        int width = graphWidth * 2 + 30;
+        int height = graphTop - y + GRAPH_HEIGHT + 10;
+
+        g.setColor(BACKGROUND);
+        g.fillRect(x, y, width, height);
+
+        //The whole frame, then each stage's last and mean time
+        int line = firstLine;
+        g.setColor(Color.WHITE);
+        g.drawString(String.format("Frame %.2f ms, mean %.2f, p95 %.2f, max %.2f",
+                ms(profiler.getLastNanos(FrameProfiler.FRAME)), profiler.getAverageNanos(FrameProfiler.FRAME) / 1e6,
+                ms(profiler.getPercentileNanos(FrameProfiler.FRAME, 95)), ms(profiler.getMaxNanos(FrameProfiler.FRAME))), x + 10, line);
+        for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+            line += lineHeight;
+            g.setColor(STAGE_COLOURS[stage]);
+            g.fillRect(x + 10, line - metrics.getAscent() + 2, 10, metrics.getAscent() - 2);
+            g.setColor(Color.WHITE);
+            g.drawString(FrameProfiler.STAGE_NAMES[stage], x + 26, line);
+            g.drawString(String.format("%.2f ms", ms(profiler.getLastNanos(stage))), x + 26 + nameWidth, line);
+            g.drawString(String.format("mean %.2f", profiler.getAverageNanos(stage) / 1e6), x + 26 + nameWidth + timeWidth, line);
+        }
+
+        //The triangle counters
+        line += lineHeight;
+        StringBuilder counters = new StringBuilder();
+        for (int counter = 0; counter < FrameProfiler.COUNTER_COUNT; counter++) {
+            counters.append(FrameProfiler.COUNTER_NAMES[counter]).append(' ').append(profiler.getCounter(counter)).append("   ");
+        }
+        g.drawString(counters.toString(), x + 10, line);
+
+        drawGraph(g, profiler, x + 10, graphTop, graphWidth);
+        drawHistogram(g, profiler, x + 20 + graphWidth, graphTop, graphWidth);
+    }
+
+    /**
+     * Draws one column per recent frame, oldest on the left, with the frame's stages stacked from the bottom.
+     */
+    private void drawGraph(Graphics g, FrameProfiler profiler, int x, int y, int width) {
+        double pixelsPerNano = GRAPH_HEIGHT / (GRAPH_MAX_MS * 1e6);
+        int frames = profiler.getRecordedFrames();
+        for (int framesAgo = 0; framesAgo < frames; framesAgo++) {
+            int column = x + width - 1 - framesAgo;
+            int bottom = y + GRAPH_HEIGHT;
+            long total = 0;
+            for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+                long nanos = profiler.getNanos(stage, framesAgo);
+                int top = y + GRAPH_HEIGHT - (int) Math.min(GRAPH_HEIGHT, (total + nanos) * pixelsPerNano);
+                total += nanos;
+                if (top < bottom) {
+                    g.setColor(STAGE_COLOURS[stage]);
+                    g.drawLine(column, top, column, bottom - 1);
+                    bottom = top;
+                }
+            }
+        }
+
+        //Guides at 60 and 30 frames per second
+        g.setColor(GUIDE);
+        for (double guideMs : new double[] {1000 / 60.0, 1000 / 30.0}) {
+            int guideY = y + GRAPH_HEIGHT - (int) (guideMs * 1e6 * pixelsPerNano);
+            g.drawLine(x, guideY, x + width - 1, guideY);
+        }
+        g.drawRect(x, y, width - 1, GRAPH_HEIGHT);
+    }
+
+    /**
+     * Draws how many of the recent frames took each range of times, with a bar per range.
+     */
+    private void drawHistogram(Graphics g, FrameProfiler profiler, int x, int y, int width) {
+        profiler.getHistogram(FrameProfiler.FRAME, histogram, HISTOGRAM_BIN_NANOS);
+        int most = 1;
+        for (int count : histogram) {
+            most = Math.max(most, count);
+        }
+        int barWidth = width / HISTOGRAM_BINS;
+        g.setColor(Color.WHITE);
+        for (int bin = 0; bin < HISTOGRAM_BINS; bin++) {
+            int barHeight = histogram[bin] * GRAPH_HEIGHT / most;
+            g.fillRect(x + bin * barWidth, y + GRAPH_HEIGHT - barHeight, barWidth - 1, barHeight);
+        }
+        g.setColor(GUIDE);
+        g.drawRect(x, y, width - 1, GRAPH_HEIGHT);
+    }
+
+    /**
+     * Converts nanoseconds to milliseconds.
+     */
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,228 @@
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Toolkit;
+import java.awt.Window;
+import java.awt.image.BufferStrategy;
+import javax.swing.SwingUtilities;
+
+/**
+ * The RenderLoop class draws the game on its own thread instead of waiting for Swing to repaint it.
+ * The game is updated in fixed steps of simulated time, as many as have passed since the last frame,
+ * and every frame is drawn with the camera interpolated between the last two steps so motion stays smooth
+ * at any frame rate. Frames are rendered into the panel's framebuffer and copied into the window's
+ * BufferStrategy, whose back buffers are volatile images that are redrawn if their contents are lost.
+ * The Swing event dispatch thread is left free to handle input.
+ */
+public class RenderLoop implements Runnable {
+
+    private static final int MAX_UPDATES_PER_FRAME = 5; //Simulated time beyond this many steps per frame is dropped
+    private static final long SPIN_NANOS = 1000000; //The last part of a frame's wait is spent yielding, as sleep is imprecise
+
+    private final Window window; //The window whose buffer strategy frames are shown with
+    private final GPanel panel; //The panel that renders the scene and receives input
+    private final Game game; //The game that is updated in fixed steps
+
+    private BufferStrategy strategy; //The window's swap chain, created when the loop starts
+    private Thread thread; //The thread the loop runs on
+    private volatile boolean running = false; //False once the loop has been asked to stop
+
+    private volatile int targetFps; //Frames per second the loop waits to match, 0 for no limit
+    private volatile double updateRate = 60; //Game updates per second of simulated time
+    private volatile float framesPerSecond = 0; //Frames drawn over the last second
+    private volatile float updatesPerSecond = 0; //Game updates run over the last second
+
+    /**
+     * Constructs a render loop for a panel inside a window.
+     * @param window The window the panel is in, which is drawn into directly.
+     * @param panel The panel the scene is rendered by.
+     * @param targetFps The frames per second to aim for, or 0 to draw frames as fast as possible.
+     */
+    public RenderLoop(Window window, GPanel panel, int targetFps) {
+        this.window = window;
+        this.panel = panel;
+        this.game = panel.getGame();
+        setTargetFps(targetFps);
+    }
+
+    /**
+     * Creates the window's buffer strategy and starts drawing on a new thread.
+     * The window must already be showing.
+     * @param buffers The number of buffers in the swap chain, 2 for double buffering or 3 for triple buffering.
+     */
+    public void start(int buffers) {
+        if (running) {
+            return;
+        }
+
+        //Swing must stop painting the window before it can be drawn into directly
+        panel.setActiveRendering(true);
+        window.setIgnoreRepaint(true);
+        window.createBufferStrategy(buffers);
+        strategy = window.getBufferStrategy();
+
+        running = true;
+        thread = new Thread(this, "Render Loop");
+        thread.start();
+    }
+
+    /**
+     * Asks the loop to stop after the current frame and waits for it to finish, then hands the panel back to Swing.
+     */
+    public void stop() {
+        running = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        panel.setActiveRendering(false);
+        window.setIgnoreRepaint(false);
+        panel.repaint();
+    }
+
+    @Override
+    public void run() {
+        long previousTime = System.nanoTime();
+        long nextFrameTime = previousTime;
+        long statsTime = previousTime;
+        int frames = 0;
+        int updates = 0;
+        double accumulator = 0; //Simulated time that has passed but not been stepped through yet
+
+        while (running) {
+            long now = System.nanoTime();
+            double stepSeconds = 1 / updateRate;
+            accumulator += (now - previousTime) / 1e9;
+            previousTime = now;
+
+            //After a long stall, drop the time that cannot be caught up on rather than falling further behind
+            if (accumulator > stepSeconds * MAX_UPDATES_PER_FRAME) {
+                accumulator = stepSeconds * MAX_UPDATES_PER_FRAME;
+            }
+
+            //Step the game through all the whole steps that have passed
+            while (accumulator >= stepSeconds) {
+                game.update(stepSeconds);
+                accumulator -= stepSeconds;
+                updates++;
+            }
+
+            //Draw the frame part way between the last two steps
+            game.interpolate((float) (accumulator / stepSeconds));
+            panel.renderFrame();
+            showFrame();
+            frames++;
+
+            //Count frames and updates over each second
+            if (now - statsTime >= 1000000000L) {
+                float seconds = (now - statsTime) / 1e9f;
+                framesPerSecond = frames / seconds;
+                updatesPerSecond = updates / seconds;
+                frames = 0;
+                updates = 0;
+                statsTime = now;
+            }
+
+            //Wait out the rest of the frame when the frame rate is capped
+            int fps = targetFps;
+            if (fps > 0) {
+                nextFrameTime += 1000000000L / fps;
+                long remaining = nextFrameTime - System.nanoTime();
+                if (remaining < -1000000000L / fps) {
+                    //More than a frame behind, so start timing again from now instead of rushing to catch up
+                    nextFrameTime = System.nanoTime();
+                }
+                waitUntil(nextFrameTime);
+            } else {
+                nextFrameTime = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Copies the rendered frame into the back buffer and shows it, drawing it again if the buffer's contents
+     * were lost or restored while it was being drawn.
+     */
+    private void showFrame() {
+        //The panel can sit below the window's title bar and borders
+        Point origin = SwingUtilities.convertPoint(panel, 0, 0, window);
+
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    panel.drawFrame(g, origin.x, origin.y);
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+
+        //Flush the window system's queue, otherwise some platforms show frames late
+        Toolkit.getDefaultToolkit().sync();
+    }
+
+    /**
+     * Sleeps until shortly before a time, then yields until the time is reached.
+     */
+    private void waitUntil(long time) {
+        long remaining;
+        while ((remaining = time - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                try {
+                    Thread.sleep((remaining - SPIN_NANOS) / 1000000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Sets the frame rate the loop aims for.
+     * @param targetFps The frames per second to aim for, or 0 to draw frames as fast as possible.
+     */
+    public void setTargetFps(int targetFps) {
+        if (targetFps < 0) {
+            throw new IllegalArgumentException("Target FPS must be 0 or more: " + targetFps);
+        }
+        this.targetFps = targetFps;
+    }
+
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+    /**
+     * Sets how many fixed game updates happen per second of simulated time.
+     * @param updateRate The number of updates per second.
+     */
+    public void setUpdateRate(double updateRate) {
+        if (updateRate <= 0) {
+            throw new IllegalArgumentException("Update rate must be positive: " + updateRate);
+        }
+        this.updateRate = updateRate;
+    }
+
+    public double getUpdateRate() {
+        return updateRate;
+    }
+
+    public float getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    public float getUpdatesPerSecond() {
+        return updatesPerSecond;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+}
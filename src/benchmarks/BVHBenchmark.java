@@ -0,0 +1,144 @@
+package benchmarks;
+
+import core.RenderObject;
+import java.util.Random;
+import objects.BVH;
+import objects.Mesh;
+import objects.Vertex;
+
+/**
+ * The BVHBenchmark class times building and refitting bounding volume hierarchies.
+ * The teapot and monkey meshes are copied side by side into single meshes of up to a million triangles to time
+ * the triangle hierarchies, and placed as separate objects to time the object hierarchy the scene uses.
+ * Refitting is timed after every vertex or object has been moved a little, which is the case it is meant for.
+ * Run it from the repository root with: java -cp src benchmarks.BVHBenchmark [maxTriangles]
+ */
+public class BVHBenchmark {
+
+    private static final int REPEATS = 5; //Number of timed runs, the fastest is reported
+
+    /**
+     * Runs the benchmarks and prints one line per mesh and size.
+     *
+     * @param args The largest triangle count to build over, optional.
+     */
+    public static void main(String[] args) {
+        int maxTriangles = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        String[] paths = {"data/teapot.obj", "data/monkey.obj"};
+
+        for (String path : paths) {
+            Mesh mesh = RenderObject.loadObject(path, path, null, new Vertex(0, 0, 0)).getMesh();
+            for (int triangles = 16384; ; triangles *= 4) {
+                int triangleCount = Math.min(triangles, maxTriangles);
+                benchmarkMesh(path, duplicate(mesh, triangleCount / mesh.getTriangleCount() + 1));
+                benchmarkObjects(path, mesh, triangleCount / mesh.getTriangleCount() + 1);
+                if (triangleCount >= maxTriangles) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Times building a mesh's triangle hierarchy and refitting it after its vertices move.
+     */
+    private static void benchmarkMesh(String name, Mesh mesh) {
+        double buildMs = Double.MAX_VALUE;
+        double refitMs = Double.MAX_VALUE;
+        float[] bounds = new float[mesh.getTriangleCount() * 6];
+        Random random = new Random(1);
+        BVH bvh = null;
+        for (int repeat = 0; repeat < REPEATS; repeat++) {
+            long start = System.nanoTime();
+            bvh = mesh.buildBVH();
+            buildMs = Math.min(buildMs, (System.nanoTime() - start) / 1e6);
+
+            //Nudge every vertex, then refit to the new triangle bounds
+            for (int v = 0; v < mesh.getVertexCount(); v++) {
+                mesh.y[v] += (random.nextFloat() - 0.5f) * 0.01f;
+            }
+            start = System.nanoTime();
+            bvh.refit(mesh.getTriangleBounds(bounds));
+            refitMs = Math.min(refitMs, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("triangles %-16s %8d  build %9.2f ms  refit %8.2f ms  nodes %8d  depth %3d%n",
+                name, mesh.getTriangleCount(), buildMs, refitMs, bvh.getNodeCount(), bvh.getDepth());
+    }
+
+    /**
+     * Times building the object hierarchy over copies of a mesh placed as separate objects, and refitting it
+     * after every object moves.
+     */
+    private static void benchmarkObjects(String name, Mesh mesh, int copies) {
+        int side = (int) Math.ceil(Math.cbrt(copies));
+        Vertex min = mesh.getBoundsMin();
+        Vertex max = mesh.getBoundsMax();
+        float[] bounds = new float[copies * 6];
+        int[] ids = new int[copies];
+        for (int i = 0; i < copies; i++) {
+            ids[i] = i;
+            placeObject(bounds, i, side, min, max, 0);
+        }
+
+        double buildMs = Double.MAX_VALUE;
+        double refitMs = Double.MAX_VALUE;
+        BVH bvh = new BVH(2);
+        for (int repeat = 0; repeat < REPEATS; repeat++) {
+            long start = System.nanoTime();
+            bvh.build(bounds, ids, copies);
+            buildMs = Math.min(buildMs, (System.nanoTime() - start) / 1e6);
+
+            for (int i = 0; i < copies; i++) {
+                placeObject(bounds, i, side, min, max, repeat * 0.1f);
+            }
+            start = System.nanoTime();
+            bvh.refit(bounds);
+            refitMs = Math.min(refitMs, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("objects   %-16s %8d  build %9.2f ms  refit %8.2f ms  nodes %8d  depth %3d%n",
+                name, copies, buildMs, refitMs, bvh.getNodeCount(), bvh.getDepth());
+    }
+
+    /**
+     * Writes the world space bounds of one copy of a mesh placed on a grid, moved along x by an offset.
+     */
+    private static void placeObject(float[] bounds, int i, int side, Vertex min, Vertex max, float offset) {
+        float spacing = 1.5f * Math.max(max.x - min.x, Math.max(max.y - min.y, max.z - min.z));
+        float px = (i % side) * spacing + offset, py = (i / side % side) * spacing, pz = (i / side / side) * spacing;
+        int b = i * 6;
+        bounds[b] = min.x + px; bounds[b + 1] = min.y + py; bounds[b + 2] = min.z + pz;
+        bounds[b + 3] = max.x + px; bounds[b + 4] = max.y + py; bounds[b + 5] = max.z + pz;
+    }
+
+    /**
+     * Builds a mesh holding copies of another mesh side by side on a grid.
+     *
+     * @param mesh The mesh to copy.
+     * @param copies The number of copies.
+     * @return The combined mesh.
+     */
+    static Mesh duplicate(Mesh mesh, int copies) {
+        int vertexCount = mesh.getVertexCount();
+        int side = (int) Math.ceil(Math.cbrt(copies));
+        Vertex min = mesh.getBoundsMin();
+        Vertex max = mesh.getBoundsMax();
+        float spacing = 1.5f * Math.max(max.x - min.x, Math.max(max.y - min.y, max.z - min.z));
+
+        float[] x = new float[vertexCount * copies];
+        float[] y = new float[vertexCount * copies];
+        float[] z = new float[vertexCount * copies];
+        int[] indices = new int[mesh.indices.length * copies];
+        for (int copy = 0; copy < copies; copy++) {
+            float px = (copy % side) * spacing, py = (copy / side % side) * spacing, pz = (copy / side / side) * spacing;
+            for (int v = 0; v < vertexCount; v++) {
+                x[copy * vertexCount + v] = mesh.x[v] + px;
+                y[copy * vertexCount + v] = mesh.y[v] + py;
+                z[copy * vertexCount + v] = mesh.z[v] + pz;
+            }
+            for (int i = 0; i < mesh.indices.length; i++) {
+                indices[copy * mesh.indices.length + i] = mesh.indices[i] + copy * vertexCount;
+            }
+        }
+        return new Mesh(x, y, z, indices);
+    }
+}
@@ -0,0 +1,299 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The BenchmarkRunner class times small pieces of code the way a microbenchmark harness does.
+ * Each benchmark is run for a number of warm up iterations, so the JIT compiler has settled, and then for a number of
+ * measured iterations. An iteration calls the benchmark repeatedly until a minimum time has passed, and its score
+ * is the average time per operation. The values benchmarks return are folded into a sink so their work cannot be
+ * optimized away.
+ * Results are written as JSON in the same layout as JMH's result files, one benchmark per line, and can be compared
+ * against an earlier file to find regressions.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * A piece of code to time. It returns a value computed from its work, which the runner consumes.
+     */
+    public interface Workload {
+        long run();
+    }
+
+    /**
+     * The measurements of one benchmark with one set of parameters.
+     */
+    public static class Result {
+        public final String benchmark; //The benchmark's name
+        public final Map<String, String> params; //The parameters it was run with
+        public final String unit; //The time unit of the scores, such as ns/op
+        public final double[] samples; //The score of each measured iteration
+        public final double score; //The mean score
+        public final double error; //Half the width of the 99.9% confidence interval of the mean
+
+        Result(String benchmark, Map<String, String> params, String unit, double[] samples) {
+            this.benchmark = benchmark;
+            this.params = params;
+            this.unit = unit;
+            this.samples = samples;
+
+            double sum = 0;
+            for (double sample : samples) {
+                sum += sample;
+            }
+            score = sum / samples.length;
+            double squares = 0;
+            for (double sample : samples) {
+                squares += (sample - score) * (sample - score);
+            }
+            error = samples.length > 1 ? t999(samples.length - 1) * Math.sqrt(squares / (samples.length - 1)) / Math.sqrt(samples.length) : Double.NaN;
+        }
+
+        /**
+         * Returns the key identifying this benchmark and its parameters, used to match it against earlier results.
+         */
+        public String key() {
+            return benchmark + params;
+        }
+    }
+
+    private static final double Z_999 = 3.2905267; //Normal quantile for a two sided 99.9% confidence interval
+
+    //Student's t quantile for a two sided 99.9% confidence interval with 1 to 30 degrees of freedom, as used by JMH
+    private static final double[] T_999 = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781,
+            4.587, 4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850, 3.819, 3.792, 3.768, 3.745, 3.725,
+            3.707, 3.690, 3.674, 3.659, 3.646};
+
+    /**
+     * Returns Student's t quantile for a two sided 99.9% confidence interval. The mean of a few samples is much less
+     * certain than the normal quantile makes it look, 8.61 against 3.29 for the default five iterations.
+     * Past the table the Cornish-Fisher expansion around the normal quantile is used, which matches to three decimals.
+     *
+     * @param degreesOfFreedom One less than the number of samples.
+     * @return The quantile.
+     */
+    private static double t999(int degreesOfFreedom) {
+        if (degreesOfFreedom <= T_999.length) {
+            return T_999[degreesOfFreedom - 1];
+        }
+        double z = Z_999, z3 = z * z * z, z5 = z3 * z * z, z7 = z5 * z * z, v = degreesOfFreedom;
+        return z + (z3 + z) / (4 * v) + (5 * z5 + 16 * z3 + 3 * z) / (96 * v * v)
+                + (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * v * v * v);
+    }
+
+    private int warmupIterations = 3; //Iterations run before measuring
+    private int iterations = 5; //Iterations measured
+    private long iterationNanos = 500000000L; //Minimum time each iteration runs for
+    private Pattern filter = null; //Benchmarks whose name and parameters do not contain a match are skipped
+    private PrintStream out = System.out; //Where progress and the result of each benchmark are printed
+
+    private final List<Result> results = new ArrayList<>();
+    private static volatile long sink; //Consumes the values benchmarks return
+
+    /**
+     * Returns whether a benchmark passes the filter and will be run, so fixtures are only built for benchmarks that are.
+     *
+     * @param benchmark The benchmark's name.
+     * @param params The parameters as alternating names and values.
+     * @return True if the benchmark will be run.
+     */
+    public boolean accepts(String benchmark, String... params) {
+        return filter == null || filter.matcher(benchmark + toMap(params)).find();
+    }
+
+    /**
+     * Runs and records a benchmark if it passes the filter.
+     *
+     * @param benchmark The benchmark's name.
+     * @param unit The time unit of the score: ns/op, us/op, ms/op or s/op.
+     * @param operations The number of operations one call of the workload performs, such as the number of vertices it
+     *                   transforms, which the time of each call is divided by.
+     * @param workload The code to time.
+     * @param params The parameters as alternating names and values.
+     * @return The result, or null if the benchmark was skipped.
+     */
+    public Result run(String benchmark, String unit, long operations, Workload workload, String... params) {
+        if (!accepts(benchmark, params)) {
+            return null;
+        }
+        double unitNanos = unitNanos(unit);
+
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(workload, operations);
+        }
+        double[] samples = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            samples[i] = iteration(workload, operations) / unitNanos;
+        }
+
+        Result result = new Result(benchmark, toMap(params), unit, samples);
+        results.add(result);
+        out.printf("%-36s %-60s %14.3f +- %10.3f %s%n", benchmark, result.params, result.score, result.error, unit);
+        return result;
+    }
+
+    /**
+     * Calls a workload until the iteration time has passed and returns the average time per operation in nanoseconds.
+     */
+    private double iteration(Workload workload, long operations) {
+        long calls = 0;
+        long value = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            value += workload.run();
+            calls++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < iterationNanos);
+        sink += value;
+        return (double) elapsed / calls / operations;
+    }
+
+    /**
+     * Writes every result recorded so far as JSON in JMH's result layout.
+     *
+     * @param file The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    public void writeJson(File file) throws IOException {
+        String jdk = System.getProperty("java.version");
+        String vm = System.getProperty("java.vm.name");
+        try (PrintStream json = new PrintStream(file, "UTF-8")) {
+            json.println("[");
+            for (int r = 0; r < results.size(); r++) {
+                Result result = results.get(r);
+                StringBuilder line = new StringBuilder();
+                line.append("{\"benchmark\": \"").append(result.benchmark).append("\", \"mode\": \"avgt\"");
+                line.append(", \"jdkVersion\": \"").append(jdk).append("\", \"vmName\": \"").append(vm).append("\"");
+                line.append(", \"threads\": 1, \"forks\": 1");
+                line.append(", \"warmupIterations\": ").append(warmupIterations);
+                line.append(", \"measurementIterations\": ").append(iterations);
+                line.append(", \"params\": {");
+                int p = 0;
+                for (Map.Entry<String, String> param : result.params.entrySet()) {
+                    line.append(p++ > 0 ? ", " : "").append('"').append(param.getKey()).append("\": \"").append(param.getValue()).append('"');
+                }
+                line.append("}, \"primaryMetric\": {\"score\": ").append(result.score);
+                line.append(", \"scoreError\": ").append(Double.isNaN(result.error) ? "\"NaN\"" : String.valueOf(result.error));
+                line.append(", \"scoreUnit\": \"").append(result.unit).append("\", \"rawData\": [[");
+                for (int s = 0; s < result.samples.length; s++) {
+                    line.append(s > 0 ? ", " : "").append(result.samples[s]);
+                }
+                line.append("]]}}").append(r < results.size() - 1 ? "," : "");
+                json.println(line);
+            }
+            json.println("]");
+        }
+    }
+
+    /**
+     * Compares the results recorded so far with those in an earlier result file and prints the change in each score.
+     * A benchmark has regressed if it got slower by more than the threshold and the confidence intervals of the two
+     * scores do not overlap.
+     *
+     * @param baseline An earlier result file written by writeJson.
+     * @param threshold The fraction a score may grow by before it counts as a regression, such as 0.1 for 10%.
+     * @return The number of benchmarks that regressed.
+     * @throws IOException If the file cannot be read.
+     */
+    public int compare(File baseline, double threshold) throws IOException {
+        Pattern entry = Pattern.compile("\"benchmark\": \"([^\"]*)\".*\"params\": \\{([^}]*)\\}.*\"score\": ([^,]*), \"scoreError\": \"?([^,\"]*)\"?, \"scoreUnit\": \"([^\"]*)\"");
+        Pattern param = Pattern.compile("\"([^\"]*)\": \"([^\"]*)\"");
+        Map<String, double[]> scores = new LinkedHashMap<>();
+        Map<String, String> units = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(baseline.toPath())) {
+            Matcher m = entry.matcher(line);
+            if (!m.find()) {
+                continue;
+            }
+            List<String> params = new ArrayList<>();
+            Matcher pm = param.matcher(m.group(2));
+            while (pm.find()) {
+                params.add(pm.group(1));
+                params.add(pm.group(2));
+            }
+            String key = m.group(1) + toMap(params.toArray(new String[0]));
+            scores.put(key, new double[] {Double.parseDouble(m.group(3)), Double.parseDouble(m.group(4))});
+            units.put(key, m.group(5));
+        }
+
+        int regressions = 0;
+        out.println();
+        out.println("Compared with " + baseline.getPath() + ":");
+        for (Result result : results) {
+            double[] old = scores.get(result.key());
+            if (old == null || !result.unit.equals(units.get(result.key()))) {
+                out.printf("%-36s %-60s %14s%n", result.benchmark, result.params, "new");
+                continue;
+            }
+            double change = result.score / old[0] - 1;
+            boolean separated = Double.isNaN(old[1]) || Double.isNaN(result.error) || result.score - result.error > old[0] + old[1];
+            boolean regressed = change > threshold && separated;
+            if (regressed) {
+                regressions++;
+            }
+            out.printf("%-36s %-60s %+13.1f%% %s%n", result.benchmark, result.params, change * 100, regressed ? "REGRESSION" : "");
+        }
+        return regressions;
+    }
+
+    /**
+     * Turns alternating parameter names and values into an ordered map.
+     */
+    private static Map<String, String> toMap(String[] params) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < params.length; i += 2) {
+            map.put(params[i], params[i + 1]);
+        }
+        return map;
+    }
+
+    /**
+     * Returns the number of nanoseconds in one of a time unit.
+     */
+    private static double unitNanos(String unit) {
+        switch (unit) {
+            case "ns/op": return 1;
+            case "us/op": return 1e3;
+            case "ms/op": return 1e6;
+            case "s/op": return 1e9;
+            default: throw new IllegalArgumentException("Unknown unit: " + unit);
+        }
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    public void setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+    }
+
+    public void setIterations(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("At least one iteration must be measured: " + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    public void setIterationMillis(long iterationMillis) {
+        this.iterationNanos = iterationMillis * 1000000L;
+    }
+
+    public void setFilter(String regex) {
+        this.filter = regex == null ? null : Pattern.compile(regex);
+    }
+
+    public void setOut(PrintStream out) {
+        this.out = out;
+    }
+}
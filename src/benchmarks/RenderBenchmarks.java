@@ -0,0 +1,495 @@
+package benchmarks;
+
+import colours.ColourShader;
+import colours.HorizontalShader;
+import colours.InverseSqrShadow;
+import colours.Light;
+import colours.LightingShader;
+import colours.NonShadow;
+import colours.ShadeTable;
+import core.DepthSorter;
+import core.FrameRenderer;
+import core.MeshCache;
+import core.ObjParser;
+import core.Rasterizer;
+import core.RenderObject;
+import core.Scene;
+import core.VertexKernels;
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import maths.Mat4;
+import objects.Mesh;
+import objects.Triangle;
+import objects.Vertex;
+import objects.Vertex2D;
+
+/**
+ * The RenderBenchmarks class is the benchmark suite for the hot paths of the rendering pipeline.
+ * The meshes in data/ are copied side by side into fixtures of 10 thousand, 100 thousand and a million triangles,
+ * and each fixture is used to time:
+ * - Scene.renderScene end to end, with depth sorting, and a whole frame through FrameRenderer, with each of the
+ *   VertexKernels backends
+ * - Rasterizer.drawScene on its own, with no outlines and with each way of outlining edges
+ * - DepthSorter.sort, both from scratch and from the previous frame's order
+ * - Scene.renderVertex and Vertex.rotateWithSinCos, per vertex
+ * - RenderObject.transformVertices, the world transform that replaced adjustTriangles, per vertex
+ * - the VertexKernels transform, project and shadeByDistance loops, per element, on the scalar loops and on
+ *   the Vector API backend when it is loaded
+ * - each ColourShader's shadeBasedOnTriangle, the packed ARGB shadeARGB and the batched shadeCentroids, per triangle
+ * - LightingShader.shadeSurfaces with one and with four lights, per triangle
+ * - RenderObject.loadObject, reading the fixture back from an .obj file, or its cache file after the first run,
+ *   and building its levels of detail
+ * - ObjParser.parse on its own, reading the same file on one thread and in parallel memory mapped chunks
+ * - MeshCache.read, reading the same mesh back from its binary cache file
+ * Results are printed and written as JMH style JSON, and can be compared against an earlier run.
+ *
+ * Run it from the repository root with:
+ *     java -cp src benchmarks.RenderBenchmarks [-sizes 10000,100000] [-meshes teapot,monkey] [-filter regex]
+ *         [-warmup N] [-iterations N] [-time ms] [-quick] [-json file] [-baseline file] [-threshold fraction]
+ * It exits with status 1 if any benchmark regressed against the baseline.
+ */
+public class RenderBenchmarks {
+
+    private static final int SCREEN_WIDTH = 960; //Size of the framebuffer whole frames are drawn into
+    private static final int SCREEN_HEIGHT = 540;
+    private static final String[] SHADERS = {"NonShadow", "HorizontalShader", "InverseSqrShadow"}; //Every ColourShader implementation
+    private static final int[] LIGHT_COUNTS = {1, 4}; //Lights reaching the fixture when it is lit, a sun and point lights
+    private static final String[] OUTLINES = {"none", "triangles", "all", "silhouettes", "creases"}; //Ways of outlining edges
+    private static final int[] OUTLINE_EDGES = {Scene.OUTLINE_ALL, Scene.OUTLINE_TRIANGLE_EDGES, Scene.OUTLINE_ALL,
+            Scene.OUTLINE_SILHOUETTES, Scene.OUTLINE_CREASES}; //The scene's outline edges for each way
+
+    /**
+     * Runs the suite.
+     *
+     * @param args The options described in the class comment.
+     * @throws IOException If a fixture or the results cannot be written, or the baseline cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int[] sizes = {10000, 100000, 1000000};
+        String[] meshes = {"teapot", "monkey"};
+        File json = new File("bench_results.json");
+        File baseline = null;
+        double threshold = 0.1;
+        BenchmarkRunner runner = new BenchmarkRunner();
+
+        for (int i = 0; i < args.length; i++) {
+            boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("-sizes") && hasValue) {
+                sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+            } else if (args[i].equals("-meshes") && hasValue) {
+                meshes = args[++i].split(",");
+            } else if (args[i].equals("-filter") && hasValue) {
+                runner.setFilter(args[++i]);
+            } else if (args[i].equals("-warmup") && hasValue) {
+                runner.setWarmupIterations(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-iterations") && hasValue) {
+                runner.setIterations(Integer.parseInt(args[++i]));
+            } else if (args[i].equals("-time") && hasValue) {
+                runner.setIterationMillis(Long.parseLong(args[++i]));
+            } else if (args[i].equals("-quick")) {
+                runner.setWarmupIterations(1);
+                runner.setIterations(3);
+                runner.setIterationMillis(200);
+            } else if (args[i].equals("-json") && hasValue) {
+                json = new File(args[++i]);
+            } else if (args[i].equals("-baseline") && hasValue) {
+                baseline = new File(args[++i]);
+            } else if (args[i].equals("-threshold") && hasValue) {
+                threshold = Double.parseDouble(args[++i]);
+            } else {
+                System.out.println("Usage: RenderBenchmarks [-sizes 10000,100000] [-meshes teapot,monkey] [-filter regex] "
+                        + "[-warmup N] [-iterations N] [-time ms] [-quick] [-json file] [-baseline file] [-threshold fraction]");
+                return;
+            }
+        }
+
+        for (int size : sizes) {
+            benchmarkSort(runner, size);
+            for (String mesh : meshes) {
+                benchmarkMesh(runner, mesh, size);
+            }
+        }
+
+        runner.writeJson(json);
+        System.out.println("results written to " + json.getPath());
+        if (baseline != null && runner.compare(baseline, threshold) > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Times every benchmark that uses a mesh fixture, building the fixture only if one of them passes the filter.
+     */
+    private static void benchmarkMesh(BenchmarkRunner runner, String name, int size) throws IOException {
+        String triangles = String.valueOf(size);
+        String[] names = {"Scene.renderScene", "Scene.renderVertex", "Vertex.rotateWithSinCos",
+                "RenderObject.transformVertices", "RenderObject.loadObject", "ObjParser.parse", "MeshCache.read"};
+        boolean needed = acceptsShader(runner, name, triangles) || acceptsOutlines(runner, name, triangles)
+                || acceptsKernels(runner, name, triangles) || acceptsFrames(runner, name, triangles) || acceptsLighting(runner, name, triangles);
+        for (String benchmark : names) {
+            needed |= runner.accepts(benchmark, "mesh", name, "triangles", triangles);
+        }
+        if (!needed) {
+            return;
+        }
+
+        //Copy the mesh until it has at least the fixture's number of triangles
+        Mesh source = RenderObject.loadObject("data/" + name + ".obj", name, null, new Vertex(0, 0, 0)).getMesh();
+        Mesh mesh = BVHBenchmark.duplicate(source, (size + source.getTriangleCount() - 1) / source.getTriangleCount());
+        Vertex min = mesh.getBoundsMin();
+        Vertex max = mesh.getBoundsMax();
+        Vertex centre = new Vertex((min.x + max.x) / 2, (min.y + max.y) / 2, (min.z + max.z) / 2);
+        float extent = Math.max(max.x - min.x, Math.max(max.y - min.y, max.z - min.z));
+
+        //A scene holding the fixture, with the camera backed off far enough to see all of it
+        Scene scene = new Scene(new ArrayList<>());
+        RenderObject object = new RenderObject(name, mesh, new Vertex(0, 0, 0), new Vertex(1, 1, 1), new Vertex(0, 0, 0),
+                new InverseSqrShadow(new Color(255, 0, 0), scene));
+        scene.addObject(object);
+        scene.setCamPos(new Vertex(centre.x, centre.y, min.z - extent * 1.2f));
+        scene.setCamRot(new Vertex(0, 0, 0));
+        scene.renderScene();
+
+        //Alternate between two camera rotations, so every frame has moved and the sort always has work to do
+        Vertex[] rotations = {new Vertex(0, 0.02f, 0), new Vertex(0, -0.02f, 0)};
+        int[] frame = {0};
+        runner.run("Scene.renderScene", "ms/op", 1, () -> {
+            scene.setCamRot(rotations[frame[0]++ & 1]);
+            scene.renderScene();
+            return scene.getRenderCount();
+        }, "mesh", name, "triangles", triangles);
+
+        //Whole frames with each of the kernel backends, as the renderer runs them
+        if (acceptsFrames(runner, name, triangles)) {
+            FrameRenderer renderer = new FrameRenderer(scene, SCREEN_WIDTH, SCREEN_HEIGHT, 0.5f);
+            VertexKernels chosen = VertexKernels.getInstance();
+            for (VertexKernels kernels : VertexKernels.getBackends()) {
+                VertexKernels.setInstance(kernels);
+                runner.run("FrameRenderer.render", "ms/op", 1, () -> {
+                    scene.setCamRot(rotations[frame[0]++ & 1]);
+                    renderer.render();
+                    return renderer.getPixels()[SCREEN_WIDTH * SCREEN_HEIGHT / 2];
+                }, "mesh", name, "triangles", triangles, "kernels", kernels.getName());
+            }
+            VertexKernels.setInstance(chosen);
+            scene.setDepthSorting(true);
+        }
+
+        //Rasterize the same projected frame over and over, outlining its edges each way
+        if (acceptsOutlines(runner, name, triangles)) {
+            FrameRenderer renderer = new FrameRenderer(scene, SCREEN_WIDTH, SCREEN_HEIGHT, 0.5f);
+            Rasterizer rasterizer = renderer.getRasterizer();
+            for (int i = 0; i < OUTLINES.length; i++) {
+                if (!runner.accepts("Rasterizer.drawScene", "mesh", name, "triangles", triangles, "outlines", OUTLINES[i])) {
+                    continue;
+                }
+                rasterizer.setOutlines(i > 0);
+                scene.setOutlineEdges(OUTLINE_EDGES[i]);
+                scene.renderScene();
+                runner.run("Rasterizer.drawScene", "ms/op", 1, () -> {
+                    rasterizer.clear(0);
+                    rasterizer.drawScene(scene);
+                    return rasterizer.getPixels()[SCREEN_WIDTH * SCREEN_HEIGHT / 2];
+                }, "mesh", name, "triangles", triangles, "outlines", OUTLINES[i]);
+            }
+            rasterizer.setOutlines(true);
+            scene.setOutlineEdges(Scene.OUTLINE_ALL);
+            scene.setDepthSorting(true);
+        }
+
+        //The per vertex benchmarks work through the fixture's vertices as Vertex objects
+        object.loadWorldTriangles();
+        int vertexCount = mesh.getVertexCount();
+        Vertex[] vertices = new Vertex[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertices[v] = new Vertex(object.getWorldX()[v], object.getWorldY()[v], object.getWorldZ()[v]);
+        }
+        scene.setCamRot(new Vertex(0, 0, 0));
+        scene.renderScene();
+        runner.run("Scene.renderVertex", "ns/op", vertexCount, () -> {
+            long visible = 0;
+            for (Vertex vertex : vertices) {
+                Vertex2D projected = scene.renderVertex(vertex);
+                if (projected != null) {
+                    visible++;
+                }
+            }
+            return visible;
+        }, "mesh", name, "triangles", triangles);
+
+        Vertex s = new Vertex((float) Math.sin(-0.1f), (float) Math.sin(-0.7f), (float) Math.sin(-0.2f));
+        Vertex c = new Vertex((float) Math.cos(-0.1f), (float) Math.cos(-0.7f), (float) Math.cos(-0.2f));
+        runner.run("Vertex.rotateWithSinCos", "ns/op", vertexCount, () -> {
+            float sum = 0;
+            for (Vertex vertex : vertices) {
+                sum += Vertex.rotateWithSinCos(vertex, s, c).x;
+            }
+            return Float.floatToIntBits(sum);
+        }, "mesh", name, "triangles", triangles);
+
+        object.setRotation(new Vertex(0.1f, 0.7f, 0.2f));
+        object.updateTransform();
+        runner.run("RenderObject.transformVertices", "ns/op", vertexCount, () -> {
+            object.transformVertices(0, vertexCount);
+            return Float.floatToIntBits(object.getWorldX()[vertexCount - 1]);
+        }, "mesh", name, "triangles", triangles);
+
+        //The vertex kernels over the fixture's vertices, with a projection looking down z from where the camera is
+        if (acceptsKernels(runner, name, triangles)) {
+            float[][] out = new float[5][vertexCount];
+            byte[] flags = new byte[vertexCount];
+            int[] shades = new int[vertexCount];
+            Mat4 projection = new Mat4();
+            projection.m32 = 1;
+            projection.m33 = extent * 1.2f - min.z;
+            ShadeTable table = new ShadeTable(new Color(255, 0, 0), distance -> ColourShader.inverseSquare((float) distance * 0.03f), 0, 256, 32);
+            for (VertexKernels kernels : VertexKernels.getBackends()) {
+                runner.run("VertexKernels.transform", "ns/op", vertexCount, () -> {
+                    kernels.transform(object.getWorldMatrix(), mesh.x, mesh.y, mesh.z, out[0], out[1], out[2], 0, vertexCount);
+                    return Float.floatToIntBits(out[0][vertexCount - 1]);
+                }, "mesh", name, "triangles", triangles, "kernels", kernels.getName());
+                runner.run("VertexKernels.project", "ns/op", vertexCount, () -> {
+                    kernels.project(projection, mesh.x, mesh.y, mesh.z, out[0], out[1], out[2], out[3], out[4], flags, 0, vertexCount,
+                            2, 1.125f, 8, 4.5f, 0.01f, 1000);
+                    return flags[vertexCount - 1] + Float.floatToIntBits(out[2][vertexCount - 1]);
+                }, "mesh", name, "triangles", triangles, "kernels", kernels.getName());
+                runner.run("VertexKernels.shadeByDistance", "ns/op", vertexCount, () -> {
+                    kernels.shadeByDistance(mesh.x, mesh.y, mesh.z, 0, vertexCount, centre.x, centre.y, min.z - extent * 1.2f, table, shades);
+                    return shades[vertexCount - 1];
+                }, "mesh", name, "triangles", triangles, "kernels", kernels.getName());
+            }
+        }
+
+        //Shade every triangle of the fixture with each of the shaders
+        if (acceptsShader(runner, name, triangles)) {
+            Triangle[] shaded = object.loadTriangles();
+            ColourShader[] shaders = {new NonShadow(new Color(255, 0, 0)), new HorizontalShader(new Color(255, 0, 0)),
+                    new InverseSqrShadow(new Color(255, 0, 0), scene)};
+
+            //The centre of every triangle, as the scene hands them to shadeCentroids
+            float[] centreX = new float[shaded.length], centreY = new float[shaded.length], centreZ = new float[shaded.length];
+            int[] centreColours = new int[shaded.length];
+            for (int t = 0; t < shaded.length; t++) {
+                Triangle triangle = shaded[t];
+                centreX[t] = (triangle.v1.x + triangle.v2.x + triangle.v3.x) / 3.0f;
+                centreY[t] = (triangle.v1.y + triangle.v2.y + triangle.v3.y) / 3.0f;
+                centreZ[t] = (triangle.v1.z + triangle.v2.z + triangle.v3.z) / 3.0f;
+            }
+            for (ColourShader shader : shaders) {
+                runner.run("ColourShader.shadeBasedOnTriangle", "ns/op", shaded.length, () -> {
+                    long rgb = 0;
+                    for (Triangle triangle : shaded) {
+                        rgb += shader.shadeBasedOnTriangle(triangle).getRGB();
+                    }
+                    return rgb;
+                }, "mesh", name, "triangles", triangles, "shader", shader.getClass().getSimpleName());
+                runner.run("ColourShader.shadeARGB", "ns/op", shaded.length, () -> {
+                    long rgb = 0;
+                    for (Triangle triangle : shaded) {
+                        rgb += shader.shadeARGB(triangle);
+                    }
+                    return rgb;
+                }, "mesh", name, "triangles", triangles, "shader", shader.getClass().getSimpleName());
+                runner.run("ColourShader.shadeCentroids", "ns/op", shaded.length, () -> {
+                    shader.shadeCentroids(centreX, centreY, centreZ, 0, shaded.length, centreColours);
+                    return centreColours[shaded.length - 1];
+                }, "mesh", name, "triangles", triangles, "shader", shader.getClass().getSimpleName());
+            }
+        }
+
+        //Light every triangle of the fixture with a sun and a growing number of point lights around it
+        for (int lightCount : LIGHT_COUNTS) {
+            if (!runner.accepts("LightingShader.shadeSurfaces", "mesh", name, "triangles", triangles, "lights", String.valueOf(lightCount))) {
+                continue;
+            }
+            Triangle[] shaded = object.loadTriangles();
+            float[] centreX = new float[shaded.length], centreY = new float[shaded.length], centreZ = new float[shaded.length];
+            for (int t = 0; t < shaded.length; t++) {
+                Triangle triangle = shaded[t];
+                centreX[t] = (triangle.v1.x + triangle.v2.x + triangle.v3.x) / 3.0f;
+                centreY[t] = (triangle.v1.y + triangle.v2.y + triangle.v3.y) / 3.0f;
+                centreZ[t] = (triangle.v1.z + triangle.v2.z + triangle.v3.z) / 3.0f;
+            }
+            Light[] lights = new Light[lightCount];
+            lights[0] = Light.directional(Color.WHITE, 0.6f, new Vertex(-0.4f, -1, 0.6f));
+            for (int l = 1; l < lightCount; l++) {
+                double angle = Math.PI * 2 * l / (lightCount - 1);
+                lights[l] = Light.point(Color.WHITE, 1, new Vertex(centre.x + extent * (float) Math.cos(angle), centre.y + extent,
+                        centre.z + extent * (float) Math.sin(angle)), extent * 3);
+            }
+            LightingShader shader = new LightingShader(new Color(255, 0, 0), scene);
+            int[] colours = new int[shaded.length];
+            runner.run("LightingShader.shadeSurfaces", "ns/op", shaded.length, () -> {
+                shader.shadeSurfaces(centreX, centreY, centreZ, mesh.normalX, mesh.normalY, mesh.normalZ, lights, lightCount,
+                        0, shaded.length, colours);
+                return colours[shaded.length - 1];
+            }, "mesh", name, "triangles", triangles, "lights", String.valueOf(lightCount));
+        }
+
+        //Read the fixture back from an .obj file
+        if (runner.accepts("RenderObject.loadObject", "mesh", name, "triangles", triangles)
+                || runner.accepts("ObjParser.parse", "mesh", name, "triangles", triangles, "mode", "whole")
+                || runner.accepts("ObjParser.parse", "mesh", name, "triangles", triangles, "mode", "parallel")
+                || runner.accepts("MeshCache.read", "mesh", name, "triangles", triangles)) {
+            File obj = File.createTempFile(name + "_" + size + "_", ".obj");
+            obj.deleteOnExit();
+            writeObj(mesh, obj);
+            runner.run("RenderObject.loadObject", "ms/op", 1, () -> {
+                RenderObject.clearLoadedObjects(); //Otherwise every run after the first only shares the first run's meshes
+                RenderObject loaded = RenderObject.loadObject(obj.getPath(), name, null, new Vertex(0, 0, 0));
+                return loaded.getTCount();
+            }, "mesh", name, "triangles", triangles);
+            for (String mode : new String[] {"whole", "parallel"}) {
+                runner.run("ObjParser.parse", "ms/op", 1, () -> {
+                    try {
+                        ObjParser parsed = mode.equals("whole") ? ObjParser.parseWhole(obj.toPath())
+                                : ObjParser.parseParallel(obj.toPath(), obj.length(), Runtime.getRuntime().availableProcessors());
+                        return parsed.getTriangleCount();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, "mesh", name, "triangles", triangles, "mode", mode);
+            }
+
+            //Read the mesh back from the cache file loadObject wrote next to the .obj file
+            byte[] hash = MeshCache.hash(obj.toPath());
+            Path cache = MeshCache.cacheFile(obj.toPath(), hash);
+            if (MeshCache.read(cache, hash) == null) {
+                MeshCache.write(cache, hash, mesh);
+            }
+            runner.run("MeshCache.read", "ms/op", 1, () -> {
+                try {
+                    return MeshCache.read(cache, hash).getTriangleCount();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, "mesh", name, "triangles", triangles);
+            Files.deleteIfExists(cache);
+            obj.delete();
+        }
+    }
+
+    /**
+     * Returns whether the whole frame benchmark will run for any of the kernel backends with a fixture.
+     */
+    private static boolean acceptsFrames(BenchmarkRunner runner, String mesh, String triangles) {
+        for (VertexKernels kernels : VertexKernels.getBackends()) {
+            if (runner.accepts("FrameRenderer.render", "mesh", mesh, "triangles", triangles, "kernels", kernels.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether any of the kernel benchmarks will run with a fixture.
+     */
+    private static boolean acceptsKernels(BenchmarkRunner runner, String mesh, String triangles) {
+        for (VertexKernels kernels : VertexKernels.getBackends()) {
+            for (String benchmark : new String[] {"VertexKernels.transform", "VertexKernels.project", "VertexKernels.shadeByDistance"}) {
+                if (runner.accepts(benchmark, "mesh", mesh, "triangles", triangles, "kernels", kernels.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the rasterizer benchmark will run for any of the ways of outlining edges with a fixture.
+     */
+    private static boolean acceptsOutlines(BenchmarkRunner runner, String mesh, String triangles) {
+        for (String outlines : OUTLINES) {
+            if (runner.accepts("Rasterizer.drawScene", "mesh", mesh, "triangles", triangles, "outlines", outlines)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether any of the lighting benchmarks on a fixture passes the filter.
+     */
+    private static boolean acceptsLighting(BenchmarkRunner runner, String mesh, String triangles) {
+        for (int lightCount : LIGHT_COUNTS) {
+            if (runner.accepts("LightingShader.shadeSurfaces", "mesh", mesh, "triangles", triangles, "lights", String.valueOf(lightCount))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the shader benchmark will run for any of the shaders with a fixture.
+     */
+    private static boolean acceptsShader(BenchmarkRunner runner, String mesh, String triangles) {
+        for (String shader : SHADERS) {
+            if (runner.accepts("ColourShader.shadeBasedOnTriangle", "mesh", mesh, "triangles", triangles, "shader", shader)
+                    || runner.accepts("ColourShader.shadeARGB", "mesh", mesh, "triangles", triangles, "shader", shader)
+                    || runner.accepts("ColourShader.shadeCentroids", "mesh", mesh, "triangles", triangles, "shader", shader)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Times sorting random depths, both from scratch every frame and from the previous frame's order after the
+     * depths have shifted a little, which is what a slowly moving camera gives.
+     */
+    private static void benchmarkSort(BenchmarkRunner runner, int size) {
+        String triangles = String.valueOf(size);
+        if (!runner.accepts("DepthSorter.sort", "order", "cold", "triangles", triangles)
+                && !runner.accepts("DepthSorter.sort", "order", "coherent", "triangles", triangles)) {
+            return;
+        }
+
+        Random random = new Random(1);
+        float[] depths = new float[size];
+        int[] indices = new int[size];
+        for (int t = 0; t < size; t++) {
+            depths[t] = random.nextFloat() * 100;
+            indices[t] = t;
+        }
+
+        DepthSorter sorter = new DepthSorter();
+        runner.run("DepthSorter.sort", "ns/op", size, () -> {
+            sorter.reset();
+            return sorter.sort(depths, indices, size)[size / 2];
+        }, "order", "cold", "triangles", triangles);
+
+        float[] shift = {0.01f};
+        runner.run("DepthSorter.sort", "ns/op", size, () -> {
+            //Move a few percent of the triangles so the previous order is close but broken
+            for (int t = 0; t < size; t += 37) {
+                depths[t] += shift[0];
+            }
+            shift[0] = -shift[0];
+            return sorter.sort(depths, indices, size)[size / 2];
+        }, "order", "coherent", "triangles", triangles);
+    }
+
+    /**
+     * Writes a mesh as an .obj file of vertex and triangle lines.
+     */
+    private static void writeObj(Mesh mesh, File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            for (int v = 0; v < mesh.getVertexCount(); v++) {
+                writer.println("v " + mesh.x[v] + " " + mesh.y[v] + " " + mesh.z[v]);
+            }
+            for (int t = 0; t < mesh.getTriangleCount(); t++) {
+                writer.println("f " + (mesh.indices[t * 3] + 1) + " " + (mesh.indices[t * 3 + 1] + 1) + " " + (mesh.indices[t * 3 + 2] + 1));
+            }
+        }
+    }
+}
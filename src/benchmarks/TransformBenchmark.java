@@ -0,0 +1,116 @@
+package benchmarks;
+
+import java.util.Random;
+import maths.Mat4;
+import objects.Vertex;
+
+/**
+ * The TransformBenchmark class compares the two ways of moving vertices from model space onto the screen.
+ * The old path scales, rotates and translates every vertex, then moves it around the camera and projects it,
+ * with Vertex.rotateWithSinCos for both rotations. The new path composes the same steps into one Mat4 per frame
+ * and multiplies each vertex by it once. Both paths produce the same clip space coordinates.
+ * Run it with: java -cp src benchmarks.TransformBenchmark [vertexCount] [frames]
+ */
+public class TransformBenchmark {
+
+    /**
+     * Runs both paths for a number of warm up frames, then times them and prints the results.
+     *
+     * @param args The number of vertices and the number of timed frames, both optional.
+     */
+    public static void main(String[] args) {
+        int vertexCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        //Random model space vertices
+        Random random = new Random(1);
+        float[] x = new float[vertexCount];
+        float[] y = new float[vertexCount];
+        float[] z = new float[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            x[v] = random.nextFloat() * 2 - 1;
+            y[v] = random.nextFloat() * 2 - 1;
+            z[v] = random.nextFloat() * 2 - 1;
+        }
+        float[] outX = new float[vertexCount];
+        float[] outY = new float[vertexCount];
+        float[] outW = new float[vertexCount];
+
+        //Warm up both paths so they are compiled before being timed
+        for (int frame = 0; frame < frames / 4 + 10; frame++) {
+            rotateWithSinCosFrame(x, y, z, outX, outY, outW, frame);
+            matrixFrame(x, y, z, outX, outY, outW, frame);
+        }
+
+        long start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            rotateWithSinCosFrame(x, y, z, outX, outY, outW, frame);
+        }
+        double oldMs = (System.nanoTime() - start) / 1e6 / frames;
+        float oldCheck = outX[vertexCount / 2];
+
+        start = System.nanoTime();
+        for (int frame = 0; frame < frames; frame++) {
+            matrixFrame(x, y, z, outX, outY, outW, frame);
+        }
+        double newMs = (System.nanoTime() - start) / 1e6 / frames;
+        float newCheck = outX[vertexCount / 2];
+
+        System.out.printf("vertices %d, frames %d%n", vertexCount, frames);
+        System.out.printf("rotateWithSinCos: %.3f ms per frame, %.2f ns per vertex%n", oldMs, oldMs * 1e6 / vertexCount);
+        System.out.printf("composed Mat4:    %.3f ms per frame, %.2f ns per vertex%n", newMs, newMs * 1e6 / vertexCount);
+        System.out.printf("speedup %.2fx, results differ by %g%n", oldMs / newMs, Math.abs(oldCheck - newCheck));
+    }
+
+    /**
+     * Moves every vertex onto the screen one step at a time, the way the renderer did before the matrices were composed.
+     */
+    private static void rotateWithSinCosFrame(float[] x, float[] y, float[] z, float[] outX, float[] outY, float[] outW, int frame) {
+        Vertex scale = new Vertex(1.5f, 1.5f, 1.5f);
+        Vertex rotation = new Vertex(0.1f, frame * 0.01f, 0);
+        Vertex position = new Vertex(3, 1, 0);
+        Vertex camPos = new Vertex(0, 2, -10);
+        Vertex camRotation = new Vertex(0.1f, 0, 0);
+
+        Vertex s = new Vertex((float) Math.sin(-rotation.x), (float) Math.sin(-rotation.y), (float) Math.sin(-rotation.z));
+        Vertex c = new Vertex((float) Math.cos(-rotation.x), (float) Math.cos(-rotation.y), (float) Math.cos(-rotation.z));
+        Vertex camS = new Vertex((float) Math.sin(camRotation.x), (float) Math.sin(camRotation.y), (float) Math.sin(camRotation.z));
+        Vertex camC = new Vertex((float) Math.cos(camRotation.x), (float) Math.cos(camRotation.y), (float) Math.cos(camRotation.z));
+
+        for (int v = 0; v < x.length; v++) {
+            Vertex world = Vertex.add(Vertex.rotateWithSinCos(Vertex.multiply(new Vertex(x[v], y[v], z[v]), scale), s, c), position);
+            Vertex d = Vertex.rotateWithSinCos(Vertex.difference(world, camPos), camS, camC);
+            outX[v] = 1.2f * d.x;
+            outY[v] = 1.2f * d.y;
+            outW[v] = d.z;
+        }
+    }
+
+    /**
+     * Composes the same steps into one matrix and multiplies every vertex by it once.
+     */
+    private static void matrixFrame(float[] x, float[] y, float[] z, float[] outX, float[] outY, float[] outW, int frame) {
+        Mat4 scratch = new Mat4();
+        Mat4 world = new Mat4().setTranslation(3, 1, 0);
+        world.multiply(scratch.setRotation(0.1f, frame * 0.01f, 0));
+        world.multiply(scratch.setScale(1.5f, 1.5f, 1.5f));
+        Mat4 view = new Mat4().setRotation((float) Math.sin(0.1f), 0, 0, (float) Math.cos(0.1f), 1, 1);
+        view.multiply(scratch.setTranslation(0, -2, 10));
+        Mat4 projection = new Mat4();
+        projection.m00 = 1.2f;
+        projection.m11 = 1.2f;
+        projection.m32 = 1;
+        projection.m33 = 0;
+        Mat4 m = new Mat4().multiply(projection, view).multiply(world);
+
+        float m00 = m.m00, m01 = m.m01, m02 = m.m02, m03 = m.m03;
+        float m10 = m.m10, m11 = m.m11, m12 = m.m12, m13 = m.m13;
+        float m30 = m.m30, m31 = m.m31, m32 = m.m32, m33 = m.m33;
+        for (int v = 0; v < x.length; v++) {
+            float vx = x[v], vy = y[v], vz = z[v];
+            outX[v] = m00 * vx + m01 * vy + m02 * vz + m03;
+            outY[v] = m10 * vx + m11 * vy + m12 * vz + m13;
+            outW[v] = m30 * vx + m31 * vy + m32 * vz + m33;
+        }
+    }
+}
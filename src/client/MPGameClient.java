@@ -55,6 +55,9 @@ public class MPGameClient {
     private Vertex player_position, player_rotation; //Player's position and rotation
     private boolean has_joined_game; //Flag to track if the player has successfully joined the game
     private HashMap<String, RenderObject> nameToObject; //Mapping between player names and their respective objects in the scene
+    private HashMap<String, Long> nameToLastUpdate; //Mapping between player names and the time the server last sent their state
+    public static final long PLAYER_TIMEOUT_MS = 3000; //Time without updates after which a player is treated as having left
+    public static final String PLAYER_MODEL = "data/monkey.obj"; //Model every other player is drawn with
     private Scene game_scene; //The current game scene
 
     //CONSTRUCTOR - Initializes the client and sets up networking
@@ -68,6 +71,8 @@ public class MPGameClient {
         player_rotation = new Vertex(0, 0, 0); //Initialize player's rotation
         this.game_scene = game_scene; //Set the current game scene
         this.nameToObject = new HashMap<>(); //Initialize the name-to-object mapping
+        this.nameToLastUpdate = new HashMap<>(); //Initialize the name-to-update-time mapping
+        RenderObject.loadObject(PLAYER_MODEL, "player", null, new Vertex(0, 0, 0)); //Load the player model up front, so players joining later share its meshes without stalling the network thread
     }
 
     //MAIN CLIENT LOOP - Sends player state to the server and processes responses
@@ -92,6 +97,11 @@ public class MPGameClient {
                 processPacket(getFirstPacket()); //Process each received packet
             }
 
+            //Remove the players the server no longer sends, they have left the game
+            if (has_joined_game) {
+                removeStalePlayers();
+            }
+
             Thread.sleep(50); //Control frame rate (approx. 20 frames per second)
         }
     }
@@ -135,6 +145,7 @@ public class MPGameClient {
     public void processPositionPacket(ServerStatePositionPacket packet) {
         String name = packet.name;
         Vertex player_pos = packet.vertex;
+        nameToLastUpdate.put(name, System.currentTimeMillis()); //Record that the player is still in the game
 
         //If the player is already known, update their position
         if (nameToObject.keySet().contains(name)) {
@@ -142,7 +153,7 @@ public class MPGameClient {
             obj.setPosition(player_pos);
         } else {
             //If the player is new, load their model and add them to the game scene
-            RenderObject obj = RenderObject.loadObject("data/monkey.obj", "player", new InverseSqrShadow(new Color(0,0,255), game_scene), new Vertex(0,0f,0));
+            RenderObject obj = RenderObject.loadObject(PLAYER_MODEL, "player", new InverseSqrShadow(new Color(0,0,255), game_scene), new Vertex(0,0f,0));
             nameToObject.put(name, obj); //Map their name to the object
             game_scene.addObject(obj); //Add the object to the game scene
         }
@@ -152,6 +163,7 @@ public class MPGameClient {
     public void processRotationPacket(ServerStateRotationPacket packet) {
         String name = packet.name;
         Vertex player_pos = packet.vertex;
+        nameToLastUpdate.put(name, System.currentTimeMillis()); //Record that the player is still in the game
 
         //If the player is already known, update their rotation
         if (nameToObject.keySet().contains(name)) {
@@ -160,12 +172,32 @@ public class MPGameClient {
             obj.setRotation(alteredRotation);
         } else {
             //If the player is new, load their model and add them to the game scene
-            RenderObject obj = RenderObject.loadObject("data/monkey.obj", "player", new InverseSqrShadow(new Color(0,0,255), game_scene), new Vertex(0,0f,0));
+            RenderObject obj = RenderObject.loadObject(PLAYER_MODEL, "player", new InverseSqrShadow(new Color(0,0,255), game_scene), new Vertex(0,0f,0));
             nameToObject.put(name, obj); //Map their name to the object
             game_scene.addObject(obj); //Add the object to the game scene
         }
     }
 
+    //Removes the players that have not been updated for longer than the timeout from the map and the game scene
+    public void removeStalePlayers() {
+        long now = System.currentTimeMillis();
+        ArrayList<String> stalePlayers = new ArrayList<>();
+        for (String name : nameToLastUpdate.keySet()) {
+            if (now - nameToLastUpdate.get(name) > PLAYER_TIMEOUT_MS) {
+                stalePlayers.add(name);
+            }
+        }
+
+        for (String name : stalePlayers) {
+            nameToLastUpdate.remove(name);
+            RenderObject obj = nameToObject.remove(name);
+            if (obj != null) {
+                game_scene.removeObject(obj); //The scene frees the player's triangles at the start of the next frame
+            }
+            System.out.println("PLAYER : " + name + " LEFT THE GAME");
+        }
+    }
+
     //Sends a packet to the server
     public void sendPacket(Packet packet) throws IOException {
         sendString(packet.toString());
@@ -8,9 +8,21 @@ import objects.Vertex;
  * The ColourShader class is an abstract base class for shaders that process
  * a triangle's data and its base colour to produce a final shaded colour.
  * This simulates how pixel shaders work in rendering pipelines.
+ * The renderer shades each chunk of an object's triangles with one call to shadeCentroids, from the centres of the
+ * triangles it is going to draw, into packed ARGB ints. Every call only sees one shader, so the loop inside it stays
+ * simple for the JIT however many kinds of shader a scene uses.
+ * Shaders that only implement shadeBasedOnTriangle or shadeARGB still work, they are given each centre as a triangle
+ * and their Color is packed for them.
+ * Shaders that light triangles ask for normals through getNormalMode, and are then shaded through shadeSurfaces with
+ * each triangle's world space normal and the lights that reach its object.
  */
 public abstract class ColourShader {
 
+    //Which normals the scene hands to shadeSurfaces, from getNormalMode
+    public static final int NORMALS_NONE = 0; //No normals, the shader is only given centres through shadeCentroids
+    public static final int NORMALS_FACE = 1; //Each triangle's own face normal
+    public static final int NORMALS_SMOOTH = 2; //The average of the smoothed normals at each triangle's corners
+
     /**
      * Abstract method that must be implemented by subclasses to apply specific
      * shading logic based on the triangle's data.
@@ -20,6 +32,72 @@ public abstract class ColourShader {
      */
     public abstract Color shadeBasedOnTriangle(Triangle triangle);
 
+    /**
+     * Shades a triangle into a packed ARGB colour, the form the framebuffer stores.
+     * Subclasses should override this to shade without creating a Color for every triangle.
+     * 
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle as 0xAARRGGBB.
+     */
+    public int shadeARGB(Triangle triangle) {
+        return shadeBasedOnTriangle(triangle).getRGB();
+    }
+
+    /**
+     * Shades a range of triangles at once from the centres of their world space corners, into packed ARGB colours.
+     * Shaders that only need a triangle's average position should override this to shade straight from the arrays.
+     * By default each centre is passed to shadeARGB as a triangle with all three corners on it.
+     * 
+     * @param x The x-coordinate of each triangle's centre.
+     * @param y The y-coordinate of each triangle's centre.
+     * @param z The z-coordinate of each triangle's centre.
+     * @param from The index of the first triangle.
+     * @param to One more than the index of the last triangle.
+     * @param into Where the packed ARGB colour of each triangle is written, at the same index as its centre.
+     */
+    public void shadeCentroids(float[] x, float[] y, float[] z, int from, int to, int[] into) {
+        //The corners share one vertex, so moving it moves the whole triangle
+        Vertex centre = new Vertex(0, 0, 0);
+        Triangle point = new Triangle(centre, centre, centre);
+        for (int i = from; i < to; i++) {
+            centre.x = x[i];
+            centre.y = y[i];
+            centre.z = z[i];
+            into[i] = shadeARGB(point);
+        }
+    }
+
+    /**
+     * Returns which normals the shader needs. Shaders that need none are shaded through shadeCentroids.
+     * 
+     * @return NORMALS_NONE, NORMALS_FACE or NORMALS_SMOOTH.
+     */
+    public int getNormalMode() {
+        return NORMALS_NONE;
+    }
+
+    /**
+     * Shades a range of triangles at once from their world space centres and unit normals, lit by the lights that
+     * reach their object. Only called for shaders whose getNormalMode is not NORMALS_NONE.
+     * By default the normals and lights are ignored and the triangles are shaded through shadeCentroids.
+     * 
+     * @param x The x-coordinate of each triangle's centre.
+     * @param y The y-coordinate of each triangle's centre.
+     * @param z The z-coordinate of each triangle's centre.
+     * @param normalX The x-component of each triangle's normal.
+     * @param normalY The y-component of each triangle's normal.
+     * @param normalZ The z-component of each triangle's normal.
+     * @param lights The lights that reach the triangles' object.
+     * @param lightCount The number of lights in use at the start of the array.
+     * @param from The index of the first triangle.
+     * @param to One more than the index of the last triangle.
+     * @param into Where the packed ARGB colour of each triangle is written, at the same index as its centre.
+     */
+    public void shadeSurfaces(float[] x, float[] y, float[] z, float[] normalX, float[] normalY, float[] normalZ,
+            Light[] lights, int lightCount, int from, int to, int[] into) {
+        shadeCentroids(x, y, z, from, to, into);
+    }
+
     /**
      * Sigmoid function to normalize the input value `x` for shading purposes.
      * This is used to smoothly transition values, commonly in shading and lighting.
@@ -1,7 +1,6 @@
 package colours;
 import java.awt.Color;
 import objects.Triangle;
-import objects.Vertex;
 
 /**
  * HorizontalShader is a ColourShader that applies a shadow effect based on the x-axis.
@@ -15,6 +14,12 @@ public class HorizontalShader extends ColourShader {
     //Parameters to adjust the shading effect
     private float axisAdjust = 0.4f; //Shifts the point where shading begins on the x-axis
     private float inputMult = 0.5f; //Multiplier to control the intensity of the shadow effect
+
+    //The shaded colour for axis values below axisAdjust, where the shadow changes quickly
+    private static final float TABLE_RANGE = 32; //How far below axisAdjust the table reaches
+    private static final float TABLE_STEPS_PER_UNIT = 256; //Steps per unit of axis value
+    private final ShadeTable shades;
+    private final int argb; //The base colour packed as ARGB
     
     /**
      * Constructor to initialize the HorizontalShader with a base colour.
@@ -23,6 +28,9 @@ public class HorizontalShader extends ColourShader {
      */
     public HorizontalShader(Color colour) {
         this.colour = colour; //Store the base colour of the object
+        this.argb = colour.getRGB();
+        this.shades = new ShadeTable(colour, axisValue -> newShadow(inputMult * ((float) axisValue - axisAdjust)),
+                axisAdjust - TABLE_RANGE, axisAdjust, TABLE_STEPS_PER_UNIT);
     }
 
     /**
@@ -34,24 +42,47 @@ public class HorizontalShader extends ColourShader {
      */
     @Override
     public Color shadeBasedOnTriangle(Triangle triangle) {
+        int shaded = shadeARGB(triangle);
+        return shaded == argb ? colour : new Color(shaded);
+    }
+
+    /**
+     * Shades the triangle into a packed ARGB colour, looking the shadow up by the triangle's axis value.
+     * 
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle as 0xAARRGGBB.
+     */
+    @Override
+    public int shadeARGB(Triangle triangle) {
         //Average the triangle's vertices into a single point to apply the shading
-        Vertex tV = averageTriangleAsVertex(triangle);
+        float x = (triangle.v1.x + triangle.v2.x + triangle.v3.x) / 3.0f;
+        float z = (triangle.v1.z + triangle.v2.z + triangle.v3.z) / 3.0f;
 
         //Calculate a value based on the x and z position to determine the shading effect
-        float axisValue = (tV.x + (-tV.z / 2)) / 1.5f;
-
-        //Apply the shading to the RGB components based on the axis value
-        int red = capRGB((int) Math.round(newShadow(inputMult * (axisValue - axisAdjust)) * colour.getRed()));
-        int green = capRGB((int) Math.round(newShadow(inputMult * (axisValue - axisAdjust)) * colour.getGreen()));
-        int blue = capRGB((int) Math.round(newShadow(inputMult * (axisValue - axisAdjust)) * colour.getBlue()));
+        float axisValue = (x + (-z / 2)) / 1.5f;
 
         //If the triangle is not on the negative x-axis, return the base colour without shading
         if (axisValue > axisAdjust) {
-            return colour;
+            return argb;
         }
+        return shades.shade(axisValue);
+    }
 
-        //Return the final shaded colour based on the calculated RGB values
-        Color finalColour = new Color(red, green, blue);
-        return finalColour;
+    /**
+     * Shades many triangles at once from their centres, which is the same as shading each triangle on its own.
+     * 
+     * @param x The x-coordinate of each triangle's centre.
+     * @param y The y-coordinate of each triangle's centre, which this shader does not use.
+     * @param z The z-coordinate of each triangle's centre.
+     * @param from The index of the first triangle.
+     * @param to One more than the index of the last triangle.
+     * @param into Where the packed ARGB colour of each triangle is written.
+     */
+    @Override
+    public void shadeCentroids(float[] x, float[] y, float[] z, int from, int to, int[] into) {
+        for (int i = from; i < to; i++) {
+            float axisValue = (x[i] + (-z[i] / 2)) / 1.5f;
+            into[i] = axisValue > axisAdjust ? argb : shades.shade(axisValue);
+        }
     }
 }
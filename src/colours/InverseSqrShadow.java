@@ -1,6 +1,7 @@
 package colours;
 
 import core.Scene;
+import core.VertexKernels;
 import java.awt.Color;
 import objects.Triangle;
 import objects.Vertex;
@@ -21,6 +22,11 @@ public class InverseSqrShadow extends ColourShader {
     //Reference to the scene to get the camera's position
     private Scene scene;
 
+    //The shaded colour for distances close enough to the camera that the falloff changes quickly
+    private static final float TABLE_RANGE = 256; //Distance from the camera the table reaches
+    private static final float TABLE_STEPS_PER_UNIT = 32; //Steps per unit of distance
+    private final ShadeTable shades;
+
     /**
      * Constructor to initialize the InverseSqrShadow shader with a base colour and reference to the scene.
      * 
@@ -31,6 +37,7 @@ public class InverseSqrShadow extends ColourShader {
         this.colour = colour; 
         this.shaderFactor = 0.03f; //Controls the intensity of the shading effect
         this.scene = scene; //Store the reference to the scene for camera position access
+        this.shades = new ShadeTable(colour, distance -> inverseSquare((float) distance * shaderFactor), 0, TABLE_RANGE, TABLE_STEPS_PER_UNIT);
     }
 
     /**
@@ -43,19 +50,41 @@ public class InverseSqrShadow extends ColourShader {
      */
     @Override
     public Color shadeBasedOnTriangle(Triangle triangle) {
-        //Average the triangle's vertices into a single point for shading calculation
-        Vertex tV = averageTriangleAsVertex(triangle);
+        return new Color(shadeARGB(triangle));
+    }
 
-        //Calculate the distance from the triangle to the camera
-        Vertex diff = Vertex.difference(tV, scene.getCamPos());
+    /**
+     * Shades the triangle into a packed ARGB colour, looking the falloff up by the triangle's distance from the camera.
+     * 
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle as 0xAARRGGBB.
+     */
+    @Override
+    public int shadeARGB(Triangle triangle) {
+        //Average the triangle's vertices into a single point and find its distance from the camera
+        Vertex camPos = scene.getCamPos();
+        float dx = (triangle.v1.x + triangle.v2.x + triangle.v3.x) / 3.0f - camPos.x;
+        float dy = (triangle.v1.y + triangle.v2.y + triangle.v3.y) / 3.0f - camPos.y;
+        float dz = (triangle.v1.z + triangle.v2.z + triangle.v3.z) / 3.0f - camPos.z;
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
 
-        //Adjust the RGB values based on the inverse square of the distance and shaderFactor
-        int red = (int) Math.round(inverseSquare(diff.magnitude() * shaderFactor) * colour.getRed());
-        int green = (int) Math.round(inverseSquare(diff.magnitude() * shaderFactor) * colour.getGreen());
-        int blue = (int) Math.round(inverseSquare(diff.magnitude() * shaderFactor) * colour.getBlue());
+        return shades.shade(distance);
+    }
 
-        //Return the final shaded colour
-        Color finalColour = new Color(red, green, blue);
-        return finalColour;
+    /**
+     * Shades many triangles at once from their centres, which is the same as shading each triangle on its own.
+     * The distances run on several lanes at once when the Vector API backend is loaded.
+     * 
+     * @param x The x-coordinate of each triangle's centre.
+     * @param y The y-coordinate of each triangle's centre.
+     * @param z The z-coordinate of each triangle's centre.
+     * @param from The index of the first triangle.
+     * @param to One more than the index of the last triangle.
+     * @param into Where the packed ARGB colour of each triangle is written.
+     */
+    @Override
+    public void shadeCentroids(float[] x, float[] y, float[] z, int from, int to, int[] into) {
+        Vertex camPos = scene.getCamPos();
+        VertexKernels.getInstance().shadeByDistance(x, y, z, from, to, camPos.x, camPos.y, camPos.z, shades, into);
     }
 }
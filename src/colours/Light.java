@@ -0,0 +1,148 @@
+package colours;
+
+import java.awt.Color;
+import objects.Vertex;
+
+/**
+ * The Light class is a light in a scene, either a directional light shining the same way everywhere, like the sun,
+ * or a point light shining out from a position and fading to nothing at its range.
+ * The scene gives every lit object the list of lights that can reach it, so point lights far from an object
+ * cost it nothing. Lights can be moved and recoloured between frames.
+ */
+public class Light {
+
+    public static final int DIRECTIONAL = 0;
+    public static final int POINT = 1;
+
+    //How quickly point lights fade, as the inverse square falloff at their range before it is windowed to zero.
+    //Falloff is measured in fractions of the range, so scaling a scene and its lights' ranges together looks the same
+    private static final float FALLOFF = 16;
+
+    private final int type; //DIRECTIONAL or POINT
+    private float red, green, blue; //Colour of the light times its intensity, 1 being a white light at full strength
+    private Vertex direction = new Vertex(0, -1, 0); //Unit direction the light travels in, for directional lights
+    private Vertex position = new Vertex(0, 0, 0); //Where the light shines from, for point lights
+    private float range; //Distance at which a point light has faded to nothing
+
+    /**
+     * Constructs a light of the given type, colour and intensity.
+     *
+     * @param type DIRECTIONAL or POINT.
+     * @param colour The colour of the light.
+     * @param intensity How strong the light is, 1 lighting a surface facing it with the full colour.
+     */
+    private Light(int type, Color colour, float intensity) {
+        this.type = type;
+        setColour(colour, intensity);
+    }
+
+    /**
+     * Creates a directional light, which lights every object from the same direction wherever it is.
+     *
+     * @param colour The colour of the light.
+     * @param intensity How strong the light is, 1 lighting a surface facing it with the full colour.
+     * @param direction The direction the light travels in, which does not need to be unit length.
+     * @return The new light.
+     */
+    public static Light directional(Color colour, float intensity, Vertex direction) {
+        Light light = new Light(DIRECTIONAL, colour, intensity);
+        light.setDirection(direction);
+        return light;
+    }
+
+    /**
+     * Creates a point light, which shines out from a position and fades with distance.
+     *
+     * @param colour The colour of the light.
+     * @param intensity How strong the light is close to its position.
+     * @param position Where the light shines from.
+     * @param range The distance at which the light has faded to nothing, objects further away are not lit by it.
+     * @return The new light.
+     */
+    public static Light point(Color colour, float intensity, Vertex position, float range) {
+        Light light = new Light(POINT, colour, intensity);
+        light.setPosition(position);
+        light.range = range;
+        return light;
+    }
+
+    /**
+     * Returns whether the light can reach any part of a bounding sphere.
+     *
+     * @param centre The centre of the sphere.
+     * @param radius The radius of the sphere.
+     * @return true for directional lights, and for point lights whose range overlaps the sphere.
+     */
+    public boolean reaches(Vertex centre, float radius) {
+        if (type == DIRECTIONAL) {
+            return true;
+        }
+        float dx = centre.x - position.x, dy = centre.y - position.y, dz = centre.z - position.z;
+        float reach = range + radius;
+        return dx * dx + dy * dy + dz * dz < reach * reach;
+    }
+
+    /**
+     * Returns how much of a point light is left at a distance, fading smoothly from about an inverse square falloff
+     * near the light to exactly nothing at its range, so cutting it off there leaves no visible edge.
+     *
+     * @param distanceSqrd The squared distance from the light.
+     * @return The multiplier for the light's colour, between 0 and 1.
+     */
+    public float attenuation(float distanceSqrd) {
+        float ratio = distanceSqrd / (range * range);
+        if (ratio >= 1) {
+            return 0;
+        }
+        float window = 1 - ratio * ratio;
+        return window * window / (1 + FALLOFF * ratio);
+    }
+
+    //Getters and setters for the light's properties
+    public int getType() {
+        return type;
+    }
+
+    public float getRed() {
+        return red;
+    }
+
+    public float getGreen() {
+        return green;
+    }
+
+    public float getBlue() {
+        return blue;
+    }
+
+    public void setColour(Color colour, float intensity) {
+        this.red = colour.getRed() / 255f * intensity;
+        this.green = colour.getGreen() / 255f * intensity;
+        this.blue = colour.getBlue() / 255f * intensity;
+    }
+
+    public Vertex getDirection() {
+        return direction;
+    }
+
+    public void setDirection(Vertex direction) {
+        float length = direction.magnitude();
+        this.direction = length > 0 ? Vertex.divide(direction, length) : new Vertex(0, -1, 0);
+    }
+
+    public Vertex getPosition() {
+        return position;
+    }
+
+    public void setPosition(Vertex position) {
+        this.position = position;
+    }
+
+    public float getRange() {
+        return range;
+    }
+
+    public void setRange(float range) {
+        this.range = range;
+    }
+}
@@ -0,0 +1,252 @@
+package colours;
+
+import core.Scene;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import objects.Triangle;
+import objects.Vertex;
+
+/**
+ * The LightingShader class lights triangles with the scene's lights, using Lambert's cosine law for the diffuse light
+ * and the Blinn-Phong half vector for the specular highlights, on top of a constant ambient light.
+ * Each triangle is lit at its centre with its face normal, or with the average of its corners' smoothed normals,
+ * so curved meshes shade more evenly. Triangles seen from behind are lit on the side facing the camera.
+ */
+public class LightingShader extends ColourShader {
+
+    //The base colour of the object, with each channel from 0 to 1
+    private final float red, green, blue;
+
+    //How the object reflects light
+    private float ambient = 0.15f; //Fraction of the base colour shown with no light at all
+    private float specular = 0.3f; //Strength of the highlights, which take the light's colour rather than the object's
+    private float shininess = 32; //How tight the highlights are, higher is glossier
+    private boolean smooth; //Whether smoothed vertex normals are used instead of face normals
+
+    //The highlight for evenly spaced cosines from 0 to 1, as raising to the shininess is too slow to do for every light
+    private static final int HIGHLIGHT_STEPS = 4096;
+    private final float[] highlights = new float[HIGHLIGHT_STEPS + 1];
+
+    //Reference to the scene to get the camera's position, and its lights when shading single triangles
+    private Scene scene;
+
+    /**
+     * Constructs a lighting shader with a base colour, lit with face normals.
+     *
+     * @param colour The base colour of the object.
+     * @param scene The scene whose camera the highlights are seen from.
+     */
+    public LightingShader(Color colour, Scene scene) {
+        this.red = colour.getRed() / 255f;
+        this.green = colour.getGreen() / 255f;
+        this.blue = colour.getBlue() / 255f;
+        this.scene = scene;
+        setShininess(shininess);
+    }
+
+    /**
+     * Shades the triangle with all of the scene's lights.
+     *
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle.
+     */
+    @Override
+    public Color shadeBasedOnTriangle(Triangle triangle) {
+        return new Color(shadeARGB(triangle));
+    }
+
+    /**
+     * Shades the triangle into a packed ARGB colour with all of the scene's lights, using its face normal.
+     * This lights a batch of one triangle, so it is only meant for code that shades the odd triangle on its own.
+     *
+     * @param triangle The triangle to be shaded.
+     * @return The final shaded colour of the triangle as 0xAARRGGBB.
+     */
+    @Override
+    public int shadeARGB(Triangle triangle) {
+        float[] x = {(triangle.v1.x + triangle.v2.x + triangle.v3.x) / 3.0f};
+        float[] y = {(triangle.v1.y + triangle.v2.y + triangle.v3.y) / 3.0f};
+        float[] z = {(triangle.v1.z + triangle.v2.z + triangle.v3.z) / 3.0f};
+
+        //Cross product of the two edges leaving the first vertex, the same normal the mesh gives the triangle
+        float e1x = triangle.v2.x - triangle.v1.x, e1y = triangle.v2.y - triangle.v1.y, e1z = triangle.v2.z - triangle.v1.z;
+        float e2x = triangle.v3.x - triangle.v1.x, e2y = triangle.v3.y - triangle.v1.y, e2z = triangle.v3.z - triangle.v1.z;
+        float nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0) {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+        }
+
+        ArrayList<Light> lights = scene.getLights();
+        int[] into = new int[1];
+        shadeSurfaces(x, y, z, new float[] {nx}, new float[] {ny}, new float[] {nz},
+                lights.toArray(new Light[0]), lights.size(), 0, 1, into);
+        return into[0];
+    }
+
+    /**
+     * Gives every triangle in the range the ambient light only, as the scene always lights this shader's triangles
+     * through shadeSurfaces and there are no normals to light them with here.
+     * 
+     * @param x The x-coordinate of each triangle's centre (unused in this implementation).
+     * @param y The y-coordinate of each triangle's centre (unused in this implementation).
+     * @param z The z-coordinate of each triangle's centre (unused in this implementation).
+     * @param from The index of the first triangle.
+     * @param to One more than the index of the last triangle.
+     * @param into Where the packed ARGB colour of each triangle is written.
+     */
+    @Override
+    public void shadeCentroids(float[] x, float[] y, float[] z, int from, int to, int[] into) {
+        Arrays.fill(into, from, to, ShadeTable.pack(Math.round(ambient * red * 255),
+                Math.round(ambient * green * 255), Math.round(ambient * blue * 255)));
+    }
+
+    /**
+     * Returns which normals the triangles are lit with.
+     * 
+     * @return NORMALS_SMOOTH if smoothing is on, NORMALS_FACE otherwise.
+     */
+    @Override
+    public int getNormalMode() {
+        return smooth ? NORMALS_SMOOTH : NORMALS_FACE;
+    }
+
+    /**
+     * Lights a range of triangles. Each light adds its diffuse light, the cosine of the angle between the normal and
+     * the direction to the light, tinted by the base colour, and its highlight, the cosine between the normal and the
+     * vector halfway between the light and the camera raised to the shininess. Point lights are faded by distance.
+     * The work for each triangle only grows with the lights that reach its object.
+     *
+     * @param x The x-coordinate of each triangle's centre.
+     * @param y The y-coordinate of each triangle's centre.
+     * @param z The z-coordinate of each triangle's centre.
+     * @param normalX The x-component of each triangle's normal.
+     * @param normalY The y-component of each triangle's normal.
+     * @param normalZ The z-component of each triangle's normal.
+     * @param lights The lights that reach the triangles' object.
+     * @param lightCount The number of lights in use at the start of the array.
+     * @param from The index of the first triangle.
+     * @param to One more than the index of the last triangle.
+     * @param into Where the packed ARGB colour of each triangle is written.
+     */
+    @Override
+    public void shadeSurfaces(float[] x, float[] y, float[] z, float[] normalX, float[] normalY, float[] normalZ,
+            Light[] lights, int lightCount, int from, int to, int[] into) {
+        Vertex camPos = scene.getCamPos();
+        float camX = camPos.x, camY = camPos.y, camZ = camPos.z;
+
+        for (int i = from; i < to; i++) {
+            //Direction from the triangle to the camera
+            float vx = camX - x[i], vy = camY - y[i], vz = camZ - z[i];
+            float viewLength = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+            if (viewLength > 0) {
+                vx /= viewLength;
+                vy /= viewLength;
+                vz /= viewLength;
+            }
+
+            //Light the side of the triangle the camera sees
+            float nx = normalX[i], ny = normalY[i], nz = normalZ[i];
+            if (nx * vx + ny * vy + nz * vz < 0) {
+                nx = -nx;
+                ny = -ny;
+                nz = -nz;
+            }
+
+            float diffuseR = ambient, diffuseG = ambient, diffuseB = ambient;
+            float specularR = 0, specularG = 0, specularB = 0;
+            for (int l = 0; l < lightCount; l++) {
+                Light light = lights[l];
+
+                //Direction from the triangle to the light, and how much of the light is left when it gets there
+                float lx, ly, lz, strength;
+                if (light.getType() == Light.DIRECTIONAL) {
+                    Vertex direction = light.getDirection();
+                    lx = -direction.x;
+                    ly = -direction.y;
+                    lz = -direction.z;
+                    strength = 1;
+                } else {
+                    Vertex position = light.getPosition();
+                    lx = position.x - x[i];
+                    ly = position.y - y[i];
+                    lz = position.z - z[i];
+                    float distanceSqrd = lx * lx + ly * ly + lz * lz;
+                    strength = light.attenuation(distanceSqrd);
+                    if (strength <= 0) {
+                        continue;
+                    }
+                    float distance = (float) Math.sqrt(distanceSqrd);
+                    lx /= distance;
+                    ly /= distance;
+                    lz /= distance;
+                }
+
+                //Lambert's cosine law, surfaces facing away from the light get none of it
+                float cosine = nx * lx + ny * ly + nz * lz;
+                if (cosine <= 0) {
+                    continue;
+                }
+                float diffuse = cosine * strength;
+                diffuseR += light.getRed() * diffuse;
+                diffuseG += light.getGreen() * diffuse;
+                diffuseB += light.getBlue() * diffuse;
+
+                //Blinn-Phong highlight from the vector halfway between the light and the camera
+                float hx = lx + vx, hy = ly + vy, hz = lz + vz;
+                float halfLength = (float) Math.sqrt(hx * hx + hy * hy + hz * hz);
+                if (specular > 0 && halfLength > 0) {
+                    float halfCosine = (nx * hx + ny * hy + nz * hz) / halfLength;
+                    if (halfCosine > 0) {
+                        float highlight = highlights[(int) (Math.min(halfCosine, 1) * HIGHLIGHT_STEPS + 0.5f)] * specular * strength;
+                        specularR += light.getRed() * highlight;
+                        specularG += light.getGreen() * highlight;
+                        specularB += light.getBlue() * highlight;
+                    }
+                }
+            }
+
+            into[i] = ShadeTable.pack(Math.round((red * diffuseR + specularR) * 255),
+                    Math.round((green * diffuseG + specularG) * 255), Math.round((blue * diffuseB + specularB) * 255));
+        }
+    }
+
+    //Getters and setters for how the object reflects light
+    public float getAmbient() {
+        return ambient;
+    }
+
+    public void setAmbient(float ambient) {
+        this.ambient = ambient;
+    }
+
+    public float getSpecular() {
+        return specular;
+    }
+
+    public void setSpecular(float specular) {
+        this.specular = specular;
+    }
+
+    public float getShininess() {
+        return shininess;
+    }
+
+    public void setShininess(float shininess) {
+        this.shininess = shininess;
+        for (int step = 0; step <= HIGHLIGHT_STEPS; step++) {
+            highlights[step] = (float) Math.pow((double) step / HIGHLIGHT_STEPS, shininess);
+        }
+    }
+
+    public boolean getSmooth() {
+        return smooth;
+    }
+
+    public void setSmooth(boolean smooth) {
+        this.smooth = smooth;
+    }
+}
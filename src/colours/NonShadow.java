@@ -1,6 +1,7 @@
 package colours;
 
 import java.awt.Color;
+import java.util.Arrays;
 import objects.Triangle;
 
 /**
@@ -11,6 +12,7 @@ public class NonShadow extends ColourShader {
     
     //The base colour of the object
     private Color colour; 
+    private int argb; //The base colour packed as ARGB
     
     /**
      * Constructor to initialize the NonShadow shader with a base colour.
@@ -19,6 +21,7 @@ public class NonShadow extends ColourShader {
      */
     public NonShadow(Color colour) {
         this.colour = colour; //Store the provided base colour
+        this.argb = colour.getRGB();
     }
 
     /**
@@ -33,4 +36,30 @@ public class NonShadow extends ColourShader {
         //Return the base colour without applying any shading logic
         return colour;
     }
+
+    /**
+     * Returns the base colour of the object packed as ARGB.
+     * 
+     * @param triangle The triangle being shaded (unused in this implementation).
+     * @return The base colour of the object as 0xAARRGGBB.
+     */
+    @Override
+    public int shadeARGB(Triangle triangle) {
+        return argb;
+    }
+
+    /**
+     * Gives every triangle in the range the base colour packed as ARGB.
+     * 
+     * @param x The x-coordinate of each triangle's centre (unused in this implementation).
+     * @param y The y-coordinate of each triangle's centre (unused in this implementation).
+     * @param z The z-coordinate of each triangle's centre (unused in this implementation).
+     * @param from The index of the first triangle.
+     * @param to One more than the index of the last triangle.
+     * @param into Where the packed ARGB colour of each triangle is written.
+     */
+    @Override
+    public void shadeCentroids(float[] x, float[] y, float[] z, int from, int to, int[] into) {
+        Arrays.fill(into, from, to, argb);
+    }
 }
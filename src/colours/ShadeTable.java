@@ -0,0 +1,103 @@
+package colours;
+
+import java.awt.Color;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * The ShadeTable class is a lookup table of a base colour darkened by a falloff function,
+ * stored as packed ARGB values so shaders can hand colours straight to the framebuffer.
+ * The falloff's input, such as a distance or an axis value, is quantized into evenly spaced steps over a range,
+ * and each step holds the shaded colour at its middle. Inputs outside the range are shaded exactly instead,
+ * so the table only has to cover the range where the falloff changes quickly.
+ */
+public class ShadeTable {
+
+    private final int red, green, blue; //The base colour's channels
+    private final DoubleUnaryOperator falloff; //How much of the base colour is left for a given input
+    private final float min; //The input of the first step
+    private final float max; //The input at the end of the last step
+    private final float stepsPerUnit; //Number of steps per unit of input
+    private final int[] shades; //The packed ARGB colour of every step
+
+    /**
+     * Constructs a table of a base colour shaded by a falloff function over a range of inputs.
+     *
+     * @param colour The base colour.
+     * @param falloff The multiplier applied to each channel of the base colour for a given input.
+     * @param min The smallest input in the table.
+     * @param max The largest input in the table.
+     * @param stepsPerUnit The number of steps per unit of input, more steps give colours closer to the exact ones.
+     */
+    public ShadeTable(Color colour, DoubleUnaryOperator falloff, float min, float max, float stepsPerUnit) {
+        this.red = colour.getRed();
+        this.green = colour.getGreen();
+        this.blue = colour.getBlue();
+        this.falloff = falloff;
+        this.min = min;
+        this.max = max;
+        this.stepsPerUnit = stepsPerUnit;
+
+        int steps = Math.max(1, (int) Math.ceil((max - min) * stepsPerUnit));
+        shades = new int[steps];
+        for (int step = 0; step < steps; step++) {
+            shades[step] = shadeExactly(min + (step + 0.5f) / stepsPerUnit);
+        }
+    }
+
+    /**
+     * Returns the shaded colour for an input, from the table if it is inside the table's range.
+     *
+     * @param input The falloff's input.
+     * @return The packed ARGB colour.
+     */
+    public int shade(float input) {
+        if (input >= min && input < max) {
+            return shades[Math.min(shades.length - 1, (int) ((input - min) * stepsPerUnit))];
+        }
+        return shadeExactly(input);
+    }
+
+    /**
+     * Calculates the shaded colour for an input without the table.
+     *
+     * @param input The falloff's input.
+     * @return The packed ARGB colour.
+     */
+    public int shadeExactly(float input) {
+        float multiplier = (float) falloff.applyAsDouble(input);
+        return pack(Math.round(multiplier * red), Math.round(multiplier * green), Math.round(multiplier * blue));
+    }
+
+    /**
+     * Packs three channels into an opaque ARGB colour, capping each to the range 0 to 255.
+     *
+     * @param red The red channel.
+     * @param green The green channel.
+     * @param blue The blue channel.
+     * @return The packed ARGB colour.
+     */
+    public static int pack(int red, int green, int blue) {
+        return 0xFF000000 | ColourShader.capRGB(red) << 16 | ColourShader.capRGB(green) << 8 | ColourShader.capRGB(blue);
+    }
+
+    public int getSize() {
+        return shades.length;
+    }
+
+    //Getters for the table itself, for loops that look many inputs up at once
+    public int[] getShades() {
+        return shades;
+    }
+
+    public float getMin() {
+        return min;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    public float getStepsPerUnit() {
+        return stepsPerUnit;
+    }
+}
@@ -0,0 +1,325 @@
+package core;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The DepthSorter class orders the triangles of a scene from back to front for painter's algorithm rendering.
+ * Instead of moving the triangles themselves, it sorts a list of triangle indices using a float-key radix sort,
+ * and starts each frame from the previous frame's order so that a camera which barely moved costs a single pass.
+ */
+public class DepthSorter {
+
+    //Triangle count above which keys are built and scattered on several threads
+    public static final int PARALLEL_THRESHOLD = 1 << 20;
+
+    //Radix sort parameters (three passes of 11 bits cover a 32 bit key)
+    private static final int RADIX_BITS = 11;
+    private static final int RADIX_SIZE = 1 << RADIX_BITS;
+    private static final int RADIX_MASK = RADIX_SIZE - 1;
+    private static final int PASSES = 3;
+
+    //Limit of element moves for the insertion sort fix up, relative to the triangle count
+    private static final int INSERTION_BUDGET_DIVISOR = 8;
+
+    private int[] order = new int[0]; //The current back to front permutation of triangle indices
+    private int[] orderScratch = new int[0]; //Scratch permutation used while scattering
+    private int[] keys = new int[0]; //Sortable keys in permutation order
+    private int[] keysScratch = new int[0]; //Scratch keys used while scattering
+    private int[] histogram = new int[RADIX_SIZE]; //Bucket counts for the serial radix pass
+
+    private int count; //Number of triangles in the current permutation
+
+    //Frame stamps used to carry last frame's order over to the triangles visible this frame
+    private int[] visibleStamp = new int[0]; //The frame each triangle was last submitted in
+    private int[] placedStamp = new int[0]; //The frame each triangle was last placed into the permutation in
+    private int frame; //Counter identifying the current sort
+
+    /**
+     * Sorts the submitted triangles by their depth values so that the furthest triangle comes first.
+     * The arrays holding the triangles are never touched, only the returned permutation changes.
+     * Triangles that were also submitted last frame start from their old place in the order,
+     * newly submitted triangles are appended after them.
+     *
+     * @param depths The depth value of each triangle, indexed by triangle.
+     * @param triangles The indices of the triangles to sort.
+     * @param triangleCount The number of entries of triangles to sort.
+     * @return The permutation of triangle indices ordered from back to front, with triangleCount valid entries.
+     */
+    public int[] sort(float[] depths, int[] triangles, int triangleCount) {
+        //Carry last frame's order over to this frame's triangles
+        mergePreviousOrder(triangles, triangleCount, depths.length);
+        if (count < 2) {
+            return order;
+        }
+
+        //Gather the keys in last frame's order, counting the places where that order is now broken
+        int breaks = gatherKeys(depths);
+        if (breaks == 0) {
+            return order; //Nothing moved far enough to change the drawing order
+        }
+
+        //A few small disturbances are cheaper to repair in place than to sort from scratch
+        if (breaks < count / INSERTION_BUDGET_DIVISOR && insertionSort(count / INSERTION_BUDGET_DIVISOR)) {
+            return order;
+        }
+
+        if (count >= PARALLEL_THRESHOLD) {
+            parallelRadixSort();
+        } else {
+            radixSort();
+        }
+        return order;
+    }
+
+    /**
+     * Returns the permutation produced by the last call to sort.
+     *
+     * @return The permutation of triangle indices ordered from back to front.
+     */
+    public int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the number of valid entries in the permutation produced by the last call to sort.
+     *
+     * @return The number of sorted triangles.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Forgets the previous frame's order, for when the triangles behind the indices have changed.
+     */
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * Builds this frame's starting permutation: the triangles still submitted in last frame's order,
+     * followed by the newly submitted triangles in the order they were given.
+     *
+     * @param triangles The indices of the triangles submitted this frame.
+     * @param triangleCount The number of submitted triangles.
+     * @param indexLimit One more than the largest triangle index that can be submitted.
+     */
+    private void mergePreviousOrder(int[] triangles, int triangleCount, int indexLimit) {
+        if (order.length < triangleCount) {
+            int size = Math.max(triangleCount, order.length * 2);
+            order = Arrays.copyOf(order, size);
+            orderScratch = new int[size];
+            keys = new int[size];
+            keysScratch = new int[size];
+        }
+        if (visibleStamp.length < indexLimit) {
+            visibleStamp = Arrays.copyOf(visibleStamp, indexLimit);
+            placedStamp = Arrays.copyOf(placedStamp, indexLimit);
+        }
+        frame++;
+
+        //Mark this frame's triangles
+        for (int i = 0; i < triangleCount; i++) {
+            visibleStamp[triangles[i]] = frame;
+        }
+
+        //Keep last frame's order for the triangles that are still submitted
+        int placed = 0;
+        for (int i = 0; i < count; i++) {
+            int t = order[i];
+            if (t < indexLimit && visibleStamp[t] == frame && placedStamp[t] != frame) {
+                placedStamp[t] = frame;
+                orderScratch[placed++] = t;
+            }
+        }
+
+        //Append the triangles that were not submitted last frame
+        for (int i = 0; i < triangleCount; i++) {
+            int t = triangles[i];
+            if (placedStamp[t] != frame) {
+                placedStamp[t] = frame;
+                orderScratch[placed++] = t;
+            }
+        }
+
+        int[] temp = order;
+        order = orderScratch;
+        orderScratch = temp;
+        count = placed;
+    }
+
+    /**
+     * Converts a float into an int key that sorts in ascending unsigned order when the floats
+     * are sorted in descending order, so the furthest triangle receives the smallest key.
+     *
+     * @param value The depth value to convert.
+     * @return The sortable key.
+     */
+    private static int descendingKey(float value) {
+        int bits = Float.floatToIntBits(value);
+        //Flip every bit of negative floats and only the sign bit of positive ones, then invert for descending order
+        return ~(bits ^ ((bits >> 31) | 0x80000000));
+    }
+
+    /**
+     * Fills the key array in the current permutation order.
+     *
+     * @param depths The depth value of each triangle.
+     * @return The number of adjacent pairs that are out of order.
+     */
+    private int gatherKeys(float[] depths) {
+        if (count >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, count).parallel().forEach(i -> keys[i] = descendingKey(depths[order[i]]));
+        } else {
+            for (int i = 0; i < count; i++) {
+                keys[i] = descendingKey(depths[order[i]]);
+            }
+        }
+
+        int breaks = 0;
+        for (int i = 1; i < count; i++) {
+            if (Integer.compareUnsigned(keys[i - 1], keys[i]) > 0) {
+                breaks++;
+            }
+        }
+        return breaks;
+    }
+
+    /**
+     * Repairs a nearly sorted permutation with an insertion sort, giving up once it has moved too many elements.
+     *
+     * @param budget The maximum number of element moves before giving up.
+     * @return true if the permutation is now sorted, false if the budget ran out.
+     */
+    private boolean insertionSort(int budget) {
+        int moves = 0;
+        for (int i = 1; i < count; i++) {
+            int key = keys[i];
+            int index = order[i];
+            int j = i - 1;
+            while (j >= 0 && Integer.compareUnsigned(keys[j], key) > 0) {
+                keys[j + 1] = keys[j];
+                order[j + 1] = order[j];
+                j--;
+                if (++moves > budget) {
+                    //Put the element being inserted back so the permutation stays valid for the radix sort
+                    keys[j + 1] = key;
+                    order[j + 1] = index;
+                    return false;
+                }
+            }
+            keys[j + 1] = key;
+            order[j + 1] = index;
+        }
+        return true;
+    }
+
+    /**
+     * Sorts the permutation with a stable least significant digit radix sort.
+     * Stability keeps equally distant triangles in last frame's order, which avoids flickering.
+     */
+    private void radixSort() {
+        for (int pass = 0; pass < PASSES; pass++) {
+            int shift = pass * RADIX_BITS;
+
+            //Count how many keys fall into each bucket
+            Arrays.fill(histogram, 0);
+            for (int i = 0; i < count; i++) {
+                histogram[(keys[i] >>> shift) & RADIX_MASK]++;
+            }
+
+            //Skip the pass if every key shares this digit
+            if (histogram[(keys[0] >>> shift) & RADIX_MASK] == count) {
+                continue;
+            }
+
+            //Turn the counts into starting offsets
+            int sum = 0;
+            for (int b = 0; b < RADIX_SIZE; b++) {
+                int c = histogram[b];
+                histogram[b] = sum;
+                sum += c;
+            }
+
+            //Scatter the keys and indices into their buckets
+            for (int i = 0; i < count; i++) {
+                int key = keys[i];
+                int destination = histogram[(key >>> shift) & RADIX_MASK]++;
+                keysScratch[destination] = key;
+                orderScratch[destination] = order[i];
+            }
+            swapBuffers();
+        }
+    }
+
+    /**
+     * Sorts the permutation with a radix sort whose counting and scattering is split into chunks handled in parallel.
+     * Each chunk scatters into its own precomputed ranges, so the result is identical to the serial sort.
+     */
+    private void parallelRadixSort() {
+        int chunks = Math.max(1, Runtime.getRuntime().availableProcessors());
+        int chunkSize = (count + chunks - 1) / chunks;
+        int[][] offsets = new int[chunks][RADIX_SIZE];
+
+        for (int pass = 0; pass < PASSES; pass++) {
+            int shift = pass * RADIX_BITS;
+
+            //Count each chunk's bucket sizes independently
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                int[] counts = offsets[chunk];
+                Arrays.fill(counts, 0);
+                int end = Math.min(count, (chunk + 1) * chunkSize);
+                for (int i = chunk * chunkSize; i < end; i++) {
+                    counts[(keys[i] >>> shift) & RADIX_MASK]++;
+                }
+            });
+
+            //Skip the pass if every key shares this digit
+            int firstBucket = (keys[0] >>> shift) & RADIX_MASK;
+            int firstBucketTotal = 0;
+            for (int chunk = 0; chunk < chunks; chunk++) {
+                firstBucketTotal += offsets[chunk][firstBucket];
+            }
+            if (firstBucketTotal == count) {
+                continue;
+            }
+
+            //Turn the counts into offsets, bucket by bucket and then chunk by chunk to keep the sort stable
+            int sum = 0;
+            for (int b = 0; b < RADIX_SIZE; b++) {
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    int c = offsets[chunk][b];
+                    offsets[chunk][b] = sum;
+                    sum += c;
+                }
+            }
+
+            //Scatter each chunk into its own ranges
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                int[] destinations = offsets[chunk];
+                int end = Math.min(count, (chunk + 1) * chunkSize);
+                for (int i = chunk * chunkSize; i < end; i++) {
+                    int key = keys[i];
+                    int destination = destinations[(key >>> shift) & RADIX_MASK]++;
+                    keysScratch[destination] = key;
+                    orderScratch[destination] = order[i];
+                }
+            });
+            swapBuffers();
+        }
+    }
+
+    /**
+     * Swaps the working arrays with their scratch copies after a scatter pass.
+     */
+    private void swapBuffers() {
+        int[] temp = keys;
+        keys = keysScratch;
+        keysScratch = temp;
+
+        temp = order;
+        order = orderScratch;
+        orderScratch = temp;
+    }
+}
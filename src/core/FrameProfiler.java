@@ -0,0 +1,298 @@
+package core;
+
+import java.util.Arrays;
+
+/**
+ * The FrameProfiler class measures how long each stage of drawing a frame takes and counts the triangles that pass
+ * through the pipeline. Stages are timed by marking the end of each one with System.nanoTime, so a frame costs a
+ * handful of timer reads and no allocation. The stage times and counters of the last HISTORY_LENGTH frames are kept
+ * in ring buffers, which the stats methods and the on screen overlay read from.
+ *
+ * A frame starts with beginFrame and its stages are added with mark, each covering the time since the previous mark.
+ * The frame is recorded when endFrame is called, or when the next frame begins, so stages that happen after the scene
+ * is rendered, such as rasterizing and showing it, still count towards the same frame.
+ */
+public class FrameProfiler {
+
+    //The stages of a frame, in the order they happen
+    public static final int SCENE_CHANGES = 0; //Adding and removing objects
+    public static final int CAMERA_EVENTS = 1; //Following camera events and building the camera matrices and frustum
+    public static final int CULLING = 2; //Refitting and walking the object hierarchy, picking levels of detail
+    public static final int PROJECTION = 3; //Transforming and projecting the vertices of visible objects
+    public static final int SHADING = 4; //Classifying and shading triangles
+    public static final int CLIPPING = 5; //Building the render list and clipping triangles against the frustum
+    public static final int SORTING = 6; //Sorting triangles by depth
+    public static final int RASTERIZATION = 7; //Filling the triangles into the framebuffer
+    public static final int PRESENTATION = 8; //Copying the framebuffer to the screen
+    public static final int STAGE_COUNT = 9;
+    public static final int FRAME = STAGE_COUNT; //Index of the whole frame's time, the sum of its stages
+
+    public static final String[] STAGE_NAMES = {"Scene changes", "Camera events", "Culling", "Projection", "Shading",
+            "Clipping", "Sorting", "Rasterization", "Presentation", "Frame"};
+
+    //The counters recorded for each frame
+    public static final int TRIANGLES_SUBMITTED = 0; //Triangles of every object in the scene
+    public static final int TRIANGLES_CULLED = 1; //Triangles dropped by object culling, frustum culling or back face culling
+    public static final int TRIANGLES_SHADED = 2; //Triangles given a colour by their object's shader
+    public static final int TRIANGLES_DRAWN = 3; //Triangles in the render list, after clipping
+    public static final int COUNTER_COUNT = 4;
+
+    public static final String[] COUNTER_NAMES = {"Submitted", "Culled", "Shaded", "Drawn"};
+
+    public static final int HISTORY_LENGTH = 240; //Number of frames kept
+
+    private boolean enabled = true; //Whether stages and counters are being recorded
+
+    //The frame being measured
+    private final long[] current = new long[STAGE_COUNT]; //Time spent in each stage so far
+    private final long[] currentCounters = new long[COUNTER_COUNT];
+    private long lastMark; //The time the last stage ended
+    private boolean frameOpen = false; //Whether a frame has begun and not been recorded
+
+    //Ring buffers of the recorded frames, the newest frame is at historyIndex - 1
+    private final long[][] stageHistory = new long[STAGE_COUNT + 1][HISTORY_LENGTH];
+    private final long[][] counterHistory = new long[COUNTER_COUNT][HISTORY_LENGTH];
+    private int historyIndex = 0; //Where the next frame is recorded
+    private long frameCount = 0; //Number of frames recorded in total
+
+    private final long[] sortScratch = new long[HISTORY_LENGTH]; //Used to find percentiles without allocating
+
+    /**
+     * Starts measuring a new frame, recording the previous one first if it has not been recorded.
+     */
+    public void beginFrame() {
+        if (!enabled) {
+            return;
+        }
+        if (frameOpen) {
+            endFrame();
+        }
+        Arrays.fill(current, 0);
+        Arrays.fill(currentCounters, 0);
+        frameOpen = true;
+        lastMark = System.nanoTime();
+    }
+
+    /**
+     * Adds the time since the previous mark to a stage of the current frame.
+     *
+     * @param stage The stage that has just finished.
+     */
+    public void mark(int stage) {
+        if (!frameOpen) {
+            return;
+        }
+        long now = System.nanoTime();
+        current[stage] += now - lastMark;
+        lastMark = now;
+    }
+
+    /**
+     * Starts timing again from now without adding the time since the previous mark to any stage,
+     * for when work outside the frame has happened since then.
+     */
+    public void resume() {
+        if (frameOpen) {
+            lastMark = System.nanoTime();
+        }
+    }
+
+    /**
+     * Sets one of the current frame's counters.
+     *
+     * @param counter The counter to set.
+     * @param value Its value for this frame.
+     */
+    public void setCounter(int counter, long value) {
+        if (frameOpen) {
+            currentCounters[counter] = value;
+        }
+    }
+
+    /**
+     * Records the current frame in the history. Does nothing if no frame is being measured.
+     */
+    public void endFrame() {
+        if (!frameOpen) {
+            return;
+        }
+        long total = 0;
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            stageHistory[stage][historyIndex] = current[stage];
+            total += current[stage];
+        }
+        stageHistory[FRAME][historyIndex] = total;
+        for (int counter = 0; counter < COUNTER_COUNT; counter++) {
+            counterHistory[counter][historyIndex] = currentCounters[counter];
+        }
+        historyIndex = (historyIndex + 1) % HISTORY_LENGTH;
+        frameCount++;
+        frameOpen = false;
+    }
+
+    /**
+     * Forgets every recorded frame.
+     */
+    public void reset() {
+        for (long[] history : stageHistory) {
+            Arrays.fill(history, 0);
+        }
+        for (long[] history : counterHistory) {
+            Arrays.fill(history, 0);
+        }
+        historyIndex = 0;
+        frameCount = 0;
+        frameOpen = false;
+    }
+
+    /**
+     * Returns the time a stage took in a recent frame.
+     *
+     * @param stage The stage, or FRAME for the whole frame.
+     * @param framesAgo 0 for the last recorded frame, 1 for the one before it and so on.
+     * @return The time in nanoseconds, or 0 if that frame has not been recorded.
+     */
+    public long getNanos(int stage, int framesAgo) {
+        if (framesAgo >= getRecordedFrames()) {
+            return 0;
+        }
+        return stageHistory[stage][Math.floorMod(historyIndex - 1 - framesAgo, HISTORY_LENGTH)];
+    }
+
+    /**
+     * Returns the time a stage took in the last recorded frame.
+     *
+     * @param stage The stage, or FRAME for the whole frame.
+     * @return The time in nanoseconds.
+     */
+    public long getLastNanos(int stage) {
+        return getNanos(stage, 0);
+    }
+
+    /**
+     * Returns the mean time a stage took over the recorded frames.
+     *
+     * @param stage The stage, or FRAME for the whole frame.
+     * @return The mean time in nanoseconds, or 0 if no frames have been recorded.
+     */
+    public double getAverageNanos(int stage) {
+        return average(stageHistory[stage]);
+    }
+
+    /**
+     * Returns the longest time a stage took over the recorded frames.
+     *
+     * @param stage The stage, or FRAME for the whole frame.
+     * @return The longest time in nanoseconds.
+     */
+    public long getMaxNanos(int stage) {
+        long max = 0;
+        int frames = getRecordedFrames();
+        for (int i = 0; i < frames; i++) {
+            max = Math.max(max, stageHistory[stage][i]);
+        }
+        return max;
+    }
+
+    /**
+     * Returns a percentile of the time a stage took over the recorded frames.
+     *
+     * @param stage The stage, or FRAME for the whole frame.
+     * @param percentile The percentile, from 0 to 100.
+     * @return The time in nanoseconds that the given percentage of frames took no longer than.
+     */
+    public long getPercentileNanos(int stage, double percentile) {
+        int frames = getRecordedFrames();
+        if (frames == 0) {
+            return 0;
+        }
+        System.arraycopy(stageHistory[stage], 0, sortScratch, 0, frames);
+        Arrays.sort(sortScratch, 0, frames);
+        int rank = (int) Math.ceil(percentile / 100 * frames) - 1;
+        return sortScratch[Math.max(0, Math.min(frames - 1, rank))];
+    }
+
+    /**
+     * Counts how many recorded frames a stage took each range of times for.
+     *
+     * @param stage The stage, or FRAME for the whole frame.
+     * @param bins The array the counts are written into, one bin per range. Times beyond the last bin count towards it.
+     * @param binNanos The width of each bin in nanoseconds.
+     * @return The array that was written into.
+     */
+    public int[] getHistogram(int stage, int[] bins, long binNanos) {
+        Arrays.fill(bins, 0);
+        int frames = getRecordedFrames();
+        for (int i = 0; i < frames; i++) {
+            bins[(int) Math.min(bins.length - 1, stageHistory[stage][i] / binNanos)]++;
+        }
+        return bins;
+    }
+
+    /**
+     * Returns the value of a counter in the last recorded frame.
+     *
+     * @param counter The counter.
+     * @return Its value.
+     */
+    public long getCounter(int counter) {
+        if (getRecordedFrames() == 0) {
+            return 0;
+        }
+        return counterHistory[counter][Math.floorMod(historyIndex - 1, HISTORY_LENGTH)];
+    }
+
+    /**
+     * Returns the mean value of a counter over the recorded frames.
+     *
+     * @param counter The counter.
+     * @return Its mean value.
+     */
+    public double getAverageCounter(int counter) {
+        return average(counterHistory[counter]);
+    }
+
+    /**
+     * Returns the mean of the recorded entries of a ring buffer.
+     */
+    private double average(long[] history) {
+        int frames = getRecordedFrames();
+        if (frames == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 0; i < frames; i++) {
+            sum += history[i];
+        }
+        return (double) sum / frames;
+    }
+
+    /**
+     * Returns the number of frames in the history, at most HISTORY_LENGTH.
+     *
+     * @return The number of recorded frames the stats cover.
+     */
+    public int getRecordedFrames() {
+        return (int) Math.min(frameCount, HISTORY_LENGTH);
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Turns recording on or off. While it is off, frames are not measured and the history stays as it was.
+     *
+     * @param enabled True to record frames.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            frameOpen = false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
@@ -0,0 +1,111 @@
+package core;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+
+/**
+ * The FrameRenderer class draws a scene into a framebuffer, one whole frame at a time.
+ * It is the one path every frame takes: the scene is projected, then its triangles are rasterized into
+ * a framebuffer that can be shown on screen, saved or read back as raw pixels.
+ * The game panel and the headless renderer both draw through it, so they produce the same images.
+ * Rasterizing is timed as a stage of the scene's frame profiler.
+ */
+public class FrameRenderer {
+
+    private final Scene scene; //The scene being drawn
+    private final Rasterizer rasterizer; //Draws the projected triangles into the framebuffer
+    private int background = Color.BLACK.getRGB(); //The RGB colour the framebuffer is cleared to
+
+    /**
+     * Constructs a renderer that draws a scene into a framebuffer of the given size.
+     * The scene is set up to draw unsorted, as the rasterizer's depth buffer orders its triangles,
+     * and to cull against exactly the region the framebuffer shows.
+     *
+     * @param scene The scene to draw.
+     * @param width The width of the framebuffer in pixels.
+     * @param height The height of the framebuffer in pixels.
+     * @param graphicsRatio How much of the framebuffer the projected coordinates take up.
+     */
+    public FrameRenderer(Scene scene, int width, int height, float graphicsRatio) {
+        this(scene, new Rasterizer(width, height), graphicsRatio);
+    }
+
+    /**
+     * Constructs a renderer that draws a scene with an existing rasterizer.
+     *
+     * @param scene The scene to draw.
+     * @param rasterizer The rasterizer to draw with.
+     * @param graphicsRatio How much of the framebuffer the projected coordinates take up.
+     */
+    public FrameRenderer(Scene scene, Rasterizer rasterizer, float graphicsRatio) {
+        this.scene = scene;
+        this.rasterizer = rasterizer;
+
+        //The rasterizer has a depth buffer, so the scene does not need to sort its triangles
+        scene.setDepthSorting(false);
+        rasterizer.setGraphicsRatio(graphicsRatio);
+
+        //Cull against exactly the region the rasterizer can show
+        scene.setViewBounds(rasterizer.getProjectedHalfWidth(), rasterizer.getProjectedHalfHeight());
+    }
+
+    /**
+     * Draws one frame of the scene from its current camera into the framebuffer.
+     */
+    public void render() {
+        //Renders the scene with the current camera view and objects' state, starting a new frame on the profiler
+        scene.renderScene();
+
+        //Fill every triangle into the framebuffer, the depth buffer takes care of the drawing order
+        rasterizer.clear(background);
+        rasterizer.drawScene(scene);
+        scene.getProfiler().mark(FrameProfiler.RASTERIZATION);
+    }
+
+    /**
+     * Copies the framebuffer into an array of RGB values, one per pixel in rows from the top left.
+     *
+     * @param into The array to copy into, at least width * height long, or null to allocate one.
+     * @return The array that was copied into.
+     */
+    public int[] copyPixels(int[] into) {
+        int[] pixels = rasterizer.getPixels();
+        if (into == null) {
+            into = new int[pixels.length];
+        }
+        System.arraycopy(pixels, 0, into, 0, pixels.length);
+        return into;
+    }
+
+    public BufferedImage getImage() {
+        return rasterizer.getImage();
+    }
+
+    public int[] getPixels() {
+        return rasterizer.getPixels();
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    public Rasterizer getRasterizer() {
+        return rasterizer;
+    }
+
+    public int getWidth() {
+        return rasterizer.getWidth();
+    }
+
+    public int getHeight() {
+        return rasterizer.getHeight();
+    }
+
+    public void setBackground(int background) {
+        this.background = background;
+    }
+
+    public int getBackground() {
+        return background;
+    }
+}
@@ -0,0 +1,408 @@
+package core;
+
+import colours.ColourShader;
+import colours.InverseSqrShadow;
+import colours.Light;
+import colours.LightingShader;
+import events.CameraEvent;
+import events.LinearCameraEvent;
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.imageio.ImageIO;
+import objects.Vertex;
+
+/**
+ * The HeadlessRenderer class draws a scene without a window, for benchmarking and checking the renderer
+ * on machines with no display. The camera follows a script of camera events timed by a simulated clock,
+ * which advances by exactly one frame's time per frame however long the frame took to draw, so the same
+ * script always produces the same frames. Frames are drawn through a FrameRenderer, the same path the game
+ * panel uses, and can be saved as PNG images along with how long each one took.
+ *
+ * A camera script is a text file with one camera keyframe per line:
+ *     duration x y z rotationX rotationY rotationZ
+ * The camera moves in a straight line from the previous keyframe to each one over its duration in seconds,
+ * so a first line with a duration of 0 sets where the camera starts. Lines starting with # are ignored.
+ *
+ * The outline mode is one of all, silhouettes, creases, features (silhouettes and creases), triangles (every edge of
+ * every triangle, the way outlines used to be drawn) or none. With -lit the objects are lit by a sun and two coloured
+ * point lights through LightingShader, instead of being darkened by their distance from the camera.
+ *
+ * Run it from the repository root with:
+ *     java -cp src core.HeadlessRenderer [-size WxH] [-fps N] [-script file] [-obj file]... [-out dir] [-frames N] [-threads N] [-outlines mode] [-lit] [-nopng]
+ */
+public class HeadlessRenderer {
+
+    //Column names of the profiler's stages in the timing file
+    private static final String[] STAGE_COLUMNS = {"scene_changes", "camera_events", "culling", "projection", "shading",
+            "clipping", "sorting", "rasterization", "presentation"};
+
+    private final FrameRenderer renderer; //Draws each frame
+    private final Scene scene; //The scene being drawn
+
+    private double frameRate = 30; //Frames per second of simulated time
+    private double time = 0; //The simulated time in milliseconds
+    private int frame = 0; //Number of frames drawn so far
+
+    /**
+     * Constructs a headless renderer that draws a scene into a framebuffer of the given size.
+     *
+     * @param scene The scene to draw.
+     * @param width The width of the framebuffer in pixels.
+     * @param height The height of the framebuffer in pixels.
+     */
+    public HeadlessRenderer(Scene scene, int width, int height) {
+        this(new FrameRenderer(scene, width, height, 0.5f));
+    }
+
+    /**
+     * Constructs a headless renderer that draws with an existing frame renderer.
+     *
+     * @param renderer The renderer to draw with.
+     */
+    public HeadlessRenderer(FrameRenderer renderer) {
+        this.renderer = renderer;
+        this.scene = renderer.getScene();
+
+        //Camera events follow the simulated clock instead of the system's
+        scene.setClock(() -> Math.round(time));
+    }
+
+    /**
+     * Draws one frame at the current simulated time, then moves the clock on by one frame.
+     *
+     * @return How long the frame took to draw in nanoseconds.
+     */
+    public long renderFrame() {
+        long start = System.nanoTime();
+        renderer.render();
+        long nanos = System.nanoTime() - start;
+
+        frame++;
+        time = frame * 1000 / frameRate;
+        return nanos;
+    }
+
+    /**
+     * Draws frames until the camera has finished its script, saving each one as a PNG image and writing
+     * its timings as a line of comma separated values: the time of the whole frame, of each of the frame
+     * profiler's stages and the profiler's triangle counts.
+     *
+     * @param maxFrames The most frames to draw, even if the script has not finished.
+     * @param outputDirectory The directory frames are saved in as frame_00000.png onwards, or null not to save them.
+     * @param timing Where the timing of each frame is written, or null not to write them.
+     * @return How long each frame took to draw in nanoseconds.
+     * @throws IOException If a frame cannot be saved.
+     */
+    public long[] run(int maxFrames, File outputDirectory, PrintStream timing) throws IOException {
+        if (outputDirectory != null) {
+            outputDirectory.mkdirs();
+        }
+        FrameProfiler profiler = scene.getProfiler();
+        if (timing != null) {
+            StringBuilder header = new StringBuilder("frame,time_ms,frame_ms");
+            for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+                header.append(',').append(STAGE_COLUMNS[stage]).append("_ms");
+            }
+            for (String counter : FrameProfiler.COUNTER_NAMES) {
+                header.append(',').append(counter.toLowerCase());
+            }
+            timing.println(header);
+        }
+
+        long[] frameNanos = new long[Math.min(maxFrames, 1024)];
+        int count = 0;
+        do {
+            double frameTime = time;
+            long nanos = renderFrame();
+            profiler.endFrame(); //Record the frame now, nothing is presented after it
+
+            if (count == frameNanos.length) {
+                frameNanos = Arrays.copyOf(frameNanos, count * 2);
+            }
+            frameNanos[count++] = nanos;
+
+            if (timing != null) {
+                StringBuilder line = new StringBuilder();
+                line.append(frame - 1).append(',').append(String.format("%.1f,%.3f", frameTime, nanos / 1e6));
+                for (int stage = 0; stage < FrameProfiler.STAGE_COUNT; stage++) {
+                    line.append(',').append(String.format("%.3f", profiler.getLastNanos(stage) / 1e6));
+                }
+                for (int counter = 0; counter < FrameProfiler.COUNTER_COUNT; counter++) {
+                    line.append(',').append(profiler.getCounter(counter));
+                }
+                timing.println(line);
+            }
+            if (outputDirectory != null) {
+                ImageIO.write(renderer.getImage(), "png", new File(outputDirectory, String.format("frame_%05d.png", frame - 1)));
+            }
+        } while (scene.hasCameraEvents() && count < maxFrames);
+
+        return Arrays.copyOf(frameNanos, count);
+    }
+
+    /**
+     * Reads a camera script, with one keyframe per line, into the camera events that move between the keyframes.
+     *
+     * @param path The path of the script file.
+     * @return The camera events in the order they happen.
+     * @throws IOException If the script cannot be read or a line is not a keyframe.
+     */
+    public static List<CameraEvent> loadScript(String path) throws IOException {
+        List<float[]> keyframes = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.split("\\s+");
+                if (parts.length != 7) {
+                    throw new IOException(path + ":" + lineNumber + ": expected duration x y z rotationX rotationY rotationZ");
+                }
+                float[] keyframe = new float[7];
+                try {
+                    for (int i = 0; i < 7; i++) {
+                        keyframe[i] = Float.parseFloat(parts[i]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException(path + ":" + lineNumber + ": " + e.getMessage());
+                }
+                keyframes.add(keyframe);
+            }
+        }
+        return toCameraEvents(keyframes);
+    }
+
+    /**
+     * Builds the camera script used when none is given, which circles the origin once while looking at it.
+     *
+     * @param radius The distance of the camera from the origin.
+     * @param height The height of the camera.
+     * @param seconds How long the circle takes.
+     * @return The camera events in the order they happen.
+     */
+    public static List<CameraEvent> orbitScript(float radius, float height, float seconds) {
+        int steps = 16;
+        float pitch = (float) Math.atan2(height, radius);
+        List<float[]> keyframes = new ArrayList<>();
+        for (int step = 0; step <= steps; step++) {
+            float angle = (float) (2 * Math.PI * step / steps);
+            keyframes.add(new float[] {step == 0 ? 0 : seconds / steps,
+                    (float) Math.sin(angle) * radius, height, (float) -Math.cos(angle) * radius, pitch, -angle, 0});
+        }
+        return toCameraEvents(keyframes);
+    }
+
+    /**
+     * Turns keyframes of duration, position and rotation into linear camera events between them.
+     */
+    private static List<CameraEvent> toCameraEvents(List<float[]> keyframes) {
+        List<CameraEvent> events = new ArrayList<>();
+        float[] previous = null;
+        for (float[] k : keyframes) {
+            Vertex position = new Vertex(k[1], k[2], k[3]);
+            Vertex rotation = new Vertex(k[4], k[5], k[6]);
+            Vertex startPosition = previous == null ? position : new Vertex(previous[1], previous[2], previous[3]);
+            Vertex startRotation = previous == null ? rotation : new Vertex(previous[4], previous[5], previous[6]);
+            events.add(new LinearCameraEvent(startPosition, position, startRotation, rotation, k[0]));
+            previous = k;
+        }
+        return events;
+    }
+
+    /**
+     * Renders a camera script headlessly and prints a summary of the frame times.
+     *
+     * @param args The options described in the class comment.
+     * @throws IOException If the script, a model or a frame cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        int width = 960, height = 540;
+        double fps = 30;
+        String script = null;
+        List<String> models = new ArrayList<>();
+        File outputDirectory = new File("headless");
+        int maxFrames = Integer.MAX_VALUE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean savePngs = true;
+        String outlines = "all";
+        boolean lit = false;
+
+        for (int i = 0; i < args.length; i++) {
+            boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("-size") && hasValue) {
+                String[] size = args[++i].split("x");
+                width = Integer.parseInt(size[0]);
+                height = Integer.parseInt(size[1]);
+            } else if (args[i].equals("-fps") && hasValue) {
+                fps = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("-script") && hasValue) {
+                script = args[++i];
+            } else if (args[i].equals("-obj") && hasValue) {
+                models.add(args[++i]);
+            } else if (args[i].equals("-out") && hasValue) {
+                outputDirectory = new File(args[++i]);
+            } else if (args[i].equals("-frames") && hasValue) {
+                maxFrames = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-threads") && hasValue) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-outlines") && hasValue) {
+                outlines = args[++i];
+            } else if (args[i].equals("-lit")) {
+                lit = true;
+            } else if (args[i].equals("-nopng")) {
+                savePngs = false;
+            } else {
+                System.out.println("Usage: HeadlessRenderer [-size WxH] [-fps N] [-script file] [-obj file]... [-out dir] [-frames N] [-threads N] [-outlines mode] [-lit] [-nopng]");
+                return;
+            }
+        }
+
+        Scene scene = new Scene(new ArrayList<>());
+        scene.setThreadCount(threads);
+        if (models.isEmpty()) {
+            addDemoObjects(scene, lit);
+        } else {
+            for (String model : models) {
+                scene.addObject(RenderObject.loadObject(model, model, demoShader(new Color(255, 255, 255), scene, lit), new Vertex(0, 0, 0)));
+            }
+        }
+        if (lit) {
+            addDemoLights(scene);
+        }
+
+        FrameRenderer renderer = new FrameRenderer(scene, new Rasterizer(width, height, threads, Rasterizer.DEFAULT_TILE_SIZE), 0.5f);
+        switch (outlines) {
+            case "all": scene.setOutlineEdges(Scene.OUTLINE_ALL); break;
+            case "silhouettes": scene.setOutlineEdges(Scene.OUTLINE_SILHOUETTES); break;
+            case "creases": scene.setOutlineEdges(Scene.OUTLINE_CREASES); break;
+            case "features": scene.setOutlineEdges(Scene.OUTLINE_SILHOUETTES | Scene.OUTLINE_CREASES); break;
+            case "triangles": scene.setOutlineEdges(Scene.OUTLINE_TRIANGLE_EDGES); break;
+            case "none": renderer.getRasterizer().setOutlines(false); break;
+            default: throw new IllegalArgumentException("Unknown outline mode: " + outlines);
+        }
+        HeadlessRenderer headless = new HeadlessRenderer(renderer);
+        headless.setFrameRate(fps);
+        for (CameraEvent event : script == null ? orbitScript(10, 2, 8) : loadScript(script)) {
+            scene.addCameraEvent(event);
+        }
+
+        //Timings always go next to the frames, or to the working directory if frames are not saved
+        File timingFile = savePngs ? new File(outputDirectory, "timing.csv") : new File("headless_timing.csv");
+        if (savePngs) {
+            outputDirectory.mkdirs();
+        }
+        long[] frameNanos;
+        try (PrintStream timing = new PrintStream(timingFile)) {
+            frameNanos = headless.run(maxFrames, savePngs ? outputDirectory : null, timing);
+        }
+
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+        double totalMs = 0;
+        for (long nanos : frameNanos) {
+            totalMs += nanos / 1e6;
+        }
+        System.out.printf("frames %d at %dx%d, mean %.3f ms, median %.3f ms, p95 %.3f ms, max %.3f ms, %.1f fps%n",
+                frameNanos.length, width, height, totalMs / frameNanos.length, sorted[sorted.length / 2] / 1e6,
+                sorted[(int) Math.min(sorted.length - 1, Math.ceil(sorted.length * 0.95) - 1)] / 1e6,
+                sorted[sorted.length - 1] / 1e6, frameNanos.length * 1000 / totalMs);
+        System.out.println("timings written to " + timingFile.getPath());
+    }
+
+    /**
+     * Adds the objects of the game demo to a scene: the teapot standing on the plane.
+     *
+     * @param scene The scene to add them to.
+     */
+    public static void addDemoObjects(Scene scene) {
+        addDemoObjects(scene, false);
+    }
+
+    /**
+     * Adds the objects of the game demo to a scene, shaded by their distance from the camera as in the game,
+     * or with smoothed lighting from the scene's lights.
+     *
+     * @param scene The scene to add them to.
+     * @param lit Whether the objects use LightingShader.
+     */
+    public static void addDemoObjects(Scene scene, boolean lit) {
+        RenderObject enemy = RenderObject.loadObject("data/teapot.obj", "enemy", demoShader(new Color(255, 0, 0), scene, lit), new Vertex(0, 0, 0));
+        RenderObject plane = RenderObject.loadObject("data/plane.obj", "plane", demoShader(new Color(255, 255, 255), scene, lit), new Vertex(0, 0, 0));
+        plane.setScale(new Vertex(3, 3, 3));
+        plane.setBackFaceCulling(false);
+        plane.bakeTransform();
+        scene.addObject(enemy);
+        scene.addObject(plane);
+    }
+
+    /**
+     * Adds the lights of the lit demo: a white sun shining down at an angle, and a warm and a cool point light
+     * on either side of the teapot.
+     *
+     * @param scene The scene to add them to.
+     */
+    public static void addDemoLights(Scene scene) {
+        scene.addLight(Light.directional(new Color(255, 250, 235), 0.6f, new Vertex(-0.4f, -1, 0.6f)));
+        scene.addLight(Light.point(new Color(255, 150, 60), 1f, new Vertex(3, 2, -2), 8));
+        scene.addLight(Light.point(new Color(80, 140, 255), 1f, new Vertex(-3, 2, 2), 8));
+    }
+
+    /**
+     * Creates the shader of a demo object.
+     */
+    private static ColourShader demoShader(Color colour, Scene scene, boolean lit) {
+        if (!lit) {
+            return new InverseSqrShadow(colour, scene);
+        }
+        LightingShader shader = new LightingShader(colour, scene);
+        shader.setSmooth(true);
+        return shader;
+    }
+
+    /**
+     * Sets how many frames are drawn per second of simulated time.
+     *
+     * @param frameRate The number of frames per second.
+     */
+    public void setFrameRate(double frameRate) {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("Frame rate must be positive: " + frameRate);
+        }
+        this.frameRate = frameRate;
+        this.time = frame * 1000 / frameRate;
+    }
+
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public int getFrame() {
+        return frame;
+    }
+
+    public FrameRenderer getRenderer() {
+        return renderer;
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+}
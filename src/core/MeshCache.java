@@ -0,0 +1,345 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ThreadLocalRandom;
+import objects.Mesh;
+import objects.Vertex;
+
+/**
+ * The MeshCache class keeps a binary copy of every mesh read from an .obj file, so the text only has to be parsed
+ * the first time. Each copy is stored in a .meshcache directory next to the .obj file, named after the file and the
+ * start of the SHA-256 hash of its contents, so editing the .obj file gives it a new cache file rather than reading
+ * back an old one.
+ *
+ * A cache file is a header followed by the mesh's arrays, all little endian:
+ *     magic, version, the 32 byte hash of the .obj file, vertex count, triangle count,
+ *     bounds minimum x y z, bounds maximum x y z, bounding sphere centre x y z and radius,
+ *     then x[], y[], z[], indices[], face normal x[], y[], z[] and the smoothed vertex normals as x, y, z per vertex.
+ * It is read by mapping the file and copying each array out in bulk, with no parsing and nothing worked out from the
+ * vertices again. Files with the wrong magic, version, hash or length are ignored and rebuilt from the .obj file.
+ *
+ * Run it from the repository root to build the cache for every .obj file in a directory ahead of time:
+ *     java -cp src core.MeshCache [directory]...
+ * which defaults to data/ and also deletes cache files no .obj file in the directory uses any more.
+ */
+public class MeshCache {
+
+    public static final String DIRECTORY = ".meshcache"; //Directory next to the .obj files that holds their cache files
+    public static final String EXTENSION = ".mesh"; //Extension of every cache file
+    public static final int MAGIC = 0x48534D56; //"VMSH" read as a little endian int
+    public static final int VERSION = 1; //Bumped whenever the layout changes, so older cache files are rebuilt
+
+    private static final int HASH_BYTES = 32; //Length of a SHA-256 hash
+    private static final int NAME_HASH_CHARS = 16; //Hex digits of the hash put in the cache file's name
+    private static final int HEADER_BYTES = 4 + 4 + HASH_BYTES + 4 + 4 + 10 * 4; //Bytes before the first array
+    private static final long HASH_BLOCK_BYTES = 1 << 28; //Most of an .obj file mapped at once while hashing it
+
+    /**
+     * Constructs nothing, as every method is static.
+     */
+    private MeshCache() {
+    }
+
+    /**
+     * Loads the mesh of an .obj file from its cache file, or parses the .obj file and writes the cache file if there
+     * is no up to date one. Failing to read or write the cache file is printed but does not stop the mesh from loading.
+     *
+     * @param objPath The path to the .obj file.
+     * @return The mesh.
+     * @throws IOException If the .obj file cannot be read or parsed.
+     */
+    public static Mesh load(String objPath) throws IOException {
+        Path obj = Paths.get(objPath);
+        byte[] hash = hash(obj);
+        Path cache = cacheFile(obj, hash);
+        Mesh mesh = null;
+        try {
+            mesh = read(cache, hash);
+        } catch (IOException e) {
+            System.out.println("Could not read the cache of " + obj + ": " + e);
+        }
+        if (mesh != null) {
+            return mesh;
+        }
+
+        mesh = ObjParser.parse(objPath).toMesh();
+        try {
+            write(cache, hash, mesh);
+        } catch (IOException e) {
+            System.out.println("Could not cache " + obj + ": " + e);
+        }
+        return mesh;
+    }
+
+    /**
+     * Returns the SHA-256 hash of a file's contents, mapping it a block at a time.
+     *
+     * @param file The file.
+     * @return The 32 byte hash.
+     * @throws IOException If the file cannot be read.
+     */
+    public static byte[] hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java platform has SHA-256", e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_BLOCK_BYTES) {
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_BLOCK_BYTES, size - position)));
+            }
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Returns where the cache file of an .obj file with the given contents is kept.
+     *
+     * @param obj The .obj file.
+     * @param hash The hash of the .obj file's contents.
+     * @return The cache file, which might not exist yet.
+     */
+    public static Path cacheFile(Path obj, byte[] hash) {
+        String name = obj.getFileName().toString();
+        if (name.endsWith(".obj")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        StringBuilder hex = new StringBuilder(name).append('-');
+        for (int i = 0; i < NAME_HASH_CHARS / 2; i++) {
+            hex.append(Character.forDigit(hash[i] >> 4 & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+        }
+        Path parent = obj.toAbsolutePath().getParent();
+        return parent.resolve(DIRECTORY).resolve(hex + EXTENSION);
+    }
+
+    /**
+     * Reads a mesh from a cache file, if the file exists and was written for an .obj file with the given hash.
+     *
+     * @param cache The cache file.
+     * @param hash The hash of the .obj file's contents.
+     * @return The mesh, or null if the cache file is missing, out of date or damaged.
+     * @throws IOException If the cache file exists but cannot be read.
+     */
+    public static Mesh read(Path cache, byte[] hash) throws IOException {
+        if (!Files.isRegularFile(cache)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+
+            //Check the header before trusting any of the counts in it
+            if (bytes.getInt() != MAGIC || bytes.getInt() != VERSION) {
+                return null;
+            }
+            for (int i = 0; i < HASH_BYTES; i++) {
+                if (bytes.get() != hash[i]) {
+                    return null;
+                }
+            }
+            int vertexCount = bytes.getInt();
+            int triangleCount = bytes.getInt();
+            if (vertexCount < 0 || triangleCount < 0 || size != fileSize(vertexCount, triangleCount)) {
+                return null;
+            }
+            Vertex boundsMin = new Vertex(bytes.getFloat(), bytes.getFloat(), bytes.getFloat());
+            Vertex boundsMax = new Vertex(bytes.getFloat(), bytes.getFloat(), bytes.getFloat());
+            Vertex sphereCentre = new Vertex(bytes.getFloat(), bytes.getFloat(), bytes.getFloat());
+            float sphereRadius = bytes.getFloat();
+
+            //Copy each array out of the mapped file in bulk
+            float[] x = getFloats(bytes, vertexCount);
+            float[] y = getFloats(bytes, vertexCount);
+            float[] z = getFloats(bytes, vertexCount);
+            int[] indices = new int[triangleCount * 3];
+            bytes.asIntBuffer().get(indices);
+            bytes.position(bytes.position() + indices.length * 4);
+            float[] normalX = getFloats(bytes, triangleCount);
+            float[] normalY = getFloats(bytes, triangleCount);
+            float[] normalZ = getFloats(bytes, triangleCount);
+            float[] vertexNormals = getFloats(bytes, vertexCount * 3);
+
+            //A damaged index would only show up as a crash while drawing, so the file is rebuilt instead
+            for (int index : indices) {
+                if (index < 0 || index >= vertexCount) {
+                    return null;
+                }
+            }
+
+            Mesh mesh = new Mesh(x, y, z, indices, normalX, normalY, normalZ, boundsMin, boundsMax, sphereCentre, sphereRadius);
+            mesh.setVertexNormals(vertexNormals);
+            return mesh;
+        }
+    }
+
+    /**
+     * Writes a mesh to a cache file. The file is written under a temporary name and then moved into place,
+     * so a client loading the same mesh at the same time never reads half of it.
+     *
+     * @param cache The cache file.
+     * @param hash The hash of the .obj file's contents.
+     * @param mesh The mesh parsed from the .obj file.
+     * @throws IOException If the cache file cannot be written, or the mesh is too large for one.
+     */
+    public static void write(Path cache, byte[] hash, Mesh mesh) throws IOException {
+        int vertexCount = mesh.getVertexCount();
+        int triangleCount = mesh.getTriangleCount();
+        long size = fileSize(vertexCount, triangleCount);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Mesh of " + triangleCount + " triangles is too large to cache");
+        }
+
+        ByteBuffer bytes = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(MAGIC).putInt(VERSION).put(hash, 0, HASH_BYTES).putInt(vertexCount).putInt(triangleCount);
+        for (Vertex corner : new Vertex[] {mesh.getBoundsMin(), mesh.getBoundsMax(), mesh.getSphereCentre()}) {
+            bytes.putFloat(corner.x).putFloat(corner.y).putFloat(corner.z);
+        }
+        bytes.putFloat(mesh.getSphereRadius());
+        putFloats(bytes, mesh.x);
+        putFloats(bytes, mesh.y);
+        putFloats(bytes, mesh.z);
+        bytes.asIntBuffer().put(mesh.indices);
+        bytes.position(bytes.position() + mesh.indices.length * 4);
+        putFloats(bytes, mesh.normalX);
+        putFloats(bytes, mesh.normalY);
+        putFloats(bytes, mesh.normalZ);
+        putFloats(bytes, mesh.getVertexNormals());
+        bytes.flip();
+
+        Files.createDirectories(cache.getParent());
+        //Files.createTempFile would make the file readable by its owner only, so a cache built by one account could not be
+        //read by another. The name is made unique by hand instead and the file gets the usual permissions
+        Path temporary = cache.resolveSibling(cache.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Returns the size of the cache file of a mesh.
+     */
+    private static long fileSize(int vertexCount, int triangleCount) {
+        //Three positions and three normal components per vertex, three indices and three normal components per triangle
+        return HEADER_BYTES + 24L * vertexCount + 24L * triangleCount;
+    }
+
+    /**
+     * Copies floats out of the buffer from its position, moving the position past them.
+     */
+    private static float[] getFloats(ByteBuffer bytes, int count) {
+        float[] values = new float[count];
+        bytes.asFloatBuffer().get(values);
+        bytes.position(bytes.position() + count * 4);
+        return values;
+    }
+
+    /**
+     * Copies floats into the buffer at its position, moving the position past them.
+     */
+    private static void putFloats(ByteBuffer bytes, float[] values) {
+        bytes.asFloatBuffer().put(values);
+        bytes.position(bytes.position() + values.length * 4);
+    }
+
+    /**
+     * Builds the cache file of every .obj file in the given directories, or in data/ if none are given,
+     * and deletes the cache files in them that no .obj file uses any more.
+     *
+     * @param args The directories to build the cache for.
+     */
+    public static void main(String[] args) {
+        String[] directories = args.length == 0 ? new String[] {"data"} : args;
+        boolean failed = false;
+        for (String directory : directories) {
+            Path dir = Paths.get(directory);
+            if (!Files.isDirectory(dir)) {
+                System.out.println("Not a directory: " + dir);
+                failed = true;
+                continue;
+            }
+
+            ArrayList<Path> objs = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.obj")) {
+                files.forEach(objs::add);
+            } catch (IOException e) {
+                System.out.println("IO Exception: " + e.getMessage());
+                failed = true;
+                continue;
+            }
+            objs.sort(null);
+
+            //Build or check the cache file of every .obj file, keeping the names of the ones in use
+            HashSet<Path> used = new HashSet<>();
+            for (Path obj : objs) {
+                try {
+                    long start = System.nanoTime();
+                    byte[] hash = hash(obj);
+                    Path cache = cacheFile(obj, hash);
+                    used.add(cache);
+                    Mesh mesh = null;
+                    try {
+                        mesh = read(cache, hash);
+                    } catch (IOException e) {
+                        System.out.println(obj + ": could not read " + cache.getFileName() + ", rebuilding it: " + e);
+                    }
+                    if (mesh != null) {
+                        System.out.println(obj + ": up to date, " + mesh.getTriangleCount() + " triangles");
+                        continue;
+                    }
+                    mesh = ObjParser.parse(obj.toString()).toMesh();
+                    write(cache, hash, mesh);
+                    System.out.printf("%s: %d triangles, %d vertices -> %s (%d KB) in %.1f ms%n", obj, mesh.getTriangleCount(),
+                            mesh.getVertexCount(), dir.resolve(DIRECTORY).resolve(cache.getFileName()),
+                            Files.size(cache) >> 10, (System.nanoTime() - start) / 1e6);
+                } catch (IOException e) {
+                    System.out.println(obj + ": " + e);
+                    failed = true;
+                }
+            }
+
+            //Delete the cache files left behind by .obj files that were changed or removed
+            Path cacheDirectory = dir.toAbsolutePath().resolve(DIRECTORY);
+            if (Files.isDirectory(cacheDirectory)) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(cacheDirectory, "*" + EXTENSION)) {
+                    for (Path cache : files) {
+                        if (!used.contains(cache)) {
+                            Files.delete(cache);
+                            System.out.println("Deleted " + dir.resolve(DIRECTORY).resolve(cache.getFileName()));
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.println("IO Exception: " + e.getMessage());
+                    failed = true;
+                }
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,617 @@
+package core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import objects.Mesh;
+
+/**
+ * The ObjParser class reads Wavefront .obj files in a single pass over their bytes, without building a String for
+ * every line or number. It reads vertex positions (v), normals (vn) and texture coordinates (vt), and faces (f) with
+ * any number of corners, which are split into a fan of triangles around their first corner. Face corners can be
+ * written as v, v/vt, v//vn or v/vt/vn, with indices counting from 1 or, when negative, back from the latest element.
+ * Lines of any other kind, such as objects, groups, materials and smoothing groups, are skipped.
+ *
+ * Files of at least PARALLEL_THRESHOLD bytes are memory mapped and split into chunks at line breaks, which are parsed
+ * on several threads into their own arrays and then joined in file order, so the result is the same as parsing on one
+ * thread. Smaller files are read into memory and parsed as one chunk.
+ */
+public class ObjParser {
+
+    public static final long PARALLEL_THRESHOLD = 4 << 20; //Files at least this many bytes are parsed in parallel chunks
+    public static final long CHUNK_BYTES = 1 << 20; //Smallest chunk a file is split into when parsed in parallel
+    private static final long MAX_CHUNK_BYTES = 1 << 28; //Largest chunk, so every chunk fits in one mapped buffer
+
+    //Powers of ten that doubles hold exactly, for turning parsed digits into numbers
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    //Everything read from the file
+    private float[] x = new float[0], y = new float[0], z = new float[0]; //Vertex positions
+    private float[] normals = new float[0]; //x, y and z of every vn line
+    private float[] texCoords = new float[0]; //u and v of every vt line
+    private int[] indices = new int[0]; //Three position indices per triangle, counting from 0
+    private int[] normalIndices = new int[0]; //Normal index of every triangle corner, -1 where the face gave none
+    private int[] texCoordIndices = new int[0]; //Texture coordinate index of every triangle corner, -1 where the face gave none
+
+    /**
+     * Constructs an empty parser, filled in by parse.
+     */
+    private ObjParser() {
+    }
+
+    /**
+     * Parses an .obj file, in parallel chunks if it is at least PARALLEL_THRESHOLD bytes long.
+     *
+     * @param path The path to the .obj file.
+     * @return The parsed file.
+     * @throws IOException If the file cannot be read, or a face refers to an element the file does not have.
+     */
+    public static ObjParser parse(String path) throws IOException {
+        Path file = Paths.get(path);
+        long size = Files.size(file);
+        return size >= PARALLEL_THRESHOLD ? parseParallel(file, size, Runtime.getRuntime().availableProcessors())
+                : parseWhole(file);
+    }
+
+    /**
+     * Parses a whole file on the calling thread.
+     *
+     * @param file The file.
+     * @return The parsed file.
+     * @throws IOException If the file cannot be read or refers to missing elements.
+     */
+    public static ObjParser parseWhole(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        Chunk chunk = new Chunk(ByteBuffer.wrap(bytes), file + " at byte ");
+        chunk.parse();
+        ObjParser parser = new ObjParser();
+        parser.join(new Chunk[] {chunk}, file.toString());
+        return parser;
+    }
+
+    /**
+     * Parses a file in chunks on several threads. The file is split into chunks of about equal size, each moved
+     * forward to just after the next line break so no line is split, and each chunk maps only its own bytes.
+     *
+     * @param file The file.
+     * @param size The size of the file in bytes.
+     * @param threads The number of threads to parse on.
+     * @return The parsed file.
+     * @throws IOException If the file cannot be read or refers to missing elements.
+     */
+    public static ObjParser parseParallel(Path file, long size, int threads) throws IOException {
+        long chunkBytes = Math.min(MAX_CHUNK_BYTES, Math.max(CHUNK_BYTES, size / (threads * 4L)));
+        int chunkCount = (int) Math.max(1, (size + chunkBytes - 1) / chunkBytes);
+        Chunk[] chunks = new Chunk[chunkCount];
+        IOException[] failure = new IOException[1];
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            //Move every boundary past the end of the line it falls in
+            long[] starts = new long[chunkCount + 1];
+            starts[chunkCount] = size;
+            ByteBuffer probe = ByteBuffer.allocate(4096);
+            for (int c = 1; c < chunkCount; c++) {
+                starts[c] = Math.max(starts[c - 1], nextLineStart(channel, c * chunkBytes, size, probe));
+            }
+            for (int c = 0; c < chunkCount; c++) {
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, starts[c], starts[c + 1] - starts[c]);
+                chunks[c] = new Chunk(bytes, file + " at byte " + starts[c] + " + ");
+            }
+
+            ParallelLoop loop = new ParallelLoop(threads);
+            try {
+                loop.forEach(chunkCount, c -> {
+                    try {
+                        chunks[c].parse();
+                    } catch (IOException e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                });
+            } finally {
+                loop.shutdown();
+            }
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        ObjParser parser = new ObjParser();
+        parser.join(chunks, file.toString());
+        return parser;
+    }
+
+    /**
+     * Finds where the line containing a byte ends, reading the file a block at a time from that byte.
+     *
+     * @return The position just after the next line break, or the end of the file.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer probe) throws IOException {
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Joins the chunks' elements in file order. Negative indices were resolved against the elements before them in
+     * their own chunk, so they are moved along by the number of elements in the chunks before it.
+     */
+    private void join(Chunk[] chunks, String name) throws IOException {
+        int vertexCount = 0, normalCount = 0, texCoordCount = 0, cornerCount = 0;
+        for (Chunk chunk : chunks) {
+            vertexCount += chunk.vertexCount;
+            normalCount += chunk.normalCount;
+            texCoordCount += chunk.texCoordCount;
+            cornerCount += chunk.cornerCount;
+        }
+        x = new float[vertexCount];
+        y = new float[vertexCount];
+        z = new float[vertexCount];
+        normals = new float[normalCount * 3];
+        texCoords = new float[texCoordCount * 2];
+        indices = new int[cornerCount];
+        normalIndices = new int[cornerCount];
+        texCoordIndices = new int[cornerCount];
+
+        int vertexOffset = 0, normalOffset = 0, texCoordOffset = 0, cornerOffset = 0;
+        for (Chunk chunk : chunks) {
+            System.arraycopy(chunk.x, 0, x, vertexOffset, chunk.vertexCount);
+            System.arraycopy(chunk.y, 0, y, vertexOffset, chunk.vertexCount);
+            System.arraycopy(chunk.z, 0, z, vertexOffset, chunk.vertexCount);
+            System.arraycopy(chunk.normals, 0, normals, normalOffset * 3, chunk.normalCount * 3);
+            System.arraycopy(chunk.texCoords, 0, texCoords, texCoordOffset * 2, chunk.texCoordCount * 2);
+            System.arraycopy(chunk.indices, 0, indices, cornerOffset, chunk.cornerCount);
+            System.arraycopy(chunk.normalIndices, 0, normalIndices, cornerOffset, chunk.cornerCount);
+            System.arraycopy(chunk.texCoordIndices, 0, texCoordIndices, cornerOffset, chunk.cornerCount);
+            for (int f = 0; f < chunk.relativeCount; f++) {
+                int corner = cornerOffset + chunk.relativeCorners[f];
+                int kinds = chunk.relativeKinds[f];
+                if ((kinds & Chunk.RELATIVE_VERTEX) != 0) {
+                    indices[corner] += vertexOffset;
+                }
+                if ((kinds & Chunk.RELATIVE_TEX_COORD) != 0) {
+                    texCoordIndices[corner] += texCoordOffset;
+                }
+                if ((kinds & Chunk.RELATIVE_NORMAL) != 0) {
+                    normalIndices[corner] += normalOffset;
+                }
+            }
+            vertexOffset += chunk.vertexCount;
+            normalOffset += chunk.normalCount;
+            texCoordOffset += chunk.texCoordCount;
+            cornerOffset += chunk.cornerCount;
+        }
+
+        //Every index must refer to an element somewhere in the file
+        for (int corner = 0; corner < cornerCount; corner++) {
+            if (indices[corner] < 0 || indices[corner] >= vertexCount
+                    || normalIndices[corner] >= normalCount || texCoordIndices[corner] >= texCoordCount
+                    || normalIndices[corner] < -1 || texCoordIndices[corner] < -1) {
+                throw new IOException(name + ": face " + (corner / 3 + 1) + " refers to a vertex, normal or texture coordinate the file does not have");
+            }
+        }
+    }
+
+    /**
+     * Builds a mesh from the parsed positions and triangles. If every triangle corner was given a normal, each
+     * vertex is given the average of the file's normals at its corners instead of normals worked out from the faces.
+     *
+     * @return A new mesh.
+     */
+    public Mesh toMesh() {
+        Mesh mesh = new Mesh(x, y, z, indices);
+        if (indices.length == 0) {
+            return mesh;
+        }
+        float[] vertexNormals = new float[x.length * 3];
+        for (int corner = 0; corner < indices.length; corner++) {
+            int n = normalIndices[corner];
+            if (n < 0) {
+                return mesh;
+            }
+            int v = indices[corner] * 3;
+            vertexNormals[v] += normals[n * 3];
+            vertexNormals[v + 1] += normals[n * 3 + 1];
+            vertexNormals[v + 2] += normals[n * 3 + 2];
+        }
+        for (int v = 0; v < vertexNormals.length; v += 3) {
+            float length = (float) Math.sqrt(vertexNormals[v] * vertexNormals[v] + vertexNormals[v + 1] * vertexNormals[v + 1]
+                    + vertexNormals[v + 2] * vertexNormals[v + 2]);
+            if (length > 0) {
+                vertexNormals[v] /= length;
+                vertexNormals[v + 1] /= length;
+                vertexNormals[v + 2] /= length;
+            }
+        }
+        mesh.setVertexNormals(vertexNormals);
+        return mesh;
+    }
+
+    //Getters for the parsed elements
+    public int getVertexCount() {
+        return x.length;
+    }
+
+    public int getTriangleCount() {
+        return indices.length / 3;
+    }
+
+    public float[] getX() {
+        return x;
+    }
+
+    public float[] getY() {
+        return y;
+    }
+
+    public float[] getZ() {
+        return z;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public float[] getNormals() {
+        return normals;
+    }
+
+    public int[] getNormalIndices() {
+        return normalIndices;
+    }
+
+    public float[] getTexCoords() {
+        return texCoords;
+    }
+
+    public int[] getTexCoordIndices() {
+        return texCoordIndices;
+    }
+
+    /**
+     * A run of whole lines of the file and the elements read from them, in arrays that grow as they fill up.
+     * Positive indices are already final, negative ones are resolved against the elements read so far in this chunk
+     * and recorded so the join can move them along.
+     */
+    private static class Chunk {
+
+        //Kinds of index resolved within the chunk, as bits of relativeKinds
+        static final int RELATIVE_VERTEX = 1;
+        static final int RELATIVE_TEX_COORD = 2;
+        static final int RELATIVE_NORMAL = 4;
+
+        private final ByteBuffer bytes; //The chunk's bytes, starting at the start of a line
+        private final String location; //Where the chunk starts, for error messages
+        private final int end; //Number of bytes in the chunk
+        private int position; //The next byte to read
+
+        float[] x = new float[1024], y = new float[1024], z = new float[1024];
+        int vertexCount;
+        float[] normals = new float[3072];
+        int normalCount;
+        float[] texCoords = new float[2048];
+        int texCoordCount;
+        int[] indices = new int[3072], normalIndices = new int[3072], texCoordIndices = new int[3072];
+        int cornerCount;
+        int[] relativeCorners = new int[0], relativeKinds = new int[0]; //Triangle corners with negative indices, and which of their indices were
+        int relativeCount;
+
+        //The corners of the face being read, before it is split into triangles
+        private int[] faceVertices = new int[16], faceNormals = new int[16], faceTexCoords = new int[16], faceKinds = new int[16];
+
+        Chunk(ByteBuffer bytes, String location) {
+            this.bytes = bytes;
+            this.location = location;
+            this.end = bytes.limit();
+        }
+
+        /**
+         * Reads every line of the chunk.
+         */
+        void parse() throws IOException {
+            position = 0;
+            while (position < end) {
+                skipBlanks();
+                if (position >= end) {
+                    break;
+                }
+                byte first = bytes.get(position);
+                byte second = position + 1 < end ? bytes.get(position + 1) : (byte) '\n';
+                if (first == 'v' && isBlank(second)) {
+                    position++;
+                    addVertex(parseFloat(), parseFloat(), parseFloat());
+                } else if (first == 'v' && second == 'n' && position + 2 < end && isBlank(bytes.get(position + 2))) {
+                    position += 2;
+                    addNormal(parseFloat(), parseFloat(), parseFloat());
+                } else if (first == 'v' && second == 't' && position + 2 < end && isBlank(bytes.get(position + 2))) {
+                    position += 2;
+                    float u = parseFloat();
+                    skipBlanks();
+                    addTexCoord(u, atLineEnd() ? 0 : parseFloat());
+                } else if (first == 'f' && isBlank(second)) {
+                    position++;
+                    parseFace();
+                }
+                skipLine();
+            }
+        }
+
+        /**
+         * Reads a face's corners and adds a fan of triangles around its first corner.
+         */
+        private void parseFace() throws IOException {
+            int corners = 0;
+            while (true) {
+                skipBlanks();
+                if (atLineEnd()) {
+                    break;
+                }
+                if (corners == faceVertices.length) {
+                    faceVertices = Arrays.copyOf(faceVertices, corners * 2);
+                    faceNormals = Arrays.copyOf(faceNormals, corners * 2);
+                    faceTexCoords = Arrays.copyOf(faceTexCoords, corners * 2);
+                    faceKinds = Arrays.copyOf(faceKinds, corners * 2);
+                }
+
+                //v, v/vt, v//vn or v/vt/vn
+                int kinds = 0;
+                int vertex = parseInt();
+                faceVertices[corners] = resolve(vertex, vertexCount);
+                kinds |= vertex < 0 ? RELATIVE_VERTEX : 0;
+                faceTexCoords[corners] = -1;
+                faceNormals[corners] = -1;
+                if (position < end && bytes.get(position) == '/') {
+                    position++;
+                    if (position < end && bytes.get(position) != '/') {
+                        int texCoord = parseInt();
+                        faceTexCoords[corners] = resolve(texCoord, texCoordCount);
+                        kinds |= texCoord < 0 ? RELATIVE_TEX_COORD : 0;
+                    }
+                    if (position < end && bytes.get(position) == '/') {
+                        position++;
+                        int normal = parseInt();
+                        faceNormals[corners] = resolve(normal, normalCount);
+                        kinds |= normal < 0 ? RELATIVE_NORMAL : 0;
+                    }
+                }
+                faceKinds[corners++] = kinds;
+            }
+
+            for (int corner = 2; corner < corners; corner++) {
+                addCorner(0);
+                addCorner(corner - 1);
+                addCorner(corner);
+            }
+        }
+
+        /**
+         * Turns an index from the file into one counting from 0. Positive indices count from 1 at the start of the
+         * file, negative ones back from the latest element, which for now is the latest one in this chunk.
+         */
+        private int resolve(int index, int count) throws IOException {
+            if (index > 0) {
+                return index - 1;
+            }
+            if (index < 0) {
+                return count + index;
+            }
+            throw new IOException(location + position + ": face index 0, indices count from 1");
+        }
+
+        private void addCorner(int faceCorner) {
+            if (cornerCount == indices.length) {
+                indices = Arrays.copyOf(indices, cornerCount * 2);
+                normalIndices = Arrays.copyOf(normalIndices, cornerCount * 2);
+                texCoordIndices = Arrays.copyOf(texCoordIndices, cornerCount * 2);
+            }
+            indices[cornerCount] = faceVertices[faceCorner];
+            normalIndices[cornerCount] = faceNormals[faceCorner];
+            texCoordIndices[cornerCount] = faceTexCoords[faceCorner];
+            if (faceKinds[faceCorner] != 0) {
+                if (relativeCount == relativeCorners.length) {
+                    relativeCorners = Arrays.copyOf(relativeCorners, Math.max(64, relativeCount * 2));
+                    relativeKinds = Arrays.copyOf(relativeKinds, relativeCorners.length);
+                }
+                relativeCorners[relativeCount] = cornerCount;
+                relativeKinds[relativeCount++] = faceKinds[faceCorner];
+            }
+            cornerCount++;
+        }
+
+        private void addVertex(float vx, float vy, float vz) {
+            if (vertexCount == x.length) {
+                x = Arrays.copyOf(x, vertexCount * 2);
+                y = Arrays.copyOf(y, vertexCount * 2);
+                z = Arrays.copyOf(z, vertexCount * 2);
+            }
+            x[vertexCount] = vx;
+            y[vertexCount] = vy;
+            z[vertexCount++] = vz;
+        }
+
+        private void addNormal(float nx, float ny, float nz) {
+            if (normalCount * 3 == normals.length) {
+                normals = Arrays.copyOf(normals, normals.length * 2);
+            }
+            normals[normalCount * 3] = nx;
+            normals[normalCount * 3 + 1] = ny;
+            normals[normalCount++ * 3 + 2] = nz;
+        }
+
+        private void addTexCoord(float u, float v) {
+            if (texCoordCount * 2 == texCoords.length) {
+                texCoords = Arrays.copyOf(texCoords, texCoords.length * 2);
+            }
+            texCoords[texCoordCount * 2] = u;
+            texCoords[texCoordCount++ * 2 + 1] = v;
+        }
+
+        /**
+         * Reads a whole number, with an optional sign, after any blanks.
+         */
+        private int parseInt() throws IOException {
+            skipBlanks();
+            boolean negative = false;
+            if (position < end && (bytes.get(position) == '-' || bytes.get(position) == '+')) {
+                negative = bytes.get(position++) == '-';
+            }
+            int start = position;
+            long value = 0;
+            while (position < end) {
+                int digit = bytes.get(position) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE) {
+                    throw new IOException(location + start + ": index too large");
+                }
+                position++;
+            }
+            if (position == start) {
+                throw new IOException(location + start + ": expected a number");
+            }
+            return (int) (negative ? -value : value);
+        }
+
+        /**
+         * Reads a decimal number after any blanks, such as -1.25 or 3e-4. The digits are gathered into a whole number
+         * and scaled by a power of ten with one double multiplication or division, which is exact to the last bit
+         * when both fit in a double without rounding. Numbers outside that range, and the rare results that would
+         * round differently going from double to float, are handed to Float.parseFloat, so every number comes out
+         * exactly as Float.parseFloat would give it.
+         */
+        private float parseFloat() throws IOException {
+            skipBlanks();
+            int start = position;
+            boolean negative = false;
+            if (position < end && (bytes.get(position) == '-' || bytes.get(position) == '+')) {
+                negative = bytes.get(position++) == '-';
+            }
+
+            //Gather up to 18 significant digits, counting how far the decimal point moves them
+            long digits = 0;
+            int significant = 0, exponent = 0;
+            boolean anyDigits = false, exact = true, point = false;
+            while (position < end) {
+                byte c = bytes.get(position);
+                if (c >= '0' && c <= '9') {
+                    anyDigits = true;
+                    if (digits == 0 && c == '0') {
+                        if (point) {
+                            exponent--;
+                        }
+                    } else if (significant < 18) {
+                        digits = digits * 10 + (c - '0');
+                        significant++;
+                        if (point) {
+                            exponent--;
+                        }
+                    } else {
+                        exact = false;
+                        if (!point) {
+                            exponent++;
+                        }
+                    }
+                } else if (c == '.' && !point) {
+                    point = true;
+                } else {
+                    break;
+                }
+                position++;
+            }
+            if (position < end && anyDigits && (bytes.get(position) == 'e' || bytes.get(position) == 'E')) {
+                position++;
+                exponent += parseInt();
+            }
+            if (!anyDigits) {
+                return parseSlowly(start); //Such as nan or inf
+            }
+            if (position < end && !isBlank(bytes.get(position)) && !atLineEnd()) {
+                return parseSlowly(start);
+            }
+
+            if (exact && digits < (1L << 53) && exponent >= -22 && exponent <= 22) {
+                double value = exponent < 0 ? digits / POWERS_OF_TEN[-exponent] : digits * POWERS_OF_TEN[exponent];
+                //A double lying exactly halfway between two floats may have been rounded there, so it is checked slowly
+                boolean halfway = (Double.doubleToRawLongBits(value) & 0x1FFFFFFFL) == 0x10000000L;
+                if (!halfway && (value == 0 || (value >= Float.MIN_NORMAL && value <= Float.MAX_VALUE))) {
+                    float result = (float) value;
+                    return negative ? -result : result;
+                }
+            }
+            return parseSlowly(start);
+        }
+
+        /**
+         * Reads a number with Float.parseFloat, for the few numbers the fast path cannot give exactly.
+         */
+        private float parseSlowly(int start) throws IOException {
+            position = start;
+            while (position < end && !isBlank(bytes.get(position)) && !atLineEnd()) {
+                position++;
+            }
+            byte[] text = new byte[position - start];
+            for (int i = 0; i < text.length; i++) {
+                text[i] = bytes.get(start + i);
+            }
+            String number = new String(text, StandardCharsets.US_ASCII);
+            try {
+                return Float.parseFloat(number);
+            } catch (NumberFormatException e) {
+                throw new IOException(location + start + ": expected a number but found \"" + number + "\"");
+            }
+        }
+
+        private static boolean isBlank(byte c) {
+            return c == ' ' || c == '\t';
+        }
+
+        /**
+         * Returns whether the rest of the line is empty or a comment.
+         */
+        private boolean atLineEnd() {
+            if (position >= end) {
+                return true;
+            }
+            byte c = bytes.get(position);
+            return c == '\n' || c == '\r' || c == '#';
+        }
+
+        private void skipBlanks() {
+            while (position < end && isBlank(bytes.get(position))) {
+                position++;
+            }
+        }
+
+        /**
+         * Moves to the start of the next line.
+         */
+        private void skipLine() {
+            while (position < end && bytes.get(position) != '\n') {
+                position++;
+            }
+            position++;
+        }
+    }
+}
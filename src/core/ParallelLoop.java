@@ -0,0 +1,104 @@
+package core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * The ParallelLoop class runs a task for every index of a range on a fixed set of ForkJoinPool workers.
+ * The workers take indices from a shared counter, so uneven indices balance out, and they are reused from loop
+ * to loop so running a loop does not allocate. Tasks write their results by index, which keeps the output
+ * the same as running the indices in order on one thread.
+ */
+class ParallelLoop {
+
+    private final int threadCount; //Number of threads running the loop
+    private final ForkJoinPool pool; //The pool the workers run on, null when looping on the calling thread
+    private final Worker[] workers; //One worker per thread, the first one starts the others
+    private final AtomicInteger next = new AtomicInteger(); //The next index to be taken by a worker
+
+    //The loop currently running
+    private IntConsumer task;
+    private int count;
+
+    /**
+     * Constructs a loop running on the given number of threads.
+     *
+     * @param threadCount The number of threads, 1 to run every loop on the calling thread.
+     */
+    ParallelLoop(int threadCount) {
+        this.threadCount = Math.max(1, threadCount);
+        this.pool = this.threadCount > 1 ? new ForkJoinPool(this.threadCount) : null;
+        this.workers = new Worker[this.threadCount];
+        for (int i = 0; i < this.threadCount; i++) {
+            workers[i] = new Worker(i == 0);
+        }
+    }
+
+    /**
+     * Runs a task for every index from 0 to count - 1 and waits for all of them to finish.
+     *
+     * @param count The number of indices.
+     * @param task The task to run for each index.
+     */
+    void forEach(int count, IntConsumer task) {
+        if (pool == null || count <= 1) {
+            for (int i = 0; i < count; i++) {
+                task.accept(i);
+            }
+            return;
+        }
+
+        this.task = task;
+        this.count = count;
+        next.set(0);
+        for (Worker worker : workers) {
+            worker.reinitialize();
+        }
+        pool.invoke(workers[0]);
+        this.task = null;
+    }
+
+    /**
+     * Stops the pool's threads once they are idle.
+     */
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * A worker that keeps taking indices until the range is used up. The first worker forks the others and waits for them.
+     */
+    private class Worker extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final boolean first;
+
+        Worker(boolean first) {
+            this.first = first;
+        }
+
+        @Override
+        protected void compute() {
+            if (first) {
+                for (int i = 1; i < workers.length; i++) {
+                    workers[i].fork();
+                }
+            }
+            for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                task.accept(i);
+            }
+            if (first) {
+                for (int i = 1; i < workers.length; i++) {
+                    workers[i].join();
+                }
+            }
+        }
+    }
+}
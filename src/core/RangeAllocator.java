@@ -0,0 +1,126 @@
+package core;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The RangeAllocator class hands out contiguous ranges of a growing index space, such as the scene's triangle indices.
+ * Freed ranges are kept in a list ordered by position, merged with their neighbours, and reused first fit before the
+ * index space grows. A freed range at the end of the index space shrinks it instead.
+ */
+class RangeAllocator {
+
+    private final TreeMap<Integer, Integer> freeRanges = new TreeMap<>(); //Start of every free range mapped to its length
+    private int end; //One more than the last index that has been handed out
+    private int freeCount; //Number of free indices below the end
+
+    /**
+     * Allocates a contiguous range, reusing the first free range that is long enough.
+     *
+     * @param length The length of the range.
+     * @return The first index of the range.
+     */
+    int allocate(int length) {
+        if (length == 0) {
+            return end;
+        }
+        for (Map.Entry<Integer, Integer> range : freeRanges.entrySet()) {
+            if (range.getValue() >= length) {
+                int start = range.getKey();
+                freeRanges.remove(start);
+                if (range.getValue() > length) {
+                    freeRanges.put(start + length, range.getValue() - length);
+                }
+                freeCount -= length;
+                return start;
+            }
+        }
+
+        //Nothing free is long enough, so grow the index space
+        int start = end;
+        end += length;
+        return start;
+    }
+
+    /**
+     * Frees a range, merging it with the free ranges on either side.
+     *
+     * @param start The first index of the range.
+     * @param length The length of the range.
+     */
+    void free(int start, int length) {
+        if (length == 0) {
+            return;
+        }
+        freeCount += length;
+
+        //Merge with the free range just before and just after
+        Map.Entry<Integer, Integer> before = freeRanges.floorEntry(start);
+        if (before != null && before.getKey() + before.getValue() == start) {
+            freeRanges.remove(before.getKey());
+            start = before.getKey();
+            length += before.getValue();
+        }
+        Integer after = freeRanges.remove(start + length);
+        if (after != null) {
+            length += after;
+        }
+
+        //A free range reaching the end gives its indices back instead
+        if (start + length == end) {
+            end = start;
+            freeCount -= length;
+        } else {
+            freeRanges.put(start, length);
+        }
+    }
+
+    /**
+     * Moves the used range right after a free range down to the start of the free range,
+     * which moves the free range up past it where it can merge with the next free range.
+     *
+     * @param freeStart The first index of the free range.
+     * @param length The length of the used range after it.
+     */
+    void slideDown(int freeStart, int length) {
+        int freeLength = freeRanges.remove(freeStart);
+        freeCount -= freeLength;
+        free(freeStart + length, freeLength);
+    }
+
+    /**
+     * Returns the first index of the free range closest to the start, or -1 if nothing is free.
+     *
+     * @return The start of the first free range.
+     */
+    int getFirstFreeStart() {
+        return freeRanges.isEmpty() ? -1 : freeRanges.firstKey();
+    }
+
+    /**
+     * Returns the length of the free range starting at an index.
+     *
+     * @param start The first index of the free range.
+     * @return The length of the free range.
+     */
+    int getFreeLength(int start) {
+        return freeRanges.get(start);
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    int getFreeCount() {
+        return freeCount;
+    }
+
+    /**
+     * Forgets every range, leaving the index space empty.
+     */
+    void clear() {
+        freeRanges.clear();
+        end = 0;
+        freeCount = 0;
+    }
+}
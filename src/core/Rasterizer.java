@@ -0,0 +1,683 @@
+package core;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import objects.Triangle2D;
+
+/**
+ * The Rasterizer class draws the projected triangles of a scene straight into an int[] framebuffer
+ * backed by a BufferedImage, so a whole frame can be shown with a single drawImage call.
+ * A depth buffer holding the inverse camera depth of every pixel resolves visibility,
+ * which means triangles can be submitted in any order.
+ * Scenes are drawn in square tiles: triangles are first sorted into the tiles they touch, then the tiles are
+ * rasterized in parallel on a pool of threads. Every pixel belongs to one tile and each tile draws its triangles in
+ * submission order, so the frame is the same whatever the number of threads.
+ * When the scene picks which edges to outline, outlines are drawn in the same pass as the fill: pixels of a triangle
+ * within a pixel of one of its outlined edges take the outline colour, so each shared edge is drawn once by the
+ * triangle that owns it. Otherwise every edge of every triangle is stroked as a line after the triangle is filled.
+ */
+public class Rasterizer {
+
+    //Size of the framebuffer in pixels
+    private final int width;
+    private final int height;
+
+    //Graphics ratio determines how much of the screen the projected coordinates take up
+    private float graphicsRatio = 0.5f;
+
+    //The image the frame is drawn into, and the pixel and depth arrays behind it
+    private BufferedImage image; //The framebuffer image that is blitted to the screen
+    private int[] pixels; //The RGB value of each pixel, shared with the image
+    private float[] depthBuffer; //The inverse camera depth of each pixel, 0 meaning nothing drawn
+
+    //Outline properties
+    private boolean outlines = true; //Whether triangle edges are drawn on top of the fill
+    private int outlineColour = Color.BLACK.getRGB(); //The colour of the triangle edges
+    private static final float OUTLINE_DEPTH_BIAS = 0.002f; //Lets an edge win against the fill it borders
+
+    //Clearing is deferred so that each tile clears its own pixels while they are in cache
+    private boolean clearPending; //Whether the framebuffer still has to be cleared
+    private int clearColour; //The colour the framebuffer is cleared to
+
+    //Tiling and threading options
+    public static final int DEFAULT_TILE_SIZE = 64;
+    private static final int PARALLEL_SETUP_THRESHOLD = 4096; //Triangle count above which setup and binning are split between threads
+    private int tileSize; //Width and height of a tile in pixels
+    private int tilesX; //Number of tile columns
+    private int tilesY; //Number of tile rows
+    private ParallelLoop loop; //Runs the setup, binning and tile tasks on the rasterizer's threads
+
+    //Triangles of the current frame converted to pixel coordinates, three corners per triangle
+    private float[] pixelX = new float[0];
+    private float[] pixelY = new float[0];
+    private float[] pixelZ = new float[0]; //Inverse camera depth of each corner
+    private int[] triangleColours = new int[0]; //RGB fill colour of each triangle
+    private byte[] triangleEdges = new byte[0]; //Mask of the outlined edges of each triangle, bit k from corner k to corner k + 1
+    private boolean edgeMasks; //Whether the scene gave masks of outlined edges this frame
+    private int frameCount; //Number of triangles submitted this frame
+
+    //Tile bins, the triangles of tile t are binTriangles[binStart[t]] to binTriangles[binStart[t + 1] - 1]
+    private int[] binStart = new int[1];
+    private int[] binTriangles = new int[0];
+    private int[] chunkOffsets = new int[0]; //Per chunk and tile counts, then write positions, while binning
+    private int chunkCount; //Number of chunks the triangles are split into for setup and binning
+    private int chunkSize; //Number of triangles in each chunk
+
+    //The scene being drawn, read by the setup tasks
+    private float[] sceneX, sceneY, sceneZ;
+    private int[] sceneColours;
+    private byte[] sceneEdges;
+    private int[] sceneOrder;
+
+    //Tasks run for every chunk or tile, created once so drawing a frame does not allocate them
+    private final IntConsumer setupTask = this::setupChunk;
+    private final IntConsumer countTask = this::countChunk;
+    private final IntConsumer scatterTask = this::scatterChunk;
+    private final IntConsumer tileTask = this::drawTile;
+
+    /**
+     * Constructs a rasterizer with a framebuffer of the given size.
+     *
+     * @param width The width of the framebuffer in pixels.
+     * @param height The height of the framebuffer in pixels.
+     */
+    public Rasterizer(int width, int height) {
+        this(width, height, Runtime.getRuntime().availableProcessors(), DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Constructs a rasterizer with a framebuffer of the given size, drawing with the given number of threads and tile size.
+     *
+     * @param width The width of the framebuffer in pixels.
+     * @param height The height of the framebuffer in pixels.
+     * @param threadCount The number of threads rasterizing tiles, 1 to draw on the calling thread.
+     * @param tileSize The width and height of a tile in pixels.
+     */
+    public Rasterizer(int width, int height, int threadCount, int tileSize) {
+        this.width = width;
+        this.height = height;
+        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        this.depthBuffer = new float[width * height];
+        setThreadCount(threadCount);
+        setTileSize(tileSize);
+    }
+
+    /**
+     * Clears the framebuffer to the given colour and resets the depth buffer.
+     * The clear happens tile by tile during the next drawScene, or straight away if anything else touches the pixels first.
+     *
+     * @param colour The RGB background colour.
+     */
+    public void clear(int colour) {
+        clearPending = true;
+        clearColour = colour;
+    }
+
+    /**
+     * Clears the whole framebuffer now if a clear is still pending.
+     */
+    private void flushClear() {
+        if (clearPending) {
+            Arrays.fill(pixels, clearColour);
+            Arrays.fill(depthBuffer, 0);
+            clearPending = false;
+        }
+    }
+
+    /**
+     * Draws every rendered triangle of the scene into the framebuffer.
+     * The triangles are converted to pixel coordinates and sorted into the tiles they overlap,
+     * then every tile is cleared if needed and rasterized independently.
+     *
+     * @param scene The scene whose rendered triangles and colours are drawn.
+     */
+    public void drawScene(Scene scene) {
+        sceneX = scene.getScreenX();
+        sceneY = scene.getScreenY();
+        sceneZ = scene.getScreenZ();
+        sceneColours = scene.getColours();
+        sceneEdges = scene.getEdgeMasks();
+        edgeMasks = sceneEdges != null;
+        sceneOrder = scene.getRenderOrder();
+        frameCount = scene.getRenderCount();
+
+        //Split the triangles into chunks, one per thread when there are enough of them
+        if (pixelX.length < frameCount * 3) {
+            int size = Math.max(frameCount, pixelX.length / 3 * 2);
+            pixelX = new float[size * 3];
+            pixelY = new float[size * 3];
+            pixelZ = new float[size * 3];
+            triangleColours = new int[size];
+            triangleEdges = new byte[size];
+        }
+        chunkCount = frameCount < PARALLEL_SETUP_THRESHOLD ? 1 : loop.getThreadCount();
+        chunkSize = (frameCount + chunkCount - 1) / chunkCount;
+        int tileCount = tilesX * tilesY;
+        if (chunkOffsets.length < chunkCount * tileCount) {
+            chunkOffsets = new int[chunkCount * tileCount];
+        }
+
+        //Convert the triangles to pixel coordinates and count how many fall into each tile, chunk by chunk
+        loop.forEach(chunkCount, setupTask);
+        loop.forEach(chunkCount, countTask);
+
+        //Turn the counts into write positions, tile by tile and then chunk by chunk so each bin keeps submission order
+        int sum = 0;
+        for (int tile = 0; tile < tileCount; tile++) {
+            binStart[tile] = sum;
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                int count = chunkOffsets[chunk * tileCount + tile];
+                chunkOffsets[chunk * tileCount + tile] = sum;
+                sum += count;
+            }
+        }
+        binStart[tileCount] = sum;
+        if (binTriangles.length < sum) {
+            binTriangles = new int[Math.max(sum, binTriangles.length * 2)];
+        }
+        loop.forEach(chunkCount, scatterTask);
+
+        //Rasterize the tiles
+        loop.forEach(tileCount, tileTask);
+        clearPending = false;
+
+        sceneX = sceneY = sceneZ = null;
+        sceneColours = null;
+        sceneEdges = null;
+        sceneOrder = null;
+    }
+
+    /**
+     * Converts one chunk of the scene's triangles into pixel coordinates and inverse depths.
+     *
+     * @param chunk The index of the chunk.
+     */
+    private void setupChunk(int chunk) {
+        int end = Math.min(frameCount, (chunk + 1) * chunkSize);
+        for (int i = chunk * chunkSize; i < end; i++) {
+            int index = sceneOrder[i];
+            for (int corner = 0; corner < 3; corner++) {
+                pixelX[i * 3 + corner] = toScreenX(sceneX[index * 3 + corner]);
+                pixelY[i * 3 + corner] = toScreenY(sceneY[index * 3 + corner]);
+                pixelZ[i * 3 + corner] = 1 / sceneZ[index * 3 + corner];
+            }
+            triangleColours[i] = sceneColours[index];
+            if (edgeMasks) {
+                triangleEdges[i] = sceneEdges[index];
+            }
+        }
+    }
+
+    /**
+     * Counts how many triangles of one chunk overlap each tile.
+     *
+     * @param chunk The index of the chunk.
+     */
+    private void countChunk(int chunk) {
+        int tileCount = tilesX * tilesY;
+        int base = chunk * tileCount;
+        Arrays.fill(chunkOffsets, base, base + tileCount, 0);
+        binChunk(chunk, false);
+    }
+
+    /**
+     * Writes the indices of one chunk's triangles into the bins of the tiles they overlap.
+     *
+     * @param chunk The index of the chunk.
+     */
+    private void scatterChunk(int chunk) {
+        binChunk(chunk, true);
+    }
+
+    /**
+     * Walks the tiles overlapped by the bounding box of every triangle in a chunk, either counting or writing them.
+     *
+     * @param chunk The index of the chunk.
+     * @param write Whether to write the triangles into their bins rather than count them.
+     */
+    private void binChunk(int chunk, boolean write) {
+        int base = chunk * tilesX * tilesY;
+        int end = Math.min(frameCount, (chunk + 1) * chunkSize);
+        for (int i = chunk * chunkSize; i < end; i++) {
+            float x1 = pixelX[i * 3], x2 = pixelX[i * 3 + 1], x3 = pixelX[i * 3 + 2];
+            float y1 = pixelY[i * 3], y2 = pixelY[i * 3 + 1], y3 = pixelY[i * 3 + 2];
+
+            //The same bounding box the fill and outlines are limited to, clamped to the framebuffer
+            float minX = Math.max(0, (float) Math.floor(Math.min(x1, Math.min(x2, x3))));
+            float maxX = Math.min(width - 1, (float) Math.ceil(Math.max(x1, Math.max(x2, x3))));
+            float minY = Math.max(0, (float) Math.floor(Math.min(y1, Math.min(y2, y3))));
+            float maxY = Math.min(height - 1, (float) Math.ceil(Math.max(y1, Math.max(y2, y3))));
+            if (!(minX <= maxX && minY <= maxY)) {
+                continue; //Off screen, or not a number
+            }
+
+            int tileMaxX = (int) maxX / tileSize, tileMaxY = (int) maxY / tileSize;
+            for (int tileY = (int) minY / tileSize; tileY <= tileMaxY; tileY++) {
+                for (int tileX = (int) minX / tileSize; tileX <= tileMaxX; tileX++) {
+                    int bin = base + tileY * tilesX + tileX;
+                    if (write) {
+                        binTriangles[chunkOffsets[bin]++] = i;
+                    } else {
+                        chunkOffsets[bin]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears one tile if needed and draws every triangle binned into it, limited to the tile's pixels.
+     *
+     * @param tile The index of the tile.
+     */
+    private void drawTile(int tile) {
+        int minX = (tile % tilesX) * tileSize;
+        int minY = (tile / tilesX) * tileSize;
+        int maxX = Math.min(width, minX + tileSize) - 1;
+        int maxY = Math.min(height, minY + tileSize) - 1;
+
+        if (clearPending) {
+            for (int y = minY; y <= maxY; y++) {
+                Arrays.fill(pixels, y * width + minX, y * width + maxX + 1, clearColour);
+                Arrays.fill(depthBuffer, y * width + minX, y * width + maxX + 1, 0);
+            }
+        }
+
+        boolean merged = edgeMasks || !outlines;
+        for (int b = binStart[tile]; b < binStart[tile + 1]; b++) {
+            int i = binTriangles[b];
+            int corner = i * 3;
+            if (merged) {
+                fillTriangle(pixelX[corner], pixelY[corner], pixelZ[corner],
+                        pixelX[corner + 1], pixelY[corner + 1], pixelZ[corner + 1],
+                        pixelX[corner + 2], pixelY[corner + 2], pixelZ[corner + 2], triangleColours[i],
+                        outlines ? triangleEdges[i] : 0, minX, minY, maxX, maxY);
+            } else {
+                drawPixelTriangle(pixelX[corner], pixelY[corner], pixelZ[corner],
+                        pixelX[corner + 1], pixelY[corner + 1], pixelZ[corner + 1],
+                        pixelX[corner + 2], pixelY[corner + 2], pixelZ[corner + 2], triangleColours[i], minX, minY, maxX, maxY);
+            }
+        }
+    }
+
+    /**
+     * Fills a projected triangle and, if enabled, draws its outline.
+     *
+     * @param t The projected triangle, with the camera depth of each vertex.
+     * @param colour The RGB fill colour.
+     */
+    public void drawTriangle(Triangle2D t, int colour) {
+        drawTriangle(t.v1.x, t.v1.y, t.v1.z, t.v2.x, t.v2.y, t.v2.z, t.v3.x, t.v3.y, t.v3.z, colour);
+    }
+
+    /**
+     * Fills a projected triangle and, if enabled, draws its outline.
+     *
+     * @param ax The projected x-coordinate of the first vertex.
+     * @param ay The projected y-coordinate of the first vertex.
+     * @param az The camera depth of the first vertex.
+     * @param bx The projected x-coordinate of the second vertex.
+     * @param by The projected y-coordinate of the second vertex.
+     * @param bz The camera depth of the second vertex.
+     * @param cx The projected x-coordinate of the third vertex.
+     * @param cy The projected y-coordinate of the third vertex.
+     * @param cz The camera depth of the third vertex.
+     * @param colour The RGB fill colour.
+     */
+    public void drawTriangle(float ax, float ay, float az, float bx, float by, float bz, float cx, float cy, float cz, int colour) {
+        flushClear();
+        drawPixelTriangle(toScreenX(ax), toScreenY(ay), 1 / az, toScreenX(bx), toScreenY(by), 1 / bz,
+                toScreenX(cx), toScreenY(cy), 1 / cz, colour, 0, 0, width - 1, height - 1);
+    }
+
+    /**
+     * Fills a triangle given in pixel coordinates and, if enabled, draws its outline, touching only the pixels inside a rectangle.
+     *
+     * @param minX The left column of the rectangle.
+     * @param minY The top row of the rectangle.
+     * @param maxX The right column of the rectangle.
+     * @param maxY The bottom row of the rectangle.
+     */
+    private void drawPixelTriangle(float x1, float y1, float iz1, float x2, float y2, float iz2, float x3, float y3, float iz3,
+            int colour, int minX, int minY, int maxX, int maxY) {
+        fillTriangle(x1, y1, iz1, x2, y2, iz2, x3, y3, iz3, colour, 0, minX, minY, maxX, maxY);
+        if (outlines) {
+            drawLine(x1, y1, iz1, x2, y2, iz2, outlineColour, minX, minY, maxX, maxY);
+            drawLine(x2, y2, iz2, x3, y3, iz3, outlineColour, minX, minY, maxX, maxY);
+            drawLine(x3, y3, iz3, x1, y1, iz1, outlineColour, minX, minY, maxX, maxY);
+        }
+    }
+
+    /**
+     * Fills a triangle given in pixel coordinates using incremental edge functions.
+     * Pixels are tested at their centres and only written when they are closer than what is already there.
+     *
+     * @param x1 The x-coordinate of the first vertex in pixels.
+     * @param y1 The y-coordinate of the first vertex in pixels.
+     * @param iz1 The inverse camera depth of the first vertex.
+     * @param x2 The x-coordinate of the second vertex in pixels.
+     * @param y2 The y-coordinate of the second vertex in pixels.
+     * @param iz2 The inverse camera depth of the second vertex.
+     * @param x3 The x-coordinate of the third vertex in pixels.
+     * @param y3 The y-coordinate of the third vertex in pixels.
+     * @param iz3 The inverse camera depth of the third vertex.
+     * @param colour The RGB fill colour.
+     */
+    public void fillTriangle(float x1, float y1, float iz1, float x2, float y2, float iz2, float x3, float y3, float iz3, int colour) {
+        flushClear();
+        fillTriangle(x1, y1, iz1, x2, y2, iz2, x3, y3, iz3, colour, 0, 0, 0, width - 1, height - 1);
+    }
+
+    /**
+     * Fills a triangle given in pixel coordinates, touching only the pixels inside a rectangle, and outlines some of
+     * its edges in the same pass. An outlined edge colours the pixels inside the triangle that are less than a pixel
+     * from it along the edge's minor axis, which is the line a pixel wide line stepped along its major axis would draw.
+     *
+     * @param edges The mask of edges to outline, bit k standing for the edge from corner k to corner (k + 1) % 3.
+     * @param clipMinX The left column of the rectangle.
+     * @param clipMinY The top row of the rectangle.
+     * @param clipMaxX The right column of the rectangle.
+     * @param clipMaxY The bottom row of the rectangle.
+     */
+    private void fillTriangle(float x1, float y1, float iz1, float x2, float y2, float iz2, float x3, float y3, float iz3, int colour,
+            int edges, int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        float area = (x2 - x1) * (y3 - y1) - (y2 - y1) * (x3 - x1);
+        if (area == 0 || Float.isNaN(area)) return;
+
+        //Flip the winding of clockwise triangles so the edge functions are positive inside,
+        //which swaps the edges leaving the first corner
+        if (area < 0) {
+            float tx = x2; x2 = x3; x3 = tx;
+            float ty = y2; y2 = y3; y3 = ty;
+            float tz = iz2; iz2 = iz3; iz3 = tz;
+            area = -area;
+            edges = (edges & 2) | ((edges & 1) << 2) | ((edges & 4) >> 2);
+        }
+
+        //Bounding box of the triangle, clamped to the rectangle
+        int minX = Math.max(clipMinX, (int) Math.floor(Math.min(x1, Math.min(x2, x3))));
+        int maxX = Math.min(clipMaxX, (int) Math.ceil(Math.max(x1, Math.max(x2, x3))));
+        int minY = Math.max(clipMinY, (int) Math.floor(Math.min(y1, Math.min(y2, y3))));
+        int maxY = Math.min(clipMaxY, (int) Math.ceil(Math.max(y1, Math.max(y2, y3))));
+        if (minX > maxX || minY > maxY) return;
+
+        //Edge function steps, each edge function is named after the vertex opposite the edge
+        float e1dx = -(y3 - y2), e1dy = x3 - x2;
+        float e2dx = -(y1 - y3), e2dy = x1 - x3;
+        float e3dx = -(y2 - y1), e3dy = x2 - x1;
+
+        //Edge function values at the centre of the top left pixel of the bounding box
+        float px = minX + 0.5f;
+        float py = minY + 0.5f;
+        float e1Row = (x3 - x2) * (py - y2) - (y3 - y2) * (px - x2);
+        float e2Row = (x1 - x3) * (py - y3) - (y1 - y3) * (px - x3);
+        float e3Row = (x2 - x1) * (py - y1) - (y2 - y1) * (px - x1);
+
+        //Inverse depth is linear in screen space, so it can be stepped along with the edge functions
+        float invArea = 1 / area;
+        float dzdx = (e1dx * iz1 + e2dx * iz2 + e3dx * iz3) * invArea;
+        float dzdy = (e1dy * iz1 + e2dy * iz2 + e3dy * iz3) * invArea;
+        float zRow = (e1Row * iz1 + e2Row * iz2 + e3Row * iz3) * invArea;
+
+        if (edges != 0) {
+            //An edge function grows by the edge's longer axis for every pixel stepped away from the edge along its
+            //shorter axis, so pixels whose value is below that are on the outline. Edges left out never match
+            float w1 = (edges & 2) != 0 ? Math.max(Math.abs(e1dx), Math.abs(e1dy)) : -1;
+            float w2 = (edges & 4) != 0 ? Math.max(Math.abs(e2dx), Math.abs(e2dy)) : -1;
+            float w3 = (edges & 1) != 0 ? Math.max(Math.abs(e3dx), Math.abs(e3dy)) : -1;
+            fillOutlinedRows(minX, minY, maxX, maxY, e1Row, e2Row, e3Row, zRow, e1dx, e2dx, e3dx, dzdx, e1dy, e2dy, e3dy, dzdy,
+                    w1, w2, w3, colour);
+            return;
+        }
+
+        for (int y = minY; y <= maxY; y++) {
+            float e1 = e1Row, e2 = e2Row, e3 = e3Row, z = zRow;
+            int offset = y * width;
+            boolean entered = false;
+
+            for (int x = minX; x <= maxX; x++) {
+                if (e1 >= 0 && e2 >= 0 && e3 >= 0) {
+                    entered = true;
+                    int p = offset + x;
+                    if (z > depthBuffer[p]) {
+                        depthBuffer[p] = z;
+                        pixels[p] = colour;
+                    }
+                } else if (entered) {
+                    break; //Triangles are convex, so once a row has been left it cannot be entered again
+                }
+                e1 += e1dx; e2 += e2dx; e3 += e3dx; z += dzdx;
+            }
+
+            e1Row += e1dy; e2Row += e2dy; e3Row += e3dy; zRow += dzdy;
+        }
+    }
+
+    /**
+     * Fills the rows of a triangle set up by fillTriangle, colouring the pixels close to its outlined edges with the
+     * outline colour. Kept apart from the plain fill so triangles without outlines do not pay for the extra tests.
+     */
+    private void fillOutlinedRows(int minX, int minY, int maxX, int maxY, float e1Row, float e2Row, float e3Row, float zRow,
+            float e1dx, float e2dx, float e3dx, float dzdx, float e1dy, float e2dy, float e3dy, float dzdy,
+            float w1, float w2, float w3, int colour) {
+        for (int y = minY; y <= maxY; y++) {
+            float e1 = e1Row, e2 = e2Row, e3 = e3Row, z = zRow;
+            int offset = y * width;
+            boolean entered = false;
+
+            for (int x = minX; x <= maxX; x++) {
+                if (e1 >= 0 && e2 >= 0 && e3 >= 0) {
+                    entered = true;
+                    int p = offset + x;
+                    if (z > depthBuffer[p]) {
+                        depthBuffer[p] = z;
+                        pixels[p] = e1 < w1 || e2 < w2 || e3 < w3 ? outlineColour : colour;
+                    }
+                } else if (entered) {
+                    break;
+                }
+                e1 += e1dx; e2 += e2dx; e3 += e3dx; z += dzdx;
+            }
+
+            e1Row += e1dy; e2Row += e2dy; e3Row += e3dy; zRow += dzdy;
+        }
+    }
+
+    /**
+     * Draws a depth tested line between two points given in pixel coordinates.
+     * The line is clipped to the framebuffer first so that far off-screen points cost nothing.
+     *
+     * @param xa The x-coordinate of the start point in pixels.
+     * @param ya The y-coordinate of the start point in pixels.
+     * @param iza The inverse camera depth of the start point.
+     * @param xb The x-coordinate of the end point in pixels.
+     * @param yb The y-coordinate of the end point in pixels.
+     * @param izb The inverse camera depth of the end point.
+     * @param colour The RGB line colour.
+     */
+    public void drawLine(float xa, float ya, float iza, float xb, float yb, float izb, int colour) {
+        flushClear();
+        drawLine(xa, ya, iza, xb, yb, izb, colour, 0, 0, width - 1, height - 1);
+    }
+
+    /**
+     * Draws a depth tested line, touching only the pixels inside a rectangle. The line is always stepped from where it
+     * enters the framebuffer, so every tile a line crosses draws exactly the pixels the whole line would.
+     *
+     * @param clipMinX The left column of the rectangle.
+     * @param clipMinY The top row of the rectangle.
+     * @param clipMaxX The right column of the rectangle.
+     * @param clipMaxY The bottom row of the rectangle.
+     */
+    private void drawLine(float xa, float ya, float iza, float xb, float yb, float izb, int colour,
+            int clipMinX, int clipMinY, int clipMaxX, int clipMaxY) {
+        //Clip the line to the framebuffer with the Liang-Barsky algorithm, narrowing the visible parameter range [t0, t1]
+        float dx = xb - xa;
+        float dy = yb - ya;
+        float t0 = 0, t1 = 1;
+        for (int side = 0; side < 4; side++) {
+            float p = side == 0 ? -dx : side == 1 ? dx : side == 2 ? -dy : dy;
+            float q = side == 0 ? xa : side == 1 ? width - 1 - xa : side == 2 ? ya : height - 1 - ya;
+            if (p == 0) {
+                if (q < 0) return; //Parallel to and outside this boundary
+                continue;
+            }
+            float r = q / p;
+            if (p < 0) {
+                if (r > t1) return;
+                if (r > t0) t0 = r;
+            } else {
+                if (r < t0) return;
+                if (r < t1) t1 = r;
+            }
+        }
+        float startX = xa + t0 * dx, startY = ya + t0 * dy;
+        float endX = xa + t1 * dx, endY = ya + t1 * dy;
+        float startZ = iza + t0 * (izb - iza), endZ = iza + t1 * (izb - iza);
+
+        //Step one pixel at a time along the longer axis
+        int steps = (int) Math.ceil(Math.max(Math.abs(endX - startX), Math.abs(endY - startY)));
+        float stepX = steps == 0 ? 0 : (endX - startX) / steps;
+        float stepY = steps == 0 ? 0 : (endY - startY) / steps;
+        float stepZ = steps == 0 ? 0 : (endZ - startZ) / steps;
+
+        //Only visit the steps that can land inside the rectangle, with a step of slack on each side for rounding
+        int first = 0, last = steps;
+        if (stepX != 0) {
+            float enter = (clipMinX - startX) / stepX, leave = (clipMaxX + 1 - startX) / stepX;
+            first = Math.max(first, (int) Math.floor(Math.min(enter, leave)) - 1);
+            last = Math.min(last, (int) Math.ceil(Math.max(enter, leave)) + 1);
+        }
+        if (stepY != 0) {
+            float enter = (clipMinY - startY) / stepY, leave = (clipMaxY + 1 - startY) / stepY;
+            first = Math.max(first, (int) Math.floor(Math.min(enter, leave)) - 1);
+            last = Math.min(last, (int) Math.ceil(Math.max(enter, leave)) + 1);
+        }
+
+        for (int i = first; i <= last; i++) {
+            int x = (int) (startX + i * stepX);
+            int y = (int) (startY + i * stepY);
+            if (x < clipMinX || x > clipMaxX || y < clipMinY || y > clipMaxY) {
+                continue;
+            }
+            float z = startZ + i * stepZ;
+            int p = y * width + x;
+            if (z * (1 + OUTLINE_DEPTH_BIAS) >= depthBuffer[p]) {
+                depthBuffer[p] = Math.max(depthBuffer[p], z);
+                pixels[p] = colour;
+            }
+        }
+    }
+
+    /**
+     * Converts a projected x value into a horizontal pixel coordinate.
+     *
+     * @param value The projected x value.
+     * @return The pixel coordinate.
+     */
+    public float toScreenX(float value) {
+        int bigAxis = Math.max(width, height);
+        return (value / 2) * graphicsRatio * bigAxis + (width / 2);
+    }
+
+    /**
+     * Converts a projected y value into a vertical pixel coordinate, flipping it so that up is up.
+     *
+     * @param value The projected y value.
+     * @return The pixel coordinate.
+     */
+    public float toScreenY(float value) {
+        int bigAxis = Math.max(width, height);
+        return (value / 2) * -graphicsRatio * bigAxis + (height / 2);
+    }
+
+    /**
+     * Returns the largest projected x value that lands on the framebuffer, the inverse of toScreenX at the right edge.
+     *
+     * @return The half width of the visible region in projected units.
+     */
+    public float getProjectedHalfWidth() {
+        return (width / 2f) / (graphicsRatio * Math.max(width, height) / 2f);
+    }
+
+    /**
+     * Returns the largest projected y value that lands on the framebuffer, the inverse of toScreenY at the top edge.
+     *
+     * @return The half height of the visible region in projected units.
+     */
+    public float getProjectedHalfHeight() {
+        return (height / 2f) / (graphicsRatio * Math.max(width, height) / 2f);
+    }
+
+    //Getters and setters for the framebuffer and drawing options
+    public BufferedImage getImage() {
+        flushClear();
+        return image;
+    }
+
+    public int[] getPixels() {
+        flushClear();
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setOutlines(boolean outlines) {
+        this.outlines = outlines;
+    }
+
+    public boolean getOutlines() {
+        return outlines;
+    }
+
+    public void setOutlineColour(int outlineColour) {
+        this.outlineColour = outlineColour;
+    }
+
+    public void setGraphicsRatio(float graphicsRatio) {
+        this.graphicsRatio = graphicsRatio;
+    }
+
+    /**
+     * Sets the number of threads that rasterize tiles. With a single thread the frame is drawn on the calling thread.
+     *
+     * @param threadCount The number of threads.
+     */
+    public void setThreadCount(int threadCount) {
+        if (loop != null) {
+            loop.shutdown();
+        }
+        loop = new ParallelLoop(threadCount);
+    }
+
+    public int getThreadCount() {
+        return loop.getThreadCount();
+    }
+
+    /**
+     * Sets the width and height of the square tiles the framebuffer is split into. Smaller tiles spread the work
+     * more evenly between threads, larger tiles bin each triangle into fewer tiles.
+     *
+     * @param tileSize The tile size in pixels.
+     */
+    public void setTileSize(int tileSize) {
+        this.tileSize = Math.max(1, tileSize);
+        tilesX = (width + this.tileSize - 1) / this.tileSize;
+        tilesY = (height + this.tileSize - 1) / this.tileSize;
+        binStart = new int[tilesX * tilesY + 1];
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+}
@@ -0,0 +1,28 @@
+package core;
+
+import objects.Vertex;
+
+/**
+ * The RayHit class holds the closest point where a ray cast into a scene hit an object.
+ */
+public class RayHit {
+    public final RenderObject object; //The object that was hit
+    public final int triangle; //The index of the triangle that was hit within the object's mesh
+    public final float distance; //The distance from the ray's origin to the hit
+    public final Vertex point; //The world space position of the hit
+
+    /**
+     * Constructs a hit.
+     *
+     * @param object The object that was hit.
+     * @param triangle The index of the triangle that was hit.
+     * @param distance The distance from the ray's origin to the hit.
+     * @param point The world space position of the hit.
+     */
+    public RayHit(RenderObject object, int triangle, float distance, Vertex point) {
+        this.object = object;
+        this.triangle = triangle;
+        this.distance = distance;
+        this.point = point;
+    }
+}
@@ -1,10 +1,15 @@
 package core;
 
 import colours.ColourShader;
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import maths.Mat4;
+import objects.Mesh;
+import objects.MeshSimplifier;
 import objects.Triangle;
 import objects.Vertex;
 
@@ -12,75 +17,381 @@ import objects.Vertex;
  * The RenderObject class represents an object in a 3D scene that can be transformed
  * (moved, rotated, scaled) and rendered as a collection of triangles. It supports loading 
  * objects from .obj files and transforming their geometry.
+ * The geometry is stored as an indexed Mesh. Each unique vertex is transformed once into flat
+ * world space coordinate arrays, and the triangles only refer to those vertices by index.
+ * Moving, scaling or rotating the object only counts a change to its transform. The world matrix and bounds are
+ * rebuilt by updateTransform, which the scene calls at the start of every frame, and the vertices the next time the
+ * scene draws the object. The setters can be called from any thread, such as the client's network thread, while
+ * the scene draws, and a change made while the transform is being rebuilt is picked up by the next rebuild.
+ * The world matrix is one Mat4 composed from the scale, rotation and translation, which the scene combines with
+ * its camera matrices so every vertex is projected with a single matrix multiplication.
+ * Meshes with enough triangles are simplified into lower levels of detail when the object is created, and the scene
+ * picks the level to draw each frame. Only the current level's vertices are transformed and projected, and the
+ * triangle counts given to the scene are those of the full mesh, so every level fits in the space reserved for it.
  */
 public class RenderObject {
 
     //Basic properties of the render object
     private String name; //Name of the object
-    private Vertex scale; //Scale of the object
-    private Vertex rotation; //Rotation of the object (x, y, z angles)
-    private Vertex position; //Position of the object in the scene
+    private volatile Vertex scale; //Scale of the object
+    private volatile Vertex rotation; //Rotation of the object (x, y, z angles)
+    private volatile Vertex position; //Position of the object in the scene
     private ColourShader colourShader; //Colour shader to apply for rendering
+    private boolean backFaceCulling = true; //Whether triangles facing away from the camera are skipped, off for open meshes
+
+    //Geometry that makes up the object
+    private Mesh mesh; //Vertices and triangle indices of the current level of detail
+    private Mesh[] lodMeshes; //Every level of detail, level 0 is the full mesh and each level after it has fewer triangles
+    private int lodLevel; //The level of detail currently drawn
+    private float[] worldX; //Transformed x-coordinate of every vertex after scaling, rotation, and translation
+    private float[] worldY; //Transformed y-coordinate of every vertex
+    private float[] worldZ; //Transformed z-coordinate of every vertex
+
+    //Cache of every vertex projected by the scene's camera, filled in by the scene each frame
+    private float[] projectedX; //Projected x-coordinate of every vertex
+    private float[] projectedY; //Projected y-coordinate of every vertex
+    private float[] projectedZ; //Camera space depth of every vertex, 0 or less if it is behind the camera, which is also its clip space w
+    private float[] clipX; //Clip space x-coordinate of every vertex, the projected x before the divide by depth
+    private float[] clipY; //Clip space y-coordinate of every vertex, the projected y before the divide by depth
+    private byte[] clipFlags; //Which sides of the view frustum every vertex is outside of
+
+    //Bounds of the object in world space, updated the first time they are needed after the object is moved, scaled or rotated
+    private Vertex worldBoundsMin = new Vertex(0, 0, 0); //Smallest corner of the world space bounding box
+    private Vertex worldBoundsMax = new Vertex(0, 0, 0); //Largest corner of the world space bounding box
+    private Vertex worldSphereCentre = new Vertex(0, 0, 0); //Centre of the world space bounding sphere
+    private float worldSphereRadius; //Radius of the world space bounding sphere
+
+    private int tCount; //Number of triangles in the object at full detail
+    private int vCount; //Number of unique vertices in the object at full detail
+
+    //Levels of detail generated for every mesh with at least LOD_MIN_TRIANGLES triangles, as fractions of its triangles
+    public static final float[] LOD_RATIOS = {0.5f, 0.25f, 0.1f};
+    public static final int LOD_MIN_TRIANGLES = 256;
+
+    //Levels of detail of every .obj file loaded so far by its absolute path, shared by every object loaded from it
+    private static final ConcurrentHashMap<String, Mesh[]> loadedLods = new ConcurrentHashMap<>();
+
+    //Cached world transform, only rebuilt after the object has been moved, scaled or rotated
+    private Mat4 worldMatrix = new Mat4(); //The matrix taking model space to world space
+    private Mat4 inverseWorldMatrix = new Mat4(); //The matrix taking world space back to model space
+    private Mat4 scratchMatrix = new Mat4(); //Scratch matrix used while composing the world matrix
+    private final AtomicInteger transformChanges = new AtomicInteger(); //Number of times the object has been moved, scaled or rotated
+    private int builtChanges = -1; //The change count the world matrix and bounds were last built from
+    private int transformedChanges = -1; //The change count of the world matrix the world space vertices were last transformed with
+    private boolean verticesDirty = true; //Whether the world space vertices are out of date for another reason, such as a new level of detail
+    private boolean baked; //Whether the world arrays are the current mesh's own arrays, after bakeTransform
+    private int vertexTransformCount; //Number of times the world space vertices have been recalculated
+    private int transformVersion; //Number of times the world matrix and bounds have been rebuilt
 
-    //Triangles that make up the object
-    private Triangle[] triangles; //Original triangles of the object
-    private Triangle[] adjustedTriangles; //Transformed triangles after scaling, rotation, and translation
-
-    private int tCount; //Number of triangles in the object
-
-    //Precomputed sine and cosine values for the object's rotation
-    private Vertex c = new Vertex(0, 0, 0); //The vertex storing cosine of the rotation angles
-    private Vertex s = new Vertex(0, 0, 0); //The vertex storing sine of the rotation angles
+    /**
+     * Constructor to initialize the render object with a name, mesh, position, scale, rotation, and colour shader.
+     * 
+     * @param name The name of the object.
+     * @param mesh The mesh that forms the object.
+     * @param position The position of the object in 3D space.
+     * @param scale The scale of the object.
+     * @param rotation The rotation of the object.
+     * @param colourShader The shader used to apply colours to the object.
+     */
+    public RenderObject(String name, Mesh mesh, Vertex position, Vertex scale, Vertex rotation, ColourShader colourShader) {
+        this(name, generateLods(mesh), position, scale, rotation, colourShader);
+    }
 
     /**
-     * Constructor to initialize the render object with a name, triangles, position, scale, rotation, and colour shader.
+     * Constructor to initialize the render object with levels of detail that were already generated,
+     * which can be shared with other objects as meshes are never changed once built.
      * 
      * @param name The name of the object.
-     * @param triangles The triangles that form the object.
+     * @param lodMeshes Every level of detail, starting with the full mesh. The array is copied, the meshes are not.
      * @param position The position of the object in 3D space.
      * @param scale The scale of the object.
      * @param rotation The rotation of the object.
      * @param colourShader The shader used to apply colours to the object.
      */
-    public RenderObject(String name, Triangle[] triangles, Vertex position, Vertex scale, Vertex rotation, ColourShader colourShader) {
+    private RenderObject(String name, Mesh[] lodMeshes, Vertex position, Vertex scale, Vertex rotation, ColourShader colourShader) {
         this.name = name;
-        this.triangles = triangles;
+        this.mesh = lodMeshes[0];
         this.scale = scale;
-        this.adjustedTriangles = new Triangle[triangles.length]; //Create array for transformed triangles
         this.colourShader = colourShader;
-        this.tCount = triangles.length;
+        this.tCount = mesh.getTriangleCount();
+        this.vCount = mesh.getVertexCount();
         this.position = position;
         this.rotation = rotation;
+        this.lodMeshes = lodMeshes.clone(); //bakeTransform replaces this object's levels, not those of the objects sharing them
+
+        //Create arrays for the transformed and projected vertices
+        this.worldX = new float[vCount];
+        this.worldY = new float[vCount];
+        this.worldZ = new float[vCount];
+        this.projectedX = new float[vCount];
+        this.projectedY = new float[vCount];
+        this.projectedZ = new float[vCount];
+        this.clipX = new float[vCount];
+        this.clipY = new float[vCount];
+        this.clipFlags = new byte[vCount];
+    }
 
-        //Initialize adjusted triangles with placeholder triangles
-        for (int i = 0; i < tCount; i++) {
-            adjustedTriangles[i] = new Triangle(new Vertex(0, 0, 0), new Vertex(0, 0, 0), new Vertex(0, 0, 0));
+    /**
+     * Constructor to initialize the render object from an array of triangles, which are packed into a mesh.
+     * 
+     * @param name The name of the object.
+     * @param triangles The triangles that form the object.
+     * @param position The position of the object in 3D space.
+     * @param scale The scale of the object.
+     * @param rotation The rotation of the object.
+     * @param colourShader The shader used to apply colours to the object.
+     */
+    public RenderObject(String name, Triangle[] triangles, Vertex position, Vertex scale, Vertex rotation, ColourShader colourShader) {
+        this(name, Mesh.fromTriangles(triangles), position, scale, rotation, colourShader);
+    }
+
+    /**
+     * Brings the transformed vertices up to date, which can then be read with getWorldX, getWorldY and getWorldZ.
+     * Nothing is recalculated if the object has not changed since they were last transformed.
+     */
+    public void loadWorldTriangles() {
+        updateTransform();
+        if (needsVertexTransform()) {
+            transformVertices(0, mesh.getVertexCount());
+            markVerticesTransformed();
         }
     }
 
     /**
-     * Returns the adjusted (transformed) triangles of the object.
+     * Returns the adjusted (transformed) triangles of the object as Triangle objects.
+     * This builds new objects on every call and is only kept for code that still works with triangles,
+     * the scene reads the world coordinate arrays directly.
      * 
      * @return An array of transformed triangles.
      */
     public Triangle[] loadTriangles() {
-        adjustTriangles(); //Recalculate positions, scales, and rotations of the triangles
+        loadWorldTriangles(); //Bring the transformed vertices up to date
+        Triangle[] adjustedTriangles = new Triangle[mesh.getTriangleCount()];
+        for (int index = 0; index < adjustedTriangles.length; index++) {
+            adjustedTriangles[index] = getWorldTriangle(index, new Triangle(new Vertex(0, 0, 0), new Vertex(0, 0, 0), new Vertex(0, 0, 0)));
+        }
         return adjustedTriangles;
     }
 
     /**
-     * Adjusts the positions, scales, and rotations of all triangles in the object.
+     * Copies the world space corners of one triangle into an existing Triangle, so it can be viewed without allocating.
+     * 
+     * @param index The index of the triangle.
+     * @param into The triangle whose vertices are overwritten.
+     * @return The triangle that was passed in.
+     */
+    public Triangle getWorldTriangle(int index, Triangle into) {
+        int[] indices = mesh.indices;
+        int a = indices[index * 3], b = indices[index * 3 + 1], c = indices[index * 3 + 2];
+        into.v1.x = worldX[a]; into.v1.y = worldY[a]; into.v1.z = worldZ[a];
+        into.v2.x = worldX[b]; into.v2.y = worldY[b]; into.v2.z = worldZ[b];
+        into.v3.x = worldX[c]; into.v3.y = worldY[c]; into.v3.z = worldZ[c];
+        return into;
+    }
+
+    /**
+     * Rebuilds the world matrix and the world space bounds if the object has been moved, scaled or rotated since
+     * they were last built. This is cheap and does not touch the vertices. It must only be called by the thread
+     * drawing the object, between frames, as the getters for the matrix and bounds return what it last built.
+     * The change count is read before the position, scale and rotation, so a change made during the rebuild leaves
+     * the count ahead of the one recorded and is built next time rather than lost.
+     */
+    public void updateTransform() {
+        int changes = transformChanges.get();
+        if (changes == builtChanges) {
+            return;
+        }
+
+        //A baked object shares its world arrays with its mesh, so it needs its own arrays again once it has been moved
+        if (baked) {
+            baked = false;
+            worldX = new float[vCount];
+            worldY = new float[vCount];
+            worldZ = new float[vCount];
+        }
+        generateWorldMatrix(); //Combine the scale, rotation and position into one matrix
+        updateBounds(); //Move the bounding volumes along with the object
+        builtChanges = changes;
+        transformVersion++;
+    }
+
+    /**
+     * Transforms a range of the mesh's vertices into world space with the world matrix, writing straight into the
+     * world arrays. Each unique vertex is transformed once, so vertices shared by several triangles are not
+     * transformed again for each of them. updateTransform must have been called first.
+     * Different ranges can be transformed on different threads at the same time.
+     * 
+     * @param from The index of the first vertex to transform.
+     * @param to One more than the index of the last vertex to transform.
+     */
+    public void transformVertices(int from, int to) {
+        VertexKernels.getInstance().transform(worldMatrix, mesh.x, mesh.y, mesh.z, worldX, worldY, worldZ, from, to);
+    }
+
+    /**
+     * Records that every vertex has been transformed with the current world matrix.
      */
-    private void adjustTriangles() {
-        generateObjectRotation(); //Precompute the sine and cosine for rotation
-        //Apply scaling, rotation, and translation to all triangles
-        for (int index = 0; index < tCount; index++) {
-            scale(adjustedTriangles[index], triangles[index]); //Scale the triangle
-            rotate(adjustedTriangles[index], adjustedTriangles[index]); //Rotate the triangle
-            adjust(adjustedTriangles[index], adjustedTriangles[index]); //Translate the triangle
+    public void markVerticesTransformed() {
+        verticesDirty = false;
+        transformedChanges = builtChanges;
+        vertexTransformCount++;
+    }
+
+    /**
+     * Returns whether the world space vertices need transforming before the object can be drawn.
+     * 
+     * @return true if the object has changed since its vertices were last transformed.
+     */
+    public boolean needsVertexTransform() {
+        return verticesDirty || transformedChanges != builtChanges;
+    }
+
+    /**
+     * Counts a change to the object's position, scale or rotation, after the new value has been stored,
+     * so the world matrix, bounds and vertices are rebuilt from it the next time the scene draws the object.
+     */
+    private void markTransformDirty() {
+        transformChanges.incrementAndGet();
+    }
+
+    /**
+     * Bakes the object's transform into its mesh, for objects that never move. Every level of detail is replaced by
+     * one in world space and the transform is reset, so the world arrays are the current mesh's own arrays and never
+     * need transforming. The object can still be moved afterwards, which transforms the baked mesh from then on.
+     */
+    public void bakeTransform() {
+        updateTransform();
+        for (int level = 0; level < lodMeshes.length; level++) {
+            Mesh lod = lodMeshes[level];
+            float[] x = new float[lod.getVertexCount()];
+            float[] y = new float[lod.getVertexCount()];
+            float[] z = new float[lod.getVertexCount()];
+            Mat4 m = worldMatrix;
+            for (int v = 0; v < x.length; v++) {
+                float vx = lod.x[v], vy = lod.y[v], vz = lod.z[v];
+                x[v] = m.m00 * vx + m.m01 * vy + m.m02 * vz + m.m03;
+                y[v] = m.m10 * vx + m.m11 * vy + m.m12 * vz + m.m13;
+                z[v] = m.m20 * vx + m.m21 * vy + m.m22 * vz + m.m23;
+            }
+            lodMeshes[level] = new Mesh(x, y, z, lod.indices);
+            lodMeshes[level].setVertexNormals(transformNormals(lod.getVertexNormals()));
+        }
+        mesh = lodMeshes[lodLevel];
+        worldX = mesh.x;
+        worldY = mesh.y;
+        worldZ = mesh.z;
+        baked = true;
+        verticesDirty = false;
+        position = new Vertex(0, 0, 0);
+        scale = new Vertex(1, 1, 1);
+        rotation = new Vertex(0, 0, 0);
+
+        //Build the reset transform here rather than counting it as a change, which would undo the baking
+        generateWorldMatrix();
+        updateBounds();
+        transformVersion++;
+        transformedChanges = builtChanges;
+    }
+
+    /**
+     * Moves vertex normals into world space with the transpose of the inverse world matrix, which keeps them at
+     * right angles to the surface when the object is scaled unevenly, so a baked mesh keeps the normals its file gave.
+     *
+     * @param normals The model space normals as x, y, z per vertex.
+     * @return New unit world space normals.
+     */
+    private float[] transformNormals(float[] normals) {
+        Mat4 m = inverseWorldMatrix;
+        float[] transformed = new float[normals.length];
+        for (int v = 0; v < normals.length; v += 3) {
+            float nx = normals[v], ny = normals[v + 1], nz = normals[v + 2];
+            float tx = m.m00 * nx + m.m10 * ny + m.m20 * nz;
+            float ty = m.m01 * nx + m.m11 * ny + m.m21 * nz;
+            float tz = m.m02 * nx + m.m12 * ny + m.m22 * nz;
+            float length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+            if (length > 0) {
+                transformed[v] = tx / length;
+                transformed[v + 1] = ty / length;
+                transformed[v + 2] = tz / length;
+            }
+        }
+        return transformed;
+    }
+
+    /**
+     * Builds the levels of detail of a mesh by simplifying it to each of LOD_RATIOS of its triangles.
+     * Small meshes, and levels that could not be simplified any further, are left out.
+     * 
+     * @param mesh The full detail mesh.
+     * @return The levels of detail, starting with the mesh itself.
+     */
+    private static Mesh[] generateLods(Mesh mesh) {
+        int triangles = mesh.getTriangleCount();
+        if (triangles < LOD_MIN_TRIANGLES) {
+            return new Mesh[] {mesh};
+        }
+        int[] targets = new int[LOD_RATIOS.length];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = (int) (triangles * LOD_RATIOS[i]);
+        }
+        Mesh[] simplified = MeshSimplifier.simplify(mesh, targets);
+
+        Mesh[] levels = new Mesh[simplified.length + 1];
+        levels[0] = mesh;
+        int levelCount = 1;
+        for (Mesh lod : simplified) {
+            if (lod.getTriangleCount() < levels[levelCount - 1].getTriangleCount()) {
+                levels[levelCount++] = lod;
+            }
+        }
+        return Arrays.copyOf(levels, levelCount);
+    }
+
+    /**
+     * Switches the level of detail that is drawn. The new level's vertices are transformed the next time the object
+     * is drawn, except for baked objects whose world arrays are simply the new level's own arrays.
+     * 
+     * @param level The level of detail, 0 for the full mesh, clamped to the levels available.
+     */
+    public void setLodLevel(int level) {
+        level = Math.max(0, Math.min(lodMeshes.length - 1, level));
+        if (level == lodLevel) {
+            return;
+        }
+        lodLevel = level;
+        mesh = lodMeshes[level];
+        if (baked) {
+            worldX = mesh.x;
+            worldY = mesh.y;
+            worldZ = mesh.z;
+        } else {
+            verticesDirty = true;
         }
     }
 
+    public int getLodLevel() {
+        return lodLevel;
+    }
+
+    public int getLodCount() {
+        return lodMeshes.length;
+    }
+
+    public Mesh getLodMesh(int level) {
+        return lodMeshes[level];
+    }
+
+    /**
+     * Builds the world matrix as translation * rotation * scale, so points are scaled first, then rotated, then moved,
+     * and its inverse for moving points back into model space.
+     */
+    private void generateWorldMatrix() {
+        worldMatrix.setTranslation(position.x, position.y, position.z);
+        worldMatrix.multiply(scratchMatrix.setRotation(rotation.x, rotation.y, rotation.z));
+        worldMatrix.multiply(scratchMatrix.setScale(scale.x, scale.y, scale.z));
+        inverseWorldMatrix.invertAffine(worldMatrix);
+    }
+
     //Getters for object properties
     public String getName() {
         return this.name;
@@ -98,108 +409,237 @@ public class RenderObject {
         return rotation;
     }
 
+    /**
+     * Returns the number of triangles at full detail, which is the most the object ever draws.
+     * 
+     * @return The full detail triangle count.
+     */
     public int getTCount() {
         return tCount;
     }
 
+    /**
+     * Returns the number of vertices at full detail, which is the most the object ever transforms.
+     * 
+     * @return The full detail vertex count.
+     */
+    public int getVCount() {
+        return vCount;
+    }
+
     public ColourShader getColour() {
         return colourShader;
     }
 
-    //Setters for object properties with automatic adjustment of triangles
+    public Mesh getMesh() {
+        return mesh;
+    }
+
+    public float[] getWorldX() {
+        return worldX;
+    }
+
+    public float[] getWorldY() {
+        return worldY;
+    }
+
+    public float[] getWorldZ() {
+        return worldZ;
+    }
+
+    public float[] getProjectedX() {
+        return projectedX;
+    }
+
+    public float[] getProjectedY() {
+        return projectedY;
+    }
+
+    public float[] getProjectedZ() {
+        return projectedZ;
+    }
+
+    public float[] getClipX() {
+        return clipX;
+    }
+
+    public float[] getClipY() {
+        return clipY;
+    }
+
+    public byte[] getClipFlags() {
+        return clipFlags;
+    }
+
+    /**
+     * Returns the matrix taking model space to world space, as of the last updateTransform.
+     * It is reused, so it should not be changed or kept.
+     * 
+     * @return The world matrix.
+     */
+    public Mat4 getWorldMatrix() {
+        return worldMatrix;
+    }
+
+    /**
+     * Returns the matrix taking world space back to model space, as of the last updateTransform.
+     * It is reused, so it should not be changed or kept.
+     * 
+     * @return The inverse of the world matrix.
+     */
+    public Mat4 getInverseWorldMatrix() {
+        return inverseWorldMatrix;
+    }
+
+    /**
+     * Returns a number that changes every time the world matrix and bounds are rebuilt, so callers can tell
+     * whether the object has moved since they last looked.
+     * 
+     * @return The transform version.
+     */
+    public int getTransformVersion() {
+        return transformVersion;
+    }
+
+    public int getVertexTransformCount() {
+        return vertexTransformCount;
+    }
+
+    //Getters for the object's world space bounds, as of the last updateTransform
+    public Vertex getWorldBoundsMin() {
+        return worldBoundsMin;
+    }
+
+    public Vertex getWorldBoundsMax() {
+        return worldBoundsMax;
+    }
+
+    public Vertex getWorldSphereCentre() {
+        return worldSphereCentre;
+    }
+
+    public float getWorldSphereRadius() {
+        return worldSphereRadius;
+    }
+
+    //Setters for object properties, which count a change to the transform to be rebuilt at the start of the next frame
     public void setPosition(Vertex newPosition) {
         this.position = newPosition;
-        adjustTriangles(); //Recalculate adjusted triangles based on new position
+        markTransformDirty();
     }
 
     public void alterPosition(Vertex alteration) {
         this.position = Vertex.add(position, alteration);
-        adjustTriangles(); //Recalculate adjusted triangles based on updated position
+        markTransformDirty();
     }
 
     public void setScale(Vertex newScale) {
         this.scale = newScale;
-        adjustTriangles(); //Recalculate adjusted triangles based on new scale
+        markTransformDirty();
     }
 
     public void alterScale(Vertex alteration) {
         this.scale = Vertex.add(scale, alteration);
-        adjustTriangles(); //Recalculate adjusted triangles based on updated scale
+        markTransformDirty();
     }
 
     public void setRotation(Vertex newRotation) {
         this.rotation = newRotation;
-        adjustTriangles(); //Recalculate adjusted triangles based on new rotation
+        markTransformDirty();
     }
 
     public void alterRotation(Vertex alteration) {
         this.rotation = Vertex.add(rotation, alteration);
-        adjustTriangles(); //Recalculate adjusted triangles based on updated rotation
+        markTransformDirty();
     }
 
     public void setColour(ColourShader colourShader) {
         this.colourShader = colourShader;
     }
 
-    /**
-     * Scales a triangle by the object's scale factor.
-     * 
-     * @param tAfter The triangle after scaling.
-     * @param tBefore The original triangle before scaling.
-     */
-    public void scale(Triangle tAfter, Triangle tBefore) {
-        Vertex v1new = Vertex.multiply(tBefore.v1, scale);
-        Vertex v2new = Vertex.multiply(tBefore.v2, scale);
-        Vertex v3new = Vertex.multiply(tBefore.v3, scale);
-        tAfter.v1 = v1new;
-        tAfter.v2 = v2new;
-        tAfter.v3 = v3new;
+    public boolean getBackFaceCulling() {
+        return backFaceCulling;
+    }
+
+    public void setBackFaceCulling(boolean backFaceCulling) {
+        this.backFaceCulling = backFaceCulling;
     }
 
     /**
-     * Translates (adjusts) a triangle by the object's position.
+     * Moves a world space point into the object's model space by undoing its translation, rotation and scale,
+     * as of the last updateTransform.
+     * Testing the camera against the mesh's own face normals in model space gives the same answer as
+     * testing the transformed triangles in world space, without transforming any normals.
      * 
-     * @param tAfter The triangle after translation.
-     * @param tBefore The original triangle before translation.
+     * @param point The world space point.
+     * @return A new Vertex at the point's model space position.
      */
-    public void adjust(Triangle tAfter, Triangle tBefore) {
-        Vertex v1new = Vertex.add(tBefore.v1, position);
-        Vertex v2new = Vertex.add(tBefore.v2, position);
-        Vertex v3new = Vertex.add(tBefore.v3, position);
-        tAfter.v1 = v1new;
-        tAfter.v2 = v2new;
-        tAfter.v3 = v3new;
+    public Vertex toModelSpace(Vertex point) {
+        Mat4 m = inverseWorldMatrix;
+        return new Vertex(m.m00 * point.x + m.m01 * point.y + m.m02 * point.z + m.m03,
+                m.m10 * point.x + m.m11 * point.y + m.m12 * point.z + m.m13,
+                m.m20 * point.x + m.m21 * point.y + m.m22 * point.z + m.m23);
     }
 
     /**
-     * Precomputes the sine and cosine values of the object's rotation for efficient rotation calculations.
+     * Updates the world space bounding sphere and bounding box from the mesh's model space bounds,
+     * without touching the vertices. The box is the bounds of the transformed model space box's eight corners.
      */
-    private void generateObjectRotation() {
-        s.x = (float) Math.sin(-rotation.x);
-        s.y = (float) Math.sin(-rotation.y);
-        s.z = (float) Math.sin(-rotation.z);
-        c.x = (float) Math.cos(-rotation.x);
-        c.y = (float) Math.cos(-rotation.y);
-        c.z = (float) Math.cos(-rotation.z);
+    private void updateBounds() {
+        Mesh full = lodMeshes[0]; //Every level uses the full mesh's bounds, so switching level never moves them
+        Vertex min = full.getBoundsMin();
+        Vertex max = full.getBoundsMax();
+
+        //Transform each corner of the model space box and grow the world space box around them
+        for (int corner = 0; corner < 8; corner++) {
+            float cx = (corner & 1) == 0 ? min.x : max.x;
+            float cy = (corner & 2) == 0 ? min.y : max.y;
+            float cz = (corner & 4) == 0 ? min.z : max.z;
+            Vertex transformed = transformPoint(cx, cy, cz);
+            if (corner == 0) {
+                worldBoundsMin = new Vertex(transformed.x, transformed.y, transformed.z);
+                worldBoundsMax = transformed;
+            } else {
+                worldBoundsMin.x = Math.min(worldBoundsMin.x, transformed.x);
+                worldBoundsMin.y = Math.min(worldBoundsMin.y, transformed.y);
+                worldBoundsMin.z = Math.min(worldBoundsMin.z, transformed.z);
+                worldBoundsMax.x = Math.max(worldBoundsMax.x, transformed.x);
+                worldBoundsMax.y = Math.max(worldBoundsMax.y, transformed.y);
+                worldBoundsMax.z = Math.max(worldBoundsMax.z, transformed.z);
+            }
+        }
+
+        //Rotation keeps distances, so only the largest scale factor changes the sphere's radius
+        Vertex centre = full.getSphereCentre();
+        worldSphereCentre = transformPoint(centre.x, centre.y, centre.z);
+        float largestScale = Math.max(Math.abs(scale.x), Math.max(Math.abs(scale.y), Math.abs(scale.z)));
+        worldSphereRadius = full.getSphereRadius() * largestScale;
     }
 
     /**
-     * Rotates a triangle using the precomputed sine and cosine values.
+     * Scales, rotates and translates a single model space point into world space with the world matrix.
      * 
-     * @param tAfter The triangle after rotation.
-     * @param tBefore The original triangle before rotation.
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param z The z-coordinate of the point.
+     * @return A new Vertex at the transformed position.
      */
-    public void rotate(Triangle tAfter, Triangle tBefore) {
-        Vertex v1new = Vertex.rotateWithSinCos(tBefore.v1, s, c);
-        Vertex v2new = Vertex.rotateWithSinCos(tBefore.v2, s, c);
-        Vertex v3new = Vertex.rotateWithSinCos(tBefore.v3, s, c);
-        tAfter.v1 = v1new;
-        tAfter.v2 = v2new;
-        tAfter.v3 = v3new;
+    private Vertex transformPoint(float x, float y, float z) {
+        Mat4 m = worldMatrix;
+        return new Vertex(m.m00 * x + m.m01 * y + m.m02 * z + m.m03,
+                m.m10 * x + m.m11 * y + m.m12 * z + m.m13,
+                m.m20 * x + m.m21 * y + m.m22 * z + m.m23);
     }
 
     /**
-     * Loads a 3D object from an .obj file and parses it into a series of triangles.
+     * Loads a 3D object from an .obj file through MeshCache, which reads the mesh back from its binary cache file if
+     * the .obj file has not changed since it was cached. Otherwise the file is parsed with ObjParser, which reads it in
+     * one pass, splits faces with more than three corners into triangles, and uses the file's vertex normals if it
+     * has them, and the cache file is written for next time.
+     * The mesh and its levels of detail are kept, so every later object loaded from the same path shares them and
+     * is created without reading the file or simplifying the mesh again, such as a player model loaded for every
+     * player who joins. clearLoadedObjects forgets them, for files that have changed since.
+     * If the file cannot be read the error is printed and the object has no triangles.
      * 
      * @param objPath The path to the .obj file.
      * @param name The name of the object.
@@ -208,79 +648,40 @@ public class RenderObject {
      * @return A new RenderObject loaded from the file.
      */
     public static RenderObject loadObject(String objPath, String name, ColourShader colourShader, Vertex position) {
-        int firstLineVertex = 1;
-        int lastLineVertex = 1;
-        int firstLineFace = 1;
-        int lastLineFace = 1;
-        int lineIndex = 1;
-        Vertex[] vertices = null;
-        Triangle[] triangles = null;
-        BufferedReader reader = null;
-        String line;
+        String key = Paths.get(objPath).toAbsolutePath().normalize().toString();
+        Mesh[] lods = loadedLods.get(key);
+        if (lods != null) {
+            return new RenderObject(name, lods, position, new Vertex(1, 1, 1), new Vertex(0, 0, 0), colourShader);
+        }
 
+        Mesh mesh;
         try {
-            reader = new BufferedReader(new FileReader(objPath));
-            line = "";
-
-            //Parse the .obj file to find vertices and faces
-            while ((line = reader.readLine()) != null) {
-                String[] lineS = line.split(" ");
-                if (lineS[0].equals("v")) { //Vertex line
-                    if (firstLineVertex == lastLineVertex) {
-                        firstLineVertex = lineIndex;
-                        lastLineVertex = lineIndex + 1;
-                    } else {
-                        lastLineVertex = lineIndex;
-                    }
-                } else if (lineS[0].equals("f")) { //Face line
-                    if (firstLineFace == lastLineFace) {
-                        firstLineFace = lineIndex;
-                        lastLineFace = lineIndex + 1;
-                    } else {
-                        lastLineFace = lineIndex;
-                    }
-                }
-                lineIndex += 1;
-            }
-            reader.close();
-
-            //Allocate memory for vertices and triangles
-            vertices = new Vertex[lastLineVertex - firstLineVertex + 1];
-            triangles = new Triangle[lastLineFace - firstLineFace + 1];
-
-            reader = new BufferedReader(new FileReader(objPath));
-            line = "";
-            lineIndex = 1;
-
-            //Parse the .obj file and extract vertex and face data
-            while ((line = reader.readLine()) != null) {
-                String[] lineS = line.split(" ");
-                if (firstLineVertex <= lineIndex && lineIndex <= lastLineVertex) {
-                    //Parse vertex positions
-                    float valueOne = Float.parseFloat(lineS[1]);
-                    float valueTwo = Float.parseFloat(lineS[2]);
-                    float valueThree = Float.parseFloat(lineS[3]);
-                    vertices[lineIndex - firstLineVertex] = new Vertex(valueOne, valueTwo, valueThree);
-                } else if (firstLineFace <= lineIndex && lineIndex <= lastLineFace) {
-                    //Parse face (triangle) indices
-                    int valueOne = Integer.parseInt(lineS[1].split("/")[0]);
-                    int valueTwo = Integer.parseInt(lineS[2].split("/")[0]);
-                    int valueThree = Integer.parseInt(lineS[3].split("/")[0]);
-                    triangles[lineIndex - firstLineFace] = new Triangle(vertices[valueOne - 1], vertices[valueTwo - 1], vertices[valueThree - 1]);
-                }
-                lineIndex += 1;
-            }
-            reader.close();
-
-        } catch (FileNotFoundException e) {
+            mesh = MeshCache.load(objPath);
+        } catch (NoSuchFileException e) {
             System.out.println("File not found: " + e.getMessage());
             e.printStackTrace();
+            mesh = new Mesh(new float[0], new float[0], new float[0], new int[0]);
         } catch (IOException e) {
             System.out.println("IO Exception: " + e.getMessage());
             e.printStackTrace();
+            mesh = new Mesh(new float[0], new float[0], new float[0], new int[0]);
+        }
+
+        //Two threads loading the same file at once both build it, and the first to finish is the one kept
+        lods = generateLods(mesh);
+        if (mesh.getTriangleCount() > 0) {
+            Mesh[] kept = loadedLods.putIfAbsent(key, lods);
+            lods = kept != null ? kept : lods;
         }
 
-        //Create and return the RenderObject with loaded triangles
-        return new RenderObject(name, triangles, position, new Vertex(1, 1, 1), new Vertex(0, 0, 0), colourShader);
+        //Create and return the RenderObject with the loaded mesh
+        return new RenderObject(name, lods, position, new Vertex(1, 1, 1), new Vertex(0, 0, 0), colourShader);
+    }
+
+    /**
+     * Forgets the meshes of every .obj file loaded so far, so the next loadObject of each reads it again.
+     */
+    public static void clearLoadedObjects() {
+        loadedLods.clear();
     }
 }
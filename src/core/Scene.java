@@ -1,9 +1,18 @@
 package core;
 
 import colours.ColourShader;
+import colours.Light;
 import events.CameraEvent;
-import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+import maths.Mat4;
+import maths.Vec3;
+import objects.BVH;
+import objects.Mesh;
 import objects.Triangle;
 import objects.Triangle2D;
 import objects.Vertex;
@@ -12,32 +21,174 @@ import objects.Vertex2D;
 /**
  * The Scene class represents a 3D scene that contains RenderObjects. 
  * It handles rendering, camera movement, and sorting objects for correct rendering order.
+ * Every object is given a contiguous range of triangle numbers, and every per-triangle value is kept in a flat array
+ * indexed by that number rather than in Triangle and Vertex objects. Objects are identified by stable handles,
+ * and adding or removing one only touches its own range, the ranges of removed objects being reused
+ * and gradually compacted over the following frames.
+ * The objects' world space bounding boxes are kept in a bounding volume hierarchy, which is rebuilt when objects
+ * join or leave and refitted when they move. It is used to cull whole groups of objects against the view frustum
+ * at once, and to answer ray and range queries from gameplay code.
  */
 public class Scene {
 
-    //Parallel arrays to store triangles, their colours, and object names
-    private Triangle[] triangles; //The array of all triangles in the scene
-    private ColourShader[] colours; //The array of colours of each triangle
-    private String[] objectNames; //The array of object names corresponding to each triangle
+    //Object registry. Each object in the scene has a handle, the index of its slot in these arrays,
+    //which stays the same for as long as the object is in the scene
+    private RenderObject[] handleObjects = new RenderObject[0]; //The object with each handle, null for unused handles
+    private int[] objectFirstTriangle = new int[0]; //Index of the first triangle of each object
+    private int handleLimit; //One more than the largest handle in use
+    private int[] triangleObjects = new int[0]; //Handle of the object each triangle belongs to, -1 for unused triangles
+    private RangeAllocator triangleRanges = new RangeAllocator(); //Hands out the range of triangle numbers of each object
+    private TreeMap<Integer, Integer> rangeOwners = new TreeMap<>(); //First triangle of each object's range mapped to its handle
+    private int liveTriangleCount; //Number of triangles that belong to objects
 
-    //Arrays to store the rendered 2D triangles and their final colours
-    private Triangle2D[] triangles2DRendered; //The array of rendered (2D) triangles
-    private Color[] finalColours; //The array of final colours for rendered triangles
+    //Objects added or removed since the last frame. They are applied at the start of the next frame,
+    //so any thread can add and remove objects while the scene is being rendered
+    private final ArrayList<PendingChange> pendingChanges = new ArrayList<>();
+    private final HashMap<RenderObject, Integer> objectHandles = new HashMap<>(); //Handle of every object in or joining the scene
+    private int[] freeHandles = new int[0]; //Handles of removed objects, ready to be reused
+    private int freeHandleCount; //Number of handles in freeHandles
+    private int nextHandle; //The smallest handle that has never been used
+    public static final int COMPACTION_BUDGET = 1 << 16; //Largest number of triangles moved to close gaps in one frame
 
-    private int triangleCount; //The total number of triangles in the scene
+    //Arrays to store the rendered triangles, three projected corners per draw slot, and their final colours.
+    //The first slots belong to the scene's triangles, the slots after them hold the pieces of clipped triangles
+    private float[] screenX = new float[0]; //Projected x-coordinate of every draw slot corner
+    private float[] screenY = new float[0]; //Projected y-coordinate of every draw slot corner
+    private float[] screenZ = new float[0]; //Camera space depth of every draw slot corner
+    private boolean[] rendered = new boolean[0]; //Whether each triangle was rendered whole this frame, without clipping
+    private int[] finalColours = new int[0]; //The final colour of every draw slot, packed as ARGB
+    private int[] slotTriangles = new int[0]; //The scene triangle each draw slot was made from
+    private int slotCount; //Number of draw slots in use this frame
+
+    //Scratch polygons for clipping, holding up to nine clip space vertices (x, y, w)
+    private float[] clipPolygon = new float[27];
+    private float[] clipPolygonScratch = new float[27];
+    private int[] clipEdges = new int[9]; //The triangle edge each polygon edge lies on, -1 for edges along a clipping plane
+    private int[] clipEdgesScratch = new int[9];
+
+    //Outline edges. Every draw slot gets a mask of the edges the rasterizer outlines, bit k standing for the edge from
+    //corner k to corner (k + 1) % 3. An edge shared by two drawn triangles is only given to one of them
+    public static final int OUTLINE_TRIANGLE_EDGES = 0; //No masks, every edge of every triangle is outlined
+    public static final int OUTLINE_SILHOUETTES = 1; //Edges on the border of a mesh or between a front face and a back face
+    public static final int OUTLINE_CREASES = 2; //Edges between faces meeting at a sharper angle than the crease angle
+    public static final int OUTLINE_SMOOTH = 4; //Every other edge shared by two faces
+    public static final int OUTLINE_ALL = OUTLINE_SILHOUETTES | OUTLINE_CREASES | OUTLINE_SMOOTH;
+    private int outlineEdges = OUTLINE_ALL; //The kinds of edges that are outlined
+    private float creaseAngle = 30; //Angle in degrees between two faces' normals above which their edge is a crease
+    private float creaseCosine = (float) Math.cos(Math.toRadians(creaseAngle));
+    private byte[] slotEdges = new byte[0]; //Mask of the outlined edges of every draw slot
+
+    //What happened to each triangle this frame, written while shading and read while building the render list
+    private byte[] triangleStates = new byte[0];
+    private static final byte STATE_SKIPPED = 0; //Not drawn because its object has no colour shader
+    private static final byte STATE_BACK_FACE = 1; //Facing away from the camera
+    private static final byte STATE_OUTSIDE = 2; //Entirely outside one side of the view frustum
+    private static final byte STATE_DRAWN = 3; //Drawn whole
+    private static final byte STATE_CLIPPED = 4; //Drawn in pieces after clipping
+
+    //Triangles waiting to be shaded. Each chunk packs the triangles it keeps from the start of its own range of
+    //triangle numbers, then shades them with one call to its object's shader and copies the colours to their slots
+    private float[] batchX = new float[0], batchY = new float[0], batchZ = new float[0]; //World space centre of each waiting triangle
+    private float[] batchNormalX = new float[0], batchNormalY = new float[0], batchNormalZ = new float[0]; //World space unit normal of each waiting triangle, for lit shaders
+    private int[] batchTriangles = new int[0]; //Index of each waiting triangle
+    private int[] batchColours = new int[0]; //Colour the shader gave each waiting triangle
+
+    //Projecting and shading are split into chunks of at most CHUNK_SIZE vertices or triangles of one object
+    public static final int CHUNK_SIZE = 4096;
+    private ParallelLoop loop = new ParallelLoop(Runtime.getRuntime().availableProcessors()); //Runs the chunks on several threads
+    //An object's chunks are next to each other in the tables, the chunks of removed objects have an object handle of -1
+    private int[] vertexChunkObject = new int[0], vertexChunkStart = new int[0], vertexChunkEnd = new int[0]; //Object and vertex range of each vertex chunk
+    private int vertexChunkCount;
+    private int[] triangleChunkObject = new int[0], triangleChunkStart = new int[0], triangleChunkEnd = new int[0]; //Object and triangle range of each triangle chunk
+    private int triangleChunkCount;
+    private int[] objectFirstVertexChunk = new int[0], objectFirstTriangleChunk = new int[0]; //Where each object's chunks start
+    private int deadChunkCount; //Number of chunks belonging to removed objects
+
+    //Per object values computed before the chunks run, indexed by handle
+    private boolean[] objectVisible = new boolean[0]; //Whether each object is at least partly inside the view frustum
+    private boolean[] objectTransforming = new boolean[0]; //Whether each object's vertices are transformed into world space this frame
+    private float[] objectCamX = new float[0], objectCamY = new float[0], objectCamZ = new float[0]; //The camera's position in each object's model space
+    private Mat4[] objectClipMatrices = new Mat4[0]; //The matrix taking each object's model space straight to clip space
+    private Light[][] objectLights = new Light[0][]; //The lights reaching each object with a lit shader, at the start of its array
+    private int[] objectLightCount = new int[0]; //Number of lights in use in each object's light list
+
+    //Bounding volume hierarchy over the objects' world space bounding boxes, whose items are handles
+    private BVH objectHierarchy = new BVH(2);
+    private float[] objectBounds = new float[0]; //Six world space bounds values for every handle
+    private int[] objectBoundsVersion = new int[0]; //Each object's transform version when its bounds were last copied
+    private int[] hierarchyHandles = new int[0]; //Scratch list of the handles in use, for rebuilding the hierarchy
+    private boolean hierarchyChanged = true; //Whether objects have joined or left since the hierarchy was built
+    private int hierarchyBuildCount; //Number of times the hierarchy has been built
+    public static final float REBUILD_COST_RATIO = 1.5f; //How much refitting may raise the hierarchy's cost before it is rebuilt
+    private float[][] worldPlanes = new float[6][4]; //The view frustum planes in world space
+    private int[] cullStack = new int[0]; //Nodes waiting to be culled, each followed by the mask of planes it may still cross
+
+    //Tasks run for every chunk, created once so rendering does not allocate them
+    private final IntConsumer projectTask = this::projectChunk;
+    private final IntConsumer shadeTask = this::shadeChunk;
+    private final IntConsumer outlineTask = this::outlineChunk;
+    private final IntConsumer reloadTask = this::reloadObject;
+
+    private int triangleCount; //The number of triangle numbers in use, including gaps left by removed objects
+
+    //Depth ordering of the triangles, kept between frames so each sort starts from the last order
+    private DepthSorter depthSorter = new DepthSorter(); //Sorts triangle indices from back to front
+    private float[] depthValues = new float[0]; //The distance of each triangle from the camera
+    private int[] renderList = new int[0]; //Indices of the triangles rendered this frame, in scene order
+    private int renderCount; //Number of triangles rendered this frame
+    private int[] renderOrder = renderList; //Indices of the triangles rendered this frame, in the order they should be drawn
+    private boolean depthSorting = true; //Whether triangles are sorted, not needed when drawing with a depth buffer
+
+    //Level of detail selection, by the radius of an object's bounding sphere on screen as a fraction of half the screen's height
+    private boolean levelOfDetail = true; //Whether objects far away are drawn with their simplified meshes
+    private float[] lodScreenSizes = {0.2f, 0.08f, 0.03f}; //Below each size an object drops to the next level of detail
+    public static final float LOD_HYSTERESIS = 0.15f; //How far past a size an object must get before switching, so it does not flicker between levels
 
     //Lists to hold objects and camera events in the scene
     private ArrayList<RenderObject> objects = new ArrayList<>(); //List of all objects in the scene
     private ArrayList<CameraEvent> cameraEvents = new ArrayList<>(); //List of camera events in the scene
+    private ArrayList<Light> lights = new ArrayList<>(); //Lights shining on objects with lit shaders
+    private LongSupplier clock = System::currentTimeMillis; //Time in milliseconds that camera events follow
 
     //Camera properties
     private Vertex camPos = new Vertex(0, 0, 0); //Camera position
     private Vertex screenPosRel = new Vertex(0, 0, 1.2f); //Position of the screen relative to the camera
     private Vertex camRotation = new Vertex(0, 0, 0); //Camera rotation (x, y, z)
     
-    //Precomputed sine and cosine of the camera's rotation
-    private Vertex c = new Vertex(0, 0, 0); //Cosine of camera rotation
-    private Vertex s = new Vertex(0, 0, 0); //Sine of camera rotation
+    //Camera matrices, rebuilt every frame
+    private Mat4 viewMatrix = new Mat4(); //Takes world space to camera space, moving the camera to the origin and undoing its rotation
+    private Mat4 projectionMatrix = new Mat4(); //Takes camera space to clip space, whose w is the camera space depth
+    private Mat4 viewProjectionMatrix = new Mat4(); //The view and projection matrices combined
+    private Mat4 scratchMatrix = new Mat4(); //Scratch matrix used while composing the camera matrices
+
+    //View frustum properties, the visible region in projected units defaults to a 960x540 panel
+    private float nearPlane = 0.01f; //Distance in front of the camera at which triangles start being rendered
+    private float farPlane = 1000f; //Distance in front of the camera past which nothing is rendered
+    private float viewHalfWidth = 2f; //Largest projected x value that is still on screen
+    private float viewHalfHeight = 1.125f; //Largest projected y value that is still on screen
+    private float guardBand = 4f; //How many times larger than the screen the region triangles may reach before being clipped
+    private float[][] frustumPlanes = new float[6][4]; //Camera space planes (a, b, c, d), inside where ax + by + cz + d >= 0
+    private float[] cameraPoint = new float[3]; //Scratch point used when moving bounds into camera space
+    private int[] outsideCount = new int[6]; //Scratch count of bounding box corners outside each plane
+
+    //Bits marking which sides of the view frustum a projected vertex is outside of
+    public static final byte CLIP_LEFT = 1;
+    public static final byte CLIP_RIGHT = 2;
+    public static final byte CLIP_BOTTOM = 4;
+    public static final byte CLIP_TOP = 8;
+    public static final byte CLIP_NEAR = 16;
+    public static final byte CLIP_FAR = 32;
+    public static final byte CLIP_GUARD = 64;
+
+    //Culling counters for the last rendered frame
+    private int culledObjectCount; //Number of objects skipped because they were outside the view frustum
+    private int culledTriangleCount; //Number of triangles skipped, including those of culled objects
+    private int backFaceCulledCount; //Number of triangles skipped because they faced away from the camera
+    private int clippedTriangleCount; //Number of triangles cut by the near plane, far plane or guard band
+    private int lodReducedTriangleCount; //Number of triangles of visible objects left out by drawing a lower level of detail
+    private int shadedTriangleCount; //Number of triangles given a colour by their object's shader
+
+    private FrameProfiler profiler = new FrameProfiler(); //Times the stages of each frame and records the counts above
 
     /**
      * Constructs the Scene object with a list of RenderObjects.
@@ -45,8 +196,11 @@ public class Scene {
      * @param objects The list of objects in the scene.
      */
     public Scene(ArrayList<RenderObject> objects) {
-        this.objects = objects;
-        recreateArrays(); //Initialize arrays for triangles, colours, and object names
+        VertexKernels.getInstance(); //Load and warm up the kernels now, rather than in the first frame
+        for (RenderObject object : objects) {
+            addObject(object);
+        }
+        applyObjectChanges(); //Give the objects their handles and triangle ranges straight away
     }
 
     /**
@@ -54,22 +208,38 @@ public class Scene {
      * sorting triangles by distance from the camera, and rendering them.
      */
     public void renderScene() {
+        profiler.beginFrame();
+        applyObjectChanges(); //Add and remove the objects that joined or left since the last frame
+        profiler.mark(FrameProfiler.SCENE_CHANGES);
         followCameraEvents(); //Follow camera events to update camera position and rotation
-        generateCameraRot(); //Generate sine and cosine values for the current camera rotation
-        sortTrianglesForRendering(); //Sort triangles by their distance from the camera
+        generateCameraMatrices(); //Build the view and projection matrices for the current camera
+        generateFrustum(); //Generate the view frustum planes for culling
+        profiler.mark(FrameProfiler.CAMERA_EVENTS);
         renderTriangles(); //Render the triangles
+        if (depthSorting) {
+            sortTrianglesForRendering(); //Sort the rendered triangles by their distance from the camera
+        } else {
+            renderOrder = renderList; //Draw the rendered triangles in scene order
+        }
+        profiler.mark(FrameProfiler.SORTING);
+
+        profiler.setCounter(FrameProfiler.TRIANGLES_SUBMITTED, getLiveTriangleCount());
+        profiler.setCounter(FrameProfiler.TRIANGLES_CULLED, culledTriangleCount + backFaceCulledCount);
+        profiler.setCounter(FrameProfiler.TRIANGLES_SHADED, shadedTriangleCount);
+        profiler.setCounter(FrameProfiler.TRIANGLES_DRAWN, renderCount);
     }
 
     /**
      * Follows the current camera events and updates the camera's position and rotation.
-     * Removes completed events from the list.
+     * Removes completed events from the list, starting the next one in the same frame so no frame is spent between them.
      */
     private void followCameraEvents() {
-        if (cameraEvents.size() != 0) {
+        while (cameraEvents.size() != 0) {
             CameraEvent currentEvent = cameraEvents.get(0);
 
             //If the event hasn't started, initialize it
             if (!currentEvent.getStarted()) {
+                currentEvent.setClock(clock);
                 currentEvent.startTimer(camPos, camRotation);
             }
 
@@ -77,85 +247,880 @@ public class Scene {
             camPos = currentEvent.calcCamPosition();
             camRotation = currentEvent.calcCamRotation();
             
-            //Remove the event if it is done
+            //Remove the event if it is done, otherwise keep following it next frame
             if (currentEvent.getDone()) {
                 cameraEvents.remove(0);
+            } else {
+                break;
             }
         }
     }
 
     /**
-     * Precomputes the sine and cosine of the camera's rotation for use in rendering.
+     * Builds the view matrix from the camera's position and rotation, and the projection matrix from the screen's
+     * position relative to the camera, and combines them so that each object only needs its world matrix added.
      */
-    private void generateCameraRot() {
-        s.x = (float) Math.sin(camRotation.x);
-        s.y = (float) Math.sin(camRotation.y);
-        s.z = (float) Math.sin(camRotation.z);
-        c.x = (float) Math.cos(camRotation.x);
-        c.y = (float) Math.cos(camRotation.y);
-        c.z = (float) Math.cos(camRotation.z);
+    private void generateCameraMatrices() {
+        float sx = (float) Math.sin(camRotation.x), sy = (float) Math.sin(camRotation.y), sz = (float) Math.sin(camRotation.z);
+        float cx = (float) Math.cos(camRotation.x), cy = (float) Math.cos(camRotation.y), cz = (float) Math.cos(camRotation.z);
+        viewMatrix.setRotation(sx, sy, sz, cx, cy, cz);
+        viewMatrix.multiply(scratchMatrix.setTranslation(-camPos.x, -camPos.y, -camPos.z));
+
+        //Clip space x and y are the projected position before the divide, z and w are both the camera space depth
+        float f = screenPosRel.z;
+        projectionMatrix.setIdentity();
+        projectionMatrix.m00 = f;
+        projectionMatrix.m02 = screenPosRel.x;
+        projectionMatrix.m11 = f;
+        projectionMatrix.m12 = screenPosRel.y;
+        projectionMatrix.m32 = 1;
+        projectionMatrix.m33 = 0;
+        viewProjectionMatrix.multiply(projectionMatrix, viewMatrix);
     }
 
     /**
-     * Sorts the triangles in the scene based on their distance from the camera for proper rendering order.
+     * Builds the six planes of the view frustum in camera space, pointing inwards.
+     * The side planes pass through the camera and the edges of the visible projected region.
      */
-    private void sortTrianglesForRendering() {
-        float[] valArray = new float[triangleCount]; //Array to store distances of each triangle from the camera
-        
-        //Calculate the distance of each triangle from the camera
-        for (int index = 0; index < triangleCount; index++) {
-            float val = triangleValue(triangles[index]);
-            valArray[index] = val;
-        }
-
-        //Perform a simple bubble sort on triangles based on their distance from the camera
-        int n = triangleCount;
-        boolean sorted = false;
-        while (!sorted) {
-            sorted = true;
-            for (int i = 0; i < n - 1; i++) {
-                if (valArray[i] < valArray[i + 1]) {
-                    //Swap the distance values
-                    float temp = valArray[i];
-                    valArray[i] = valArray[i + 1];
-                    valArray[i + 1] = temp;
-
-                    //Swap the corresponding triangles, colours, and object names
-                    Triangle tempT = triangles[i];
-                    triangles[i] = triangles[i + 1];
-                    triangles[i + 1] = tempT;
-
-                    ColourShader col = colours[i];
-                    colours[i] = colours[i + 1];
-                    colours[i + 1] = col;
-
-                    String name = objectNames[i];
-                    objectNames[i] = objectNames[i + 1];
-                    objectNames[i + 1] = name;
-
-                    sorted = false;
+    private void generateFrustum() {
+        float f = screenPosRel.z;
+        setPlane(0, 0, 0, 1, -nearPlane); //Near
+        setPlane(1, 0, 0, -1, farPlane); //Far
+        setPlane(2, f, 0, viewHalfWidth + screenPosRel.x, 0); //Left
+        setPlane(3, -f, 0, viewHalfWidth - screenPosRel.x, 0); //Right
+        setPlane(4, 0, f, viewHalfHeight + screenPosRel.y, 0); //Bottom
+        setPlane(5, 0, -f, viewHalfHeight - screenPosRel.y, 0); //Top
+    }
+
+    /**
+     * Stores a frustum plane, normalized so that plane equations give true distances.
+     * 
+     * @param index The index of the plane.
+     * @param a The x component of the plane's normal.
+     * @param b The y component of the plane's normal.
+     * @param c The z component of the plane's normal.
+     * @param d The plane's offset.
+     */
+    private void setPlane(int index, float a, float b, float c, float d) {
+        float length = (float) Math.sqrt(a * a + b * b + c * c);
+        frustumPlanes[index][0] = a / length;
+        frustumPlanes[index][1] = b / length;
+        frustumPlanes[index][2] = c / length;
+        frustumPlanes[index][3] = d / length;
+    }
+
+    /**
+     * Moves a world space point into camera space, writing the result into cameraPoint.
+     * 
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param z The z-coordinate of the point.
+     */
+    private void toCameraSpace(float x, float y, float z) {
+        Mat4 m = viewMatrix;
+        cameraPoint[0] = m.m00 * x + m.m01 * y + m.m02 * z + m.m03;
+        cameraPoint[1] = m.m10 * x + m.m11 * y + m.m12 * z + m.m13;
+        cameraPoint[2] = m.m20 * x + m.m21 * y + m.m22 * z + m.m23;
+    }
+
+    /**
+     * Tests an object's bounds against the view frustum. The bounding sphere is tested first,
+     * and only objects whose sphere crosses a plane have their bounding box tested as well.
+     * 
+     * @param object The object to test.
+     * @return false if the object is certainly outside the view frustum.
+     */
+    private boolean isInFrustum(RenderObject object) {
+        Vertex centre = object.getWorldSphereCentre();
+        float radius = object.getWorldSphereRadius();
+        toCameraSpace(centre.x, centre.y, centre.z);
+        float cx = cameraPoint[0], cy = cameraPoint[1], cz = cameraPoint[2];
+
+        boolean crossesPlane = false;
+        for (float[] plane : frustumPlanes) {
+            float distance = plane[0] * cx + plane[1] * cy + plane[2] * cz + plane[3];
+            if (distance < -radius) {
+                return false; //The whole sphere is outside this plane
+            }
+            if (distance < radius) {
+                crossesPlane = true;
+            }
+        }
+        if (!crossesPlane) {
+            return true; //The whole sphere is inside the frustum
+        }
+
+        //Test the eight corners of the bounding box, the object is outside if they are all outside one plane
+        Vertex min = object.getWorldBoundsMin();
+        Vertex max = object.getWorldBoundsMax();
+        Arrays.fill(outsideCount, 0);
+        for (int corner = 0; corner < 8; corner++) {
+            toCameraSpace((corner & 1) == 0 ? min.x : max.x, (corner & 2) == 0 ? min.y : max.y, (corner & 4) == 0 ? min.z : max.z);
+            for (int p = 0; p < 6; p++) {
+                float[] plane = frustumPlanes[p];
+                if (plane[0] * cameraPoint[0] + plane[1] * cameraPoint[1] + plane[2] * cameraPoint[2] + plane[3] < 0) {
+                    outsideCount[p]++;
+                }
+            }
+        }
+        for (int p = 0; p < 6; p++) {
+            if (outsideCount[p] == 8) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Picks the level of detail of a visible object from how large its bounding sphere looks on screen.
+     * An object only moves to a lower level once it is LOD_HYSTERESIS smaller than the size for that level,
+     * and back to a higher level once it is LOD_HYSTERESIS larger, so an object sitting near a size does not keep
+     * switching between levels.
+     * 
+     * @param object The visible object.
+     */
+    private void selectLod(RenderObject object) {
+        int lodCount = object.getLodCount();
+        if (lodCount == 1) {
+            return;
+        }
+        if (!levelOfDetail) {
+            object.setLodLevel(0);
+            return;
+        }
+
+        //The sphere's radius projected at the depth of its centre, the camera being inside it counts as filling the screen
+        Vertex centre = object.getWorldSphereCentre();
+        float radius = object.getWorldSphereRadius();
+        Mat4 m = viewMatrix;
+        float depth = m.m20 * centre.x + m.m21 * centre.y + m.m22 * centre.z + m.m23;
+        float size = depth > radius ? screenPosRel.z * radius / depth / viewHalfHeight : Float.POSITIVE_INFINITY;
+
+        int level = Math.min(object.getLodLevel(), lodCount - 1);
+        while (level < lodCount - 1 && level < lodScreenSizes.length && size < lodScreenSizes[level] * (1 - LOD_HYSTERESIS)) {
+            level++;
+        }
+        while (level > 0 && size > lodScreenSizes[Math.min(level, lodScreenSizes.length) - 1] * (1 + LOD_HYSTERESIS)) {
+            level--;
+        }
+        object.setLodLevel(level);
+    }
+
+    /**
+     * Brings the object hierarchy up to date. Moved objects have their bounds copied, and the hierarchy is
+     * rebuilt if objects joined or left, or refitted if objects only moved. A refit that makes the hierarchy
+     * much worse than when it was built, because objects moved far from where they were, rebuilds it instead.
+     */
+    private void updateHierarchy() {
+        boolean moved = false;
+        int liveCount = 0;
+        for (int handle = 0; handle < handleLimit; handle++) {
+            RenderObject object = handleObjects[handle];
+            if (object == null) {
+                continue;
+            }
+            hierarchyHandles[liveCount++] = handle;
+            object.updateTransform();
+            if (object.getTransformVersion() != objectBoundsVersion[handle]) {
+                objectBoundsVersion[handle] = object.getTransformVersion();
+                Vertex min = object.getWorldBoundsMin();
+                Vertex max = object.getWorldBoundsMax();
+                int b = handle * 6;
+                objectBounds[b] = min.x; objectBounds[b + 1] = min.y; objectBounds[b + 2] = min.z;
+                objectBounds[b + 3] = max.x; objectBounds[b + 4] = max.y; objectBounds[b + 5] = max.z;
+                moved = true;
+            }
+        }
+        if (!hierarchyChanged && moved && objectHierarchy.refit(objectBounds) > REBUILD_COST_RATIO) {
+            hierarchyChanged = true;
+        }
+        if (hierarchyChanged) {
+            objectHierarchy.build(objectBounds, hierarchyHandles, liveCount);
+            hierarchyChanged = false;
+            hierarchyBuildCount++;
+        }
+    }
+
+    /**
+     * Marks the objects inside the view frustum as visible by walking the object hierarchy. A node entirely outside
+     * one plane is skipped with everything below it, and once a node is entirely inside a plane its children are
+     * not tested against that plane again. Objects in a node entirely inside the frustum are visible without any
+     * more tests, and those in a node crossing a plane are tested on their own.
+     */
+    private void cullHierarchy() {
+        Arrays.fill(objectVisible, 0, handleLimit, false);
+        if (objectHierarchy.getItemCount() == 0) {
+            return;
+        }
+
+        //Move the planes into world space, a plane (n, d) in camera space is (n * R, n * t + d) for the view matrix [R t]
+        Mat4 m = viewMatrix;
+        for (int p = 0; p < 6; p++) {
+            float[] plane = frustumPlanes[p];
+            float[] world = worldPlanes[p];
+            world[0] = plane[0] * m.m00 + plane[1] * m.m10 + plane[2] * m.m20;
+            world[1] = plane[0] * m.m01 + plane[1] * m.m11 + plane[2] * m.m21;
+            world[2] = plane[0] * m.m02 + plane[1] * m.m12 + plane[2] * m.m22;
+            world[3] = plane[0] * m.m03 + plane[1] * m.m13 + plane[2] * m.m23 + plane[3];
+        }
+
+        //A depth first walk never holds more than one node per level plus one
+        int stackSize = (objectHierarchy.getDepth() + 1) * 2;
+        if (cullStack.length < stackSize) {
+            cullStack = new int[stackSize];
+        }
+        float[] bounds = objectHierarchy.getNodeBounds();
+        int top = 0;
+        cullStack[top++] = 0;
+        cullStack[top++] = (1 << 6) - 1;
+        while (top > 0) {
+            int mask = cullStack[--top];
+            int node = cullStack[--top];
+            int b = node * 6;
+            boolean outside = false;
+            for (int p = 0; p < 6 && !outside; p++) {
+                if ((mask & (1 << p)) == 0) {
+                    continue;
+                }
+
+                //The corners of the box furthest along and furthest against the plane's normal
+                float[] plane = worldPlanes[p];
+                float far = plane[3], near = plane[3];
+                for (int axis = 0; axis < 3; axis++) {
+                    float low = plane[axis] * bounds[b + axis], high = plane[axis] * bounds[b + axis + 3];
+                    far += Math.max(low, high);
+                    near += Math.min(low, high);
                 }
+                if (far < 0) {
+                    outside = true; //The whole box is outside this plane
+                } else if (near >= 0) {
+                    mask &= ~(1 << p); //The whole box is inside this plane
+                }
+            }
+            if (outside) {
+                continue;
+            }
+            if (objectHierarchy.isLeaf(node)) {
+                for (int i = 0; i < objectHierarchy.getLeafItemCount(node); i++) {
+                    int handle = objectHierarchy.getLeafItem(node, i);
+                    objectVisible[handle] = mask == 0 || isInFrustum(handleObjects[handle]);
+                }
+            } else {
+                int left = objectHierarchy.getLeftChild(node);
+                cullStack[top++] = left;
+                cullStack[top++] = mask;
+                cullStack[top++] = left + 1;
+                cullStack[top++] = mask;
             }
-            n--;
         }
     }
 
+    /**
+     * Finds the closest triangle of any object hit by a ray. The object hierarchy finds the objects whose bounds
+     * the ray passes through, nearest first, and each of those is tested with its mesh's own triangle hierarchy
+     * after moving the ray into the object's model space. Objects added or removed since the last frame are not
+     * seen until the next frame starts, and this should be called on the thread that renders the scene.
+     * 
+     * @param origin The world space start of the ray.
+     * @param direction The direction of the ray, which does not need to be normalized.
+     * @param maxDistance The furthest distance along the ray to look.
+     * @return The closest hit, or null if nothing was hit.
+     */
+    public RayHit raycast(Vertex origin, Vertex direction, float maxDistance) {
+        updateHierarchy();
+        float length = (float) Math.sqrt(direction.x * direction.x + direction.y * direction.y + direction.z * direction.z);
+        if (length == 0) {
+            return null;
+        }
+        Vec3 worldDirection = new Vec3(direction.x, direction.y, direction.z).scale(1 / length);
+        Vec3 modelOrigin = new Vec3();
+        Vec3 modelDirection = new Vec3();
+        int[] hit = {-1, -1}; //The handle and triangle of the closest hit so far
+
+        //The object's matrices are affine, so distances along the model space ray match those along the world space ray
+        float distance = objectHierarchy.raycast(origin.x, origin.y, origin.z, worldDirection.x, worldDirection.y, worldDirection.z,
+                maxDistance, (handle, closest) -> {
+                    RenderObject object = handleObjects[handle];
+                    Mat4 inverse = object.getInverseWorldMatrix();
+                    inverse.transformPoint(origin.x, origin.y, origin.z, modelOrigin);
+                    inverse.transformDirection(worldDirection, modelDirection);
+                    Mesh mesh = object.getLodMesh(0); //Rays always hit the full detail mesh
+                    int[] triangle = {-1};
+                    float objectDistance = mesh.getBVH().raycast(modelOrigin.x, modelOrigin.y, modelOrigin.z,
+                            modelDirection.x, modelDirection.y, modelDirection.z, closest, (t, closestTriangle) -> {
+                                float triangleDistance = mesh.intersectTriangle(t, modelOrigin.x, modelOrigin.y, modelOrigin.z,
+                                        modelDirection.x, modelDirection.y, modelDirection.z);
+                                if (triangleDistance < closestTriangle) {
+                                    triangle[0] = t;
+                                }
+                                return triangleDistance;
+                            });
+                    if (objectDistance < closest) {
+                        hit[0] = handle;
+                        hit[1] = triangle[0];
+                    }
+                    return objectDistance;
+                });
+        if (hit[0] < 0 || distance == Float.POSITIVE_INFINITY) {
+            return null;
+        }
+        Vertex point = new Vertex(origin.x + worldDirection.x * distance, origin.y + worldDirection.y * distance,
+                origin.z + worldDirection.z * distance);
+        return new RayHit(handleObjects[hit[0]], hit[1], distance, point);
+    }
+
+    /**
+     * Finds every object whose world space bounding box overlaps a box.
+     * Like raycast, this sees the objects in the scene as of the last frame.
+     * 
+     * @param min The smallest corner of the box.
+     * @param max The largest corner of the box.
+     * @return The objects in the box.
+     */
+    public ArrayList<RenderObject> queryBox(Vertex min, Vertex max) {
+        updateHierarchy();
+        ArrayList<RenderObject> found = new ArrayList<>();
+        objectHierarchy.queryBox(min.x, min.y, min.z, max.x, max.y, max.z, objectBounds, handle -> found.add(handleObjects[handle]));
+        return found;
+    }
+
+    /**
+     * Finds every object whose world space bounding box comes within a distance of a point.
+     * Like raycast, this sees the objects in the scene as of the last frame.
+     * 
+     * @param centre The point.
+     * @param radius The distance from the point.
+     * @return The objects in range.
+     */
+    public ArrayList<RenderObject> queryRadius(Vertex centre, float radius) {
+        updateHierarchy();
+        ArrayList<RenderObject> found = new ArrayList<>();
+        objectHierarchy.querySphere(centre.x, centre.y, centre.z, radius, objectBounds, handle -> found.add(handleObjects[handle]));
+        return found;
+    }
+
+    /**
+     * Sorts the rendered triangles based on their distance from the camera for proper rendering order.
+     * Only the render order permutation changes, the per-triangle arrays stay as they are, and triangles
+     * that were culled are never sorted.
+     */
+    private void sortTrianglesForRendering() {
+        //Order the rendered triangle indices from the furthest to the closest
+        renderOrder = depthSorter.sort(depthValues, renderList, renderCount);
+    }
+
     /**
      * Renders the triangles by projecting them into 2D space and shading them based on their distance and colour.
+     * Objects outside the view frustum are skipped whole. The rest have their unique vertices projected once into
+     * their projected vertex cache, and triangles facing away from the camera or entirely outside the frustum
+     * are dropped before being shaded. The remaining triangles are added to the render list.
+     * Projecting and shading run in parallel over chunks of vertices and triangles, each writing only its own
+     * entries, and the render list is then built in scene order so the result does not depend on the thread count.
      */
     private void renderTriangles() {
-        triangles2DRendered = new Triangle2D[triangleCount]; //Array for rendered 2D triangles
-        finalColours = new Color[triangleCount]; //Array for final triangle colours
+        culledObjectCount = 0;
+        culledTriangleCount = 0;
+        backFaceCulledCount = 0;
+        clippedTriangleCount = 0;
+        lodReducedTriangleCount = 0;
+        shadedTriangleCount = 0;
+        renderCount = 0;
+        slotCount = triangleCount;
+
+        //Decide which objects are visible by walking the hierarchy, then pick each visible object's level of detail,
+        //and find where the camera is in its model space and the matrix taking it straight to clip space.
+        //Only the matrix and bounds of moved objects are rebuilt here, their vertices wait until they are visible
+        updateHierarchy();
+        cullHierarchy();
+        for (int handle = 0; handle < handleLimit; handle++) {
+            RenderObject object = handleObjects[handle];
+            if (object == null) {
+                continue;
+            }
+            if (objectVisible[handle]) {
+                selectLod(object);
+                lodReducedTriangleCount += object.getTCount() - object.getMesh().getTriangleCount();
+            }
+            objectTransforming[handle] = objectVisible[handle] && object.needsVertexTransform();
+            if (objectVisible[handle]) {
+                objectClipMatrices[handle].multiply(viewProjectionMatrix, object.getWorldMatrix());
+            }
+            if (objectVisible[handle] && object.getColour() != null && object.getColour().getNormalMode() != ColourShader.NORMALS_NONE) {
+                gatherLights(handle, object);
+            }
+            if (objectVisible[handle] && object.getBackFaceCulling()) {
+                Vertex modelCam = object.toModelSpace(camPos);
+                objectCamX[handle] = modelCam.x;
+                objectCamY[handle] = modelCam.y;
+                objectCamZ[handle] = modelCam.z;
+            }
+        }
+        profiler.mark(FrameProfiler.CULLING);
+
+        //Transform the vertices of visible objects that have changed and project them,
+        //then classify, copy and shade the triangles of the visible objects
+        loop.forEach(vertexChunkCount, projectTask);
+        for (int handle = 0; handle < handleLimit; handle++) {
+            if (handleObjects[handle] != null && objectTransforming[handle]) {
+                handleObjects[handle].markVerticesTransformed();
+            }
+        }
+        profiler.mark(FrameProfiler.PROJECTION);
+        loop.forEach(triangleChunkCount, shadeTask);
+        if (outlineEdges != OUTLINE_TRIANGLE_EDGES) {
+            loop.forEach(triangleChunkCount, outlineTask); //Needs every triangle's state, so it runs after shading
+        }
+        profiler.mark(FrameProfiler.SHADING);
+
+        //Build the render list in handle order, clipping the triangles that need it
+        for (int handle = 0; handle < handleLimit; handle++) {
+            RenderObject object = handleObjects[handle];
+            if (object == null) {
+                continue;
+            }
+            int index = objectFirstTriangle[handle];
+            int objectEnd = index + object.getTCount();
+            if (!objectVisible[handle]) {
+                Arrays.fill(rendered, index, objectEnd, false);
+                culledObjectCount++;
+                culledTriangleCount += object.getTCount();
+                continue;
+            }
+
+            //A lower level of detail only uses the start of the object's triangle range
+            int[] indices = object.getMesh().indices;
+            Arrays.fill(rendered, index + object.getMesh().getTriangleCount(), objectEnd, false);
+            objectEnd = index + object.getMesh().getTriangleCount();
+            for (int t = 0; index < objectEnd; t++, index++) {
+                byte state = triangleStates[index];
+                rendered[index] = state == STATE_DRAWN;
+                if (state == STATE_DRAWN) {
+                    renderList[renderCount++] = index;
+                    shadedTriangleCount++;
+                } else if (state == STATE_CLIPPED) {
+                    shadedTriangleCount++;
+                    int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+                    byte[] clipFlags = object.getClipFlags();
+                    clipTriangle(object, a, b, c, clipFlags[a] | clipFlags[b] | clipFlags[c], index, finalColours[index], depthValues[index]);
+                } else if (state == STATE_BACK_FACE) {
+                    backFaceCulledCount++;
+                } else if (state == STATE_OUTSIDE) {
+                    culledTriangleCount++;
+                }
+            }
+        }
+        profiler.mark(FrameProfiler.CLIPPING);
+    }
+
+    /**
+     * Projects one chunk of vertices, if the object they belong to is visible,
+     * transforming them into world space first if the object has changed since they were last transformed.
+     * 
+     * @param chunk The index of the vertex chunk.
+     */
+    private void projectChunk(int chunk) {
+        int handle = vertexChunkObject[chunk];
+        if (handle >= 0 && objectVisible[handle]) {
+            RenderObject object = handleObjects[handle];
+            int from = vertexChunkStart[chunk];
+            int to = Math.min(vertexChunkEnd[chunk], object.getMesh().getVertexCount()); //Chunks cover the full detail mesh
+            if (from >= to) {
+                return;
+            }
+            if (objectTransforming[handle]) {
+                object.transformVertices(from, to);
+            }
+            projectVertices(object, objectClipMatrices[handle], from, to);
+        }
+    }
+
+    /**
+     * Classifies one chunk of triangles of a visible object, dropping those facing away from the camera or entirely
+     * outside the view frustum, and copies and shades the rest. Triangles that need clipping are only shaded here,
+     * they are clipped while the render list is built.
+     * The kept triangles are shaded together once the chunk has been classified, from the centres of their world
+     * space corners, so the object's shader is called once per chunk rather than once per triangle.
+     * 
+     * @param chunk The index of the triangle chunk.
+     */
+    private void shadeChunk(int chunk) {
+        int handle = triangleChunkObject[chunk];
+        if (handle < 0 || !objectVisible[handle]) {
+            return;
+        }
+        RenderObject object = handleObjects[handle];
+        ColourShader colour = object.getColour();
+        Mesh mesh = object.getMesh();
+        int[] indices = mesh.indices;
+        float[] projectedX = object.getProjectedX();
+        float[] projectedY = object.getProjectedY();
+        float[] projectedZ = object.getProjectedZ();
+        byte[] clipFlags = object.getClipFlags();
+        boolean backFaceCulling = object.getBackFaceCulling();
+        float camX = objectCamX[handle], camY = objectCamY[handle], camZ = objectCamZ[handle];
+        float[] worldX = object.getWorldX();
+        float[] worldY = object.getWorldY();
+        float[] worldZ = object.getWorldZ();
+
+        int index = objectFirstTriangle[handle] + triangleChunkStart[chunk];
+        int batchStart = index, batchEnd = index;
+        int end = Math.min(triangleChunkEnd[chunk], mesh.getTriangleCount()); //Chunks cover the full detail mesh
+        for (int t = triangleChunkStart[chunk]; t < end; t++, index++) {
+            int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+
+            //Drop triangles whose front faces away from the camera
+            if (backFaceCulling) {
+                float facing = mesh.normalX[t] * (camX - mesh.x[a])
+                        + mesh.normalY[t] * (camY - mesh.y[a])
+                        + mesh.normalZ[t] * (camZ - mesh.z[a]);
+                if (facing <= 0) {
+                    triangleStates[index] = STATE_BACK_FACE;
+                    continue;
+                }
+            }
+
+            //Drop triangles with every corner outside the same plane
+            byte flagsA = clipFlags[a], flagsB = clipFlags[b], flagsC = clipFlags[c];
+            if ((flagsA & flagsB & flagsC) != 0) {
+                triangleStates[index] = STATE_OUTSIDE;
+                continue;
+            }
+            if (colour == null) {
+                triangleStates[index] = STATE_SKIPPED;
+                continue;
+            }
+
+            //Queue the triangle's centre to be shaded, and calculate its distance from the camera if it is going to be sorted
+            batchX[batchEnd] = (worldX[a] + worldX[b] + worldX[c]) / 3.0f;
+            batchY[batchEnd] = (worldY[a] + worldY[b] + worldY[c]) / 3.0f;
+            batchZ[batchEnd] = (worldZ[a] + worldZ[b] + worldZ[c]) / 3.0f;
+            batchTriangles[batchEnd++] = index;
+            if (depthSorting) {
+                depthValues[index] = triangleValue(object, t);
+            }
+
+            //Triangles crossing the near plane, the far plane or the guard band are clipped later
+            if (((flagsA | flagsB | flagsC) & (CLIP_NEAR | CLIP_FAR | CLIP_GUARD)) != 0) {
+                triangleStates[index] = STATE_CLIPPED;
+                continue;
+            }
+
+            //Copy the three projected corners of the triangle
+            int screenCorner = index * 3;
+            screenX[screenCorner] = projectedX[a]; screenY[screenCorner] = projectedY[a]; screenZ[screenCorner] = projectedZ[a];
+            screenX[screenCorner + 1] = projectedX[b]; screenY[screenCorner + 1] = projectedY[b]; screenZ[screenCorner + 1] = projectedZ[b];
+            screenX[screenCorner + 2] = projectedX[c]; screenY[screenCorner + 2] = projectedY[c]; screenZ[screenCorner + 2] = projectedZ[c];
+            triangleStates[index] = STATE_DRAWN;
+        }
+
+        //Shade the queued triangles and give each its colour, lighting them if the shader uses normals
+        if (batchEnd > batchStart) {
+            int normalMode = colour.getNormalMode();
+            if (normalMode == ColourShader.NORMALS_NONE) {
+                colour.shadeCentroids(batchX, batchY, batchZ, batchStart, batchEnd, batchColours);
+            } else {
+                worldNormals(handle, normalMode, batchStart, batchEnd);
+                colour.shadeSurfaces(batchX, batchY, batchZ, batchNormalX, batchNormalY, batchNormalZ,
+                        objectLights[handle], objectLightCount[handle], batchStart, batchEnd, batchColours);
+            }
+            for (int i = batchStart; i < batchEnd; i++) {
+                finalColours[batchTriangles[i]] = batchColours[i];
+            }
+        }
+    }
+
+    /**
+     * Finds the world space unit normals of a range of queued triangles, from the mesh's model space face normals or
+     * the average of its smoothed vertex normals. Normals are moved with the transpose of the cached inverse world
+     * matrix, which keeps them at right angles to their faces when the object is scaled unevenly.
+     * 
+     * @param handle The handle of the object the triangles belong to.
+     * @param normalMode ColourShader.NORMALS_FACE or ColourShader.NORMALS_SMOOTH.
+     * @param from The index of the first queued triangle.
+     * @param to One more than the index of the last queued triangle.
+     */
+    private void worldNormals(int handle, int normalMode, int from, int to) {
+        RenderObject object = handleObjects[handle];
+        Mesh mesh = object.getMesh();
+        int[] indices = mesh.indices;
+        float[] vertexNormals = normalMode == ColourShader.NORMALS_SMOOTH ? mesh.getVertexNormals() : null;
+        Mat4 m = object.getInverseWorldMatrix();
+        int first = objectFirstTriangle[handle];
+        for (int i = from; i < to; i++) {
+            int t = batchTriangles[i] - first;
+            float nx, ny, nz;
+            if (vertexNormals == null) {
+                nx = mesh.normalX[t];
+                ny = mesh.normalY[t];
+                nz = mesh.normalZ[t];
+            } else {
+                int a = indices[t * 3] * 3, b = indices[t * 3 + 1] * 3, c = indices[t * 3 + 2] * 3;
+                nx = vertexNormals[a] + vertexNormals[b] + vertexNormals[c];
+                ny = vertexNormals[a + 1] + vertexNormals[b + 1] + vertexNormals[c + 1];
+                nz = vertexNormals[a + 2] + vertexNormals[b + 2] + vertexNormals[c + 2];
+            }
+
+            //Multiply by the transpose of the inverse world matrix's rotation and scale, then normalize
+            float wx = m.m00 * nx + m.m10 * ny + m.m20 * nz;
+            float wy = m.m01 * nx + m.m11 * ny + m.m21 * nz;
+            float wz = m.m02 * nx + m.m12 * ny + m.m22 * nz;
+            float length = (float) Math.sqrt(wx * wx + wy * wy + wz * wz);
+            if (length > 0) {
+                wx /= length;
+                wy /= length;
+                wz /= length;
+            }
+            batchNormalX[i] = wx;
+            batchNormalY[i] = wy;
+            batchNormalZ[i] = wz;
+        }
+    }
+
+    /**
+     * Builds the list of lights reaching an object from its world space bounding sphere, so shading its triangles
+     * only loops over the lights that can change their colour. Directional lights reach every object.
+     * 
+     * @param handle The handle of the object.
+     * @param object The object.
+     */
+    private void gatherLights(int handle, RenderObject object) {
+        Light[] reaching = objectLights[handle];
+        if (reaching == null || reaching.length < lights.size()) {
+            reaching = new Light[lights.size()];
+            objectLights[handle] = reaching;
+        }
+        int count = 0;
+        Vertex centre = object.getWorldSphereCentre();
+        float radius = object.getWorldSphereRadius();
+        for (Light light : lights) {
+            if (light.reaches(centre, radius)) {
+                reaching[count++] = light;
+            }
+        }
+        objectLightCount[handle] = count;
+    }
+
+    /**
+     * Picks the edges to outline for one chunk of triangles of a visible object, using the mesh's edge adjacency table
+     * and the states shading left every triangle in. An edge is a silhouette if it is on the border of the mesh or the
+     * triangle across it faces away from the camera, a crease if the two faces meet at more than the crease angle,
+     * and smooth otherwise. When both triangles sharing an edge are drawn the one with the lower index outlines it,
+     * so each edge is drawn once. Silhouettes between front and back faces are only found on objects with back face
+     * culling, as the others never mark a triangle as facing away.
+     *
+     * @param chunk The index of the triangle chunk.
+     */
+    private void outlineChunk(int chunk) {
+        int handle = triangleChunkObject[chunk];
+        if (handle < 0 || !objectVisible[handle]) {
+            return;
+        }
+        Mesh mesh = handleObjects[handle].getMesh();
+        int[] neighbours = mesh.getEdgeNeighbours();
+        int first = objectFirstTriangle[handle];
+        int end = Math.min(triangleChunkEnd[chunk], mesh.getTriangleCount()); //Chunks cover the full detail mesh
+        for (int t = triangleChunkStart[chunk]; t < end; t++) {
+            byte state = triangleStates[first + t];
+            if (state != STATE_DRAWN && state != STATE_CLIPPED) {
+                continue;
+            }
+
+            int mask = 0;
+            for (int k = 0; k < 3; k++) {
+                int n = neighbours[t * 3 + k];
+                int kind = OUTLINE_SILHOUETTES;
+                boolean owned = true;
+                if (n >= 0) {
+                    byte neighbourState = triangleStates[first + n];
+                    owned = t < n || (neighbourState != STATE_DRAWN && neighbourState != STATE_CLIPPED);
+                    if (neighbourState != STATE_BACK_FACE) {
+                        float cosine = mesh.normalX[t] * mesh.normalX[n] + mesh.normalY[t] * mesh.normalY[n] + mesh.normalZ[t] * mesh.normalZ[n];
+                        kind = cosine < creaseCosine ? OUTLINE_CREASES : OUTLINE_SMOOTH;
+                    }
+                }
+                if (owned && (kind & outlineEdges) != 0) {
+                    mask |= 1 << k;
+                }
+            }
+            slotEdges[first + t] = (byte) mask;
+        }
+    }
+
+    /**
+     * Moves a range of an object's model space vertices into homogeneous clip space, where w is the camera space depth
+     * and x / w, y / w are the projected coordinates, and stores the result in the object's projected vertex cache.
+     * The object's scale, rotation, position, the camera and the projection are all composed into one matrix,
+     * so each vertex is moved with a single matrix multiplication.
+     * Each vertex also gets flags for the sides of the view frustum and the guard band it is outside of.
+     * Vertices in front of the near plane keep their clip space position but are not divided by their depth.
+     * 
+     * @param object The object whose vertices are projected.
+     * @param clipMatrix The matrix taking the object's model space to clip space.
+     * @param from The index of the first vertex to project.
+     * @param to One more than the index of the last vertex to project.
+     */
+    private void projectVertices(RenderObject object, Mat4 clipMatrix, int from, int to) {
+        Mesh mesh = object.getMesh();
+        VertexKernels.getInstance().project(clipMatrix, mesh.x, mesh.y, mesh.z, object.getClipX(), object.getClipY(),
+                object.getProjectedX(), object.getProjectedY(), object.getProjectedZ(), object.getClipFlags(), from, to,
+                viewHalfWidth, viewHalfHeight, viewHalfWidth * guardBand, viewHalfHeight * guardBand, nearPlane, farPlane);
+    }
 
-        int index = 0;
-        for (Triangle triangle : triangles) {
-            if (triangle != null && colours[index] != null) {
-                //Project the triangle into 2D space and calculate its final colour
-                triangles2DRendered[index] = renderTriangle(triangle);
-                finalColours[index] = colours[index].shadeBasedOnTriangle(triangles[index]);
-                index++;
+    /**
+     * Clips a triangle that crosses the near plane, the far plane or the guard band, and adds the pieces left
+     * inside to the render list as new draw slots after the scene's own triangles.
+     * Clipping happens in homogeneous clip space, where every plane is linear, using the Sutherland-Hodgman algorithm.
+     * Planes inside the guard band but outside the screen are not clipped against, the rasterizer skips those pixels.
+     * 
+     * @param object The object the triangle belongs to.
+     * @param a The index of the triangle's first vertex.
+     * @param b The index of the triangle's second vertex.
+     * @param c The index of the triangle's third vertex.
+     * @param orFlags The clip flags of the three vertices combined.
+     * @param index The index of the triangle in the scene.
+     * @param colour The triangle's shaded ARGB colour, shared by every piece.
+     * @param depth The triangle's sort depth, shared by every piece.
+     */
+    private void clipTriangle(RenderObject object, int a, int b, int c, int orFlags, int index, int colour, float depth) {
+        float[] clipX = object.getClipX();
+        float[] clipY = object.getClipY();
+        float[] clipW = object.getProjectedZ();
+
+        //Load the triangle as a polygon of clip space vertices (x, y, w)
+        float[] polygon = clipPolygon;
+        int count = 3;
+        polygon[0] = clipX[a]; polygon[1] = clipY[a]; polygon[2] = clipW[a];
+        polygon[3] = clipX[b]; polygon[4] = clipY[b]; polygon[5] = clipW[b];
+        polygon[6] = clipX[c]; polygon[7] = clipY[c]; polygon[8] = clipW[c];
+        clipEdges[0] = 0; clipEdges[1] = 1; clipEdges[2] = 2;
+
+        //Clip against every plane one of the corners is outside of
+        float guardHalfWidth = viewHalfWidth * guardBand;
+        float guardHalfHeight = viewHalfHeight * guardBand;
+        if ((orFlags & CLIP_NEAR) != 0) count = clipPolygonToPlane(count, 0, 0, 1, -nearPlane);
+        if ((orFlags & CLIP_FAR) != 0) count = clipPolygonToPlane(count, 0, 0, -1, farPlane);
+        if ((orFlags & CLIP_GUARD) != 0) {
+            count = clipPolygonToPlane(count, 1, 0, guardHalfWidth, 0);
+            count = clipPolygonToPlane(count, -1, 0, guardHalfWidth, 0);
+            count = clipPolygonToPlane(count, 0, 1, guardHalfHeight, 0);
+            count = clipPolygonToPlane(count, 0, -1, guardHalfHeight, 0);
+        }
+        polygon = clipPolygon;
+        int[] edges = clipEdges;
+
+        if (count < 3) {
+            culledTriangleCount++; //Nothing was left inside the planes
+            return;
+        }
+        clippedTriangleCount++;
+
+        //Divide the clipped polygon into a fan of triangles, each in its own draw slot.
+        //Each piece keeps the outlines of the parts of the triangle's edges it has, not of the fan's inner edges
+        int outlined = slotEdges[index];
+        ensureSlotCapacity(slotCount + count - 2);
+        for (int k = 1; k < count - 1; k++) {
+            int slot = slotCount++;
+            int screenCorner = slot * 3;
+            for (int corner = 0; corner < 3; corner++) {
+                int vertex = corner == 0 ? 0 : k + corner - 1; //Every triangle of the fan starts at the first vertex
+                float w = polygon[vertex * 3 + 2];
+                screenX[screenCorner + corner] = polygon[vertex * 3] / w;
+                screenY[screenCorner + corner] = polygon[vertex * 3 + 1] / w;
+                screenZ[screenCorner + corner] = w;
+            }
+            int mask = pieceEdge(outlined, edges[k]) << 1;
+            if (k == 1) {
+                mask |= pieceEdge(outlined, edges[0]);
+            }
+            if (k == count - 2) {
+                mask |= pieceEdge(outlined, edges[count - 1]) << 2;
+            }
+            slotEdges[slot] = (byte) mask;
+            finalColours[slot] = colour;
+            depthValues[slot] = depth;
+            slotTriangles[slot] = index;
+            renderList[renderCount++] = slot;
+        }
+    }
+
+    /**
+     * Returns 1 if a clipped polygon's edge lies on an outlined edge of the original triangle, 0 otherwise.
+     *
+     * @param outlined The original triangle's mask of outlined edges.
+     * @param edge The triangle edge the polygon's edge lies on, -1 for an edge along a clipping plane.
+     */
+    private static int pieceEdge(int outlined, int edge) {
+        return edge < 0 ? 0 : (outlined >> edge) & 1;
+    }
+
+    /**
+     * Clips the polygon in clipPolygon against one plane, inside where px * x + py * y + pw * w + pd >= 0,
+     * leaving the result in clipPolygon.
+     * 
+     * @param count The number of vertices in the polygon.
+     * @param px The plane's x coefficient.
+     * @param py The plane's y coefficient.
+     * @param pw The plane's w coefficient.
+     * @param pd The plane's constant.
+     * @return The number of vertices in the clipped polygon.
+     */
+    private int clipPolygonToPlane(int count, float px, float py, float pw, float pd) {
+        float[] in = clipPolygon;
+        float[] out = clipPolygonScratch;
+        int[] inEdges = clipEdges;
+        int[] outEdges = clipEdgesScratch;
+        int outCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            int j = (i + 1) % count;
+            float di = px * in[i * 3] + py * in[i * 3 + 1] + pw * in[i * 3 + 2] + pd;
+            float dj = px * in[j * 3] + py * in[j * 3 + 1] + pw * in[j * 3 + 2] + pd;
+
+            //Keep vertices that are inside the plane
+            if (di >= 0) {
+                out[outCount * 3] = in[i * 3];
+                out[outCount * 3 + 1] = in[i * 3 + 1];
+                out[outCount * 3 + 2] = in[i * 3 + 2];
+                outEdges[outCount] = inEdges[i];
+                outCount++;
+            }
+
+            //Add a new vertex where the edge crosses the plane
+            if ((di >= 0) != (dj >= 0)) {
+                float t = di / (di - dj);
+                out[outCount * 3] = in[i * 3] + t * (in[j * 3] - in[i * 3]);
+                out[outCount * 3 + 1] = in[i * 3 + 1] + t * (in[j * 3 + 1] - in[i * 3 + 1]);
+                out[outCount * 3 + 2] = in[i * 3 + 2] + t * (in[j * 3 + 2] - in[i * 3 + 2]);
+                outEdges[outCount] = di >= 0 ? -1 : inEdges[i]; //Leaving runs along the plane, entering along the edge
+                outCount++;
             }
         }
+
+        clipPolygonScratch = in;
+        clipPolygon = out;
+        clipEdgesScratch = inEdges;
+        clipEdges = outEdges;
+        return outCount;
+    }
+
+    /**
+     * Makes sure the draw slot arrays can hold the given number of slots, growing them if needed.
+     * 
+     * @param slots The number of slots needed.
+     */
+    private void ensureSlotCapacity(int slots) {
+        if (slots <= finalColours.length) {
+            return;
+        }
+        int size = Math.max(slots, finalColours.length * 2);
+        screenX = Arrays.copyOf(screenX, size * 3);
+        screenY = Arrays.copyOf(screenY, size * 3);
+        screenZ = Arrays.copyOf(screenZ, size * 3);
+        finalColours = Arrays.copyOf(finalColours, size);
+        slotEdges = Arrays.copyOf(slotEdges, size);
+        depthValues = Arrays.copyOf(depthValues, size);
+        slotTriangles = Arrays.copyOf(slotTriangles, size);
+        renderList = Arrays.copyOf(renderList, size);
     }
 
     /**
@@ -184,8 +1149,7 @@ public class Scene {
      * @return The corresponding 2D vertex, or null if it can't be projected.
      */
     public Vertex2D renderVertex(Vertex t) {
-        Vertex dif = Vertex.difference(t, camPos); //Calculate the vector from the camera to the vertex
-        Vertex d = Vertex.rotateWithSinCos(dif, s, c); //Rotate the vertex around the camera's position
+        Vec3 d = viewMatrix.transformPoint(t.x, t.y, t.z, new Vec3()); //Move the vertex into camera space
 
         //If the vertex is behind the camera, don't render it
         if (d.z <= 0) return null;
@@ -193,104 +1157,802 @@ public class Scene {
         //Perspective projection calculation to convert 3D coordinates into 2D screen space
         float bX = (screenPosRel.z / d.z) * d.x + screenPosRel.x;
         float bY = (screenPosRel.z / d.z) * d.y + screenPosRel.y;
-        return new Vertex2D(bX, bY);
+        return new Vertex2D(bX, bY, d.z);
     }
 
     /**
      * Calculates the average squared distance of a triangle's vertices from the camera.
      * 
-     * @param triangle The triangle to calculate the distance for.
+     * @param object The object the triangle belongs to.
+     * @param t The index of the triangle within the object.
      * @return The average squared distance of the triangle's vertices from the camera.
      */
-    private float triangleValue(Triangle triangle) {
-        if (triangle == null) return 0;
-        
+    private float triangleValue(RenderObject object, int t) {
+        float[] worldX = object.getWorldX();
+        float[] worldY = object.getWorldY();
+        float[] worldZ = object.getWorldZ();
+        int[] indices = object.getMesh().indices;
+
         //Calculate squared distances of the triangle's vertices from the camera
-        float v1d = Vertex.difference(triangle.v1, camPos).magnitudeSqrd();
-        float v2d = Vertex.difference(triangle.v2, camPos).magnitudeSqrd();
-        float v3d = Vertex.difference(triangle.v3, camPos).magnitudeSqrd();
-        return (v1d + v2d + v3d) / 3.0f; //Return the average squared distance
+        float sum = 0;
+        for (int corner = t * 3; corner < t * 3 + 3; corner++) {
+            int v = indices[corner];
+            float dx = worldX[v] - camPos.x;
+            float dy = worldY[v] - camPos.y;
+            float dz = worldZ[v] - camPos.z;
+            sum += dx * dx + dy * dy + dz * dz;
+        }
+        return sum / 3.0f; //Return the average squared distance
     }
 
-    //Getter methods for triangles, colours, object names, and triangle count
+    /**
+     * Returns the rendered triangles as Triangle2D objects, null where a triangle could not be projected.
+     * This builds new objects on every call and is only kept for code that still works with triangles,
+     * the rasterizer reads the projected corner arrays directly.
+     * 
+     * @return An array of rendered 2D triangles, indexed by triangle.
+     */
     public Triangle2D[] getRenderedTriangles() {
+        Triangle2D[] triangles2DRendered = new Triangle2D[triangleCount];
+        for (int index = 0; index < triangleCount; index++) {
+            if (rendered[index]) {
+                int corner = index * 3;
+                triangles2DRendered[index] = new Triangle2D(
+                        new Vertex2D(screenX[corner], screenY[corner], screenZ[corner]),
+                        new Vertex2D(screenX[corner + 1], screenY[corner + 1], screenZ[corner + 1]),
+                        new Vertex2D(screenX[corner + 2], screenY[corner + 2], screenZ[corner + 2]));
+            }
+        }
         return triangles2DRendered;
     }
 
-    public Color[] getColours() {
+    //Getter methods for the projected corners, colours, object names, and triangle count
+    public float[] getScreenX() {
+        return screenX;
+    }
+
+    public float[] getScreenY() {
+        return screenY;
+    }
+
+    public float[] getScreenZ() {
+        return screenZ;
+    }
+
+    public boolean[] getRendered() {
+        return rendered;
+    }
+
+    /**
+     * Returns the final colour of every draw slot, packed as ARGB so the rasterizer can write it straight into the framebuffer.
+     *
+     * @return The colours, indexed by draw slot.
+     */
+    public int[] getColours() {
         return finalColours;
     }
 
+    /**
+     * Returns the mask of the edges the rasterizer should outline for every draw slot, bit k standing for the edge
+     * from corner k to corner (k + 1) % 3, or null when every edge of every triangle is outlined.
+     *
+     * @return The outlined edges, indexed by draw slot.
+     */
+    public byte[] getEdgeMasks() {
+        return outlineEdges == OUTLINE_TRIANGLE_EDGES ? null : slotEdges;
+    }
+
+    /**
+     * Sets which kinds of edges are outlined. OUTLINE_TRIANGLE_EDGES outlines every edge of every triangle,
+     * so edges shared by two triangles are drawn twice, any combination of OUTLINE_SILHOUETTES, OUTLINE_CREASES and
+     * OUTLINE_SMOOTH outlines those kinds of edges once each.
+     *
+     * @param outlineEdges The kinds of edges to outline.
+     */
+    public void setOutlineEdges(int outlineEdges) {
+        this.outlineEdges = outlineEdges & OUTLINE_ALL;
+    }
+
+    public int getOutlineEdges() {
+        return outlineEdges;
+    }
+
+    /**
+     * Sets the angle between two faces' normals above which the edge they share counts as a crease.
+     *
+     * @param creaseAngle The angle in degrees.
+     */
+    public void setCreaseAngle(float creaseAngle) {
+        this.creaseAngle = creaseAngle;
+        this.creaseCosine = (float) Math.cos(Math.toRadians(creaseAngle));
+    }
+
+    public float getCreaseAngle() {
+        return creaseAngle;
+    }
+
+    /**
+     * Returns the indices of the triangles rendered this frame in the order they should be drawn in,
+     * back to front when depth sorting is on. Only the first getRenderCount() entries are valid.
+     *
+     * @return The render order.
+     */
+    public int[] getRenderOrder() {
+        return renderOrder;
+    }
+
+    /**
+     * Returns the number of triangles rendered this frame, which is the number of valid entries in the render order.
+     *
+     * @return The number of rendered triangles.
+     */
+    public int getRenderCount() {
+        return renderCount;
+    }
+
+    /**
+     * Turns the back to front sort on or off. Without it the render order is the order the triangles were added in,
+     * which is only correct when the triangles are drawn with a depth buffer.
+     *
+     * @param depthSorting true to sort triangles every frame, false to skip the sort.
+     */
+    public void setDepthSorting(boolean depthSorting) {
+        this.depthSorting = depthSorting;
+        depthSorter.reset(); //The order will be stale by the time sorting is turned back on
+    }
+
+    public boolean getDepthSorting() {
+        return depthSorting;
+    }
+
+    /**
+     * Returns the name of the object each triangle belongs to.
+     * This builds a new array on every call, use getTriangleObjects to look objects up without allocating.
+     * 
+     * @return An array of object names, indexed by triangle.
+     */
     public String[] getNames() {
+        String[] objectNames = new String[triangleCount];
+        for (int index = 0; index < triangleCount; index++) {
+            int handle = triangleObjects[index];
+            objectNames[index] = handle < 0 ? null : handleObjects[handle].getName();
+        }
         return objectNames;
     }
 
+    /**
+     * Returns the handle of the object each triangle belongs to, -1 for triangle numbers no object is using.
+     * 
+     * @return An array of object handles, indexed by triangle.
+     */
+    public int[] getTriangleObjects() {
+        return triangleObjects;
+    }
+
+    /**
+     * Returns the objects in the scene. Objects added or removed since the last frame are not included until the next one.
+     * 
+     * @return The list of objects in the scene.
+     */
+    public ArrayList<RenderObject> getObjects() {
+        return objects;
+    }
+
+    /**
+     * Returns the object with a handle.
+     * 
+     * @param handle The handle of the object.
+     * @return The object, or null if no object in the scene has the handle.
+     */
+    public RenderObject getObject(int handle) {
+        return handle >= 0 && handle < handleLimit ? handleObjects[handle] : null;
+    }
+
+    /**
+     * Returns the handle of an object in the scene, or of an object that will join it at the start of the next frame.
+     * 
+     * @param object The object.
+     * @return The object's handle, or -1 if it is not in the scene.
+     */
+    public int getHandle(RenderObject object) {
+        synchronized (pendingChanges) {
+            Integer handle = objectHandles.get(object);
+            return handle == null ? -1 : handle;
+        }
+    }
+
+    /**
+     * Returns the number of triangle numbers in use, which is the size of the per-triangle arrays that is valid.
+     * This includes gaps left by removed objects that have not been compacted yet.
+     * 
+     * @return The number of triangle numbers in use.
+     */
     public int getCount() {
         return triangleCount;
     }
 
     /**
-     * Adds a RenderObject to the scene and updates the arrays of triangles, colours, and names.
+     * Returns the number of triangles belonging to the objects in the scene.
+     * 
+     * @return The number of triangles.
+     */
+    public int getLiveTriangleCount() {
+        return liveTriangleCount;
+    }
+
+    /**
+     * Adds a RenderObject to the scene. The object joins at the start of the next frame, but its handle is
+     * reserved straight away and stays the same until the object is removed. This can be called from any thread.
      * 
      * @param objectToAdd The object to add to the scene.
+     * @return The object's handle, or its existing handle if it is already in the scene.
      */
-    public void addObject(RenderObject objectToAdd) {
-        objects.add(objectToAdd);
-        recreateArrays();
-        reloadObjectsTriangles();
+    public int addObject(RenderObject objectToAdd) {
+        synchronized (pendingChanges) {
+            Integer existing = objectHandles.get(objectToAdd);
+            if (existing != null) {
+                return existing;
+            }
+            int handle = freeHandleCount > 0 ? freeHandles[--freeHandleCount] : nextHandle++;
+            objectHandles.put(objectToAdd, handle);
+            pendingChanges.add(new PendingChange(objectToAdd, handle, false));
+            return handle;
+        }
     }
 
     /**
-     * Sets a new list of objects in the scene and reloads their triangles.
+     * Removes a RenderObject from the scene. The object leaves at the start of the next frame.
+     * This can be called from any thread.
+     * 
+     * @param objectToRemove The object to remove from the scene.
+     * @return true if the object was in the scene.
+     */
+    public boolean removeObject(RenderObject objectToRemove) {
+        synchronized (pendingChanges) {
+            Integer handle = objectHandles.remove(objectToRemove);
+            if (handle == null) {
+                return false;
+            }
+            pendingChanges.add(new PendingChange(objectToRemove, handle, true));
+            return true;
+        }
+    }
+
+    /**
+     * Replaces the objects in the scene with a new list of objects, from the start of the next frame.
      * 
      * @param objectsToSet The new list of objects to set in the scene.
      */
     public void setObjects(ArrayList<RenderObject> objectsToSet) {
-        objects = objectsToSet;
-        recreateArrays();
-        reloadObjectsTriangles();
+        synchronized (pendingChanges) {
+            for (RenderObject object : new ArrayList<>(objectHandles.keySet())) {
+                removeObject(object);
+            }
+            for (RenderObject object : objectsToSet) {
+                addObject(object);
+            }
+        }
     }
 
     /**
-     * Recreates the arrays to store triangle data, colours, and object names when new objects are added.
+     * Applies the objects added and removed since the last call, then moves a limited number of triangles
+     * to close the gaps left by removed objects. Each added or removed object costs time in proportion to its
+     * own triangle count. Called at the start of every frame.
      */
-    private void recreateArrays() {
-        int totalTCount = 0;
-        
-        //Calculate the total number of triangles from all objects
-        for (RenderObject object : objects) {
-            totalTCount += object.getTCount();
+    public void applyObjectChanges() {
+        synchronized (pendingChanges) {
+            for (PendingChange change : pendingChanges) {
+                if (change.remove) {
+                    detachObject(change.handle);
+                } else {
+                    attachObject(change.object, change.handle);
+                }
+            }
+            pendingChanges.clear();
+        }
+        compactTriangles(COMPACTION_BUDGET);
+    }
+
+    /**
+     * Gives an object its slot and a range of triangle numbers, and adds its chunks to the chunk tables.
+     * 
+     * @param object The object joining the scene.
+     * @param handle The handle reserved for the object.
+     */
+    private void attachObject(RenderObject object, int handle) {
+        ensureHandleCapacity(handle + 1);
+        handleObjects[handle] = object;
+        handleLimit = Math.max(handleLimit, handle + 1);
+
+        //Take a range of triangle numbers, reusing a gap if one is big enough
+        int tCount = object.getTCount();
+        int start = triangleRanges.allocate(tCount);
+        triangleCount = triangleRanges.getEnd();
+        ensureTriangleCapacity(triangleCount);
+        objectFirstTriangle[handle] = start;
+        if (tCount > 0) {
+            rangeOwners.put(start, handle);
         }
+        claimTriangles(handle, start, tCount);
+
+        appendChunks(handle);
+        objects.add(object);
+        liveTriangleCount += tCount;
 
-        //Allocate memory for the arrays based on the total triangle count
-        triangles = new Triangle[totalTCount];
-        triangles2DRendered = new Triangle2D[totalTCount];
-        colours = new ColourShader[totalTCount];
-        objectNames = new String[totalTCount];
-        triangleCount = totalTCount;
+        //Make sure the object's bounds are copied, even if the handle's last object had the same transform version
+        objectBoundsVersion[handle] = object.getTransformVersion() - 1;
+        hierarchyChanged = true;
     }
 
     /**
-     * Reloads the triangles, colours, and object names of all objects in the scene.
+     * Frees an object's slot and triangle numbers, and marks its chunks as dead.
+     * 
+     * @param handle The handle of the object leaving the scene.
      */
-    public void reloadObjectsTriangles() {
-        int tIndex = 0;
-        for (RenderObject object : objects) {
-            for (Triangle triangle : object.loadTriangles()) {
-                //Load the triangles of the object into the scene arrays
-                triangles[tIndex] = triangle;
-                colours[tIndex] = object.getColour();
-                objectNames[tIndex] = object.getName();
-                tIndex++;
+    private void detachObject(int handle) {
+        RenderObject object = handleObjects[handle];
+        int tCount = object.getTCount();
+        int start = objectFirstTriangle[handle];
+
+        //Give the triangle numbers back
+        Arrays.fill(triangleObjects, start, start + tCount, -1);
+        Arrays.fill(rendered, start, start + tCount, false);
+        if (tCount > 0) {
+            rangeOwners.remove(start);
+        }
+        triangleRanges.free(start, tCount);
+        triangleCount = triangleRanges.getEnd();
+
+        removeChunks(handle);
+        handleObjects[handle] = null;
+        while (handleLimit > 0 && handleObjects[handleLimit - 1] == null) {
+            handleLimit--;
+        }
+        objects.remove(object);
+        liveTriangleCount -= tCount;
+        hierarchyChanged = true;
+
+        //The handle can be given to another object from now on
+        if (freeHandleCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, Math.max(8, freeHandles.length * 2));
+        }
+        freeHandles[freeHandleCount++] = handle;
+    }
+
+    /**
+     * Records that a range of triangle numbers belongs to an object.
+     * 
+     * @param handle The handle of the object.
+     * @param start The first triangle number of the range.
+     * @param length The number of triangles in the range.
+     */
+    private void claimTriangles(int handle, int start, int length) {
+        Arrays.fill(triangleObjects, start, start + length, handle);
+        Arrays.fill(rendered, start, start + length, false);
+        for (int index = start; index < start + length; index++) {
+            slotTriangles[index] = index;
+        }
+    }
+
+    /**
+     * Closes gaps in the triangle numbers left by removed objects, by moving the object just after the first gap
+     * down into it, until the budget runs out. Only the moved objects' own triangles are touched, so the work
+     * is spread over as many frames as it needs.
+     * 
+     * @param budget The number of triangles that may be moved.
+     */
+    private void compactTriangles(int budget) {
+        while (budget > 0) {
+            int gapStart = triangleRanges.getFirstFreeStart();
+            if (gapStart < 0) {
+                return; //No gaps left
             }
+
+            //Gaps are merged and a gap at the end shrinks the range, so an object always follows a gap
+            int gapEnd = gapStart + triangleRanges.getFreeLength(gapStart);
+            int handle = rangeOwners.remove(gapEnd);
+            int length = handleObjects[handle].getTCount();
+
+            triangleRanges.slideDown(gapStart, length);
+            triangleCount = triangleRanges.getEnd();
+            rangeOwners.put(gapStart, handle);
+            objectFirstTriangle[handle] = gapStart;
+            claimTriangles(handle, gapStart, length);
+
+            //Release the part of the old range the object no longer covers
+            int releasedStart = Math.max(gapStart + length, gapEnd);
+            Arrays.fill(triangleObjects, releasedStart, gapEnd + length, -1);
+            Arrays.fill(rendered, releasedStart, gapEnd + length, false);
+            budget -= length;
+        }
+    }
+
+    /**
+     * Adds the vertex and triangle chunks of an object to the end of the chunk tables.
+     * 
+     * @param handle The handle of the object.
+     */
+    private void appendChunks(int handle) {
+        RenderObject object = handleObjects[handle];
+        ensureChunkCapacity(vertexChunkCount + (object.getVCount() + CHUNK_SIZE - 1) / CHUNK_SIZE,
+                triangleChunkCount + (object.getTCount() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+
+        objectFirstVertexChunk[handle] = vertexChunkCount;
+        for (int start = 0; start < object.getVCount(); start += CHUNK_SIZE, vertexChunkCount++) {
+            vertexChunkObject[vertexChunkCount] = handle;
+            vertexChunkStart[vertexChunkCount] = start;
+            vertexChunkEnd[vertexChunkCount] = Math.min(object.getVCount(), start + CHUNK_SIZE);
+        }
+
+        objectFirstTriangleChunk[handle] = triangleChunkCount;
+        for (int start = 0; start < object.getTCount(); start += CHUNK_SIZE, triangleChunkCount++) {
+            triangleChunkObject[triangleChunkCount] = handle;
+            triangleChunkStart[triangleChunkCount] = start;
+            triangleChunkEnd[triangleChunkCount] = Math.min(object.getTCount(), start + CHUNK_SIZE);
+        }
+    }
+
+    /**
+     * Marks the chunks of a removed object as dead, and drops dead chunks from the tables once they make up half of them.
+     * 
+     * @param handle The handle of the object.
+     */
+    private void removeChunks(int handle) {
+        RenderObject object = handleObjects[handle];
+        int vertexChunks = (object.getVCount() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int triangleChunks = (object.getTCount() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Arrays.fill(vertexChunkObject, objectFirstVertexChunk[handle], objectFirstVertexChunk[handle] + vertexChunks, -1);
+        Arrays.fill(triangleChunkObject, objectFirstTriangleChunk[handle], objectFirstTriangleChunk[handle] + triangleChunks, -1);
+        deadChunkCount += vertexChunks + triangleChunks;
+
+        if (deadChunkCount * 2 > vertexChunkCount + triangleChunkCount) {
+            purgeChunks();
+        }
+    }
+
+    /**
+     * Removes the dead chunks from the chunk tables, keeping the live ones in order.
+     */
+    private void purgeChunks() {
+        int kept = 0;
+        for (int chunk = 0; chunk < vertexChunkCount; chunk++) {
+            int handle = vertexChunkObject[chunk];
+            if (handle < 0) {
+                continue;
+            }
+            if (vertexChunkStart[chunk] == 0) {
+                objectFirstVertexChunk[handle] = kept;
+            }
+            vertexChunkObject[kept] = handle;
+            vertexChunkStart[kept] = vertexChunkStart[chunk];
+            vertexChunkEnd[kept] = vertexChunkEnd[chunk];
+            kept++;
+        }
+        vertexChunkCount = kept;
+
+        kept = 0;
+        for (int chunk = 0; chunk < triangleChunkCount; chunk++) {
+            int handle = triangleChunkObject[chunk];
+            if (handle < 0) {
+                continue;
+            }
+            if (triangleChunkStart[chunk] == 0) {
+                objectFirstTriangleChunk[handle] = kept;
+            }
+            triangleChunkObject[kept] = handle;
+            triangleChunkStart[kept] = triangleChunkStart[chunk];
+            triangleChunkEnd[kept] = triangleChunkEnd[chunk];
+            kept++;
+        }
+        triangleChunkCount = kept;
+        deadChunkCount = 0;
+    }
+
+    /**
+     * Makes sure the per-object arrays can hold the given number of handles, growing them if needed.
+     * 
+     * @param handles The number of handles needed.
+     */
+    private void ensureHandleCapacity(int handles) {
+        if (handles <= handleObjects.length) {
+            return;
+        }
+        int size = Math.max(handles, handleObjects.length * 2);
+        handleObjects = Arrays.copyOf(handleObjects, size);
+        objectFirstTriangle = Arrays.copyOf(objectFirstTriangle, size);
+        objectFirstVertexChunk = Arrays.copyOf(objectFirstVertexChunk, size);
+        objectFirstTriangleChunk = Arrays.copyOf(objectFirstTriangleChunk, size);
+        objectVisible = Arrays.copyOf(objectVisible, size);
+        objectTransforming = Arrays.copyOf(objectTransforming, size);
+        objectCamX = Arrays.copyOf(objectCamX, size);
+        objectCamY = Arrays.copyOf(objectCamY, size);
+        objectCamZ = Arrays.copyOf(objectCamZ, size);
+        objectBounds = Arrays.copyOf(objectBounds, size * 6);
+        objectBoundsVersion = Arrays.copyOf(objectBoundsVersion, size);
+        hierarchyHandles = Arrays.copyOf(hierarchyHandles, size);
+        int oldSize = objectClipMatrices.length;
+        objectClipMatrices = Arrays.copyOf(objectClipMatrices, size);
+        objectLights = Arrays.copyOf(objectLights, size);
+        objectLightCount = Arrays.copyOf(objectLightCount, size);
+        for (int handle = oldSize; handle < size; handle++) {
+            objectClipMatrices[handle] = new Mat4();
+        }
+    }
+
+    /**
+     * Makes sure the per-triangle arrays can hold the given number of triangles, growing them if needed.
+     * 
+     * @param triangles The number of triangles needed.
+     */
+    private void ensureTriangleCapacity(int triangles) {
+        if (triangles <= triangleObjects.length) {
+            return;
+        }
+        int size = Math.max(triangles, triangleObjects.length * 2);
+        int oldSize = triangleObjects.length;
+        triangleObjects = Arrays.copyOf(triangleObjects, size);
+        Arrays.fill(triangleObjects, oldSize, size, -1);
+        rendered = Arrays.copyOf(rendered, size);
+        triangleStates = Arrays.copyOf(triangleStates, size);
+        batchX = new float[size]; //Only used within a frame, so nothing needs copying
+        batchY = new float[size];
+        batchZ = new float[size];
+        batchNormalX = new float[size];
+        batchNormalY = new float[size];
+        batchNormalZ = new float[size];
+        batchTriangles = new int[size];
+        batchColours = new int[size];
+        ensureSlotCapacity(size);
+    }
+
+    /**
+     * Makes sure the chunk tables can hold the given number of chunks, growing them if needed.
+     * 
+     * @param vertexChunks The number of vertex chunks needed.
+     * @param triangleChunks The number of triangle chunks needed.
+     */
+    private void ensureChunkCapacity(int vertexChunks, int triangleChunks) {
+        if (vertexChunks > vertexChunkObject.length) {
+            int size = Math.max(vertexChunks, vertexChunkObject.length * 2);
+            vertexChunkObject = Arrays.copyOf(vertexChunkObject, size);
+            vertexChunkStart = Arrays.copyOf(vertexChunkStart, size);
+            vertexChunkEnd = Arrays.copyOf(vertexChunkEnd, size);
+        }
+        if (triangleChunks > triangleChunkObject.length) {
+            int size = Math.max(triangleChunks, triangleChunkObject.length * 2);
+            triangleChunkObject = Arrays.copyOf(triangleChunkObject, size);
+            triangleChunkStart = Arrays.copyOf(triangleChunkStart, size);
+            triangleChunkEnd = Arrays.copyOf(triangleChunkEnd, size);
+        }
+    }
+
+    /**
+     * Brings the transformed vertices of every object in the scene up to date.
+     * Objects that changed since they were last transformed are transformed in parallel, the others are left as they are.
+     */
+    public void reloadObjectsTriangles() {
+        loop.forEach(handleLimit, reloadTask);
+    }
+
+    /**
+     * Transforms one object's vertices into world space.
+     * 
+     * @param handle The handle of the object.
+     */
+    private void reloadObject(int handle) {
+        if (handleObjects[handle] != null) {
+            handleObjects[handle].loadWorldTriangles();
         }
     }
 
+    /**
+     * An object waiting to be added to or removed from the scene at the start of the next frame.
+     */
+    private static class PendingChange {
+        private final RenderObject object;
+        private final int handle;
+        private final boolean remove;
+
+        PendingChange(RenderObject object, int handle, boolean remove) {
+            this.object = object;
+            this.handle = handle;
+            this.remove = remove;
+        }
+    }
+
+    /**
+     * Returns the hierarchy over the objects' world space bounding boxes, whose items are object handles.
+     * 
+     * @return The object hierarchy.
+     */
+    public BVH getObjectHierarchy() {
+        return objectHierarchy;
+    }
+
+    public int getHierarchyBuildCount() {
+        return hierarchyBuildCount;
+    }
+
+    //Getters for the culling counters of the last rendered frame
+    public int getCulledObjectCount() {
+        return culledObjectCount;
+    }
+
+    public int getCulledTriangleCount() {
+        return culledTriangleCount;
+    }
+
+    public int getBackFaceCulledCount() {
+        return backFaceCulledCount;
+    }
+
+    public int getClippedTriangleCount() {
+        return clippedTriangleCount;
+    }
+
+    public int getLodReducedTriangleCount() {
+        return lodReducedTriangleCount;
+    }
+
+    public int getShadedTriangleCount() {
+        return shadedTriangleCount;
+    }
+
+    /**
+     * Returns the profiler timing each frame's stages. Stages after the scene is rendered, such as rasterizing
+     * and presenting the frame, are marked on the same profiler by whatever performs them.
+     *
+     * @return The scene's frame profiler.
+     */
+    public FrameProfiler getProfiler() {
+        return profiler;
+    }
+
+    public void setProfiler(FrameProfiler profiler) {
+        this.profiler = profiler;
+    }
+
+    //Getters and setters for level of detail selection
+    public boolean getLevelOfDetail() {
+        return levelOfDetail;
+    }
+
+    public void setLevelOfDetail(boolean levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+    }
+
+    public float[] getLodScreenSizes() {
+        return lodScreenSizes;
+    }
+
+    /**
+     * Sets the on screen sizes below which objects drop to each lower level of detail, from largest to smallest.
+     * A size is the radius of an object's bounding sphere on screen as a fraction of half the screen's height.
+     * 
+     * @param lodScreenSizes One size per level after the first.
+     */
+    public void setLodScreenSizes(float[] lodScreenSizes) {
+        this.lodScreenSizes = lodScreenSizes;
+    }
+
+    /**
+     * Returns the scene triangle each draw slot was made from. Slots below getCount() are the triangles themselves,
+     * the slots after them are pieces of clipped triangles.
+     * 
+     * @return An array of triangle indices, indexed by draw slot.
+     */
+    public int[] getSlotTriangles() {
+        return slotTriangles;
+    }
+
+    /**
+     * Sets the number of threads that project and shade the scene. With a single thread everything runs on the calling thread.
+     * The rendered output is the same for any number of threads.
+     * 
+     * @param threadCount The number of threads.
+     */
+    public void setThreadCount(int threadCount) {
+        loop.shutdown();
+        loop = new ParallelLoop(threadCount);
+    }
+
+    public int getThreadCount() {
+        return loop.getThreadCount();
+    }
+
+    /**
+     * Sets the size of the guard band, the region around the screen inside which triangles are left for the
+     * rasterizer to trim instead of being clipped. Triangles reaching outside it are clipped to it.
+     * 
+     * @param guardBand The size of the guard band as a multiple of the screen's size.
+     */
+    public void setGuardBand(float guardBand) {
+        this.guardBand = Math.max(1, guardBand);
+    }
+
+    public float getGuardBand() {
+        return guardBand;
+    }
+
+    //Methods to configure the view frustum
+    public void setFarPlane(float farPlane) {
+        this.farPlane = farPlane;
+    }
+
+    public float getFarPlane() {
+        return farPlane;
+    }
+
+    public void setNearPlane(float nearPlane) {
+        this.nearPlane = nearPlane;
+    }
+
+    public float getNearPlane() {
+        return nearPlane;
+    }
+
+    /**
+     * Sets the region of projected coordinates that is visible on screen, used to build the view frustum.
+     * 
+     * @param halfWidth The largest projected x value that is still on screen.
+     * @param halfHeight The largest projected y value that is still on screen.
+     */
+    public void setViewBounds(float halfWidth, float halfHeight) {
+        this.viewHalfWidth = halfWidth;
+        this.viewHalfHeight = halfHeight;
+    }
+
+    /**
+     * Adds a light to the scene. Lights should only be added, removed or changed between frames.
+     * 
+     * @param light The light to add.
+     */
+    public void addLight(Light light) {
+        lights.add(light);
+    }
+
+    /**
+     * Removes a light from the scene.
+     * 
+     * @param light The light to remove.
+     * @return true if the light was in the scene.
+     */
+    public boolean removeLight(Light light) {
+        return lights.remove(light);
+    }
+
+    public ArrayList<Light> getLights() {
+        return lights;
+    }
+
     //Methods to add camera events and set camera position and rotation
     public void addCameraEvent(CameraEvent cameraEvent) {
         cameraEvents.add(cameraEvent);
     }
 
+    /**
+     * Returns whether any camera events are still waiting to start or finish.
+     *
+     * @return True if the camera is following or will follow an event.
+     */
+    public boolean hasCameraEvents() {
+        return !cameraEvents.isEmpty();
+    }
+
+    /**
+     * Sets the clock camera events are timed with as they start, so that they can follow simulated time
+     * instead of the system clock.
+     *
+     * @param clock A source of the current time in milliseconds.
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    public LongSupplier getClock() {
+        return clock;
+    }
+
     public void setCamPos(Vertex newPos) {
         camPos = newPos;
     }
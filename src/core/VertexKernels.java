@@ -0,0 +1,266 @@
+package core;
+
+import colours.ShadeTable;
+import java.awt.Color;
+import java.util.Random;
+import maths.Mat4;
+
+/**
+ * The VertexKernels class holds the tight loops over flat vertex arrays that every frame runs: moving vertices by
+ * a matrix, projecting them into clip space with their clip flags, and shading points by their distance from the camera.
+ * This class runs them one element at a time. When the jdk.incubator.vector module is available and the classes in
+ * src-vector have been compiled, getInstance returns a subclass that runs them on several lanes at once with the
+ * Vector API instead, and gives the same results. It is loaded by name, so the rest of the renderer builds and runs
+ * without the module.
+ *
+ * The Vector API is only fast once the JIT's optimizing compiler has compiled the loops that use it, before then
+ * every vector is a boxed object and the loops run hundreds of times slower than the scalar ones. A frame only calls
+ * the kernels a few times per chunk, so left to itself the JIT can take hundreds of frames to get there, if ever.
+ * The backend is therefore warmed up on scratch arrays when it is loaded, and only used once it beats the scalar loops.
+ */
+public class VertexKernels {
+
+    //Name of the Vector API backend, looked up at run time
+    private static final String VECTOR_KERNELS = "core.VectorKernels";
+
+    //Warming up the Vector API backend before it is used
+    private static final int WARMUP_VERTICES = 256; //Points in the scratch arrays, some behind the near plane
+    private static final int WARMUP_CALLS = 250; //Calls of every kernel between comparisons with the scalar loops
+    private static final int WARMUP_WINS = 2; //Comparisons in a row the backend must win to be used
+    private static final long WARMUP_LIMIT_NANOS = 10_000_000_000L; //Longest the backend is warmed up before giving up on it
+    private static long warmupNanos; //How long loading spent warming the backend up
+
+    private static VertexKernels vector; //The Vector API backend, whether or not it was chosen
+    private static volatile VertexKernels instance = load();
+
+    /**
+     * Returns the kernels the renderer uses, the Vector API backend if it can be loaded and beats the scalar loops
+     * once warmed up, and the scalar loops otherwise. Running with -Dkernels=scalar always picks the scalar loops.
+     *
+     * @return The shared kernels.
+     */
+    public static VertexKernels getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the scalar loops, followed by the Vector API backend if it could be loaded, so they can be compared.
+     *
+     * @return Every backend the renderer could use.
+     */
+    public static VertexKernels[] getBackends() {
+        getInstance();
+        if (vector == null) {
+            return new VertexKernels[] {new VertexKernels()};
+        }
+        return new VertexKernels[] {new VertexKernels(), vector};
+    }
+
+    /**
+     * Makes the renderer use the given kernels from now on, in place of the ones chosen when they were loaded.
+     *
+     * @param kernels The kernels to use.
+     */
+    public static void setInstance(VertexKernels kernels) {
+        instance = kernels;
+    }
+
+    /**
+     * Loads the Vector API backend and warms it up, falling back to the scalar loops if it is turned off, was not
+     * compiled, the jdk.incubator.vector module was not added to the run, or it never got faster than them.
+     */
+    private static VertexKernels load() {
+        if ("scalar".equals(System.getProperty("kernels"))) {
+            return new VertexKernels();
+        }
+        try {
+            vector = (VertexKernels) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new VertexKernels();
+        }
+        return warmUp(vector, new VertexKernels());
+    }
+
+    /**
+     * Runs both backends' kernels on scratch arrays until the JIT has compiled the vector loops, which shows as the
+     * vector backend beating the scalar loops WARMUP_WINS times in a row. The points cover everything a frame throws
+     * at the kernels: whole vectors and a leftover tail, points behind the near plane and beyond the shade table.
+     *
+     * @param vector The Vector API backend.
+     * @param scalar The scalar loops.
+     * @return The vector backend if it won in time, the scalar loops otherwise.
+     */
+    private static VertexKernels warmUp(VertexKernels vector, VertexKernels scalar) {
+        long start = System.nanoTime();
+        int n = WARMUP_VERTICES;
+        float[] x = new float[n], y = new float[n], z = new float[n];
+        Random random = new Random(0);
+        for (int v = 0; v < n; v++) {
+            x[v] = random.nextFloat() * 4 - 2;
+            y[v] = random.nextFloat() * 4 - 2;
+            z[v] = v % 8 == 0 ? 100 : random.nextFloat() * 4 - 1; //A quarter behind the near plane, an eighth far away
+        }
+        float[] outX = new float[n], outY = new float[n], outZ = new float[n], projectedX = new float[n], projectedY = new float[n];
+        byte[] clipFlags = new byte[n];
+        int[] colours = new int[n];
+        Mat4 m = new Mat4();
+        m.m33 = 0;
+        m.m32 = 1; //Depth is the z-coordinate, as with a camera at the origin
+        ShadeTable table = new ShadeTable(Color.WHITE, distance -> 1 / (1 + distance), 0, 16, 64);
+
+        VertexKernels chosen = scalar;
+        int wins = 0;
+        while (System.nanoTime() - start < WARMUP_LIMIT_NANOS) {
+            long[] nanos = new long[2];
+            VertexKernels[] backends = {vector, scalar};
+            for (int b = 0; b < backends.length; b++) {
+                long begin = System.nanoTime();
+                for (int call = 0; call < WARMUP_CALLS; call++) {
+                    int to = n - call % 8; //Leave a different tail each call
+                    backends[b].transform(m, x, y, z, outX, outY, outZ, 0, to);
+                    backends[b].project(m, x, y, z, outX, outY, projectedX, projectedY, outZ, clipFlags, 0, to,
+                            1, 1, 2, 2, 0.1f, 50);
+                    backends[b].shadeByDistance(x, y, z, 0, to, 0, 0, 0, table, colours);
+                }
+                nanos[b] = System.nanoTime() - begin;
+            }
+            wins = nanos[0] < nanos[1] ? wins + 1 : 0;
+            if (wins == WARMUP_WINS) {
+                chosen = vector;
+                break;
+            }
+        }
+        warmupNanos = System.nanoTime() - start;
+        return chosen;
+    }
+
+    /**
+     * Returns how long loading the kernels spent warming up the Vector API backend.
+     *
+     * @return The warm-up time in milliseconds, 0 if the backend was not loaded.
+     */
+    public static double getWarmupMillis() {
+        getInstance();
+        return warmupNanos / 1e6;
+    }
+
+    /**
+     * Returns a short name for the backend, for benchmarks and logs.
+     *
+     * @return "scalar", or the Vector API backend's name and lane count.
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Moves a range of points by the first three rows of a matrix.
+     *
+     * @param m The matrix.
+     * @param x The x-coordinates of the points.
+     * @param y The y-coordinates of the points.
+     * @param z The z-coordinates of the points.
+     * @param outX Where the moved x-coordinates are written.
+     * @param outY Where the moved y-coordinates are written.
+     * @param outZ Where the moved z-coordinates are written.
+     * @param from The index of the first point.
+     * @param to One more than the index of the last point.
+     */
+    public void transform(Mat4 m, float[] x, float[] y, float[] z, float[] outX, float[] outY, float[] outZ, int from, int to) {
+        //Read the matrix into locals so the loop does not reload them for every vertex
+        float m00 = m.m00, m01 = m.m01, m02 = m.m02, m03 = m.m03;
+        float m10 = m.m10, m11 = m.m11, m12 = m.m12, m13 = m.m13;
+        float m20 = m.m20, m21 = m.m21, m22 = m.m22, m23 = m.m23;
+
+        for (int v = from; v < to; v++) {
+            float vx = x[v], vy = y[v], vz = z[v];
+            outX[v] = m00 * vx + m01 * vy + m02 * vz + m03;
+            outY[v] = m10 * vx + m11 * vy + m12 * vz + m13;
+            outZ[v] = m20 * vx + m21 * vy + m22 * vz + m23;
+        }
+    }
+
+    /**
+     * Moves a range of points into homogeneous clip space with the rows of a matrix that give x, y and w,
+     * works out which sides of the view frustum and guard band each is outside of, and divides the points in front
+     * of the near plane by their depth. The flags are compared in clip space so they stay valid behind the camera.
+     *
+     * @param m The matrix taking the points to clip space.
+     * @param x The x-coordinates of the points.
+     * @param y The y-coordinates of the points.
+     * @param z The z-coordinates of the points.
+     * @param clipX Where the clip space x-coordinates are written.
+     * @param clipY Where the clip space y-coordinates are written.
+     * @param projectedX Where the projected x-coordinates are written, left alone for points behind the near plane.
+     * @param projectedY Where the projected y-coordinates are written, left alone for points behind the near plane.
+     * @param projectedZ Where the camera space depths, clip space w, are written.
+     * @param clipFlags Where the Scene.CLIP_ flags of each point are written.
+     * @param from The index of the first point.
+     * @param to One more than the index of the last point.
+     * @param halfWidth The largest projected x value that is on screen.
+     * @param halfHeight The largest projected y value that is on screen.
+     * @param guardHalfWidth The largest projected x value inside the guard band.
+     * @param guardHalfHeight The largest projected y value inside the guard band.
+     * @param nearPlane The depth of the near plane.
+     * @param farPlane The depth of the far plane.
+     */
+    public void project(Mat4 m, float[] x, float[] y, float[] z, float[] clipX, float[] clipY,
+            float[] projectedX, float[] projectedY, float[] projectedZ, byte[] clipFlags, int from, int to,
+            float halfWidth, float halfHeight, float guardHalfWidth, float guardHalfHeight, float nearPlane, float farPlane) {
+        //Read the rows of the matrix that give clip space x, y and w into locals
+        float m00 = m.m00, m01 = m.m01, m02 = m.m02, m03 = m.m03;
+        float m10 = m.m10, m11 = m.m11, m12 = m.m12, m13 = m.m13;
+        float m30 = m.m30, m31 = m.m31, m32 = m.m32, m33 = m.m33;
+
+        for (int v = from; v < to; v++) {
+            //Clip space position, the perspective projection before dividing by the depth
+            float vx = x[v], vy = y[v], vz = z[v];
+            float cx = m00 * vx + m01 * vy + m02 * vz + m03;
+            float cy = m10 * vx + m11 * vy + m12 * vz + m13;
+            float dZ = m30 * vx + m31 * vy + m32 * vz + m33;
+            clipX[v] = cx;
+            clipY[v] = cy;
+            projectedZ[v] = dZ;
+
+            byte flags = 0;
+            if (cx < -halfWidth * dZ) flags |= Scene.CLIP_LEFT;
+            if (cx > halfWidth * dZ) flags |= Scene.CLIP_RIGHT;
+            if (cy < -halfHeight * dZ) flags |= Scene.CLIP_BOTTOM;
+            if (cy > halfHeight * dZ) flags |= Scene.CLIP_TOP;
+            if (dZ <= nearPlane) flags |= Scene.CLIP_NEAR;
+            if (dZ > farPlane) flags |= Scene.CLIP_FAR;
+            if (cx < -guardHalfWidth * dZ || cx > guardHalfWidth * dZ || cy < -guardHalfHeight * dZ || cy > guardHalfHeight * dZ) {
+                flags |= Scene.CLIP_GUARD;
+            }
+            clipFlags[v] = flags;
+
+            //Perspective divide for vertices that can be projected
+            if ((flags & Scene.CLIP_NEAR) == 0) {
+                projectedX[v] = cx / dZ;
+                projectedY[v] = cy / dZ;
+            }
+        }
+    }
+
+    /**
+     * Shades a range of points by their distance from a point, looking each distance up in a shade table.
+     *
+     * @param x The x-coordinates of the points.
+     * @param y The y-coordinates of the points.
+     * @param z The z-coordinates of the points.
+     * @param from The index of the first point.
+     * @param to One more than the index of the last point.
+     * @param px The x-coordinate of the point distances are measured from.
+     * @param py The y-coordinate of the point distances are measured from.
+     * @param pz The z-coordinate of the point distances are measured from.
+     * @param table The shade table keyed by distance.
+     * @param into Where the packed ARGB colour of each point is written.
+     */
+    public void shadeByDistance(float[] x, float[] y, float[] z, int from, int to, float px, float py, float pz,
+            ShadeTable table, int[] into) {
+        for (int i = from; i < to; i++) {
+            float dx = x[i] - px, dy = y[i] - py, dz = z[i] - pz;
+            into[i] = table.shade((float) Math.sqrt(dx * dx + dy * dy + dz * dz));
+        }
+    }
+}
@@ -104,8 +104,8 @@ public abstract class CameraEvent extends Event {
             endRotation = rotation;
         }
 
-        //Set the start time to the current system time
-        startTime = System.currentTimeMillis();
+        //Set the start time to the current time
+        startTime = clock.getAsLong();
         //Calculate the end time based on the duration of the event
         endTime = startTime + (duration * 1000); //Convert duration from seconds to milliseconds
     }
@@ -1,5 +1,6 @@
 package events;
 
+import java.util.function.LongSupplier;
 import objects.Vertex;
 
 /**
@@ -11,13 +12,14 @@ import objects.Vertex;
 public abstract class Event {
 
     //Fields for event timing and position
-    protected float startTime; //The time when the event started
-    protected float endTime; //The time when the event is expected to end
+    protected double startTime; //The time when the event started, in milliseconds
+    protected double endTime; //The time when the event is expected to end, in milliseconds
     protected Vertex startPosition; //The starting position of the object
     protected Vertex endPosition; //The ending position of the object
     protected boolean done = false; //Indicates if the event is finished
     protected boolean started = false; //Indicates if the event has started
     protected float duration; //The duration of the event in seconds
+    protected LongSupplier clock = System::currentTimeMillis; //Source of the current time in milliseconds
 
     /**
      * Constructor to initialize an event with starting and ending positions and a duration.
@@ -47,11 +49,21 @@ public abstract class Event {
             startPosition = position;
         }
 
-        //Record the current system time as the start time and calculate the end time
-        startTime = System.currentTimeMillis();
+        //Record the current time as the start time and calculate the end time
+        startTime = clock.getAsLong();
         endTime = startTime + (duration * 1000); //Convert duration from seconds to milliseconds
     }
 
+    /**
+     * Sets where the event reads the current time from, which is the system clock unless changed.
+     * Must be set before the event starts.
+     * 
+     * @param clock A source of the current time in milliseconds.
+     */
+    public void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
     /**
      * Abstract method to define the interpolation curve (e.g., linear, ease-in, etc.).
      * Subclasses must implement this method to define how the progress over time behaves.
@@ -89,11 +101,17 @@ public abstract class Event {
      * @return A float value between 0 and 1 indicating the time-based progress of the event.
      */
     protected float timeProgress() {
+        //An event with no duration is over as soon as it starts
+        if (endTime <= startTime) {
+            done = true;
+            return 1;
+        }
+
         //Calculate the time progress by dividing elapsed time by total event duration
-        float progress = (System.currentTimeMillis() - startTime) / (endTime - startTime);
+        float progress = (float) ((clock.getAsLong() - startTime) / (endTime - startTime));
 
-        //If progress exceeds 1, mark the event as done and cap the progress at 1
-        if (progress > 1) {
+        //If progress reaches 1, mark the event as done and cap the progress at 1
+        if (progress >= 1) {
             done = true;
             return 1;
         } else if (progress < 0) {
@@ -0,0 +1,240 @@
+package maths;
+
+/**
+ * The Mat4 class is a mutable 4x4 matrix for transforming points, stored as sixteen fields named by row and column.
+ * Points are column vectors, so in a.multiply(b) the transform b is applied first and then a.
+ * Every operation changes the matrix it is called on and returns it, so transforms can be composed
+ * into scratch matrices every frame without allocating.
+ */
+public class Mat4 {
+    //The matrix's entries, mRC is the entry in row R and column C
+    public float m00, m01, m02, m03;
+    public float m10, m11, m12, m13;
+    public float m20, m21, m22, m23;
+    public float m30, m31, m32, m33;
+
+    /**
+     * Constructs an identity matrix.
+     */
+    public Mat4() {
+        setIdentity();
+    }
+
+    /**
+     * Sets this matrix to the identity.
+     *
+     * @return This matrix.
+     */
+    public Mat4 setIdentity() {
+        m00 = 1; m01 = 0; m02 = 0; m03 = 0;
+        m10 = 0; m11 = 1; m12 = 0; m13 = 0;
+        m20 = 0; m21 = 0; m22 = 1; m23 = 0;
+        m30 = 0; m31 = 0; m32 = 0; m33 = 1;
+        return this;
+    }
+
+    /**
+     * Copies another matrix into this one.
+     *
+     * @param m The matrix to copy.
+     * @return This matrix.
+     */
+    public Mat4 set(Mat4 m) {
+        m00 = m.m00; m01 = m.m01; m02 = m.m02; m03 = m.m03;
+        m10 = m.m10; m11 = m.m11; m12 = m.m12; m13 = m.m13;
+        m20 = m.m20; m21 = m.m21; m22 = m.m22; m23 = m.m23;
+        m30 = m.m30; m31 = m.m31; m32 = m.m32; m33 = m.m33;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to a translation.
+     *
+     * @param x The distance along the x-axis.
+     * @param y The distance along the y-axis.
+     * @param z The distance along the z-axis.
+     * @return This matrix.
+     */
+    public Mat4 setTranslation(float x, float y, float z) {
+        setIdentity();
+        m03 = x;
+        m13 = y;
+        m23 = z;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to a scale along each axis.
+     *
+     * @param x The scale along the x-axis.
+     * @param y The scale along the y-axis.
+     * @param z The scale along the z-axis.
+     * @return This matrix.
+     */
+    public Mat4 setScale(float x, float y, float z) {
+        setIdentity();
+        m00 = x;
+        m11 = y;
+        m22 = z;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to the rotation performed by Vertex.rotateWithSinCos with the same sine and cosine values,
+     * so that one matrix multiplication replaces the rotation formula.
+     *
+     * @param sx The sine of the x angle.
+     * @param sy The sine of the y angle.
+     * @param sz The sine of the z angle.
+     * @param cx The cosine of the x angle.
+     * @param cy The cosine of the y angle.
+     * @param cz The cosine of the z angle.
+     * @return This matrix.
+     */
+    public Mat4 setRotation(float sx, float sy, float sz, float cx, float cy, float cz) {
+        setIdentity();
+        m00 = cy * cz;
+        m01 = cy * sz;
+        m02 = -sy;
+        m10 = sx * sy * cz - cx * sz;
+        m11 = sx * sy * sz + cx * cz;
+        m12 = sx * cy;
+        m20 = cx * sy * cz + sx * sz;
+        m21 = cx * sy * sz - sx * cz;
+        m22 = cx * cy;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to the rotation performed by Vertex.rotate with the same angles.
+     *
+     * @param x The angle around the x-axis.
+     * @param y The angle around the y-axis.
+     * @param z The angle around the z-axis.
+     * @return This matrix.
+     */
+    public Mat4 setRotation(float x, float y, float z) {
+        return setRotation((float) Math.sin(-x), (float) Math.sin(-y), (float) Math.sin(-z),
+                (float) Math.cos(-x), (float) Math.cos(-y), (float) Math.cos(-z));
+    }
+
+    /**
+     * Multiplies this matrix by another one on the right, so the other matrix's transform happens first.
+     *
+     * @param m The matrix to multiply by.
+     * @return This matrix.
+     */
+    public Mat4 multiply(Mat4 m) {
+        return multiply(this, m);
+    }
+
+    /**
+     * Sets this matrix to the product a * b. Either matrix may be this one.
+     *
+     * @param a The matrix on the left, whose transform happens second.
+     * @param b The matrix on the right, whose transform happens first.
+     * @return This matrix.
+     */
+    public Mat4 multiply(Mat4 a, Mat4 b) {
+        float r00 = a.m00 * b.m00 + a.m01 * b.m10 + a.m02 * b.m20 + a.m03 * b.m30;
+        float r01 = a.m00 * b.m01 + a.m01 * b.m11 + a.m02 * b.m21 + a.m03 * b.m31;
+        float r02 = a.m00 * b.m02 + a.m01 * b.m12 + a.m02 * b.m22 + a.m03 * b.m32;
+        float r03 = a.m00 * b.m03 + a.m01 * b.m13 + a.m02 * b.m23 + a.m03 * b.m33;
+        float r10 = a.m10 * b.m00 + a.m11 * b.m10 + a.m12 * b.m20 + a.m13 * b.m30;
+        float r11 = a.m10 * b.m01 + a.m11 * b.m11 + a.m12 * b.m21 + a.m13 * b.m31;
+        float r12 = a.m10 * b.m02 + a.m11 * b.m12 + a.m12 * b.m22 + a.m13 * b.m32;
+        float r13 = a.m10 * b.m03 + a.m11 * b.m13 + a.m12 * b.m23 + a.m13 * b.m33;
+        float r20 = a.m20 * b.m00 + a.m21 * b.m10 + a.m22 * b.m20 + a.m23 * b.m30;
+        float r21 = a.m20 * b.m01 + a.m21 * b.m11 + a.m22 * b.m21 + a.m23 * b.m31;
+        float r22 = a.m20 * b.m02 + a.m21 * b.m12 + a.m22 * b.m22 + a.m23 * b.m32;
+        float r23 = a.m20 * b.m03 + a.m21 * b.m13 + a.m22 * b.m23 + a.m23 * b.m33;
+        float r30 = a.m30 * b.m00 + a.m31 * b.m10 + a.m32 * b.m20 + a.m33 * b.m30;
+        float r31 = a.m30 * b.m01 + a.m31 * b.m11 + a.m32 * b.m21 + a.m33 * b.m31;
+        float r32 = a.m30 * b.m02 + a.m31 * b.m12 + a.m32 * b.m22 + a.m33 * b.m32;
+        float r33 = a.m30 * b.m03 + a.m31 * b.m13 + a.m32 * b.m23 + a.m33 * b.m33;
+        m00 = r00; m01 = r01; m02 = r02; m03 = r03;
+        m10 = r10; m11 = r11; m12 = r12; m13 = r13;
+        m20 = r20; m21 = r21; m22 = r22; m23 = r23;
+        m30 = r30; m31 = r31; m32 = r32; m33 = r33;
+        return this;
+    }
+
+    /**
+     * Sets this matrix to the inverse of an affine matrix, one whose bottom row is 0, 0, 0, 1,
+     * such as any combination of scales, rotations and translations. The matrix may be this one.
+     *
+     * @param m The affine matrix to invert.
+     * @return This matrix.
+     */
+    public Mat4 invertAffine(Mat4 m) {
+        //Invert the 3x3 part with its adjugate
+        float c00 = m.m11 * m.m22 - m.m12 * m.m21;
+        float c01 = m.m02 * m.m21 - m.m01 * m.m22;
+        float c02 = m.m01 * m.m12 - m.m02 * m.m11;
+        float c10 = m.m12 * m.m20 - m.m10 * m.m22;
+        float c11 = m.m00 * m.m22 - m.m02 * m.m20;
+        float c12 = m.m02 * m.m10 - m.m00 * m.m12;
+        float c20 = m.m10 * m.m21 - m.m11 * m.m20;
+        float c21 = m.m01 * m.m20 - m.m00 * m.m21;
+        float c22 = m.m00 * m.m11 - m.m01 * m.m10;
+        float invDet = 1 / (m.m00 * c00 + m.m01 * c10 + m.m02 * c20);
+        float tx = m.m03, ty = m.m13, tz = m.m23;
+
+        m00 = c00 * invDet; m01 = c01 * invDet; m02 = c02 * invDet;
+        m10 = c10 * invDet; m11 = c11 * invDet; m12 = c12 * invDet;
+        m20 = c20 * invDet; m21 = c21 * invDet; m22 = c22 * invDet;
+
+        //The inverse translation is the inverted 3x3 part applied to the negated translation
+        m03 = -(m00 * tx + m01 * ty + m02 * tz);
+        m13 = -(m10 * tx + m11 * ty + m12 * tz);
+        m23 = -(m20 * tx + m21 * ty + m22 * tz);
+        m30 = 0; m31 = 0; m32 = 0; m33 = 1;
+        return this;
+    }
+
+    /**
+     * Transforms a point by this matrix, treating it as having a w of 1 and ignoring the resulting w.
+     *
+     * @param point The point to transform.
+     * @param into The vector the transformed point is written into, which may be the same as point.
+     * @return The vector that was written into.
+     */
+    public Vec3 transformPoint(Vec3 point, Vec3 into) {
+        return transformPoint(point.x, point.y, point.z, into);
+    }
+
+    /**
+     * Transforms a point by this matrix, treating it as having a w of 1 and ignoring the resulting w.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param z The z-coordinate of the point.
+     * @param into The vector the transformed point is written into.
+     * @return The vector that was written into.
+     */
+    public Vec3 transformPoint(float x, float y, float z, Vec3 into) {
+        return into.set(m00 * x + m01 * y + m02 * z + m03,
+                m10 * x + m11 * y + m12 * z + m13,
+                m20 * x + m21 * y + m22 * z + m23);
+    }
+
+    /**
+     * Transforms a direction by this matrix, which ignores the translation.
+     *
+     * @param direction The direction to transform.
+     * @param into The vector the transformed direction is written into, which may be the same as direction.
+     * @return The vector that was written into.
+     */
+    public Vec3 transformDirection(Vec3 direction, Vec3 into) {
+        float x = direction.x, y = direction.y, z = direction.z;
+        return into.set(m00 * x + m01 * y + m02 * z, m10 * x + m11 * y + m12 * z, m20 * x + m21 * y + m22 * z);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + m00 + ", " + m01 + ", " + m02 + ", " + m03 + "]\n"
+                + "[" + m10 + ", " + m11 + ", " + m12 + ", " + m13 + "]\n"
+                + "[" + m20 + ", " + m21 + ", " + m22 + ", " + m23 + "]\n"
+                + "[" + m30 + ", " + m31 + ", " + m32 + ", " + m33 + "]";
+    }
+}
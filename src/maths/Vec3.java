@@ -0,0 +1,161 @@
+package maths;
+
+/**
+ * The Vec3 class is a mutable 3D vector. Every operation changes the vector it is called on and returns it,
+ * so calculations can be chained and scratch vectors reused without allocating new objects.
+ */
+public class Vec3 {
+    //Public fields for the x, y, and z components of the vector
+    public float x;
+    public float y;
+    public float z;
+
+    /**
+     * Constructs a zero vector.
+     */
+    public Vec3() {
+    }
+
+    /**
+     * Constructs a vector with the given components.
+     *
+     * @param x The x component.
+     * @param y The y component.
+     * @param z The z component.
+     */
+    public Vec3(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    /**
+     * Sets the components of this vector.
+     *
+     * @param x The x component.
+     * @param y The y component.
+     * @param z The z component.
+     * @return This vector.
+     */
+    public Vec3 set(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    /**
+     * Copies another vector into this one.
+     *
+     * @param v The vector to copy.
+     * @return This vector.
+     */
+    public Vec3 set(Vec3 v) {
+        return set(v.x, v.y, v.z);
+    }
+
+    /**
+     * Adds another vector to this one.
+     *
+     * @param v The vector to add.
+     * @return This vector.
+     */
+    public Vec3 add(Vec3 v) {
+        x += v.x;
+        y += v.y;
+        z += v.z;
+        return this;
+    }
+
+    /**
+     * Subtracts another vector from this one.
+     *
+     * @param v The vector to subtract.
+     * @return This vector.
+     */
+    public Vec3 sub(Vec3 v) {
+        x -= v.x;
+        y -= v.y;
+        z -= v.z;
+        return this;
+    }
+
+    /**
+     * Multiplies every component of this vector by a scalar.
+     *
+     * @param n The scalar.
+     * @return This vector.
+     */
+    public Vec3 scale(float n) {
+        x *= n;
+        y *= n;
+        z *= n;
+        return this;
+    }
+
+    /**
+     * Multiplies this vector by another one component by component.
+     *
+     * @param v The vector to multiply by.
+     * @return This vector.
+     */
+    public Vec3 mul(Vec3 v) {
+        x *= v.x;
+        y *= v.y;
+        z *= v.z;
+        return this;
+    }
+
+    /**
+     * Calculates the dot product of this vector and another one.
+     *
+     * @param v The other vector.
+     * @return The dot product.
+     */
+    public float dot(Vec3 v) {
+        return x * v.x + y * v.y + z * v.z;
+    }
+
+    /**
+     * Sets this vector to the cross product of itself and another vector.
+     *
+     * @param v The other vector.
+     * @return This vector.
+     */
+    public Vec3 cross(Vec3 v) {
+        return set(y * v.z - z * v.y, z * v.x - x * v.z, x * v.y - y * v.x);
+    }
+
+    /**
+     * Calculates the length of this vector.
+     *
+     * @return The length.
+     */
+    public float length() {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+
+    /**
+     * Calculates the squared length of this vector, which avoids the square root.
+     *
+     * @return The squared length.
+     */
+    public float lengthSqrd() {
+        return x * x + y * y + z * z;
+    }
+
+    /**
+     * Scales this vector to a length of 1, leaving a zero vector as it is.
+     *
+     * @return This vector.
+     */
+    public Vec3 normalize() {
+        float length = length();
+        return length > 0 ? scale(1 / length) : this;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + y + ", " + z + ")";
+    }
+}
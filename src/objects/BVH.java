@@ -0,0 +1,532 @@
+package objects;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * The BVH class is a bounding volume hierarchy over a set of items that each have an axis aligned bounding box,
+ * such as the triangles of a mesh or the objects of a scene. Items are given by id, and their boxes are read from
+ * a flat array holding six values per id (min x, min y, min z, max x, max y, max z).
+ * The tree is built top down with the surface area heuristic, binning the items' centres along each axis and
+ * splitting where the expected cost of a ray or box test is lowest. When items move but the set of items stays
+ * the same, the tree can be refitted instead, which keeps its shape and only grows or shrinks its boxes.
+ * Nodes are stored in flat arrays, and the two children of a node are always next to each other after it.
+ */
+public class BVH {
+
+    private static final int BIN_COUNT = 16; //Number of bins the items' centres are sorted into along each axis
+    private static final float TRAVERSAL_COST = 1; //Cost of visiting a node relative to testing one item
+    private static final int MAX_LEAF_SIZE = 16; //Largest leaf made because splitting it would cost more
+
+    private final int leafSize; //Number of items at or below which a node always becomes a leaf
+
+    //Nodes of the tree, the root is node 0
+    private float[] nodeBounds = new float[0]; //Six bounds values for every node
+    private int[] nodeFirst = new int[0]; //The left child of an internal node, or the first item position of a leaf
+    private int[] nodeItemCount = new int[0]; //Number of items in a leaf, 0 for internal nodes
+    private int nodeCount; //Number of nodes in use
+    private int depth; //Number of levels in the tree
+
+    //Ids of the items, ordered so the items of each leaf are next to each other
+    private int[] items = new int[0];
+    private int itemCount;
+
+    //Expected cost of the tree when it was built, and after the last refit
+    private float builtCost;
+    private float cost;
+
+    //Scratch space used while building
+    private float[] itemBounds; //The bounds of the items being built over
+    private final int[] binCounts = new int[BIN_COUNT];
+    private final float[] binBounds = new float[BIN_COUNT * 6];
+    private final float[] rightAreas = new float[BIN_COUNT];
+    private final int[] rightCounts = new int[BIN_COUNT];
+    private final float[] sweepBox = new float[6];
+
+    /**
+     * Constructs an empty hierarchy.
+     *
+     * @param leafSize The number of items at or below which a node is never split.
+     */
+    public BVH(int leafSize) {
+        this.leafSize = Math.max(1, leafSize);
+    }
+
+    /**
+     * Builds the tree over a set of items with the surface area heuristic, replacing the previous tree.
+     *
+     * @param bounds Six bounds values for every item id.
+     * @param ids The ids of the items to build over.
+     * @param count The number of ids to use.
+     */
+    public void build(float[] bounds, int[] ids, int count) {
+        itemBounds = bounds;
+        itemCount = count;
+        if (items.length < count) {
+            items = new int[count];
+        }
+        System.arraycopy(ids, 0, items, 0, count);
+
+        //A binary tree with one item per leaf has at most two nodes per item
+        int maxNodes = Math.max(1, count * 2);
+        if (nodeFirst.length < maxNodes) {
+            nodeBounds = new float[maxNodes * 6];
+            nodeFirst = new int[maxNodes];
+            nodeItemCount = new int[maxNodes];
+        }
+        nodeCount = 1;
+        depth = 1;
+        if (count == 0) {
+            setEmpty(0);
+            nodeItemCount[0] = 0;
+            nodeFirst[0] = 0;
+        } else {
+            buildNode(0, 0, count, 1);
+        }
+        itemBounds = null;
+        builtCost = cost = calculateCost();
+    }
+
+    /**
+     * Builds one node over a range of the item list, splitting it in two if that is expected to be cheaper.
+     *
+     * @param node The node to build.
+     * @param first The position of the node's first item.
+     * @param count The number of items in the node.
+     * @param level The level of the node, 1 for the root.
+     */
+    private void buildNode(int node, int first, int count, int level) {
+        depth = Math.max(depth, level);
+        float[] bounds = itemBounds;
+
+        //Bounds of the items, and of their centres, which are what gets split
+        setEmpty(node);
+        float cMinX = Float.POSITIVE_INFINITY, cMinY = Float.POSITIVE_INFINITY, cMinZ = Float.POSITIVE_INFINITY;
+        float cMaxX = Float.NEGATIVE_INFINITY, cMaxY = Float.NEGATIVE_INFINITY, cMaxZ = Float.NEGATIVE_INFINITY;
+        for (int i = first; i < first + count; i++) {
+            int b = items[i] * 6;
+            growNode(node, bounds, b);
+            float cx = bounds[b] + bounds[b + 3], cy = bounds[b + 1] + bounds[b + 4], cz = bounds[b + 2] + bounds[b + 5];
+            cMinX = Math.min(cMinX, cx); cMaxX = Math.max(cMaxX, cx);
+            cMinY = Math.min(cMinY, cy); cMaxY = Math.max(cMaxY, cy);
+            cMinZ = Math.min(cMinZ, cz); cMaxZ = Math.max(cMaxZ, cz);
+        }
+        if (count <= leafSize) {
+            makeLeaf(node, first, count);
+            return;
+        }
+
+        //Try every bin boundary along every axis and keep the cheapest split
+        float bestCost = Float.POSITIVE_INFINITY;
+        int bestAxis = -1;
+        int bestBin = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            float min = axis == 0 ? cMinX : axis == 1 ? cMinY : cMinZ;
+            float max = axis == 0 ? cMaxX : axis == 1 ? cMaxY : cMaxZ;
+            if (max <= min) {
+                continue; //Every centre is in the same place along this axis
+            }
+            float scale = BIN_COUNT / (max - min);
+
+            //Count the items in each bin and grow the bin's bounds around them
+            Arrays.fill(binCounts, 0);
+            for (int bin = 0; bin < BIN_COUNT; bin++) {
+                setEmpty(binBounds, bin * 6);
+            }
+            for (int i = first; i < first + count; i++) {
+                int b = items[i] * 6;
+                int bin = binIndex(bounds[b + axis] + bounds[b + axis + 3], min, scale);
+                binCounts[bin]++;
+                grow(binBounds, bin * 6, bounds, b);
+            }
+
+            //Sweep from the right to find the area and count of everything right of each boundary
+            float[] box = sweepBox;
+            setEmpty(box, 0);
+            int rightCount = 0;
+            for (int bin = BIN_COUNT - 1; bin > 0; bin--) {
+                grow(box, 0, binBounds, bin * 6);
+                rightCount += binCounts[bin];
+                rightAreas[bin] = area(box, 0);
+                rightCounts[bin] = rightCount;
+            }
+
+            //Sweep from the left and cost each boundary
+            setEmpty(box, 0);
+            int leftCount = 0;
+            for (int bin = 0; bin < BIN_COUNT - 1; bin++) {
+                grow(box, 0, binBounds, bin * 6);
+                leftCount += binCounts[bin];
+                if (leftCount == 0 || rightCounts[bin + 1] == 0) {
+                    continue;
+                }
+                float splitCost = leftCount * area(box, 0) + rightCounts[bin + 1] * rightAreas[bin + 1];
+                if (splitCost < bestCost) {
+                    bestCost = splitCost;
+                    bestAxis = axis;
+                    bestBin = bin;
+                }
+            }
+        }
+
+        //Keep the node as a leaf if splitting is not expected to pay for the extra node
+        float nodeArea = area(nodeBounds, node * 6);
+        float leafCost = count * nodeArea;
+        if (bestAxis < 0 || (count <= MAX_LEAF_SIZE && TRAVERSAL_COST * nodeArea + bestCost >= leafCost)) {
+            if (bestAxis < 0 && count > MAX_LEAF_SIZE) {
+                splitNode(node, first, count, count / 2, level); //Every centre is in one place, so split the list in half
+            } else {
+                makeLeaf(node, first, count);
+            }
+            return;
+        }
+
+        //Move the items left of the chosen boundary to the front of the range
+        float min = bestAxis == 0 ? cMinX : bestAxis == 1 ? cMinY : cMinZ;
+        float max = bestAxis == 0 ? cMaxX : bestAxis == 1 ? cMaxY : cMaxZ;
+        float scale = BIN_COUNT / (max - min);
+        int left = first;
+        int right = first + count - 1;
+        while (left <= right) {
+            int b = items[left] * 6;
+            if (binIndex(bounds[b + bestAxis] + bounds[b + bestAxis + 3], min, scale) <= bestBin) {
+                left++;
+            } else {
+                int swap = items[left];
+                items[left] = items[right];
+                items[right--] = swap;
+            }
+        }
+        splitNode(node, first, count, left - first, level);
+    }
+
+    /**
+     * Turns a node into an internal node with two children, the first leftCount items going to the left child.
+     */
+    private void splitNode(int node, int first, int count, int leftCount, int level) {
+        int leftChild = nodeCount;
+        nodeCount += 2;
+        nodeFirst[node] = leftChild;
+        nodeItemCount[node] = 0;
+        buildNode(leftChild, first, leftCount, level + 1);
+        buildNode(leftChild + 1, first + leftCount, count - leftCount, level + 1);
+    }
+
+    private void makeLeaf(int node, int first, int count) {
+        nodeFirst[node] = first;
+        nodeItemCount[node] = count;
+    }
+
+    /**
+     * Finds the bin an item's centre falls into. Centres are passed doubled, as min + max, like the bin range.
+     */
+    private static int binIndex(float centre, float min, float scale) {
+        return Math.min(BIN_COUNT - 1, (int) ((centre - min) * scale));
+    }
+
+    /**
+     * Refits the tree to the items' current bounds without changing its shape.
+     * Children always come after their parent, so walking the nodes backwards updates every child before its parent.
+     *
+     * @param bounds Six bounds values for every item id, for the same items the tree was built over.
+     * @return The expected cost of the refitted tree relative to the cost when it was built, which grows as items
+     *         move away from where they were and shows when the tree should be rebuilt.
+     */
+    public float refit(float[] bounds) {
+        for (int node = nodeCount - 1; node >= 0; node--) {
+            int count = nodeItemCount[node];
+            setEmpty(node);
+            if (count > 0) {
+                int first = nodeFirst[node];
+                for (int i = first; i < first + count; i++) {
+                    growNode(node, bounds, items[i] * 6);
+                }
+            } else if (itemCount > 0) {
+                int child = nodeFirst[node];
+                grow(nodeBounds, node * 6, nodeBounds, child * 6);
+                grow(nodeBounds, node * 6, nodeBounds, (child + 1) * 6);
+            }
+        }
+        cost = calculateCost();
+        return builtCost > 0 ? cost / builtCost : 1;
+    }
+
+    /**
+     * Calculates the expected cost of testing a random ray against the tree, with the surface area heuristic.
+     *
+     * @return The cost relative to testing one item, or 0 for an empty tree.
+     */
+    private float calculateCost() {
+        float rootArea = area(nodeBounds, 0);
+        if (itemCount == 0 || rootArea <= 0) {
+            return 0;
+        }
+        float total = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            float nodeArea = area(nodeBounds, node * 6);
+            total += nodeItemCount[node] > 0 ? nodeArea * nodeItemCount[node] : nodeArea * TRAVERSAL_COST;
+        }
+        return total / rootArea;
+    }
+
+    /**
+     * Finds the closest item hit by a ray, visiting the nearer child of each node first and skipping any node
+     * further away than the closest hit so far.
+     *
+     * @param ox The x-coordinate of the ray's origin.
+     * @param oy The y-coordinate of the ray's origin.
+     * @param oz The z-coordinate of the ray's origin.
+     * @param dx The x component of the ray's direction.
+     * @param dy The y component of the ray's direction.
+     * @param dz The z component of the ray's direction.
+     * @param maxDistance The furthest distance along the ray to look, in multiples of the direction.
+     * @param intersector Tests the ray against one item.
+     * @return The distance to the closest hit, or infinity if nothing was hit within maxDistance.
+     */
+    public float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance, ItemIntersector intersector) {
+        float closest = maxDistance;
+        float ix = 1 / dx, iy = 1 / dy, iz = 1 / dz;
+        int[] stack = new int[depth + 1];
+        float[] stackDistances = new float[depth + 1]; //Where the ray enters each node on the stack
+        int top = 0;
+        if (itemCount > 0) {
+            stackDistances[top] = slabDistance(0, ox, oy, oz, ix, iy, iz, closest);
+            stack[top++] = 0;
+        }
+        while (top > 0) {
+            int node = stack[--top];
+            if (stackDistances[top] > closest) {
+                continue; //A closer hit was found after the node was pushed
+            }
+            int count = nodeItemCount[node];
+            if (count > 0) {
+                int first = nodeFirst[node];
+                for (int i = first; i < first + count; i++) {
+                    closest = Math.min(closest, intersector.intersect(items[i], closest));
+                }
+                continue;
+            }
+
+            //Push the further child first so the nearer one is visited next
+            int left = nodeFirst[node];
+            float leftDistance = slabDistance(left, ox, oy, oz, ix, iy, iz, closest);
+            float rightDistance = slabDistance(left + 1, ox, oy, oz, ix, iy, iz, closest);
+            int near = leftDistance <= rightDistance ? left : left + 1;
+            float nearDistance = Math.min(leftDistance, rightDistance);
+            float farDistance = Math.max(leftDistance, rightDistance);
+            if (farDistance <= closest) {
+                stackDistances[top] = farDistance;
+                stack[top++] = near == left ? left + 1 : left;
+            }
+            if (nearDistance <= closest) {
+                stackDistances[top] = nearDistance;
+                stack[top++] = near;
+            }
+        }
+        return closest < maxDistance ? closest : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Calculates where a ray enters a node's box, with the slab method.
+     *
+     * @return The distance to the box, 0 if the ray starts inside it, or infinity if the ray misses it within maxDistance.
+     */
+    private float slabDistance(int node, float ox, float oy, float oz, float ix, float iy, float iz, float maxDistance) {
+        int b = node * 6;
+        float tx1 = (nodeBounds[b] - ox) * ix, tx2 = (nodeBounds[b + 3] - ox) * ix;
+        float ty1 = (nodeBounds[b + 1] - oy) * iy, ty2 = (nodeBounds[b + 4] - oy) * iy;
+        float tz1 = (nodeBounds[b + 2] - oz) * iz, tz2 = (nodeBounds[b + 5] - oz) * iz;
+        float near = Math.max(Math.max(Math.min(tx1, tx2), Math.min(ty1, ty2)), Math.max(Math.min(tz1, tz2), 0));
+        float far = Math.min(Math.min(Math.max(tx1, tx2), Math.max(ty1, ty2)), Math.min(Math.max(tz1, tz2), maxDistance));
+        return near <= far ? near : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Visits every item whose box overlaps a box.
+     *
+     * @param minX The smallest x of the box.
+     * @param minY The smallest y of the box.
+     * @param minZ The smallest z of the box.
+     * @param maxX The largest x of the box.
+     * @param maxY The largest y of the box.
+     * @param maxZ The largest z of the box.
+     * @param bounds Six bounds values for every item id, to test the items of the leaves reached.
+     * @param visitor Called with the id of every overlapping item.
+     */
+    public void queryBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float[] bounds, IntConsumer visitor) {
+        if (itemCount == 0) {
+            return;
+        }
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int b = node * 6;
+            if (nodeBounds[b] > maxX || nodeBounds[b + 1] > maxY || nodeBounds[b + 2] > maxZ
+                    || nodeBounds[b + 3] < minX || nodeBounds[b + 4] < minY || nodeBounds[b + 5] < minZ) {
+                continue;
+            }
+            int count = nodeItemCount[node];
+            if (count == 0) {
+                stack[top++] = nodeFirst[node];
+                stack[top++] = nodeFirst[node] + 1;
+                continue;
+            }
+            for (int i = nodeFirst[node]; i < nodeFirst[node] + count; i++) {
+                int item = items[i] * 6;
+                if (bounds[item] <= maxX && bounds[item + 1] <= maxY && bounds[item + 2] <= maxZ
+                        && bounds[item + 3] >= minX && bounds[item + 4] >= minY && bounds[item + 5] >= minZ) {
+                    visitor.accept(items[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visits every item whose box is within a distance of a point.
+     *
+     * @param x The x-coordinate of the point.
+     * @param y The y-coordinate of the point.
+     * @param z The z-coordinate of the point.
+     * @param radius The distance from the point.
+     * @param bounds Six bounds values for every item id, to test the items of the leaves reached.
+     * @param visitor Called with the id of every item in range.
+     */
+    public void querySphere(float x, float y, float z, float radius, float[] bounds, IntConsumer visitor) {
+        if (itemCount == 0) {
+            return;
+        }
+        float radiusSqrd = radius * radius;
+        int[] stack = new int[depth + 1];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (distanceSqrd(nodeBounds, node * 6, x, y, z) > radiusSqrd) {
+                continue;
+            }
+            int count = nodeItemCount[node];
+            if (count == 0) {
+                stack[top++] = nodeFirst[node];
+                stack[top++] = nodeFirst[node] + 1;
+                continue;
+            }
+            for (int i = nodeFirst[node]; i < nodeFirst[node] + count; i++) {
+                if (distanceSqrd(bounds, items[i] * 6, x, y, z) <= radiusSqrd) {
+                    visitor.accept(items[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the squared distance from a point to the closest point of a box, 0 if the point is inside it.
+     */
+    private static float distanceSqrd(float[] bounds, int b, float x, float y, float z) {
+        float dx = Math.max(0, Math.max(bounds[b] - x, x - bounds[b + 3]));
+        float dy = Math.max(0, Math.max(bounds[b + 1] - y, y - bounds[b + 4]));
+        float dz = Math.max(0, Math.max(bounds[b + 2] - z, z - bounds[b + 5]));
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    //Helpers for working with boxes stored as six values in an array
+    private void setEmpty(int node) {
+        setEmpty(nodeBounds, node * 6);
+    }
+
+    private static void setEmpty(float[] box, int b) {
+        box[b] = box[b + 1] = box[b + 2] = Float.POSITIVE_INFINITY;
+        box[b + 3] = box[b + 4] = box[b + 5] = Float.NEGATIVE_INFINITY;
+    }
+
+    private void growNode(int node, float[] bounds, int b) {
+        grow(nodeBounds, node * 6, bounds, b);
+    }
+
+    private static void grow(float[] box, int b, float[] other, int o) {
+        box[b] = Math.min(box[b], other[o]);
+        box[b + 1] = Math.min(box[b + 1], other[o + 1]);
+        box[b + 2] = Math.min(box[b + 2], other[o + 2]);
+        box[b + 3] = Math.max(box[b + 3], other[o + 3]);
+        box[b + 4] = Math.max(box[b + 4], other[o + 4]);
+        box[b + 5] = Math.max(box[b + 5], other[o + 5]);
+    }
+
+    private static float area(float[] box, int b) {
+        float dx = box[b + 3] - box[b], dy = box[b + 4] - box[b + 1], dz = box[b + 5] - box[b + 2];
+        if (dx < 0 || dy < 0 || dz < 0) {
+            return 0; //An empty box
+        }
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    //Getters for walking the tree directly
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Returns the bounds of every node, six values per node.
+     *
+     * @return The node bounds array.
+     */
+    public float[] getNodeBounds() {
+        return nodeBounds;
+    }
+
+    public boolean isLeaf(int node) {
+        return nodeItemCount[node] > 0 || itemCount == 0;
+    }
+
+    /**
+     * Returns the left child of an internal node, the right child is the node after it.
+     *
+     * @param node The internal node.
+     * @return The left child.
+     */
+    public int getLeftChild(int node) {
+        return nodeFirst[node];
+    }
+
+    /**
+     * Returns the id of one of a leaf's items.
+     *
+     * @param node The leaf node.
+     * @param i The index of the item within the leaf.
+     * @return The item's id.
+     */
+    public int getLeafItem(int node, int i) {
+        return items[nodeFirst[node] + i];
+    }
+
+    public int getLeafItemCount(int node) {
+        return nodeItemCount[node];
+    }
+
+    public float getCost() {
+        return cost;
+    }
+
+    /**
+     * Tests a ray against one item for BVH.raycast.
+     */
+    public interface ItemIntersector {
+        /**
+         * Tests the ray against an item.
+         *
+         * @param item The id of the item.
+         * @param closest The distance to the closest hit so far.
+         * @return The distance to the item if it is hit closer than closest, otherwise closest or anything larger.
+         */
+        float intersect(int item, float closest);
+    }
+}
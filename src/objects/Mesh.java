@@ -0,0 +1,461 @@
+package objects;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The Mesh class stores the geometry of an object as flat arrays instead of Triangle and Vertex objects.
+ * Vertex positions are kept in one array per axis and each triangle is three indices into those arrays,
+ * so a mesh of any size is only a handful of objects on the heap and is walked in memory order.
+ */
+public class Mesh {
+    //Vertex positions, one array per axis
+    public final float[] x;
+    public final float[] y;
+    public final float[] z;
+
+    //Three vertex indices per triangle
+    public final int[] indices;
+
+    //Unit face normal of every triangle, pointing out of the side from which its vertices are counterclockwise
+    public final float[] normalX;
+    public final float[] normalY;
+    public final float[] normalZ;
+
+    private final int vertexCount; //Number of vertices in the mesh
+    private final int triangleCount; //Number of triangles in the mesh
+
+    //Bounds of the mesh in model space
+    private Vertex boundsMin; //Smallest x, y and z of any vertex
+    private Vertex boundsMax; //Largest x, y and z of any vertex
+    private Vertex sphereCentre; //Centre of the bounding sphere, the middle of the bounding box
+    private float sphereRadius; //Radius of the bounding sphere
+
+    private BVH bvh; //Hierarchy over the mesh's triangles, built the first time it is needed
+    public static final int BVH_LEAF_SIZE = 4; //Number of triangles at or below which a node of the triangle hierarchy is a leaf
+
+    private int[] edgeNeighbours; //Triangle across each triangle edge, built the first time it is needed
+    private float[] vertexNormals; //Smoothed unit normal of every vertex as x, y, z, built the first time it is needed
+
+    /**
+     * Constructor to create a mesh from vertex position arrays and a triangle index buffer.
+     *
+     * @param x The x-coordinates of the vertices.
+     * @param y The y-coordinates of the vertices.
+     * @param z The z-coordinates of the vertices.
+     * @param indices Three vertex indices for every triangle.
+     */
+    public Mesh(float[] x, float[] y, float[] z, int[] indices) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.indices = indices;
+        this.vertexCount = x.length;
+        this.triangleCount = indices.length / 3;
+        this.normalX = new float[triangleCount];
+        this.normalY = new float[triangleCount];
+        this.normalZ = new float[triangleCount];
+        calculateBounds();
+        calculateFaceNormals();
+    }
+
+    /**
+     * Constructor to create a mesh whose face normals and bounds were worked out before, such as one read back from
+     * the mesh cache, so nothing has to be calculated from the vertices again.
+     *
+     * @param x The x-coordinates of the vertices.
+     * @param y The y-coordinates of the vertices.
+     * @param z The z-coordinates of the vertices.
+     * @param indices Three vertex indices for every triangle.
+     * @param normalX The x component of every triangle's unit face normal.
+     * @param normalY The y component of every triangle's unit face normal.
+     * @param normalZ The z component of every triangle's unit face normal.
+     * @param boundsMin The smallest x, y and z of any vertex.
+     * @param boundsMax The largest x, y and z of any vertex.
+     * @param sphereCentre The centre of the bounding sphere.
+     * @param sphereRadius The radius of the bounding sphere.
+     */
+    public Mesh(float[] x, float[] y, float[] z, int[] indices, float[] normalX, float[] normalY, float[] normalZ,
+            Vertex boundsMin, Vertex boundsMax, Vertex sphereCentre, float sphereRadius) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.indices = indices;
+        this.vertexCount = x.length;
+        this.triangleCount = indices.length / 3;
+        if (normalX.length != triangleCount || normalY.length != triangleCount || normalZ.length != triangleCount) {
+            throw new IllegalArgumentException("Expected " + triangleCount + " face normals");
+        }
+        this.normalX = normalX;
+        this.normalY = normalY;
+        this.normalZ = normalZ;
+        this.boundsMin = boundsMin;
+        this.boundsMax = boundsMax;
+        this.sphereCentre = sphereCentre;
+        this.sphereRadius = sphereRadius;
+    }
+
+    /**
+     * Calculates the face normal of every triangle from its winding order, as in the .obj format
+     * the vertices of a face are listed counterclockwise when seen from the front.
+     */
+    private void calculateFaceNormals() {
+        for (int t = 0; t < triangleCount; t++) {
+            int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+
+            //Cross product of the two edges leaving the first vertex
+            float e1x = x[b] - x[a], e1y = y[b] - y[a], e1z = z[b] - z[a];
+            float e2x = x[c] - x[a], e2y = y[c] - y[a], e2z = z[c] - z[a];
+            float nx = e1y * e2z - e1z * e2y;
+            float ny = e1z * e2x - e1x * e2z;
+            float nz = e1x * e2y - e1y * e2x;
+
+            //Normalize, leaving degenerate triangles with a zero normal
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length > 0) {
+                normalX[t] = nx / length;
+                normalY[t] = ny / length;
+                normalZ[t] = nz / length;
+            }
+        }
+    }
+
+    /**
+     * Calculates the bounding box and bounding sphere of the mesh's vertices.
+     */
+    private void calculateBounds() {
+        boundsMin = new Vertex(0, 0, 0);
+        boundsMax = new Vertex(0, 0, 0);
+        if (vertexCount > 0) {
+            boundsMin = new Vertex(x[0], y[0], z[0]);
+            boundsMax = new Vertex(x[0], y[0], z[0]);
+        }
+
+        //Grow the bounding box to contain every vertex
+        for (int v = 1; v < vertexCount; v++) {
+            boundsMin.x = Math.min(boundsMin.x, x[v]);
+            boundsMin.y = Math.min(boundsMin.y, y[v]);
+            boundsMin.z = Math.min(boundsMin.z, z[v]);
+            boundsMax.x = Math.max(boundsMax.x, x[v]);
+            boundsMax.y = Math.max(boundsMax.y, y[v]);
+            boundsMax.z = Math.max(boundsMax.z, z[v]);
+        }
+
+        //Centre the sphere on the box and make it reach the furthest vertex
+        sphereCentre = Vertex.divide(Vertex.add(boundsMin, boundsMax), 2);
+        float radiusSqrd = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            float dx = x[v] - sphereCentre.x;
+            float dy = y[v] - sphereCentre.y;
+            float dz = z[v] - sphereCentre.z;
+            radiusSqrd = Math.max(radiusSqrd, dx * dx + dy * dy + dz * dz);
+        }
+        sphereRadius = (float) Math.sqrt(radiusSqrd);
+    }
+
+    /**
+     * Builds a mesh from an array of triangles. Triangles sharing the same Vertex object share a vertex in the mesh.
+     *
+     * @param triangles The triangles to pack into the mesh.
+     * @return A new mesh holding the same geometry.
+     */
+    public static Mesh fromTriangles(Triangle[] triangles) {
+        HashMap<Vertex, Integer> vertexIndices = new HashMap<>();
+        int[] indices = new int[triangles.length * 3];
+        float[] x = new float[triangles.length * 3];
+        float[] y = new float[triangles.length * 3];
+        float[] z = new float[triangles.length * 3];
+
+        //Give each distinct Vertex object an index, identity is enough because Vertex does not override equals
+        for (int t = 0; t < triangles.length; t++) {
+            Vertex[] corners = {triangles[t].v1, triangles[t].v2, triangles[t].v3};
+            for (int k = 0; k < 3; k++) {
+                Integer index = vertexIndices.get(corners[k]);
+                if (index == null) {
+                    index = vertexIndices.size();
+                    vertexIndices.put(corners[k], index);
+                    x[index] = corners[k].x;
+                    y[index] = corners[k].y;
+                    z[index] = corners[k].z;
+                }
+                indices[t * 3 + k] = index;
+            }
+        }
+
+        int vertexCount = vertexIndices.size();
+        return new Mesh(Arrays.copyOf(x, vertexCount), Arrays.copyOf(y, vertexCount),
+                Arrays.copyOf(z, vertexCount), indices);
+    }
+
+    /**
+     * Returns the bounding volume hierarchy over the mesh's triangles in model space, building it the first time.
+     * The mesh's vertices are not expected to change after it is built.
+     *
+     * @return The triangle hierarchy.
+     */
+    public synchronized BVH getBVH() {
+        if (bvh == null) {
+            bvh = buildBVH();
+        }
+        return bvh;
+    }
+
+    /**
+     * Builds a new bounding volume hierarchy over the mesh's triangles with the surface area heuristic.
+     *
+     * @return The new triangle hierarchy.
+     */
+    public BVH buildBVH() {
+        int[] ids = new int[triangleCount];
+        for (int t = 0; t < triangleCount; t++) {
+            ids[t] = t;
+        }
+        BVH built = new BVH(BVH_LEAF_SIZE);
+        built.build(getTriangleBounds(new float[triangleCount * 6]), ids, triangleCount);
+        return built;
+    }
+
+    /**
+     * Returns the smoothed normal of every vertex, building them the first time. Each is the sum of the face normals
+     * of the triangles using the vertex, weighted by their areas so small slivers barely bend it, made unit length.
+     * Vertices only used by degenerate triangles, or by faces cancelling out, are left with a zero normal.
+     *
+     * @return The x, y and z of every vertex's normal, three entries per vertex.
+     */
+    public synchronized float[] getVertexNormals() {
+        if (vertexNormals == null) {
+            vertexNormals = buildVertexNormals();
+        }
+        return vertexNormals;
+    }
+
+    /**
+     * Replaces the smoothed vertex normals, for meshes whose file gives normals of its own.
+     *
+     * @param normals The x, y and z of every vertex's unit normal, three entries per vertex.
+     */
+    public synchronized void setVertexNormals(float[] normals) {
+        if (normals.length != vertexCount * 3) {
+            throw new IllegalArgumentException("Expected " + vertexCount * 3 + " normal components but got " + normals.length);
+        }
+        vertexNormals = normals;
+    }
+
+    /**
+     * Builds the smoothed vertex normals by adding every triangle's unnormalized normal to each of its corners.
+     *
+     * @return The x, y and z of every vertex's normal, three entries per vertex.
+     */
+    private float[] buildVertexNormals() {
+        float[] normals = new float[vertexCount * 3];
+        for (int t = 0; t < triangleCount; t++) {
+            int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+
+            //The cross product's length is twice the triangle's area, so it is summed without normalizing
+            float e1x = x[b] - x[a], e1y = y[b] - y[a], e1z = z[b] - z[a];
+            float e2x = x[c] - x[a], e2y = y[c] - y[a], e2z = z[c] - z[a];
+            float nx = e1y * e2z - e1z * e2y;
+            float ny = e1z * e2x - e1x * e2z;
+            float nz = e1x * e2y - e1y * e2x;
+            for (int corner = t * 3; corner < t * 3 + 3; corner++) {
+                int v = indices[corner] * 3;
+                normals[v] += nx;
+                normals[v + 1] += ny;
+                normals[v + 2] += nz;
+            }
+        }
+        for (int v = 0; v < normals.length; v += 3) {
+            float length = (float) Math.sqrt(normals[v] * normals[v] + normals[v + 1] * normals[v + 1] + normals[v + 2] * normals[v + 2]);
+            if (length > 0) {
+                normals[v] /= length;
+                normals[v + 1] /= length;
+                normals[v + 2] /= length;
+            }
+        }
+        return normals;
+    }
+
+    /**
+     * Returns the edge adjacency table of the mesh, building it the first time. Edge k of triangle t runs from its
+     * corner k to corner (k + 1) % 3, and entry t * 3 + k is the triangle on the other side of that edge.
+     * Edges on the border of the mesh, and edges shared by more than two triangles after the first pair, have no
+     * neighbour and hold -1. The mesh's indices are not expected to change after it is built.
+     *
+     * @return The neighbour of every triangle edge, three entries per triangle.
+     */
+    public synchronized int[] getEdgeNeighbours() {
+        if (edgeNeighbours == null) {
+            edgeNeighbours = buildEdgeNeighbours();
+        }
+        return edgeNeighbours;
+    }
+
+    /**
+     * Builds the edge adjacency table by bucketing every triangle edge under its lower vertex index,
+     * then pairing up the edges in each bucket that end at the same higher vertex index.
+     *
+     * @return The neighbour of every triangle edge, three entries per triangle.
+     */
+    private int[] buildEdgeNeighbours() {
+        int edgeCount = triangleCount * 3;
+        int[] neighbours = new int[edgeCount];
+        Arrays.fill(neighbours, -1);
+
+        //Count the edges starting at each vertex, then turn the counts into bucket starts
+        int[] bucketStart = new int[vertexCount + 1];
+        for (int edge = 0; edge < edgeCount; edge++) {
+            bucketStart[lowerEnd(edge) + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            bucketStart[v + 1] += bucketStart[v];
+        }
+        int[] bucketEdges = new int[edgeCount];
+        int[] fill = Arrays.copyOf(bucketStart, vertexCount);
+        for (int edge = 0; edge < edgeCount; edge++) {
+            bucketEdges[fill[lowerEnd(edge)]++] = edge;
+        }
+
+        //Buckets only hold the few edges around one vertex, so each edge is compared with the rest of its bucket
+        for (int v = 0; v < vertexCount; v++) {
+            for (int i = bucketStart[v]; i < bucketStart[v + 1]; i++) {
+                int edge = bucketEdges[i];
+                if (neighbours[edge] >= 0) {
+                    continue;
+                }
+                int higher = higherEnd(edge);
+                for (int j = i + 1; j < bucketStart[v + 1]; j++) {
+                    int other = bucketEdges[j];
+                    if (neighbours[other] < 0 && higherEnd(other) == higher && other / 3 != edge / 3) {
+                        neighbours[edge] = other / 3;
+                        neighbours[other] = edge / 3;
+                        break;
+                    }
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Returns the lower of the two vertex indices at the ends of a triangle edge, given as t * 3 + k.
+     */
+    private int lowerEnd(int edge) {
+        int start = indices[edge], end = indices[edge - edge % 3 + (edge + 1) % 3];
+        return Math.min(start, end);
+    }
+
+    /**
+     * Returns the higher of the two vertex indices at the ends of a triangle edge, given as t * 3 + k.
+     */
+    private int higherEnd(int edge) {
+        int start = indices[edge], end = indices[edge - edge % 3 + (edge + 1) % 3];
+        return Math.max(start, end);
+    }
+
+    /**
+     * Writes the bounding box of every triangle into an array, six values per triangle.
+     *
+     * @param into The array to write into, holding at least six values per triangle.
+     * @return The array that was passed in.
+     */
+    public float[] getTriangleBounds(float[] into) {
+        for (int t = 0; t < triangleCount; t++) {
+            int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+            int o = t * 6;
+            into[o] = Math.min(x[a], Math.min(x[b], x[c]));
+            into[o + 1] = Math.min(y[a], Math.min(y[b], y[c]));
+            into[o + 2] = Math.min(z[a], Math.min(z[b], z[c]));
+            into[o + 3] = Math.max(x[a], Math.max(x[b], x[c]));
+            into[o + 4] = Math.max(y[a], Math.max(y[b], y[c]));
+            into[o + 5] = Math.max(z[a], Math.max(z[b], z[c]));
+        }
+        return into;
+    }
+
+    /**
+     * Tests a ray against one triangle from either side, with the Moller-Trumbore algorithm.
+     *
+     * @param t The index of the triangle.
+     * @param ox The x-coordinate of the ray's origin.
+     * @param oy The y-coordinate of the ray's origin.
+     * @param oz The z-coordinate of the ray's origin.
+     * @param dx The x component of the ray's direction.
+     * @param dy The y component of the ray's direction.
+     * @param dz The z component of the ray's direction.
+     * @return The distance along the ray to the triangle in multiples of the direction, or infinity if it is missed.
+     */
+    public float intersectTriangle(int t, float ox, float oy, float oz, float dx, float dy, float dz) {
+        int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+        float e1x = x[b] - x[a], e1y = y[b] - y[a], e1z = z[b] - z[a];
+        float e2x = x[c] - x[a], e2y = y[c] - y[a], e2z = z[c] - z[a];
+
+        //A ray parallel to the triangle's plane never hits it
+        float px = dy * e2z - dz * e2y, py = dz * e2x - dx * e2z, pz = dx * e2y - dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (det == 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float invDet = 1 / det;
+
+        //Barycentric coordinates of the point where the ray meets the plane
+        float sx = ox - x[a], sy = oy - y[a], sz = oz - z[a];
+        float u = (sx * px + sy * py + sz * pz) * invDet;
+        if (u < 0 || u > 1) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float qx = sy * e1z - sz * e1y, qy = sz * e1x - sx * e1z, qz = sx * e1y - sy * e1x;
+        float v = (dx * qx + dy * qy + dz * qz) * invDet;
+        if (v < 0 || u + v > 1) {
+            return Float.POSITIVE_INFINITY;
+        }
+        float distance = (e2x * qx + e2y * qy + e2z * qz) * invDet;
+        return distance >= 0 ? distance : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Returns a triangle of the mesh as a Triangle object, for code that still works with Triangle and Vertex.
+     * The returned triangle is a copy, changing it does not change the mesh.
+     *
+     * @param t The index of the triangle.
+     * @return A new Triangle with the positions of the triangle's vertices.
+     */
+    public Triangle getTriangle(int t) {
+        return new Triangle(getVertex(indices[t * 3]), getVertex(indices[t * 3 + 1]), getVertex(indices[t * 3 + 2]));
+    }
+
+    /**
+     * Returns a vertex of the mesh as a Vertex object.
+     *
+     * @param v The index of the vertex.
+     * @return A new Vertex with the vertex's position.
+     */
+    public Vertex getVertex(int v) {
+        return new Vertex(x[v], y[v], z[v]);
+    }
+
+    //Getters for the mesh's size
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    //Getters for the mesh's model space bounds
+    public Vertex getBoundsMin() {
+        return boundsMin;
+    }
+
+    public Vertex getBoundsMax() {
+        return boundsMax;
+    }
+
+    public Vertex getSphereCentre() {
+        return sphereCentre;
+    }
+
+    public float getSphereRadius() {
+        return sphereRadius;
+    }
+}
@@ -0,0 +1,469 @@
+package objects;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+/**
+ * The MeshSimplifier class builds lower detail versions of a mesh by repeatedly collapsing the edge whose removal
+ * changes the surface least, measured with quadric error metrics (Garland and Heckbert).
+ * Every vertex keeps a quadric, the sum of the squared distances to the planes of the triangles around it,
+ * and collapsing an edge moves the merged vertex to where the combined quadric is smallest.
+ * Open borders are kept in place by adding planes standing on every border edge, and collapses that would flip
+ * a triangle over or pinch the surface are skipped.
+ */
+public class MeshSimplifier {
+
+    private static final double BORDER_WEIGHT = 100; //How strongly the planes standing on border edges hold them in place
+    private static final double MIN_FLIP_DOT = 0.1; //Smallest allowed dot product between a triangle's normal before and after a collapse
+
+    //The mesh being simplified, its positions are moved as edges collapse
+    private final double[] x, y, z;
+    private final int[] indices;
+    private final int triangleCount;
+    private final boolean[] triangleDead;
+    private int liveTriangleCount;
+
+    //Per vertex state
+    private final double[] quadrics; //Ten values per vertex, the upper half of the symmetric 4x4 quadric matrix
+    private final int[] versions; //Raised every time a vertex moves or is removed, so queued edges touching it can be recognised as stale
+    private final boolean[] vertexDead;
+    private final int[][] vertexTriangles; //The triangles around each vertex, which may include removed ones
+    private final int[] vertexTriangleCount;
+
+    private final PriorityQueue<Collapse> queue = new PriorityQueue<>();
+    private final double[] target = new double[3]; //Scratch position of the merged vertex
+
+    /**
+     * Simplifies a mesh to several triangle counts in one pass, taking a copy of the mesh as each count is reached.
+     *
+     * @param mesh The mesh to simplify.
+     * @param targetTriangles The triangle counts to stop at, from largest to smallest.
+     * @return One mesh per target. A target that cannot be reached gets the simplest mesh that could be made.
+     */
+    public static Mesh[] simplify(Mesh mesh, int[] targetTriangles) {
+        MeshSimplifier simplifier = new MeshSimplifier(mesh);
+        Mesh[] meshes = new Mesh[targetTriangles.length];
+        for (int i = 0; i < targetTriangles.length; i++) {
+            simplifier.collapseTo(targetTriangles[i]);
+            meshes[i] = simplifier.toMesh();
+        }
+        return meshes;
+    }
+
+    /**
+     * Sets up the quadrics, adjacency and queue of edge collapses for a mesh.
+     *
+     * @param mesh The mesh to simplify.
+     */
+    private MeshSimplifier(Mesh mesh) {
+        int vertexCount = mesh.getVertexCount();
+        x = new double[vertexCount];
+        y = new double[vertexCount];
+        z = new double[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            x[v] = mesh.x[v];
+            y[v] = mesh.y[v];
+            z[v] = mesh.z[v];
+        }
+        indices = mesh.indices.clone();
+        triangleCount = mesh.getTriangleCount();
+        triangleDead = new boolean[triangleCount];
+        liveTriangleCount = triangleCount;
+        quadrics = new double[vertexCount * 10];
+        versions = new int[vertexCount];
+        vertexDead = new boolean[vertexCount];
+        vertexTriangles = new int[vertexCount][];
+        vertexTriangleCount = new int[vertexCount];
+
+        //Count the triangles around each vertex, then list them
+        for (int corner = 0; corner < indices.length; corner++) {
+            vertexTriangleCount[indices[corner]]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            vertexTriangles[v] = new int[Math.max(4, vertexTriangleCount[v])];
+            vertexTriangleCount[v] = 0;
+        }
+        for (int t = 0; t < triangleCount; t++) {
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                vertexTriangles[v][vertexTriangleCount[v]++] = t;
+            }
+        }
+
+        //Add each triangle's plane to its corners' quadrics, weighted by its area, and count how often each edge is used
+        HashMap<Long, Integer> edgeUses = new HashMap<>();
+        for (int t = 0; t < triangleCount; t++) {
+            int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+            double[] plane = trianglePlane(a, b, c);
+            if (plane == null) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                addPlane(indices[t * 3 + k], plane[0], plane[1], plane[2], plane[3], plane[4]);
+            }
+            edgeUses.merge(edgeKey(a, b), 1, Integer::sum);
+            edgeUses.merge(edgeKey(b, c), 1, Integer::sum);
+            edgeUses.merge(edgeKey(c, a), 1, Integer::sum);
+        }
+
+        //Hold border edges, used by only one triangle, in place with a plane standing on the edge
+        for (int t = 0; t < triangleCount; t++) {
+            double[] plane = trianglePlane(indices[t * 3], indices[t * 3 + 1], indices[t * 3 + 2]);
+            if (plane == null) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int a = indices[t * 3 + k], b = indices[t * 3 + (k + 1) % 3];
+                if (edgeUses.getOrDefault(edgeKey(a, b), 0) != 1) {
+                    continue;
+                }
+                double ex = x[b] - x[a], ey = y[b] - y[a], ez = z[b] - z[a];
+                double nx = ey * plane[2] - ez * plane[1];
+                double ny = ez * plane[0] - ex * plane[2];
+                double nz = ex * plane[1] - ey * plane[0];
+                double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+                if (length == 0) {
+                    continue;
+                }
+                nx /= length;
+                ny /= length;
+                nz /= length;
+                double d = -(nx * x[a] + ny * y[a] + nz * z[a]);
+                double weight = BORDER_WEIGHT * (ex * ex + ey * ey + ez * ez);
+                addPlane(a, nx, ny, nz, d, weight);
+                addPlane(b, nx, ny, nz, d, weight);
+            }
+        }
+
+        //Queue every edge once
+        for (long key : edgeUses.keySet()) {
+            queueCollapse((int) (key >>> 32), (int) key);
+        }
+    }
+
+    /**
+     * Collapses the cheapest edges until the mesh has at most the target number of triangles or nothing more can go.
+     *
+     * @param targetTriangles The triangle count to reach.
+     */
+    private void collapseTo(int targetTriangles) {
+        while (liveTriangleCount > targetTriangles && !queue.isEmpty()) {
+            Collapse collapse = queue.poll();
+            int a = collapse.a, b = collapse.b;
+            if (vertexDead[a] || vertexDead[b] || versions[a] != collapse.versionA || versions[b] != collapse.versionB) {
+                continue; //One of the vertices has changed since this collapse was queued
+            }
+            if (!canCollapse(a, b, collapse.x, collapse.y, collapse.z)) {
+                continue;
+            }
+            collapse(a, b, collapse.x, collapse.y, collapse.z);
+        }
+    }
+
+    /**
+     * Checks that collapsing an edge would not pinch the surface or turn any remaining triangle over.
+     */
+    private boolean canCollapse(int a, int b, double px, double py, double pz) {
+        //An edge inside the surface shares exactly two neighbours between its ends, more would pinch the surface
+        int shared = 0;
+        for (int i = 0; i < vertexTriangleCount[a]; i++) {
+            int t = vertexTriangles[a][i];
+            if (triangleDead[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int n = indices[t * 3 + k];
+                if (n != a && n != b && isNeighbour(b, n) && firstTriangleWith(a, n) == t) {
+                    shared++;
+                }
+            }
+        }
+        if (shared > 2) {
+            return false;
+        }
+        return !flips(a, b, px, py, pz) && !flips(b, a, px, py, pz);
+    }
+
+    /**
+     * Checks whether moving vertex v to a position turns over any of its triangles that do not also use vertex other.
+     */
+    private boolean flips(int v, int other, double px, double py, double pz) {
+        for (int i = 0; i < vertexTriangleCount[v]; i++) {
+            int t = vertexTriangles[v][i];
+            if (triangleDead[t]) {
+                continue;
+            }
+            int a = indices[t * 3], b = indices[t * 3 + 1], c = indices[t * 3 + 2];
+            if (a == other || b == other || c == other) {
+                continue; //This triangle is removed by the collapse
+            }
+            double[] before = normal(x[a], y[a], z[a], x[b], y[b], z[b], x[c], y[c], z[c]);
+            double ax = a == v ? px : x[a], ay = a == v ? py : y[a], az = a == v ? pz : z[a];
+            double bx = b == v ? px : x[b], by = b == v ? py : y[b], bz = b == v ? pz : z[b];
+            double cx = c == v ? px : x[c], cy = c == v ? py : y[c], cz = c == v ? pz : z[c];
+            double[] after = normal(ax, ay, az, bx, by, bz, cx, cy, cz);
+            if (before == null) {
+                continue;
+            }
+            if (after == null || before[0] * after[0] + before[1] * after[1] + before[2] * after[2] < MIN_FLIP_DOT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Merges vertex b into vertex a at a new position, removing the triangles that used both,
+     * and queues new collapses for the edges around the merged vertex.
+     */
+    private void collapse(int a, int b, double px, double py, double pz) {
+        x[a] = px;
+        y[a] = py;
+        z[a] = pz;
+        for (int q = 0; q < 10; q++) {
+            quadrics[a * 10 + q] += quadrics[b * 10 + q];
+        }
+        vertexDead[b] = true;
+        versions[a]++;
+        versions[b]++;
+
+        //Triangles using both ends disappear, the rest of b's triangles move over to a
+        for (int i = 0; i < vertexTriangleCount[b]; i++) {
+            int t = vertexTriangles[b][i];
+            if (triangleDead[t]) {
+                continue;
+            }
+            boolean usesA = indices[t * 3] == a || indices[t * 3 + 1] == a || indices[t * 3 + 2] == a;
+            if (usesA) {
+                triangleDead[t] = true;
+                liveTriangleCount--;
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                if (indices[t * 3 + k] == b) {
+                    indices[t * 3 + k] = a;
+                }
+            }
+            addVertexTriangle(a, t);
+        }
+
+        //The edges of the merged vertex have new costs, the ones queued before are stale now its version has changed
+        for (int i = 0; i < vertexTriangleCount[a]; i++) {
+            int t = vertexTriangles[a][i];
+            if (triangleDead[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int n = indices[t * 3 + k];
+                if (n != a) {
+                    queueCollapse(a, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Works out where the merged vertex of an edge should go and what it costs, and queues the collapse.
+     */
+    private void queueCollapse(int a, int b) {
+        if (a == b || vertexDead[a] || vertexDead[b]) {
+            return;
+        }
+        double cost = bestPosition(a, b);
+        queue.add(new Collapse(Math.min(a, b), Math.max(a, b), versions[Math.min(a, b)], versions[Math.max(a, b)],
+                cost, target[0], target[1], target[2]));
+    }
+
+    /**
+     * Finds the position minimising the combined quadric of an edge's ends, writing it into target.
+     * When the quadric cannot be solved, or its best point is far from the edge, the best of the two ends
+     * and the middle is used instead.
+     *
+     * @return The error at the chosen position.
+     */
+    private double bestPosition(int a, int b) {
+        double[] q = new double[10];
+        for (int i = 0; i < 10; i++) {
+            q[i] = quadrics[a * 10 + i] + quadrics[b * 10 + i];
+        }
+
+        //Solve the 3x3 system for the gradient being zero with Cramer's rule
+        double a00 = q[0], a01 = q[1], a02 = q[2], a11 = q[4], a12 = q[5], a22 = q[7];
+        double b0 = -q[3], b1 = -q[6], b2 = -q[8];
+        double det = a00 * (a11 * a22 - a12 * a12) - a01 * (a01 * a22 - a12 * a02) + a02 * (a01 * a12 - a11 * a02);
+        double ex = x[b] - x[a], ey = y[b] - y[a], ez = z[b] - z[a];
+        double edgeSqrd = ex * ex + ey * ey + ez * ez;
+        if (Math.abs(det) > 1e-12) {
+            double px = (b0 * (a11 * a22 - a12 * a12) - a01 * (b1 * a22 - a12 * b2) + a02 * (b1 * a12 - a11 * b2)) / det;
+            double py = (a00 * (b1 * a22 - a12 * b2) - b0 * (a01 * a22 - a12 * a02) + a02 * (a01 * b2 - b1 * a02)) / det;
+            double pz = (a00 * (a11 * b2 - b1 * a12) - a01 * (a01 * b2 - b1 * a02) + b0 * (a01 * a12 - a11 * a02)) / det;
+            double mx = px - (x[a] + x[b]) / 2, my = py - (y[a] + y[b]) / 2, mz = pz - (z[a] + z[b]) / 2;
+            if (mx * mx + my * my + mz * mz <= edgeSqrd) {
+                target[0] = px;
+                target[1] = py;
+                target[2] = pz;
+                return Math.max(0, error(q, px, py, pz));
+            }
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        for (int choice = 0; choice < 3; choice++) {
+            double t = choice * 0.5;
+            double px = x[a] + ex * t, py = y[a] + ey * t, pz = z[a] + ez * t;
+            double error = error(q, px, py, pz);
+            if (error < best) {
+                best = error;
+                target[0] = px;
+                target[1] = py;
+                target[2] = pz;
+            }
+        }
+        return Math.max(0, best);
+    }
+
+    /**
+     * Evaluates a quadric at a point, the weighted sum of squared distances to its planes.
+     */
+    private static double error(double[] q, double px, double py, double pz) {
+        return q[0] * px * px + 2 * q[1] * px * py + 2 * q[2] * px * pz + 2 * q[3] * px
+                + q[4] * py * py + 2 * q[5] * py * pz + 2 * q[6] * py
+                + q[7] * pz * pz + 2 * q[8] * pz + q[9];
+    }
+
+    /**
+     * Adds a weighted plane (nx, ny, nz, d) to a vertex's quadric.
+     */
+    private void addPlane(int v, double nx, double ny, double nz, double d, double weight) {
+        int o = v * 10;
+        quadrics[o] += weight * nx * nx;
+        quadrics[o + 1] += weight * nx * ny;
+        quadrics[o + 2] += weight * nx * nz;
+        quadrics[o + 3] += weight * nx * d;
+        quadrics[o + 4] += weight * ny * ny;
+        quadrics[o + 5] += weight * ny * nz;
+        quadrics[o + 6] += weight * ny * d;
+        quadrics[o + 7] += weight * nz * nz;
+        quadrics[o + 8] += weight * nz * d;
+        quadrics[o + 9] += weight * d * d;
+    }
+
+    /**
+     * Returns a triangle's unit normal, plane offset and area as (nx, ny, nz, d, area), or null if it has no area.
+     */
+    private double[] trianglePlane(int a, int b, int c) {
+        double[] n = normal(x[a], y[a], z[a], x[b], y[b], z[b], x[c], y[c], z[c]);
+        if (n == null) {
+            return null;
+        }
+        return new double[] {n[0], n[1], n[2], -(n[0] * x[a] + n[1] * y[a] + n[2] * z[a]), n[3] / 2};
+    }
+
+    /**
+     * Returns a triangle's unit normal and the length of its unnormalized normal as (nx, ny, nz, length),
+     * or null if it has no area.
+     */
+    private static double[] normal(double ax, double ay, double az, double bx, double by, double bz, double cx, double cy, double cz) {
+        double e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        double e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+        double nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return null;
+        }
+        return new double[] {nx / length, ny / length, nz / length, length};
+    }
+
+    /**
+     * Checks whether two vertices share a live triangle.
+     */
+    private boolean isNeighbour(int v, int n) {
+        return firstTriangleWith(v, n) >= 0;
+    }
+
+    /**
+     * Finds the first live triangle around vertex v that also uses vertex n, or -1 if there is none.
+     */
+    private int firstTriangleWith(int v, int n) {
+        for (int i = 0; i < vertexTriangleCount[v]; i++) {
+            int t = vertexTriangles[v][i];
+            if (!triangleDead[t] && (indices[t * 3] == n || indices[t * 3 + 1] == n || indices[t * 3 + 2] == n)) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private void addVertexTriangle(int v, int t) {
+        if (vertexTriangleCount[v] == vertexTriangles[v].length) {
+            vertexTriangles[v] = Arrays.copyOf(vertexTriangles[v], vertexTriangles[v].length * 2);
+        }
+        vertexTriangles[v][vertexTriangleCount[v]++] = t;
+    }
+
+    private static long edgeKey(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    /**
+     * Copies the remaining triangles into a new mesh, keeping only the vertices they use.
+     *
+     * @return The simplified mesh.
+     */
+    private Mesh toMesh() {
+        int[] remap = new int[x.length];
+        Arrays.fill(remap, -1);
+        int[] newIndices = new int[liveTriangleCount * 3];
+        int vertexCount = 0;
+        int corner = 0;
+        for (int t = 0; t < triangleCount; t++) {
+            if (triangleDead[t]) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                int v = indices[t * 3 + k];
+                if (remap[v] < 0) {
+                    remap[v] = vertexCount++;
+                }
+                newIndices[corner++] = remap[v];
+            }
+        }
+        float[] newX = new float[vertexCount];
+        float[] newY = new float[vertexCount];
+        float[] newZ = new float[vertexCount];
+        for (int v = 0; v < x.length; v++) {
+            if (remap[v] >= 0) {
+                newX[remap[v]] = (float) x[v];
+                newY[remap[v]] = (float) y[v];
+                newZ[remap[v]] = (float) z[v];
+            }
+        }
+        return new Mesh(newX, newY, newZ, newIndices);
+    }
+
+    /**
+     * A queued edge collapse, ordered by its error.
+     */
+    private static class Collapse implements Comparable<Collapse> {
+        final int a, b; //The edge's ends
+        final int versionA, versionB; //The ends' versions when the collapse was queued
+        final double cost; //The error the collapse adds
+        final double x, y, z; //Where the merged vertex goes
+
+        Collapse(int a, int b, int versionA, int versionB, double cost, double x, double y, double z) {
+            this.a = a;
+            this.b = b;
+            this.versionA = versionA;
+            this.versionB = versionB;
+            this.cost = cost;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public int compareTo(Collapse other) {
+            return Double.compare(cost, other.cost);
+        }
+    }
+}
@@ -3,11 +3,13 @@ package objects;
 /**
  * The Vertex2D class represents a point in 2D space with x and y coordinates.
  * It is commonly used for 2D graphics, UI elements, or screen space representations.
+ * Projected vertices also carry the camera space depth they were projected from, for depth testing.
  */
 public class Vertex2D {
     //Public fields for the x and y coordinates of the vertex
     public float x;
     public float y;
+    public float z; //Camera space depth of a projected vertex, 0 if unknown
 
     /**
      * Constructor to initialize a 2D vertex with given x and y coordinates.
@@ -19,4 +21,17 @@ public class Vertex2D {
         this.x = x;
         this.y = y;
     }
+
+    /**
+     * Constructor to initialize a projected 2D vertex with its x and y coordinates and camera space depth.
+     * 
+     * @param x The x-coordinate of the vertex.
+     * @param y The y-coordinate of the vertex.
+     * @param z The camera space depth the vertex was projected from.
+     */
+    public Vertex2D(float x, float y, float z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
 }